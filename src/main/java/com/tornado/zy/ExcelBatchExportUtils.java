@@ -0,0 +1,144 @@
+package com.tornado.zy;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.WorkbookUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * EXCEL批量导出工具类，将多个配置好的{@link ExcelExportUtils}分别绘制为同一个工作簿中的多个工作表.
+ * <br>所有工作表共享一份样式/字体登记表及属性缓存，各工作表的普通模式内容在线程池中并行萃取、渲染，
+ * 绘制工作表及输出仍在调用线程中顺序完成，整个工作簿只输出一次.
+ * <p>注意：并行准备时各工作表的render会在不同线程中执行，同一个render实例被多个工作表共用时需自行保证线程安全</p>
+ * <pre>
+ * ExcelBatchExportUtils.c()
+ *     .sheet("学校", ExcelExportUtils.c().title("学校").contentColumns("one", "two").contentData(schools))
+ *     .sheet("学生", ExcelExportUtils.c().title("学生").contentColumns("one", "two").contentData(students))
+ *     .export(out);
+ * </pre>
+ * @author xlsiek
+ *
+ */
+public class ExcelBatchExportUtils {
+	private List<String> sheetNames = new ArrayList<>();
+	private List<ExcelExportUtils> exports = new ArrayList<>();
+	private int parallelism = Runtime.getRuntime().availableProcessors();//并行准备数据的线程数
+	private ExlFieldCache fieldCash = new ExlFieldCache();
+
+	private ExcelBatchExportUtils() {
+
+	}
+
+	/**
+	 * 调用此方法初始化
+	 * @return ExcelBatchExportUtils
+	 */
+	public static ExcelBatchExportUtils c() {
+		return new ExcelBatchExportUtils();
+	}
+
+	/**
+	 * 增加一个工作表，工作表顺序即添加顺序
+	 * @param sheetName 工作表名，为空时使用默认名称
+	 * @param export 该工作表的导出配置
+	 * @return ExcelBatchExportUtils
+	 */
+	public ExcelBatchExportUtils sheet(String sheetName, ExcelExportUtils export) {
+		sheetNames.add(sheetName);
+		exports.add(export);
+		return this;
+	}
+
+	/**
+	 * 设置并行准备数据的线程数，1为不并行
+	 * @param parallelism 线程数
+	 * @return ExcelBatchExportUtils
+	 */
+	public ExcelBatchExportUtils parallelism(int parallelism) {
+		this.parallelism = parallelism < 1 ? 1 : parallelism;
+		return this;
+	}
+
+	/**
+	 * 输出
+	 * @param out 输出流
+	 * @return 各工作表的统计，顺序与工作表一致
+	 * @throws IOException
+	 */
+	public List<ExlExportStats> export(OutputStream out) throws IOException {
+		for (ExcelExportUtils export : exports) {
+			export.startStats();
+		}
+		Workbook wb = new HSSFWorkbook();
+		try {
+			prepare();
+			ExlStyleRegistry styleRegistry = new ExlStyleRegistry(wb);//所有工作表共用
+			for (int i = 0; i < exports.size(); i++) {
+				String name = sheetNames.get(i);
+				Sheet sheet = StringUtils.isEmpty(name) ? wb.createSheet() : wb.createSheet(WorkbookUtil.createSafeSheetName(name));
+				ExcelExportUtils export = exports.get(i);
+				export.draw(new ExlPoiSheetWriter(sheet, styleRegistry, export.getTempFontSize()));
+			}
+		} catch (ExlCancelToken.Cancelled e) {
+			//任意工作表被取消，整个工作簿都不输出
+			wb.close();
+			return finishStats(true);
+		}
+		wb.write(out);
+		return finishStats(false);
+	}
+
+	private List<ExlExportStats> finishStats(boolean cancelled) {
+		List<ExlExportStats> stats = new ArrayList<>(exports.size());
+		for (ExcelExportUtils export : exports) {
+			stats.add(export.finishStats(cancelled));
+		}
+		return stats;
+	}
+
+	/**
+	 * 并行萃取各工作表的内容
+	 * @throws IOException 任意工作表准备失败
+	 */
+	private void prepare() throws IOException {
+		for (ExcelExportUtils export : exports) {
+			export.fieldCash(fieldCash);
+		}
+		int threads = Math.min(parallelism, exports.size());
+		if (threads <= 1) {
+			for (ExcelExportUtils export : exports) {
+				export.prepareContent();
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (final ExcelExportUtils export : exports) {
+				futures.add(executor.submit(export::prepareContent));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("批量导出被中断", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ExlCancelToken.Cancelled) {
+				throw (ExlCancelToken.Cancelled) e.getCause();
+			}
+			throw new IOException("批量导出准备数据失败", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -1,27 +1,37 @@
 package com.tornado.zy;
 
-import org.apache.poi.hssf.usermodel.HSSFPrintSetup;
-import org.apache.poi.hssf.usermodel.HSSFRichTextString;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.ss.util.RegionUtil;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.lang.reflect.Field;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 
 
 /**
  * EXCEL导出工具类，该工具类支持简单文档导出，自定义文档导出，支持两种单元格对齐方向，默认中间对齐，支持单元格border隐藏显示。支持全手工自定义表格.
- * <br>支持行高，列宽设置，支持为普通模式表格渲染增加自定义渲染方法.{@link #render(ExlCellRender, String...)}
+ * <br>支持行高，列宽设置，支持为普通模式表格渲染增加自定义渲染方法.{@link #render(ExlCellRender, String...)}及按列批量渲染{@link #columnRender(ExlColumnRender, String...)}，支持由表达式算出的计算列{@link #computed(String, String)}
  * <p><b>普通模式是指根据普通列列表及List或数组数据渲染出来的工作表，例如{@link #headers(String...)},{@link #columnHeaders(String...)},{@link #contentColumns(String...)},{@link #contentData(List)}而自定义模式则是手动模式，其方法带complex头 ，参见{@link #complexHeader(List)}等</b></p>
  * <br>
  * <p>
@@ -43,29 +53,64 @@ import java.util.Map;
  *
  */
 public class ExcelExportUtils {
-	private final static String[] COLUMN_NAME_ARR = {"A","B","C","D","E","F","G","H","I","J","K","L","M","N","O","P","Q","R","S","T","U","V","W","X","Y","Z"
-			,"AA","AB","AC","AD","AE","AF","AG","AH","AI","AJ","AK","AL","AM","AN","AO","AP","AQ","AR","AS","AT","AU","AV","AW","AX","AY","AZ"};
+	private final static int CONTENT_CHUNK = 256;//普通模式内容按块萃取、渲染，每块的行数
+	private final static int TEMPLATE_WINDOW = 100;//xlsx模板流式写入时内存中保留的行数
+	private final static long MEMORY_BASE = 2L * 1024 * 1024;//估算内存时每个导出的固定部分：工作簿、样式、压缩缓冲区等
+	private final static int MEMORY_PER_CELL = 256;//估算内存时每个单元格的占用，HSSF实测约130~200字节，另加输出时的整份副本
+	private final static int MAX_XLS_ROWS = 65536;//xls的最大行数，数据源大小未知时按此估算
 	private String fileMark = "";//文件标注，第一行合并3列
 	private String title = "";//标题栏，标题栏第二行，合并列数动态。根据内容宽度而定
 	private String subtitle = "";//副标题。用于一些表格有盖章情况的
 	private String comments;//注释行。最后一行。无格式
 	private String[] headers = null;//普通模式标题数组，
 	private List<ExlRow> complexHeader = null;//自定义表头，
+	private ExlLayout complexHeaderLayout = null;//预先解析的自定义表头布局
 	private String[] columnHeaders = null;//普通模式列。注意这里的普通列是指内容的第一列。
 	private List<ExlRow> complexColumnHeaders = null;//自定义首列。
+	private ExlLayout complexColumnHeadersLayout = null;
 	private List<ExlRow> complexContent = null;//自定义内容，一旦配置了自定义内容。将忽略原有内容
+	private ExlLayout complexContentLayout = null;
 	private int beginDrawRow = 0;//默认从第1行开始绘制
 	private int maxColumn = 0;//最大列数索引，计算得到,通过计算complex的第一行,如果没有head 它的长度则是列头的第一行+内容的总长
-	private Map<Integer,String> fillPosition = new HashMap<>();//站位map。已被使用的map位置
+	private ExlGrid fillPosition = new ExlGrid();//站位表。已被使用的位置
 	private String[] contentColumns = null;//内容列
-	private List<?> contentData = null;//内容
-	private Map<String,Field> fieldCash = new HashMap<>();
+	private Iterable<?> contentData = null;//内容，List或按需读取的数据源
+	private ExlColumnTable contentTable = null;//列式内容，与contentData二选一
+	private ExlFieldCache fieldCash = new ExlFieldCache();//属性缓存，批量导出时由多个工作表共享
+	private List<String[]> preparedContent = null;//预先萃取好的内容行，批量导出时并行准备
+	private long statsBegin = 0;//统计开始时间
+	private int contentRowCount = 0;//已写出的普通模式内容行数
+	private Map<String,ExlMemoRender.Stats> renderCachesBefore = null;//开始时的渲染缓存统计
+	private ExlExportStats stats = null;//最近一次导出的统计
 	private int titleRowIndex = -1;//记录标题所在行。用于合并
 	private Map<Integer,Integer> columnWidthMap = new HashMap<>();//存储所有的列对应的宽度。
 	private Map<String,ExlCellRender<Object>> renderMap = new HashMap<>();//renader map.用来格式化
+	private Map<String,ExlColumnRender<Object>> columnRenderMap = new HashMap<>();//列渲染map，在renderMap之后执行
+	private String renderKey = null;//渲染器、行写入器的稳定描述，代替各自的描述计算缓存键
+	private Map<String,ExlExpression> computedMap = new LinkedHashMap<>();//计算列，取值时代替属性
 	private int contentLineHeight = 0;//普通模式数据高度
 	private boolean cellNoFormat = false;//单元格无格式。特殊需求
 	private int tempFontSize = 0;//临时字体。慎用。将会导致绘制表格字体全变成这样.
+	private int streamFlushRows = 1000;//流式输出时每多少行推送一次
+	private long streamFlushBytes = 256 * 1024;//流式输出时每多少字节推送一次
+	private ExlTemplate template = null;//模板，设置后按模板导出
+	private Map<String,Object> templateVars = new HashMap<>();//模板变量
+	private ExlCancelToken cancelToken = null;//取消标记
+	private ExlProgressListener progressListener = null;//进度回调
+	private int progressEvery = 1000;//每多少行回调一次进度
+	private int progressTotal = -1;//预计内容总行数，绘制开始时计算
+	private String groupProperty = null;//分组小计的分组属性，数据须已按此排序
+	private String groupLabel = null;//小计行文字，{key}替换为分组值
+	private String totalLabel = null;//总计行文字，为null时不输出总计行
+	private Map<String,ExlAggregate> aggregateMap = new LinkedHashMap<>();//各属性的汇总方式
+	private ExlRowWriter<Object> rowWriter = null;//行写入器，设置后不再反射取值
+	private int[] rowWriterColumns = null;//各内容列在行写入器中的下标，绘制时解析
+	private ExlRowAdapter rowAdapter = null;//行记录的取值方式，按记录类型选定，类型变化时重新选择
+	private ContentAppender appender = null;//逐条追加内容时使用，见begin
+	private int previewRows = -1;//预览的内容行数，-1为不限
+	private Map<String,Boolean> sortMap = new LinkedHashMap<>();//排序列 -> 是否升序，按优先级
+	private long sortMemory = 64L * 1024 * 1024;//排序时内存中攒一段的占用上限，字节
+	private boolean contentTruncated = false;//预览时内容是否被截断
 	private ExcelExportUtils(){
 		
 	}
@@ -125,6 +170,98 @@ public class ExcelExportUtils {
 			this.renderMap.put(item, render);
 		return this;
 	}
+	/**
+	 * 增加一个列渲染器，用来按列批量格式化特定属性。同一属性同时存在{@link #render(ExlCellRender, String...)}时，先执行单元格渲染
+	 * @param render 列渲染器，例如{@link ExlDictRender}
+	 * @param property 属性
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils columnRender(ExlColumnRender<?> render,String... property) {
+		@SuppressWarnings("unchecked")//渲染器收到的行记录即contentData中的元素，其类型由调用方保证
+		ExlColumnRender<Object> columnRender = (ExlColumnRender<Object>) render;
+		for(String item : property)
+			this.columnRenderMap.put(item, columnRender);
+		return this;
+	}
+	/**
+	 * 指定渲染器、行写入器的稳定描述，{@link ExlExportCache}、{@link ExlSingleFlight}计算键时用它代替各渲染器自己的描述.
+	 * <br>lambda、匿名类等没有覆盖toString的渲染器没有稳定的描述，使用缓存或合并导出时必须设置；渲染逻辑变化时应更换
+	 * @param renderKey 描述，例如"area-dict-v2"
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils renderKey(String renderKey) {
+		this.renderKey = renderKey;
+		return this;
+	}
+	/**
+	 * 增加一个计算列，按表达式由同一行的其他属性算出，例如contains(line, 'NOT NULL') ? '否' : '是'，语法参见{@link ExlExpression}.
+	 * <br>表达式在此解析、编译一次，每行只求值，取到的是属性的原始值，不经过字符串.
+	 * 计算列像普通属性一样写在contentColumns中，其值还可以再经过渲染器，小计、排序使用计算后的值.
+	 * 只对contentData/contentSource有效，计算列优先于行写入器中的同名列
+	 * @param property 计算列的属性名
+	 * @param expression 表达式
+	 * @return ExcelExportUtils
+	 * @throws IllegalArgumentException 表达式有语法错误
+	 */
+	public ExcelExportUtils computed(String property,String expression) {
+		this.computedMap.put(property, ExlExpression.compile(expression));
+		return this;
+	}
+	/**
+	 * 按属性分组小计。数据须已按该属性排序，分组值变化时在内容中插入一行小计，
+	 * 小计行的分组列为label，汇总列见{@link #aggregate(ExlAggregate, String...)}，其他列留空.
+	 * <br>小计边写边算，不缓存数据，只对contentData/contentSource有效
+	 * @param property 分组属性，必须是内容列之一
+	 * @param label 小计行文字，{key}替换为分组值，例如"{key}小计"
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils groupBy(String property,String label) {
+		this.groupProperty = property;
+		this.groupLabel = label;
+		return this;
+	}
+	/**
+	 * 在内容之后、注释行之前增加一行总计
+	 * @param label 总计行文字，写在分组列，没有分组时写在第一列
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils grandTotal(String label) {
+		this.totalLabel = label;
+		return this;
+	}
+	/**
+	 * 按属性排序后再写出，多次调用时先调用的优先。只对contentData/contentSource有效.
+	 * <br>按渲染前的原始值比较：数字按数值，升序时数字排在文字之前，空值总在最后，相同时保持原有顺序。
+	 * 超出{@link #sortMemory(long)}的部分排好序后暂存到临时文件，最后归并写出，内存与数据量无关.
+	 * <br>注意：渲染在排序之前进行，渲染器收到的行号是数据源中的顺序
+	 * @param property 属性，必须是内容列之一
+	 * @param ascending 是否升序
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils sortBy(String property,boolean ascending) {
+		this.sortMap.put(property, ascending);
+		return this;
+	}
+	/**
+	 * 设置排序时内存中暂存行的占用上限（估算值），默认64M
+	 * @param bytes 字节数
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils sortMemory(long bytes) {
+		this.sortMemory = bytes;
+		return this;
+	}
+	/**
+	 * 设置属性在小计、总计行中的汇总方式，汇总使用渲染之前的原始值
+	 * @param aggregate 汇总方式
+	 * @param property 属性，必须是内容列之一
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils aggregate(ExlAggregate aggregate,String... property) {
+		for(String item : property)
+			this.aggregateMap.put(item, aggregate);
+		return this;
+	}
 	/**
 	 * 设置副标题，位置位于title下的一行。
 	 * @param subtitle 副标题
@@ -141,6 +278,17 @@ public class ExcelExportUtils {
 	 */
 	public ExcelExportUtils complexHeader(List<ExlRow> complexHeader) {
 		this.complexHeader = complexHeader;
+		this.complexHeaderLayout = null;
+		return this;
+	}
+	/**
+	 * 设置复杂表头，使用预先解析好的布局，参见{@link ExlLayout#solve(List)}
+	 * @param complexHeader 复杂表头布局
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils complexHeader(ExlLayout complexHeader) {
+		this.complexHeader = complexHeader.rows();
+		this.complexHeaderLayout = complexHeader;
 		return this;
 	}
 	/**
@@ -159,6 +307,17 @@ public class ExcelExportUtils {
 	 */
 	public ExcelExportUtils complexColumnHeaders(List<ExlRow> complexColumnHeaders) {
 		this.complexColumnHeaders = complexColumnHeaders;
+		this.complexColumnHeadersLayout = null;
+		return this;
+	}
+	/**
+	 * 设置复杂列表头，使用预先解析好的布局，参见{@link ExlLayout#solve(List)}
+	 * @param complexColumnHeaders 复杂列表头布局
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils complexColumnHeaders(ExlLayout complexColumnHeaders) {
+		this.complexColumnHeaders = complexColumnHeaders.rows();
+		this.complexColumnHeadersLayout = complexColumnHeaders;
 		return this;
 	}
 	/**
@@ -168,16 +327,49 @@ public class ExcelExportUtils {
 	 */
 	public ExcelExportUtils complexContent(List<ExlRow> complexContent) {
 		this.complexContent = complexContent;
+		this.complexContentLayout = null;
+		return this;
+	}
+	/**
+	 * 设置复杂内容，使用预先解析好的布局，参见{@link ExlLayout#solve(List)}
+	 * @param complexContent 复杂内容布局
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils complexContent(ExlLayout complexContent) {
+		this.complexContent = complexContent.rows();
+		this.complexContentLayout = complexContent;
 		return this;
 	}
 	
 	/**
-	 * 内容列，该字段用于普通excel。是一个javabean属性数组，用来萃取指定行的数值
+	 * 内容列，该字段用于普通excel。是一个javabean属性数组，用来萃取指定行的数值.
+	 * <br>行记录为Map时是键，为record时是组件名；为Object[]或List时是数字下标，不是数字的按内容列的位置取值.
+	 * 实体、record中不存在的属性取值为空，不报错
 	 * @param contentColumns 内容列
 	 * @return ExcelExportUtils
 	 */
 	public ExcelExportUtils contentColumns(String... contentColumns) {
 		this.contentColumns = contentColumns;
+		this.rowAdapter = null;
+		return this;
+	}
+	/**
+	 * 使用行写入器取值，代替按属性名反射，一般传入由{@link ExlColumn}生成的写入器，例如new ItemExlWriter().
+	 * <br>未设置内容列时使用写入器的全部列，未设置表头时使用写入器的表头。
+	 * 内容列只能是写入器中的列，可以是其子集
+	 * @param rowWriter 行写入器，每次导出新建
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils rowWriter(ExlRowWriter<?> rowWriter) {
+		@SuppressWarnings("unchecked")//写入器收到的行记录即contentData中的元素，其类型由调用方保证
+		ExlRowWriter<Object> writer = (ExlRowWriter<Object>) rowWriter;
+		this.rowWriter = writer;
+		if (this.contentColumns == null) {
+			this.contentColumns = rowWriter.columns();
+		}
+		if (this.headers == null && this.complexHeader == null) {
+			this.headers = rowWriter.headers();
+		}
 		return this;
 	}
 	/**
@@ -190,6 +382,27 @@ public class ExcelExportUtils {
 		return this;
 	}
 	
+	/**
+	 * 内容，普通模式，按需从数据源读取，例如分页查询或文件逐行解析的结果，配合{@link #exportStreaming(OutputStream)}时内存与数据量无关.
+	 * 数据源只被遍历一次；{@link #exportResumable(Path, int)}时可以使用{@link ExlResumableSource}，从检查点的位置继续读取
+	 * @param contentSource 数据源
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils contentSource(Iterable<?> contentSource) {
+		this.contentData = contentSource;
+		return this;
+	}
+	
+	/**
+	 * 列式内容，普通模式，contentColumns按列名绑定到表中的列。设置后忽略{@link #contentData(List)}
+	 * @param contentTable 列式数据表
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils contentTable(ExlColumnTable contentTable) {
+		this.contentTable = contentTable;
+		return this;
+	}
+	
 	/**
 	 * 仅对普通模式有效，对自定义模式无效
 	 * @param height 高
@@ -219,6 +432,62 @@ public class ExcelExportUtils {
 		return this;
 	}
 	
+	/**
+	 * 流式输出时推送给输出流的频率，行数或压缩后字节数任一达到即推送
+	 * @param rows 行数
+	 * @param bytes 字节数
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils streamFlush(int rows, long bytes){
+		this.streamFlushRows = rows;
+		this.streamFlushBytes = bytes;
+		return this;
+	}
+	
+	/**
+	 * 按模板导出，参见{@link ExlTemplate}。设置后title、headers等普通模式及自定义模式的表头设置均被忽略，只作为同名变量的默认值；
+	 * contentColumns未设置时使用模板数据行中的属性。输出格式与模板一致，不支持{@link #exportStreaming(OutputStream)}
+	 * @param template 模板
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils template(ExlTemplate template){
+		this.template = template;
+		return this;
+	}
+	
+	/**
+	 * 设置模板变量，替换模板中的${name}
+	 * @param name 变量名
+	 * @param value 值，数值会写为数值单元格
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils templateVar(String name, Object value){
+		this.templateVars.put(name, value);
+		return this;
+	}
+	
+	/**
+	 * 设置取消标记，导出过程中标记被取消时尽快中止，参见{@link ExlExportStats#isCancelled()}
+	 * @param cancelToken 取消标记
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils cancelToken(ExlCancelToken cancelToken){
+		this.cancelToken = cancelToken;
+		return this;
+	}
+	
+	/**
+	 * 设置进度回调，每写出everyRows行内容回调一次，全部写完后再回调一次
+	 * @param progressListener 进度回调
+	 * @param everyRows 回调间隔行数
+	 * @return ExcelExportUtils
+	 */
+	public ExcelExportUtils progress(ExlProgressListener progressListener, int everyRows){
+		this.progressListener = progressListener;
+		this.progressEvery = everyRows < 1 ? 1 : everyRows;
+		return this;
+	}
+	
 	/**
 	 * 修改字体大小。强制
 	 * @param size
@@ -233,108 +502,595 @@ public class ExcelExportUtils {
 
 	
 	/**
-	 * 输出
+	 * 输出。本次导出的统计通过{@link #getStats()}取得
 	 * @throws IOException 
 	 */
 	public void export(OutputStream out) throws IOException{
+		exportXls(out);
+	}
+	
+	/**
+	 * 输出xls（按模板导出时与模板格式一致），供包内的导出包装使用
+	 * @return 本次导出的统计
+	 * @throws IOException 
+	 */
+	ExlExportStats exportXls(OutputStream out) throws IOException{
+		if(template != null){
+			return exportTemplate(out);
+		}
+		startStats();
 		Workbook wb   = new HSSFWorkbook();	
-		Map<String, CellStyle> styles = createStyles(wb);
-		Sheet sheet = wb.createSheet();
-		sheet.setFitToPage(true);
-		sheet.setHorizontallyCenter(true);
+		try {
+			draw(new ExlPoiSheetWriter(wb.createSheet(), new ExlStyleRegistry(wb), tempFontSize));
+		} catch (ExlCancelToken.Cancelled e) {
+			wb.close();
+			return finishStats(true);
+		}
+		wb.write(out);
+		return finishStats(false);
+	}
+	
+	/**
+	 * 流式输出xlsx。工作簿的固定部分立即输出，内容行生成后即写入，每{@link #streamFlush(int, long)}行或字节推送给out一次，
+	 * 调用方（例如HTTP下载）无需等整个文件生成完才收到第一个字节。配合{@link #contentSource(Iterable)}时数据也不必全部在内存中.
+	 * <br>注意：列宽只能通过表头单元格或{@link #forceColumnWidth(int, int)}设置；out不会被关闭
+	 * @param out 输出流
+	 * @return 本次导出的统计
+	 * @throws IOException
+	 */
+	public ExlExportStats exportStreaming(OutputStream out) throws IOException{
+		if(template != null){
+			throw new UnsupportedOperationException("模板导出不支持流式输出");
+		}
+		startStats();
+		return exportStreaming(streamWriter(out));
+	}
+	
+	/**
+	 * 绘制到流式写入目标，无论完成、取消还是失败都释放写入目标
+	 * @param writer 写入目标
+	 * @return 本次导出的统计
+	 * @throws IOException
+	 */
+	ExlExportStats exportStreaming(ExlXlsxStreamWriter writer) throws IOException{
+		try {
+			draw(writer);
+		} catch (ExlCancelToken.Cancelled e) {
+			return finishStats(true);
+		} finally {
+			writer.close();
+		}
+		return finishStats(false);
+	}
+	
+	/**
+	 * 流式输出xlsx到通道，例如{@link java.nio.channels.FileChannel}或SocketChannel，经由直接缓冲区整块写入。通道不会被关闭
+	 * @param channel 通道
+	 * @return 本次导出的统计
+	 * @throws IOException
+	 */
+	public ExlExportStats exportStreaming(WritableByteChannel channel) throws IOException{
+		ExlChannelOutputStream out = new ExlChannelOutputStream(channel, 64 * 1024);
+		ExlExportStats result = exportStreaming(out);
+		out.close();
+		return result;
+	}
+	
+	/**
+	 * 可断点续传的流式输出xlsx到文件，用于耗时很长的导出。每写出checkpointRows行内容（按256行向上取整）把已生成的数据落盘，
+	 * 并在同目录的"文件名.checkpoint"中记录检查点：已读取的记录数及最后一条记录的键、已写出的行数、小计的累加值及压缩流的状态.
+	 * <br>进程中途退出后以相同的配置再次调用，截掉文件中最后一个检查点之后的部分，重新绘制内容之前的部分（不输出），
+	 * 从检查点的位置继续读取数据源并写出，得到的文件与不中断时完全相同，完成后删除检查点文件.
+	 * <br>数据源为{@link ExlResumableSource}时从检查点继续读取，为List时直接定位，其他数据源从头读取并跳过已写出的记录.
+	 * <p>注意：
+	 * <br>1.只支持普通模式内容，不支持排序、模板及列式内容；
+	 * <br>2.检查点按配置区分（不含渲染器及行写入器），配置改变后原有检查点作废、从头导出；渲染器对同一记录须总得到相同的值；
+	 * <br>3.被取消或出错时保留文件及检查点，之后可以继续；
+	 * <br>4.每个检查点重新开始压缩，文件比{@link #exportStreaming(OutputStream)}略大，checkpointRows不宜太小</p>
+	 * @param file 输出文件
+	 * @param checkpointRows 检查点间隔行数
+	 * @return 本次导出的统计，行数包括检查点之前已写出的行
+	 * @throws IOException
+	 */
+	public ExlExportStats exportResumable(Path file, int checkpointRows) throws IOException{
+		if (template != null || contentTable != null || ArrayUtils.isEmpty(contentColumns) || CollectionUtils.isNotEmpty(complexContent)
+				|| !sortMap.isEmpty()) {
+			throw new IllegalStateException("断点续传只支持普通模式内容，且不能排序");
+		}
+		int every = Math.max(1, (checkpointRows + CONTENT_CHUNK - 1) / CONTENT_CHUNK) * CONTENT_CHUNK;
+		StringBuilder key = new StringBuilder(256);
+		describeLayout(key);
+		describe(key, "checkpoint", every, streamFlushRows, streamFlushBytes);
+		startStats();
+		String contentStyle = cellNoFormat ? null : "cellcb";
+		ExlXlsxStreamWriter writer = null;
+		ExlCheckpointer checkpointer = new ExlCheckpointer(file, ExlExportCache.sha256(key), every, contentData);
+		try {
+			writer = checkpointer.open(this::streamWriter, tempFontSize, streamFlushRows, streamFlushBytes);
+			//从检查点继续时重新绘制内容之前的部分，恢复行号、占位及尚未输出的行，已输出的行不再写入
+			drawBegin(writer);
+			appender = new ContentAppender(writer, contentStyle);
+			checkpointer.restore(appender);
+			appender.checkpointer = checkpointer;
+			Iterator<?> iterator = checkpointer.iterator();
+			try {
+				if (appender.first > 0 || iterator.hasNext()) {
+					while (iterator.hasNext()) {
+						appender.add(iterator.next());
+					}
+					appender.finish();
+					addContentColumns();
+				}
+			} finally {
+				appender.close();
+			}
+			drawEnd(writer);
+			checkpointer.finish();
+		} catch (ExlCancelToken.Cancelled e) {
+			return finishStats(true);
+		} finally {
+			try {
+				checkpointer.close();
+			} finally {
+				if (writer != null) {
+					writer.close();
+				}
+			}
+		}
+		checkpointer.delete();
+		return finishStats(false);
+	}
+	
+	/**
+	 * 预览前maxRows行，输出为HTML表格，不建工作簿。标题、表头、自定义布局及渲染器与导出一致，
+	 * 数据源只读取前maxRows行（另外读一行判断是否还有更多），耗时与数据总量无关.
+	 * <br>单元格的class为样式名，例如"cellcb"、"title"，由页面自行定义样式；预览的最后没有小计、总计。
+	 * 预览之后不能再用同一配置导出
+	 * @param maxRows 内容行数
+	 * @return HTML
+	 */
+	public String previewHtml(int maxRows){
+		return preview(maxRows).toHtml();
+	}
+	
+	/**
+	 * 预览前maxRows行，输出为JSON，格式为
+	 * {"columns":列数,"truncated":是否还有更多行,"rows":[{"row":行,"height":行高,"cells":[{"column":列,"value":值,"style":样式,"rowspan":行数,"colspan":列数}]}]}，
+	 * 其他同{@link #previewHtml(int)}
+	 * @param maxRows 内容行数
+	 * @return JSON
+	 */
+	public String previewJson(int maxRows){
+		return preview(maxRows).toJson();
+	}
+	
+	/**
+	 * 最近一次导出的统计，尚未导出时为null
+	 * @return ExlExportStats
+	 */
+	public ExlExportStats getStats(){
+		return stats;
+	}
+	
+	//=====================================================包内方法区，供批量导出使用
+	
+	/**
+	 * 开始统计，记录开始时间及渲染缓存的初始计数
+	 */
+	void startStats(){
+		statsBegin = System.currentTimeMillis();
+		contentRowCount = 0;
+		renderCachesBefore = renderCacheStats();
+	}
+	
+	/**
+	 * 结束统计
+	 * @param cancelled 是否被取消
+	 * @return 本次导出的统计
+	 */
+	ExlExportStats finishStats(boolean cancelled){
+		Map<String,ExlMemoRender.Stats> renderCaches = renderCacheStats();
+		for (Map.Entry<String,ExlMemoRender.Stats> entry : renderCaches.entrySet()) {
+			entry.setValue(entry.getValue().minus(renderCachesBefore.get(entry.getKey())));
+		}
+		stats = new ExlExportStats(contentRowCount, System.currentTimeMillis() - statsBegin, renderCaches, cancelled);
+		return stats;
+	}
+	
+	/**
+	 * 使用指定的属性缓存，批量导出时多个工作表共享一份
+	 * @param fieldCash 属性缓存
+	 */
+	void fieldCash(ExlFieldCache fieldCash){
+		this.fieldCash = fieldCash;
+	}
+	
+	/**
+	 * 内容字体大小，0为默认
+	 * @return 字体大小
+	 */
+	int getTempFontSize(){
+		return tempFontSize;
+	}
+	
+	/**
+	 * 估算导出占用的内存，不含数据源本身，供{@link ExlAdmission}使用.
+	 * <br>工作簿按单元格数估算，数据源大小未知时按xls的最大行数；流式输出只持有一块内容；排序另加内存中一段的上限
+	 * @param streaming 是否流式输出
+	 * @return 字节数
+	 */
+	long estimateMemory(boolean streaming){
+		int columns = ArrayUtils.isEmpty(contentColumns) ? 1 : contentColumns.length;
+		long memory = MEMORY_BASE + getSortMemory();
+		if (streaming) {
+			return memory + (long) CONTENT_CHUNK * columns * MEMORY_PER_CELL;
+		}
+		int rows = estimateContentRows();
+		long cells = (long) (rows < 0 ? MAX_XLS_ROWS : rows) * columns;
+		for (List<ExlRow> layout : Arrays.asList(complexHeader, complexColumnHeaders, complexContent)) {
+			if (layout != null) {
+				for (ExlRow row : layout) {
+					cells += row.size();
+				}
+			}
+		}
+		return memory + cells * MEMORY_PER_CELL;
+	}
+	
+	/**
+	 * 排序时内存中一段的上限，不排序时为0
+	 * @return 字节数
+	 */
+	long getSortMemory(){
+		return sortMap.isEmpty() ? 0 : sortMemory;
+	}
+	
+	/**
+	 * 是否可以{@link #exportStreaming(OutputStream)}，模板导出不可以
+	 * @return boolean
+	 */
+	boolean supportsStreaming(){
+		return template == null;
+	}
+	
+	/**
+	 * 按固定顺序描述所有影响输出的配置，不包括数据本身，供{@link ExlExportCache}计算缓存键
+	 * @param key 描述追加到此
+	 * @throws IllegalArgumentException 有渲染器没有稳定的描述且未设置{@link #renderKey(String)}
+	 */
+	void describe(StringBuilder key){
+		describeLayout(key);
+		if (renderKey != null) {
+			describe(key, "renderKey", renderKey, rowWriter != null);
+			describe(key, new TreeMap<>(renderMap).keySet(), new TreeMap<>(columnRenderMap).keySet());
+			return;
+		}
+		describe(key, rowWriter == null ? null : identity("rowWriter", rowWriter));
+		for (Map.Entry<String,ExlCellRender<Object>> entry : new TreeMap<>(renderMap).entrySet()) {
+			describe(key, "render", entry.getKey(), identity(entry.getKey(), entry.getValue()));
+		}
+		for (Map.Entry<String,ExlColumnRender<Object>> entry : new TreeMap<>(columnRenderMap).entrySet()) {
+			describe(key, "columnRender", entry.getKey(), identity(entry.getKey(), entry.getValue()));
+		}
+	}
+	
+	private static String identity(String property, Object render){
+		String identity = ExlExportCache.identity(render);
+		if (identity == null) {
+			throw new IllegalArgumentException(property + "的渲染器" + render.getClass().getName()
+					+ "没有稳定的描述，不能计算缓存键，请覆盖toString或设置renderKey");
+		}
+		return identity;
+	}
+	
+	/**
+	 * 除渲染器、行写入器以外的配置。渲染器不一定有稳定的描述，断点续传的检查点只按这部分区分
+	 */
+	private void describeLayout(StringBuilder key){
+		describe(key, fileMark, title, subtitle, comments);
+		describe(key, (Object[]) headers);
+		describeRows(key, complexHeader);
+		describe(key, (Object[]) columnHeaders);
+		describeRows(key, complexColumnHeaders);
+		describeRows(key, complexContent);
+		describe(key, (Object[]) contentColumns);
+		describe(key, new TreeMap<>(columnWidthMap), contentLineHeight, cellNoFormat, tempFontSize, contentTable != null);
+		describe(key, template, new TreeMap<>(templateVars));
+		describe(key, groupProperty, groupLabel, totalLabel, new TreeMap<>(aggregateMap));
+		describe(key, sortMap);
+		for (Map.Entry<String,ExlExpression> entry : new TreeMap<>(computedMap).entrySet()) {
+			describe(key, "computed", entry.getKey(), entry.getValue().getSource());
+		}
+	}
+	
+	private static void describeRows(StringBuilder key, List<ExlRow> rows){
+		if (rows == null) {
+			key.append("-;");
+			return;
+		}
+		key.append(rows.size()).append('[');
+		for (ExlRow row : rows) {
+			describe(key, row.getHeight(), row.size());
+			for (int i = 0; i < row.size(); i++) {
+				describe(key, row.getValue(i), row.getRowspan(i), row.getColspan(i), row.getWidth(i), row.getStyle(i));
+				describe(key, (Object[]) row.getUnderLineString(i));
+			}
+		}
+		key.append(']');
+	}
+	
+	/**
+	 * 每个值以长度为前缀，避免不同的值拼接后相同
+	 */
+	private static void describe(StringBuilder key, Object... values){
+		if (values == null) {
+			key.append("-;");
+			return;
+		}
+		key.append(values.length).append('[');
+		for (Object value : values) {
+			if (value == null) {
+				key.append("-;");
+			} else {
+				String text = value.toString();
+				key.append(text.length()).append(':').append(text).append(';');
+			}
+		}
+		key.append(']');
+	}
+	
+	/**
+	 * 预先萃取并渲染普通模式的内容行。不涉及工作簿，可以在其他线程中执行。
+	 * 完成后{@link #draw(ExlSheetWriter)}将直接使用这些行
+	 */
+	void prepareContent(){
+		if (ArrayUtils.isEmpty(contentColumns) || contentData == null || CollectionUtils.isNotEmpty(complexContent)
+				|| contentTable != null || isAggregating() || !sortMap.isEmpty()) {
+			//小计、排序需要原始值，在绘制时处理
+			return;
+		}
+		List<String[]> rows = new ArrayList<>();
+		ExlColumnRender<Object>[] renders = resolveRenders();
+		String[][] chunk = new String[contentColumns.length][CONTENT_CHUNK];
+		List<Object> records = new ArrayList<>(CONTENT_CHUNK);
+		Iterator<?> iterator = contentData.iterator();
+		int first = 0;
+		while (nextContentChunk(iterator, records)) {
+			checkCancel();
+			fillContentChunk(chunk, null, records, first, renders);
+			for (int r = 0; r < records.size(); r++) {
+				String[] values = new String[contentColumns.length];
+				for (int i = 0; i < contentColumns.length; i++) {
+					values[i] = chunk[i][r];
+				}
+				rows.add(values);
+			}
+			first += records.size();
+		}
+		preparedContent = rows;
+	}
+	
+	/**
+	 * 将当前配置绘制到指定的写入目标
+	 * @param writer 写入目标
+	 * @throws IOException 写入目标输出失败
+	 */
+	void draw(ExlSheetWriter writer) throws IOException{
+		drawBegin(writer);
+		
+		//content
+		createContent(writer);
+		
+		drawEnd(writer);
+	}
+	
+	/**
+	 * 逐条追加内容：先绘制内容之前的部分，之后每条记录调用{@link #append(Object)}，最后调用{@link #end()}.
+	 * 供分区导出使用，只支持普通模式内容，不使用contentData
+	 * @param writer 写入目标
+	 * @throws IOException 写入目标输出失败
+	 */
+	void begin(ExlSheetWriter writer) throws IOException{
+		if (ArrayUtils.isEmpty(contentColumns) || CollectionUtils.isNotEmpty(complexContent) || contentTable != null || template != null) {
+			throw new IllegalStateException("逐条追加只支持普通模式内容");
+		}
+		drawBegin(writer);
+		appender = new ContentAppender(writer, cellNoFormat ? null : "cellcb");
+	}
+	
+	/**
+	 * 追加一条内容
+	 * @param record 行记录
+	 * @throws IOException 写入目标输出失败
+	 */
+	void append(Object record) throws IOException{
+		appender.add(record);
+	}
+	
+	/**
+	 * 结束追加，绘制内容之后的部分
+	 * @throws IOException 写入目标输出失败
+	 */
+	void end() throws IOException{
+		try {
+			appender.finish();
+		} finally {
+			appender.close();
+		}
+		if (contentRowCount > 0) {
+			addContentColumns();
+		}
+		drawEnd(appender.writer);
+	}
+	
+	private ExlPreviewWriter preview(int maxRows){
+		if(template != null){
+			throw new UnsupportedOperationException("模板导出不支持预览");
+		}
+		previewRows = Math.max(maxRows, 0);
+		ExlPreviewWriter writer = new ExlPreviewWriter();
+		startStats();
+		try {
+			draw(writer);
+		} catch (IOException e) {
+			//预览不输出，不会发生
+			throw new UncheckedIOException(e);
+		}
+		finishStats(false);
+		if (contentTruncated) {
+			writer.truncated();
+		}
+		return writer;
+	}
+	
+	/**
+	 * 放弃追加，释放排序的临时文件及写入目标占用的资源
+	 */
+	void abort(){
+		if (appender != null) {
+			try {
+				appender.close();
+			} catch (IOException e) {
+				//临时文件删除失败，不影响调用方处理原来的错误
+			}
+			appender.writer.close();
+		}
+	}
+	
+	/**
+	 * 流式写入目标
+	 * @throws IOException 
+	 */
+	ExlXlsxStreamWriter streamWriter(OutputStream out) throws IOException{
+		return new ExlXlsxStreamWriter(out, tempFontSize, "Sheet0", streamFlushRows, streamFlushBytes);
+	}
+	
+	/**
+	 * 内容之前的部分
+	 */
+	private void drawBegin(ExlSheetWriter writer) throws IOException{
+		progressTotal = estimateContentRows();
 		
 		//filemark
-		createFileMark(sheet);
+		createFileMark(writer);
 		
 		
 		//title
-		createTitle(sheet, styles);
+		createTitle(writer);
 		
 		//subtitle
-		createSubTitle(sheet, styles);
+		createSubTitle(writer);
 		
 		//head
-		createHeader(sheet, styles);
+		createHeader(writer);
 		
 		//column head列头。部分特殊需求
-		createColumnHeader(sheet, styles);
-		
-		//content
-		createContent(sheet, styles);
+		createColumnHeader(writer);
 		
+		//内容之前先设置已知的列宽，流式输出时列宽必须在内容之前
+		applyColumnWidth(writer);
+	}
+	
+	/**
+	 * 内容之后的部分
+	 */
+	private void drawEnd(ExlSheetWriter writer) throws IOException{
 		//comments
-		createComments(sheet, styles);
+		createComments(writer);
 		
 		if(titleRowIndex != -1 && maxColumn > 0){
 			//合并标题行
-			mergedRegionByPosition(sheet, titleRowIndex, 0, 0, maxColumn + 1, false);
+			writer.merge(titleRowIndex, 0, 0, maxColumn + 1, false);
 		}
 		
-		for(Integer column : columnWidthMap.keySet()){
-			sheet.setColumnWidth(column, columnWidthMap.get(column)*256);
-		}
+		applyColumnWidth(writer);
 		
-		sheet.getPrintSetup().setPaperSize(HSSFPrintSetup.A4_PAPERSIZE);
-		sheet.setMargin(HSSFSheet.BottomMargin,( double ) 0.5 );// 页边距（下）  
-		sheet.setMargin(HSSFSheet.LeftMargin,( double ) 0.1 );// 页边距（左）  
-		sheet.setMargin(HSSFSheet.RightMargin,( double ) 0.1 );// 页边距（右）  
-		sheet.setMargin(HSSFSheet.TopMargin,( double ) 0.5 );// 页边距（上）  
-		wb.write(out);
+		checkCancel();
+		writer.finish();
+		if(progressListener != null){
+			progressListener.progress(contentRowCount, progressTotal, writer.getBytesWritten());
+		}
 	}
 	
 	//=====================================================私有方法区
 	
-	private void addPositionBySpan(int rowspan,int colspan,int row,int cols){
-		//从行开始判断
-		boolean inColsExc = false;
-		for(int i = 0;i < rowspan;i++){
-			int inRow = row + i;
-			if(colspan > 0){
-				for(int j = 0;j < colspan;j++){
-					int inCols = cols + j;
-					addPosition2Map(inRow, inCols  );
-				}
-				inColsExc = true;
-			}else{
-				addPosition2Map(inRow, cols);
+	/**
+	 * 各缓存渲染器的统计，同一个渲染器注册在多个属性上时只统计一次，键为按字母序以逗号连接的属性名
+	 */
+	private Map<String,ExlMemoRender.Stats> renderCacheStats(){
+		Map<ExlMemoRender,String> memos = new IdentityHashMap<>();
+		for (Map.Entry<String,ExlCellRender<Object>> entry : new TreeMap<>(renderMap).entrySet()) {
+			if (entry.getValue() instanceof ExlMemoRender) {
+				String properties = memos.get(entry.getValue());
+				memos.put((ExlMemoRender) entry.getValue(), properties == null ? entry.getKey() : properties + "," + entry.getKey());
 			}
 		}
-		if(inColsExc){
-			return;
+		Map<String,ExlMemoRender.Stats> result = new HashMap<>();
+		for (Map.Entry<ExlMemoRender,String> entry : memos.entrySet()) {
+			result.put(entry.getValue(), entry.getKey().stats());
+		}
+		return result;
+	}
+	
+	/**
+	 * 预计的内容行数，数据源不是集合时为-1
+	 */
+	private int estimateContentRows(){
+		if(contentTable != null){
+			return contentTable.getRowCount();
 		}
-		//如果行没变化
-		for(int j = 0;j < colspan;j++){
-			int inCols = cols + j;
-			addPosition2Map(row, inCols );
+		if(preparedContent != null){
+			return preparedContent.size();
 		}
-		
-		//如果没有合并情况
-		if(rowspan == 0 && colspan == 0){
-			addPosition2Map(row, cols);
+		if(contentData instanceof Collection){
+			return ((Collection<?>) contentData).size();
+		}
+		return -1;
+	}
+	
+	private void checkCancel(){
+		if(cancelToken != null){
+			cancelToken.check();
+		}
+	}
+	
+	/**
+	 * 一行内容写完：通知写入目标，检查取消标记，按间隔回调进度
+	 * @throws IOException 
+	 */
+	private void contentRowDone(ExlSheetWriter writer) throws IOException{
+		contentRowCount++;
+		writer.rowsDone(beginDrawRow);
+		checkCancel();
+		if(progressListener != null && contentRowCount % progressEvery == 0){
+			progressListener.progress(contentRowCount, progressTotal, writer.getBytesWritten());
 		}
 	}
 	
-	private void createFileMark(Sheet sheet ){
+	private void applyColumnWidth(ExlSheetWriter writer){
+		for(Integer column : columnWidthMap.keySet()){
+			writer.columnWidth(column, columnWidthMap.get(column));
+		}
+	}
+	
+	private void createFileMark(ExlSheetWriter writer ){
 		// 判断是否具有文件标注.先做出来，后期扩展为Row
 		if (!StringUtils.isEmpty(fileMark)) {
-			Row row = sheet.createRow(beginDrawRow);
-			Cell cell = row.createCell(0);
-			cell.setCellValue(fileMark);
-			mergedRegionByPosition(sheet, beginDrawRow, 0, 0, 3, false);
+			writer.newRow(beginDrawRow);
+			writer.cell(beginDrawRow, 0, fileMark, null);
+			writer.merge(beginDrawRow, 0, 0, 3, false);
 			beginDrawRow++;// 走一行
 		}
 	}
-	private void createTitle(Sheet sheet ,Map<String, CellStyle> styles){
+	private void createTitle(ExlSheetWriter writer){
 		if(!StringUtils.isEmpty(title)){
 //			int max = maxColumn  > 0 ? maxColumn : (headers.length);
-			Row row = sheet.createRow(beginDrawRow);
-			row.setHeightInPoints(45);
-			Cell cell = row.createCell(0);
-			cell.setCellValue(title);
-			cell.setCellStyle(styles.get("title"));
+			writer.newRow(beginDrawRow);
+			writer.rowHeight(beginDrawRow, 45);
+			writer.cell(beginDrawRow, 0, title, "title");
 //			mergedRegionByPosition(sheet, beginDrawRow, 0, 0, max, false);
 			if(ArrayUtils.isNotEmpty(headers) && CollectionUtils.isEmpty(complexHeader)){
-				mergedRegionByPosition(sheet, beginDrawRow, 0, 0, headers.length, false);
+				writer.merge(beginDrawRow, 0, 0, headers.length, false);
 				beginDrawRow++;
 			}else{
 				titleRowIndex = beginDrawRow++;//走一行
@@ -342,7 +1098,7 @@ public class ExcelExportUtils {
 		}
 	}
 	
-	private void createComments(Sheet sheet ,Map<String, CellStyle> styles){
+	private void createComments(ExlSheetWriter writer){
 		if(!StringUtils.isEmpty(comments)){
 			int maxRowIndex = beginDrawRow;
 			if(ArrayUtils.isNotEmpty(contentColumns) || CollectionUtils.isNotEmpty(complexContent)){
@@ -356,89 +1112,80 @@ public class ExcelExportUtils {
 						maxRowIndex += columnHeaders.length;
 					}
 			}
-			Row row = sheet.createRow(maxRowIndex);
-			row.setHeightInPoints(15);
-			Cell cell = row.createCell(0);
-			cell.setCellValue(comments);
-			cell.setCellStyle(styles.get("celllnb"));
+			writer.newRow(maxRowIndex);
+			writer.rowHeight(maxRowIndex, 15);
+			writer.cell(maxRowIndex, 0, comments, "celllnb");
 //			mergedRegionByPosition(sheet, beginDrawRow, 0, 0, max, false);
 			if(ArrayUtils.isNotEmpty(headers) && CollectionUtils.isEmpty(complexHeader)){
-				mergedRegionByPosition(sheet, maxRowIndex, 0, 0, headers.length, false);
+				writer.merge(maxRowIndex, 0, 0, headers.length, false);
 			}else if(maxColumn > 0){
 				//直接使用maxColumn变量绘制
-				mergedRegionByPosition(sheet, maxRowIndex, 0, 0, maxColumn + 1, false);
+				writer.merge(maxRowIndex, 0, 0, maxColumn + 1, false);
 			}
 			
 //			beginDrawRow++;
 		}
 	}
 	
-	private void createSubTitle(Sheet sheet ,Map<String, CellStyle> styles){
+	private void createSubTitle(ExlSheetWriter writer){
 		if(!StringUtils.isEmpty(subtitle)){
-			Row row = sheet.createRow(beginDrawRow);
-			Cell cell = row.createCell(0);
-			cell.setCellValue(subtitle);
-			mergedRegionByPosition(sheet, beginDrawRow, 0, 0, 3, false);
+			writer.newRow(beginDrawRow);
+			writer.cell(beginDrawRow, 0, subtitle, null);
+			writer.merge(beginDrawRow, 0, 0, 3, false);
 			beginDrawRow++;// 走一行
 		}
 	}
 	
-	private void addPosition2Map(int row,int cols){
-		fillPosition.put(row, (fillPosition.get(row) == null ? "," : fillPosition.get(row)) +  (cols + ","));
-	}
-	
 	/**
-	 * 绘制复杂列公共方法。
-	 * @param sheet
+	 * 绘制复杂列公共方法。先解析布局（或使用预先解析好的布局），再按布局依次写入单元格
+	 * @param writer
 	 * @param rows
-	 * @param styles
+	 * @param layout 预先解析的布局，可为null
 	 * @param updateRow
 	 */
-	private void drawComplexColumn(Sheet sheet,List<ExlRow> rows,Map<String, CellStyle> styles,boolean updateRow){
+	private void drawComplexColumn(ExlSheetWriter writer,List<ExlRow> rows,ExlLayout layout,boolean updateRow){
+		//预解析的布局是从空白区域算出来的，该区域已有占位时只能重新解析
+		if(layout == null || !fillPosition.isEmpty(beginDrawRow, layout.getRowCount())){
+			layout = ExlLayout.solve(rows, fillPosition, beginDrawRow);
+		}
 		int rowIndex = beginDrawRow ;
-		for(ExlRow exRow : rows){
+		for(int r = 0;r < layout.getRowCount();r++){
+			checkCancel();
 			//进来了肯定是要创建一行的
-			Row row = getRow(sheet,rowIndex);
+			getRow(writer,rowIndex);
 			
-			if(exRow.getHeight() > 0){
-				row.setHeightInPoints(exRow.getHeight());
+			if(layout.getHeight(r) > 0){
+				writer.rowHeight(rowIndex, layout.getHeight(r));
 			}
 			
-			for(int i = 0;i < exRow.getCell().size();i++)
+			for(int i = layout.rowStart(r);i < layout.rowEnd(r);i++)
 			{	
-				int columnIndex = findPosition(rowIndex);
-				ExlCell exlCell = exRow.getCell().get(i);
-				Cell cell = row.createCell(columnIndex);
+				int columnIndex = layout.getColumn(i);
+				int rowspan = layout.getRowspan(i);
+				int colspan = layout.getColspan(i);
+				ExlCellStyle style = layout.getStyle(i);
 				//追加是否包含下划线文本
-				if(exlCell.getUnderLineString() == null){
-					cell.setCellValue(exlCell.getValue().toString());
+				String[] underLineString = layout.getUnderLineString(i);
+				if(underLineString == null){
+					writer.cell(rowIndex, columnIndex, layout.getValue(i).toString(), style.getKey());
 				}else{
-					cell.setCellValue(returnUnderLineText(sheet.getWorkbook(), exlCell.getValue().toString(), exlCell.getUnderLineString()));
+					writer.underLineCell(rowIndex, columnIndex, layout.getValue(i).toString(), underLineString, style.getKey());
 				}
 				
-				if(exlCell.getRowspan() > 0 ||  exlCell.getColspan() > 0){
+				if(rowspan > 0 ||  colspan > 0){
 					//如果有合并行列的存在，进来
-					mergedRegionByPosition(sheet, rowIndex, columnIndex, exlCell.getRowspan(), exlCell.getColspan(), exlCell.isBorder());
+					writer.merge(rowIndex, columnIndex, rowspan, colspan, style.isBorder());
 				}
 				
-				String styleFlag = "cell";
-				styleFlag += exlCell.isAlignCenter() ? "c" : "l";
-				styleFlag += exlCell.isBorder() ? "b" : "nb";
-				cell.setCellStyle(styles.get(styleFlag));
-				addPositionBySpan(exlCell.getRowspan(), exlCell.getColspan(), rowIndex, columnIndex);
-				//如果存在列合并，colindex往后推
-				/*if(exlCell.getColspan() > 0){
-					columnIndex += exlCell.getColspan();
-				}else{
-					columnIndex++;
-				}*/
+				fillPosition.fill(rowIndex, columnIndex, rowspan, colspan);
 				
 				//存储列宽,仅当不是合并列的情况
-				if(exlCell.getWidth() > 0){
-					int colspan = exlCell.getColspan() == 0 ? 1 : exlCell.getColspan();
-					int avgWidth = exlCell.getWidth()/colspan;
-					for(int z = 0;z < colspan ;z++){
-						columnWidthMap.put(cell.getColumnIndex() + z, avgWidth);
+				int width = layout.getWidth(i);
+				if(width > 0){
+					int widthColspan = colspan == 0 ? 1 : colspan;
+					int avgWidth = width/widthColspan;
+					for(int z = 0;z < widthColspan ;z++){
+						columnWidthMap.put(columnIndex + z, avgWidth);
 					}
 				}
 			}
@@ -452,21 +1199,19 @@ public class ExcelExportUtils {
 		}
 	}
 	
-	private void createHeader(Sheet sheet ,Map<String, CellStyle> styles){
+	private void createHeader(ExlSheetWriter writer){
 		if(ArrayUtils.isNotEmpty(headers) || CollectionUtils.isNotEmpty(complexHeader)){
 			if(CollectionUtils.isNotEmpty(complexHeader)){
 				//复杂表头开始..
-				drawComplexColumn(sheet, complexHeader, styles, true);
+				drawComplexColumn(writer, complexHeader, complexHeaderLayout, true);
 				
 				addMaxColumnVar(true, beginDrawRow - complexHeader.size());
 				//复杂head
 			}else if(ArrayUtils.isNotEmpty(headers)){
 				//简单head,只支持单行
-				Row row = sheet.createRow(beginDrawRow);
+				writer.newRow(beginDrawRow);
 				for(int i = 0;i < headers.length;i++){
-					Cell cell = row.createCell(i);
-					cell.setCellValue(headers[i]);
-					cell.setCellStyle(styles.get("cellcb"));
+					writer.cell(beginDrawRow, i, headers[i], "cellcb");
 				}
 				beginDrawRow++;
 			}
@@ -476,19 +1221,20 @@ public class ExcelExportUtils {
 	/**
 	 * 获取指定索引的row，如果不存在则新建,注意调用场合
 	 * @param rowIndex 行索引
-	 * @return row
 	 */
-	private Row getRow(Sheet sheet,int rowIndex){
-		Row row = fillPosition.containsKey(rowIndex) ? sheet.getRow(rowIndex)
-				: sheet.createRow(rowIndex);
-		return row == null ? sheet.createRow(rowIndex) : row;
+	private void getRow(ExlSheetWriter writer,int rowIndex){
+		if(fillPosition.hasRow(rowIndex)){
+			writer.ensureRow(rowIndex);
+		}else{
+			writer.newRow(rowIndex);
+		}
 	}
 	
-	private void createColumnHeader(Sheet sheet, Map<String, CellStyle> styles) {
+	private void createColumnHeader(ExlSheetWriter writer) {
 		if (ArrayUtils.isNotEmpty(columnHeaders) || CollectionUtils.isNotEmpty(complexColumnHeaders)) {
 			if (CollectionUtils.isNotEmpty(complexColumnHeaders)) {
 				
-				drawComplexColumn(sheet, complexColumnHeaders, styles, false);
+				drawComplexColumn(writer, complexColumnHeaders, complexColumnHeadersLayout, false);
 				
 				//如果没有header。我们需要手动计算column数
 				addMaxColumnVar(false, beginDrawRow);
@@ -498,11 +1244,9 @@ public class ExcelExportUtils {
 				// 简单head,只支持单列
 
 				for (int i = 0; i < columnHeaders.length; i++) {
-					Row row = sheet.createRow(beginDrawRow + i);
-					Cell cell = row.createCell(0);
-					cell.setCellValue(columnHeaders[i]);
-					cell.setCellStyle(styles.get("cellcb"));
-					addPosition2Map(beginDrawRow + i, 0);// 标识某行的第0列被占用
+					writer.newRow(beginDrawRow + i);
+					writer.cell(beginDrawRow + i, 0, columnHeaders[i], "cellcb");
+					fillPosition.fill(beginDrawRow + i, 0, 1, 1);// 标识某行的第0列被占用
 				}
 				// 因为是生成列头。我们不需要移动行指针。行指针依然定格在表头下一行
 				
@@ -516,192 +1260,559 @@ public class ExcelExportUtils {
 	
 	private void addMaxColumnVar(boolean inCreateHeader,int nowRowIndex){
 		if((ArrayUtils.isEmpty(headers) && CollectionUtils.isEmpty(complexHeader)) || inCreateHeader){
-			maxColumn = Integer.parseInt(fillPosition.get(nowRowIndex).replaceFirst(".*,(\\d+),$", "$1"));
+			maxColumn = fillPosition.lastColumn(nowRowIndex);
 		}
 	}
 
-	private void createContent(Sheet sheet, Map<String, CellStyle> styles) {
+	private void createContent(ExlSheetWriter writer) throws IOException {
 		if (ArrayUtils.isNotEmpty(contentColumns) || CollectionUtils.isNotEmpty(complexContent)) {
 
 			if (CollectionUtils.isNotEmpty(complexContent)) {
-				drawComplexColumn(sheet, complexContent, styles, true);
+				drawComplexColumn(writer, complexContent, complexContentLayout, true);
 				
 				addMaxColumnVar(false, beginDrawRow - complexContent.size());
 				// 复杂内容
-			} else if (ArrayUtils.isNotEmpty(contentColumns) && CollectionUtils.isNotEmpty(contentData)) {
-				// 简单head,只支持单列
-				// 根据List的行数，来生成行
-				int row_ = 0;
-				for (Object line : contentData) {
-					Row row = getRow(sheet,beginDrawRow);
-					if(row.getHeightInPoints() == 12.75 && contentLineHeight > 0){
-						row.setHeightInPoints(contentLineHeight);
-					}
+				return;
+			}
+			if (ArrayUtils.isEmpty(contentColumns)) {
+				return;
+			}
+			Iterator<?> iterator = null;
+			if (contentTable == null) {
+				iterator = preparedContent != null ? preparedContent.iterator() : contentData == null ? null : contentData.iterator();
+				if (iterator == null || !iterator.hasNext()) {
+					return;
+				}
+			}
+			// 简单head,只支持单列
+			// 根据List的行数，来生成行
+			String contentStyle = cellNoFormat ? null : "cellcb";
+			if (contentTable != null) {
+				createTableContent(writer, contentStyle);
+			} else if (preparedContent != null) {
+				while (iterator.hasNext()) {
+					String[] values = (String[]) iterator.next();
+					createContentRow(writer);
 					int columnIndex = findPosition(beginDrawRow);// 找寻可使用的列位置
 					for (int i = 0; i < contentColumns.length; i++) {
-						Cell cell = row.createCell(columnIndex++);
-						cell.setCellValue(getTarBeanValueByProperty(row_,line, contentColumns[i]));
-						if(!cellNoFormat) cell.setCellStyle(styles.get("cellcb"));
+						writer.cell(beginDrawRow, columnIndex++, values[i], contentStyle);
 					}
-
 					beginDrawRow++;
-					row_++;
+					contentRowDone(writer);
 				}
-				
-				//如果没有header。我们需要手动计算column数
-				if(ArrayUtils.isEmpty(headers) && CollectionUtils.isEmpty(complexHeader)){
-					maxColumn += contentColumns.length - 1;
+			} else {
+				// 按块萃取：先逐列取值、渲染，再逐行写入单元格
+				ContentAppender appender = new ContentAppender(writer, contentStyle);
+				//排序时必须读完数据源，预览的行数在排序之后限制
+				int limit = previewRows < 0 || !sortMap.isEmpty() ? Integer.MAX_VALUE : previewRows;
+				try {
+					for (int n = 0; n < limit && iterator.hasNext(); n++) {
+						appender.add(iterator.next());
+					}
+					contentTruncated = previewRows >= 0 && iterator.hasNext();
+					appender.finish();
+				} finally {
+					appender.close();
 				}
-
 			}
+			
+			addContentColumns();
 
 		}
 	}
 	
-	private int findPosition(int row){
-		int position = -1;
-		String key = null;
-		do{
-			key = "," + ++position + ",";
-		}while(fillPosition.containsKey(row) && fillPosition.get(row).contains(key));
-		return position;
-	}
-	
-	private String getTarBeanValueByProperty(int rowIndex,Object obj,String property){
-		try 
-		{	
-			String result = null;
-			if(obj instanceof Map){
-				result = String.valueOf(((Map) obj).get(property));
-			}else{
-				Field field = fieldCash.get(property);
-				if(field == null){
-					try{
-						field = obj.getClass().getDeclaredField(property);
-					}catch(NoSuchFieldException e){
-						e.printStackTrace();
-						field = obj.getClass().getSuperclass().getDeclaredField(property);
+	private void addContentColumns(){
+		//如果没有header。我们需要手动计算column数
+		if(ArrayUtils.isEmpty(headers) && CollectionUtils.isEmpty(complexHeader)){
+			maxColumn += contentColumns.length - 1;
+		}
+	}
+	
+	/**
+	 * 普通模式内容的逐条追加：记录攒满一块后统一萃取、渲染并写出，同时按分组累加小计
+	 */
+	private final class ContentAppender implements ExlCheckpointer.Content {
+		private final ExlSheetWriter writer;
+		private final String contentStyle;
+		private final ExlColumnRender<Object>[] renders = resolveRenders();
+		private final String[][] chunk = new String[contentColumns.length][CONTENT_CHUNK];
+		private final List<Object> records = new ArrayList<>(CONTENT_CHUNK);
+		// 小计、排序：分组列、汇总列及排序列另存渲染前的原始值
+		private int groupColumn = -1;
+		private String[][] raw = null;
+		private ExlAggregator groupTotals = null;
+		private ExlAggregator grandTotals = null;
+		private String group = null;
+		private ExlExternalSorter sorter = null;//排序时渲染后的行先交给排序，全部读完后再写出
+		private int first = 0;//本块第一行在数据源中的行号
+		private int written = 0;//已写出的内容行数
+		private ExlCheckpointer checkpointer = null;//断点续传时每写出一块交给它保存检查点
+		
+		ContentAppender(ExlSheetWriter writer, String contentStyle){
+			this.writer = writer;
+			this.contentStyle = contentStyle;
+			if (isAggregating() || !sortMap.isEmpty()) {
+				ExlAggregate[] aggregates = resolveAggregates();
+				groupColumn = groupProperty == null ? -1 : contentColumnIndex(groupProperty);
+				boolean[] rawColumns = new boolean[contentColumns.length];
+				for (int i = 0; i < contentColumns.length; i++) {
+					rawColumns[i] = aggregates[i] != null || i == groupColumn;
+				}
+				int[] keyColumns = new int[sortMap.size()];
+				boolean[] ascending = new boolean[sortMap.size()];
+				int k = 0;
+				for (Map.Entry<String,Boolean> entry : sortMap.entrySet()) {
+					keyColumns[k] = contentColumnIndex(entry.getKey());
+					ascending[k++] = entry.getValue();
+					rawColumns[keyColumns[k - 1]] = true;
+				}
+				raw = new String[contentColumns.length][];
+				for (int i = 0; i < contentColumns.length; i++) {
+					if (rawColumns[i]) raw[i] = new String[CONTENT_CHUNK];
+				}
+				if (isAggregating()) {
+					groupTotals = groupColumn == -1 ? null : new ExlAggregator(aggregates);
+					grandTotals = totalLabel == null ? null : new ExlAggregator(aggregates);
+				}
+				if (!sortMap.isEmpty()) {
+					sorter = new ExlExternalSorter(contentColumns.length, rawColumns, keyColumns, ascending, sortMemory);
+				}
+			}
+		}
+		
+		void add(Object record) throws IOException{
+			records.add(record);
+			if (records.size() == CONTENT_CHUNK) {
+				flush();
+			}
+		}
+		
+		private void flush() throws IOException{
+			if (records.isEmpty()) {
+				return;
+			}
+			int size = records.size();
+			fillContentChunk(chunk, raw, records, first, renders);
+			first += size;
+			Object last = records.get(size - 1);
+			records.clear();
+			if (sorter != null) {
+				sorter.add(chunk, raw, size);
+				checkCancel();
+			} else {
+				writeRows(size);
+				if (checkpointer != null) {
+					checkpointer.written(first, last, this);
+				}
+			}
+		}
+		
+		@Override
+		public void save(DataOutput state) throws IOException{
+			state.writeInt(contentRowCount);
+			state.writeInt(written);
+			state.writeInt(beginDrawRow);
+			ExlCheckpoint.writeString(state, group);
+			if (groupTotals != null) groupTotals.save(state);
+			if (grandTotals != null) grandTotals.save(state);
+		}
+		
+		@Override
+		public void restore(int position, DataInput state) throws IOException{
+			first = position;
+			contentRowCount = state.readInt();
+			written = state.readInt();
+			beginDrawRow = state.readInt();
+			group = ExlCheckpoint.readString(state);
+			if (groupTotals != null) groupTotals.restore(state);
+			if (grandTotals != null) grandTotals.restore(state);
+		}
+		
+		/**
+		 * 写出chunk中的前size行，并累加小计
+		 */
+		private void writeRows(int size) throws IOException{
+			for (int r = 0; r < size; r++) {
+				if (groupTotals != null) {
+					String key = raw[groupColumn][r];
+					if (written > 0 && !Objects.equals(key, group)) {
+						createAggregateRow(writer, groupColumn, groupLabel.replace("{key}", String.valueOf(group)), groupTotals, contentStyle);
+						groupTotals.reset();
+					}
+					group = key;
+					groupTotals.add(raw, r);
+				}
+				if (grandTotals != null) {
+					grandTotals.add(raw, r);
+				}
+				createContentRow(writer);
+				int columnIndex = findPosition(beginDrawRow);// 找寻可使用的列位置
+				for (int i = 0; i < contentColumns.length; i++) {
+					writer.cell(beginDrawRow, columnIndex++, chunk[i][r], contentStyle);
+				}
+				beginDrawRow++;
+				written++;
+				contentRowDone(writer);
+			}
+		}
+		
+		/**
+		 * 按排好的顺序写出，预览时只写出前几行
+		 */
+		private void writeSorted() throws IOException{
+			try {
+				ExlExternalSorter.Cursor cursor = sorter.sorted();
+				int limit = previewRows < 0 ? Integer.MAX_VALUE : previewRows;
+				int size = 0;
+				while (written + size < limit && cursor.next(chunk, raw, size)) {
+					if (++size == CONTENT_CHUNK) {
+						writeRows(size);
+						size = 0;
 					}
-					fieldCash.put(property, field);
 				}
-				field.setAccessible(true);
-				result =  String.valueOf(field.get(obj));
+				writeRows(size);
+				if (written == limit && cursor.next(chunk, raw, 0)) {
+					contentTruncated = true;
+				}
+			} finally {
+				close();
+			}
+		}
+		
+		/**
+		 * 删除排序的临时文件，可以重复调用
+		 */
+		void close() throws IOException{
+			if (sorter != null) {
+				sorter.close();
+			}
+		}
+		
+		/**
+		 * 写出剩余的记录及最后的小计、总计
+		 * @throws IOException 
+		 */
+		void finish() throws IOException{
+			flush();
+			if (sorter != null) {
+				writeSorted();
+			}
+			if (contentTruncated) {
+				//预览只有前几行，最后的小计、总计不完整
+				return;
+			}
+			if (groupTotals != null && written > 0) {
+				createAggregateRow(writer, groupColumn, groupLabel.replace("{key}", String.valueOf(group)), groupTotals, contentStyle);
+			}
+			if (grandTotals != null) {
+				createAggregateRow(writer, Math.max(groupColumn, 0), totalLabel, grandTotals, contentStyle);
 			}
-			if(result == null || "null".equals(result)) result = "";//去掉空值
-			return renderMap.containsKey(property) ? renderMap.get(property).format(result,obj,rowIndex) : result;
-		} catch (Exception e) {
-			e.printStackTrace();
 		}
-		return null;
 	}
 	
+	/**
+	 * 从数据源中取下一块记录
+	 * @param iterator 数据源
+	 * @param records 存放本块记录，先清空
+	 * @return 是否取到了记录
+	 */
+	private boolean nextContentChunk(Iterator<?> iterator, List<Object> records){
+		records.clear();
+		while (records.size() < CONTENT_CHUNK && iterator.hasNext()) {
+			records.add(iterator.next());
+		}
+		return !records.isEmpty();
+	}
 	
-	private void mergedRegionByPosition(Sheet sheet,int beginRow,int beginColumn,int rowspan,int colspan,boolean hasBorder){
-		if(rowspan == 0) rowspan = 1;
-		if(colspan == 0) colspan = 1;
-		//1代表自身.
-		String exp = "$" + (COLUMN_NAME_ARR[beginColumn]) + "$" + (beginRow + 1) + ":$" + (COLUMN_NAME_ARR[beginColumn + colspan - 1]) + "$" + (beginRow + rowspan);
-		CellRangeAddress cellRangeAddress = CellRangeAddress.valueOf(exp);
-		sheet.addMergedRegion(cellRangeAddress);
-		if(hasBorder){
-			RegionUtil.setBorderTop(1, cellRangeAddress, sheet);
-	        RegionUtil.setBorderLeft(1, cellRangeAddress, sheet);
-	        RegionUtil.setBorderBottom(1, cellRangeAddress, sheet);
-	        RegionUtil.setBorderRight(1, cellRangeAddress, sheet);
+	/**
+	 * 列式内容：数值列、字典列直接从数组写入单元格，只有注册了渲染器的列才按块转为字符串渲染
+	 * @throws IOException 
+	 */
+	private void createTableContent(ExlSheetWriter writer, String contentStyle) throws IOException{
+		ExlColumnTable.Column[] columns = new ExlColumnTable.Column[contentColumns.length];
+		for (int i = 0; i < contentColumns.length; i++) {
+			columns[i] = contentTable.column(contentColumns[i]);
+		}
+		ExlColumnRender<Object>[] renders = resolveRenders();
+		String[][] chunk = new String[contentColumns.length][];
+		for (int i = 0; i < contentColumns.length; i++) {
+			if (renders[i] != null) chunk[i] = new String[CONTENT_CHUNK];
+		}
+		int rowCount = contentTable.getRowCount();
+		if (previewRows >= 0 && rowCount > previewRows) {
+			rowCount = previewRows;
+			contentTruncated = true;
+		}
+		for (int first = 0; first < rowCount; first += CONTENT_CHUNK) {
+			int size = Math.min(CONTENT_CHUNK, rowCount - first);
+			List<Object> records = null;
+			for (int i = 0; i < contentColumns.length; i++) {
+				if (renders[i] == null) continue;
+				if (records == null) records = Collections.nCopies(size, null);
+				for (int r = 0; r < size; r++) {
+					chunk[i][r] = columns[i].text(first + r);
+				}
+				renders[i].format(chunk[i], records, first);
+			}
+			for (int r = 0; r < size; r++) {
+				createContentRow(writer);
+				int columnIndex = findPosition(beginDrawRow);// 找寻可使用的列位置
+				for (int i = 0; i < contentColumns.length; i++) {
+					if (chunk[i] != null) {
+						writer.cell(beginDrawRow, columnIndex, chunk[i][r], contentStyle);
+					} else {
+						columns[i].write(writer, beginDrawRow, columnIndex, first + r, contentStyle);
+					}
+					columnIndex++;
+				}
+				beginDrawRow++;
+				contentRowDone(writer);
+			}
 		}
 	}
 	
-	private HSSFRichTextString returnUnderLineText(Workbook wb,String value,String[] uStrs){
-		Font font = wb.createFont();
-		font.setUnderline(Font.U_SINGLE); // 下划线
-		if (tempFontSize > 0) {
-			font.setFontHeightInPoints((short) tempFontSize);
+	/**
+	 * 按模板导出：解析模板原型得到工作簿，替换变量，按数据行的样式逐行写入内容，最后写表尾.
+	 * xlsx模板的数据行及表尾经SXSSF流式写出，写完后关闭工作簿并删除临时文件
+	 * @throws IOException 
+	 */
+	private ExlExportStats exportTemplate(OutputStream out) throws IOException{
+		startStats();
+		Workbook wb = template.newWorkbook();
+		try {
+			Sheet sheet = wb.getSheetAt(template.getSheetIndex());
+			Map<String,Object> variables = new HashMap<>();
+			variables.put("title", title);
+			variables.put("subtitle", subtitle);
+			variables.put("fileMark", fileMark);
+			variables.put("comments", comments);
+			variables.putAll(templateVars);
+			template.fillVariables(sheet, variables);
+			if(ArrayUtils.isEmpty(contentColumns)){
+				contentColumns = template.getProperties();
+			}
+			progressTotal = estimateContentRows();
+			beginDrawRow = template.getDataRow() < 0 ? sheet.getLastRowNum() + 1 : template.getDataRow();
+			if(wb instanceof XSSFWorkbook){
+				//原型中数据行及表尾已去掉，之后的行都在已有行之后，可以流式写入
+				wb = new SXSSFWorkbook((XSSFWorkbook) wb, TEMPLATE_WINDOW);
+				sheet = wb.getSheetAt(template.getSheetIndex());
+			}
+			ExlPoiSheetWriter writer = new ExlPoiSheetWriter(sheet, template.styles(wb));
+			createTemplateContent(writer);
+			template.drawFooter(sheet, beginDrawRow, variables);
+			checkCancel();
+			wb.write(out);
+		} catch (ExlCancelToken.Cancelled e) {
+			return finishStats(true);
+		} finally {
+			if(wb instanceof SXSSFWorkbook){
+				((SXSSFWorkbook) wb).dispose();
+			}
+			wb.close();
 		}
-		HSSFRichTextString richString = null;
-		richString = new HSSFRichTextString(value);
-		int preIndex = -1;
-		Font tempFont = wb.createFont();
-		if (tempFontSize > 0) {
-			tempFont.setFontHeightInPoints((short)tempFontSize);
+		if(progressListener != null){
+			progressListener.progress(contentRowCount, progressTotal, -1);
 		}
-		richString.applyFont(tempFont);
-		for(String str : uStrs){
-			int b = value.indexOf(str,preIndex);
-			int e = str.length();
-			preIndex = b + e;
-			richString.applyFont(b, b + e, font);
+		return finishStats(false);
+	}
+	
+	/**
+	 * 模板内容：列位置及样式取自模板数据行，contentColumns中不在数据行中的属性忽略
+	 * @throws IOException 
+	 */
+	private void createTemplateContent(ExlPoiSheetWriter writer) throws IOException{
+		if (ArrayUtils.isEmpty(contentColumns) || contentData == null) {
+			return;
 		}
-		
-		return richString;
-	}
-	private Map<String, CellStyle> createStyles(Workbook wb) {
-		Map<String, CellStyle> styles = new HashMap<String, CellStyle>();
-		CellStyle style;
-		style = wb.createCellStyle();
-		style.setAlignment(CellStyle.ALIGN_CENTER);
-		style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
-		Font titleFont = wb.createFont();
-		titleFont.setFontHeightInPoints((short) 18);
-		style.setFont(titleFont);
-		styles.put("title", style);
-		
-		Font tempFont = null;
-		if(tempFontSize > 0){
-			tempFont = wb.createFont();
-			tempFont.setFontHeightInPoints((short) tempFontSize);
-		}
-		style = wb.createCellStyle();
-		style.setAlignment(CellStyle.ALIGN_CENTER);
-		style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
-		style.setWrapText(true);
-		style.setBorderRight(BorderStyle.THIN);
-		style.setRightBorderColor(IndexedColors.BLACK.getIndex());
-		style.setBorderLeft(BorderStyle.THIN);
-		style.setLeftBorderColor(IndexedColors.BLACK.getIndex());
-		style.setBorderTop(BorderStyle.THIN);
-		style.setTopBorderColor(IndexedColors.BLACK.getIndex());
-		style.setBorderBottom(BorderStyle.THIN);
-		style.setBottomBorderColor(IndexedColors.BLACK.getIndex());
-		styles.put("cellcb", style);
-		
-
-		style = wb.createCellStyle();
-		style.setAlignment(CellStyle.ALIGN_CENTER);
-		style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
-		style.setWrapText(true);
-		styles.put("cellcnb", style);
-
-		style = wb.createCellStyle();
-		style.setAlignment(CellStyle.ALIGN_LEFT);
-		style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
-		style.setWrapText(true);
-		style.setBorderRight(BorderStyle.THIN);
-		style.setRightBorderColor(IndexedColors.BLACK.getIndex());
-		style.setBorderLeft(BorderStyle.THIN);
-		style.setLeftBorderColor(IndexedColors.BLACK.getIndex());
-		style.setBorderTop(BorderStyle.THIN);
-		style.setTopBorderColor(IndexedColors.BLACK.getIndex());
-		style.setBorderBottom(BorderStyle.THIN);
-		style.setBottomBorderColor(IndexedColors.BLACK.getIndex());
-		styles.put("celllb", style);
-
-		style = wb.createCellStyle();
-		style.setAlignment(CellStyle.ALIGN_LEFT);
-		style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
-		style.setWrapText(true);
-		styles.put("celllnb", style);
-
-		if(tempFont != null){
-			styles.get("cellcb").setFont(tempFont);
-			styles.get("cellcnb").setFont(tempFont);
-			styles.get("celllb").setFont(tempFont);
-			styles.get("celllnb").setFont(tempFont);
+		String[] properties = template.getProperties();
+		int[] dataColumns = template.getDataColumns();
+		int[] columns = new int[contentColumns.length];
+		String[] styles = new String[contentColumns.length];
+		for (int i = 0; i < contentColumns.length; i++) {
+			columns[i] = -1;
+			for (int p = 0; p < properties.length; p++) {
+				if (properties[p].equals(contentColumns[i])) {
+					columns[i] = dataColumns[p];
+					styles[i] = "tpl" + dataColumns[p];
+				}
+			}
+		}
+		float height = contentLineHeight > 0 ? contentLineHeight : template.getDataHeight();
+		ExlColumnRender<Object>[] renders = resolveRenders();
+		String[][] chunk = new String[contentColumns.length][CONTENT_CHUNK];
+		List<Object> records = new ArrayList<>(CONTENT_CHUNK);
+		Iterator<?> iterator = contentData.iterator();
+		int first = 0;
+		while (nextContentChunk(iterator, records)) {
+			fillContentChunk(chunk, null, records, first, renders);
+			for (int r = 0, size = records.size(); r < size; r++) {
+				writer.newRow(beginDrawRow);
+				if (height > 0) {
+					writer.rowHeight(beginDrawRow, height);
+				}
+				for (int i = 0; i < contentColumns.length; i++) {
+					if (columns[i] >= 0) {
+						writer.cell(beginDrawRow, columns[i], chunk[i][r], styles[i]);
+					}
+				}
+				beginDrawRow++;
+				contentRowDone(writer);
+			}
+			first += records.size();
 		}
-		
-		return styles;
 	}
-		
-		public static void main(String[] args) { 
+	
+	/**
+	 * 准备普通模式当前内容行，并设置内容行高
+	 */
+	private void createContentRow(ExlSheetWriter writer){
+		getRow(writer,beginDrawRow);
+		if(contentLineHeight > 0 && writer.isDefaultHeight(beginDrawRow)){
+			writer.rowHeight(beginDrawRow, contentLineHeight);
+		}
+	}
+	
+	private boolean isAggregating(){
+		return groupProperty != null || totalLabel != null;
+	}
+	
+	/**
+	 * 各内容列的汇总方式，不汇总的列为null
+	 */
+	private ExlAggregate[] resolveAggregates(){
+		ExlAggregate[] aggregates = new ExlAggregate[contentColumns.length];
+		for (String property : aggregateMap.keySet()) {
+			aggregates[contentColumnIndex(property)] = aggregateMap.get(property);
+		}
+		return aggregates;
+	}
+	
+	/**
+	 * 各内容列在行写入器中的下标
+	 */
+	private int[] resolveRowWriterColumns(){
+		List<String> columns = Arrays.asList(rowWriter.columns());
+		int[] indexes = new int[contentColumns.length];
+		for (int i = 0; i < contentColumns.length; i++) {
+			indexes[i] = columns.indexOf(contentColumns[i]);
+			if (indexes[i] == -1 && !computedMap.containsKey(contentColumns[i])) {
+				throw new IllegalArgumentException("属性" + contentColumns[i] + "不在行写入器" + rowWriter.getClass().getName() + "中");
+			}
+		}
+		return indexes;
+	}
+	
+	private int contentColumnIndex(String property){
+		for (int i = 0; i < contentColumns.length; i++) {
+			if (contentColumns[i].equals(property)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("属性" + property + "不是内容列");
+	}
+	
+	/**
+	 * 写一行小计或总计：labelColumn列为文字，有汇总值的列为数值，其他列留空
+	 * @throws IOException 
+	 */
+	private void createAggregateRow(ExlSheetWriter writer,int labelColumn,String label,ExlAggregator totals,String contentStyle) throws IOException{
+		createContentRow(writer);
+		int columnIndex = findPosition(beginDrawRow);// 找寻可使用的列位置
+		for (int i = 0; i < contentColumns.length; i++, columnIndex++) {
+			if (i == labelColumn) {
+				writer.cell(beginDrawRow, columnIndex, label, contentStyle);
+			} else if (totals.has(i)) {
+				writer.cell(beginDrawRow, columnIndex, totals.result(i), contentStyle);
+			} else {
+				writer.blank(beginDrawRow, columnIndex, contentStyle);
+			}
+		}
+		beginDrawRow++;
+		writer.rowsDone(beginDrawRow);
+		checkCancel();
+	}
+	
+	/**
+	 * 为每个内容列解析出最终的列渲染器，无渲染的列为null。每次导出只解析一次，内容循环中不再查找map
+	 */
+	private ExlColumnRender<Object>[] resolveRenders(){
+		@SuppressWarnings("unchecked")//不能创建泛型数组，元素都是ExlColumnRender<Object>
+		ExlColumnRender<Object>[] renders = (ExlColumnRender<Object>[]) new ExlColumnRender<?>[contentColumns.length];
+		for (int i = 0; i < contentColumns.length; i++) {
+			ExlCellRender<Object> cellRender = renderMap.get(contentColumns[i]);
+			ExlColumnRender<Object> columnRender = columnRenderMap.get(contentColumns[i]);
+			if (cellRender != null && columnRender != null) {
+				ExlColumnRender<Object> first = ExlColumnRender.of(cellRender);
+				renders[i] = (values, records, firstIndex) -> {
+					first.format(values, records, firstIndex);
+					columnRender.format(values, records, firstIndex);
+				};
+			} else if (cellRender != null) {
+				renders[i] = ExlColumnRender.of(cellRender);
+			} else {
+				renders[i] = columnRender;
+			}
+		}
+		return renders;
+	}
+	
+	/**
+	 * 萃取一块内容：逐列取出原始值后，整列交给该列的渲染器
+	 * @param chunk 按列存放的值，chunk[列][块内行]
+	 * @param raw 渲染前的原始值另存到此，为null或某列为null时不保存
+	 * @param records 本块的行记录
+	 * @param firstIndex 本块第一行的行号
+	 * @param renders 各列渲染器
+	 */
+	private void fillContentChunk(String[][] chunk,String[][] raw,List<Object> records,int firstIndex,ExlColumnRender<Object>[] renders){
+		int size = records.size();
+		if (rowWriter != null && rowWriterColumns == null) {
+			rowWriterColumns = resolveRowWriterColumns();
+		}
+		ExlRowAdapter adapter = rowWriter == null && size > 0 ? rowAdapter(records) : null;
+		for (int i = 0; i < contentColumns.length; i++) {
+			String[] values = chunk[i];
+			ExlExpression expression = computedMap.get(contentColumns[i]);
+			if (expression != null) {
+				for (int r = 0; r < size; r++) {
+					values[r] = expression.text(records.get(r), fieldCash);
+				}
+			} else if (rowWriter != null) {
+				int column = rowWriterColumns[i];
+				for (int r = 0; r < size; r++) {
+					values[r] = rowWriter.value(records.get(r), column);
+				}
+			} else {
+				for (int r = 0; r < size; r++) {
+					values[r] = adapter.text(records.get(r), i);
+				}
+			}
+			if (raw != null && raw[i] != null) {
+				System.arraycopy(values, 0, raw[i], 0, size);
+			}
+			if (renders[i] != null) {
+				renders[i].format(values, records, firstIndex);
+			}
+		}
+	}
+	
+	private int findPosition(int row){
+		return fillPosition.firstFree(row);
+	}
+	
+	/**
+	 * 本块记录的取值方式，沿用上一块的，记录类型变化时重新选择
+	 */
+	private ExlRowAdapter rowAdapter(List<Object> records){
+		if (rowAdapter == null || !rowAdapter.acceptsAll(records)) {
+			rowAdapter = ExlRowAdapter.of(records, contentColumns, fieldCash);
+		}
+		return rowAdapter;
+	}
+	
+	
+			public static void main(String[] args) { 
 		ExcelExportUtils utils = ExcelExportUtils.c()
 				.fileMark("附件")
 				.title(  "中小学幼儿园安全防范基础数据统计表")
@@ -0,0 +1,696 @@
+package com.tornado.zy;
+
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * EXCEL导入工具类，与{@link ExcelExportUtils}相对，按contentColumns把工作表中的行读回为对象或Map.
+ * <br>使用事件模型读取：xls使用HSSF事件模型，xlsx使用SAX逐行解析，内存占用与文件大小无关（xlsx的共享字符串表除外）.
+ * 解析在单独的线程中进行，通过有界队列交给返回的Stream，Stream用完后必须关闭，提前关闭时解析随即停止.
+ * <p>跳过表头：设置{@link #headers(String...)}时从与其相同的行之后开始读取，否则跳过{@link #skipRows(int)}行；
+ * 末尾的注释行等可用{@link #footerRows(int)}丢弃。全部为空的行忽略；设置了表头却没有找到时，读取时抛出IllegalStateException</p>
+ * <p>数字类型的属性取数值单元格的原始值，不受单元格格式（千分位、General格式下的科学计数法）影响；String属性及Map取显示的文字</p>
+ * <pre>
+ * try (Stream&lt;School&gt; schools = ExcelImportUtils.c(School.class).headers("名称", "类型").contentColumns("name", "type").read(file)) {
+ *     schools.forEach(dao::save);
+ * }
+ * </pre>
+ * @author xlsiek
+ *
+ * @param <T> 读出的类型
+ */
+public class ExcelImportUtils<T> {
+	private final static Object END = new Object();//队列结束标记
+	private final static int QUEUE_SIZE = 1024;
+	private final Class<T> type;//null时读为Map
+	private String[] contentColumns = null;//内容列
+	private String[] headers = null;//表头，用于定位内容的开始
+	private int skipRows = 0;//未设置表头时跳过的行数
+	private int footerRows = 0;//丢弃末尾的行数
+	private int firstColumn = 0;//第一个内容列所在的列
+	private int sheet = 0;//读取第几个工作表
+	private ExlFieldCache fieldCash = new ExlFieldCache();
+
+	private ExcelImportUtils(Class<T> type) {
+		this.type = type;
+	}
+
+	/**
+	 * 读为指定类型的对象，类型须有无参构造方法
+	 * @param type 类型
+	 * @return ExcelImportUtils
+	 */
+	public static <T> ExcelImportUtils<T> c(Class<T> type) {
+		return new ExcelImportUtils<>(type);
+	}
+
+	/**
+	 * 读为Map，key为属性名，value为单元格文本
+	 * @return ExcelImportUtils
+	 */
+	public static ExcelImportUtils<Map<String,Object>> map() {
+		return new ExcelImportUtils<>(null);
+	}
+
+	/**
+	 * 内容列，与导出时的contentColumns相同
+	 * @param contentColumns 属性
+	 * @return ExcelImportUtils
+	 */
+	public ExcelImportUtils<T> contentColumns(String... contentColumns) {
+		this.contentColumns = contentColumns;
+		return this;
+	}
+
+	/**
+	 * 表头，找到各单元格依次与之相同的行后，从下一行开始读取
+	 * @param headers 表头
+	 * @return ExcelImportUtils
+	 */
+	public ExcelImportUtils<T> headers(String... headers) {
+		this.headers = headers;
+		return this;
+	}
+
+	/**
+	 * 未设置表头时，跳过开头的行数，例如文件标注、标题
+	 * @param skipRows 行数
+	 * @return ExcelImportUtils
+	 */
+	public ExcelImportUtils<T> skipRows(int skipRows) {
+		this.skipRows = skipRows;
+		return this;
+	}
+
+	/**
+	 * 丢弃末尾的行数，例如注释行
+	 * @param footerRows 行数
+	 * @return ExcelImportUtils
+	 */
+	public ExcelImportUtils<T> footerRows(int footerRows) {
+		this.footerRows = footerRows;
+		return this;
+	}
+
+	/**
+	 * 第一个内容列所在的列，例如导出时有一列列头则为1
+	 * @param firstColumn 列
+	 * @return ExcelImportUtils
+	 */
+	public ExcelImportUtils<T> firstColumn(int firstColumn) {
+		this.firstColumn = firstColumn;
+		return this;
+	}
+
+	/**
+	 * 读取第几个工作表，从0开始
+	 * @param sheet 工作表
+	 * @return ExcelImportUtils
+	 */
+	public ExcelImportUtils<T> sheet(int sheet) {
+		this.sheet = sheet;
+		return this;
+	}
+
+	/**
+	 * 读取文件，按文件头判断xls或xlsx
+	 * @param file 文件
+	 * @return 逐行读出的对象，用完后须关闭
+	 * @throws IOException 文件无法打开
+	 * @throws IllegalStateException 未设置内容列，或类型没有无参构造方法、没有内容列对应的属性
+	 */
+	public Stream<T> read(Path file) throws IOException {
+		return read(file, false);
+	}
+
+	/**
+	 * 读取输入流，先写入临时文件再读取，Stream关闭时删除
+	 * @param in 输入流，不会被关闭
+	 * @return 逐行读出的对象，用完后须关闭
+	 * @throws IOException 读取失败
+	 * @throws IllegalStateException 同{@link #read(Path)}，此时不写临时文件
+	 */
+	public Stream<T> read(InputStream in) throws IOException {
+		checkConfig();//配置有误时不必写临时文件
+		Path temp = Files.createTempFile("exl-import", ".tmp");
+		try {
+			Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		return read(temp, true);
+	}
+
+	private Stream<T> read(final Path file, final boolean deleteOnClose) throws IOException {
+		final RecordFactory factory;
+		final boolean xlsx;
+		try {
+			checkConfig();
+			factory = new RecordFactory();
+			xlsx = isZip(file);
+		} catch (IOException | RuntimeException e) {
+			if (deleteOnClose) {
+				Files.deleteIfExists(file);
+			}
+			throw e;
+		}
+		final RowQueue queue = new RowQueue(factory);
+		Thread parser = new Thread(() -> {
+			try {
+				if (xlsx) {
+					readXlsx(file, queue);
+				} else {
+					readXls(file, queue);
+				}
+				queue.finish();
+			} catch (Closed e) {
+				//Stream已关闭
+			} catch (Throwable e) {
+				queue.fail(e);
+			}
+		}, "exl-import");
+		parser.setDaemon(true);
+		parser.start();
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(queue, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(() -> {
+					queue.closed = true;
+					parser.interrupt();
+					if (deleteOnClose) {
+						try {
+							parser.join(1000);
+							Files.deleteIfExists(file);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}
+				});
+	}
+
+	//=====================================================xls，HSSF事件模型
+
+	private void readXls(Path file, final RowQueue queue) throws Exception {
+		try (NPOIFSFileSystem fs = new NPOIFSFileSystem(file.toFile(), true)) {
+			final RowCollector rows = new RowCollector(queue);
+			HSSFRequest request = new HSSFRequest();
+			final FormatTrackingHSSFListener[] formats = new FormatTrackingHSSFListener[1];
+			HSSFListener listener = new HSSFListener() {
+				private SSTRecord sst;
+				private int sheetCount = -1;
+				private int formulaRow = -1;//公式结果为字符串时，结果在随后的StringRecord中
+				private int formulaColumn = -1;
+
+				@Override
+				public void processRecord(Record record) {
+					switch (record.getSid()) {
+					case BOFRecord.sid:
+						if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+							sheetCount++;
+						}
+						return;
+					case EOFRecord.sid:
+						if (sheetCount == sheet) {
+							rows.end();
+							throw new SheetDone();//读完需要的工作表即停止
+						}
+						return;
+					case SSTRecord.sid:
+						sst = (SSTRecord) record;
+						return;
+					default:
+					}
+					if (sheetCount != sheet) {
+						return;
+					}
+					switch (record.getSid()) {
+					case LabelSSTRecord.sid:
+						LabelSSTRecord label = (LabelSSTRecord) record;
+						rows.cell(label.getRow(), label.getColumn(), sst.getString(label.getSSTIndex()).getString(), null);
+						break;
+					case LabelRecord.sid:
+						LabelRecord text = (LabelRecord) record;
+						rows.cell(text.getRow(), text.getColumn(), text.getValue(), null);
+						break;
+					case NumberRecord.sid:
+						NumberRecord number = (NumberRecord) record;
+						rows.cell(number.getRow(), number.getColumn(), formats[0].formatNumberDateCell(number), raw(number.getValue()));
+						break;
+					case BoolErrRecord.sid:
+						BoolErrRecord bool = (BoolErrRecord) record;
+						if (bool.isBoolean()) {
+							rows.cell(bool.getRow(), bool.getColumn(), String.valueOf(bool.getBooleanValue()), null);
+						}
+						break;
+					case FormulaRecord.sid:
+						FormulaRecord formula = (FormulaRecord) record;
+						if (formula.hasCachedResultString()) {
+							formulaRow = formula.getRow();
+							formulaColumn = formula.getColumn();
+						} else {
+							String raw = formula.getCachedResultType() == CellType.NUMERIC.getCode() ? raw(formula.getValue()) : null;
+							rows.cell(formula.getRow(), formula.getColumn(), formats[0].formatNumberDateCell((CellValueRecordInterface) formula), raw);
+						}
+						break;
+					case StringRecord.sid:
+						if (formulaRow >= 0) {
+							rows.cell(formulaRow, formulaColumn, ((StringRecord) record).getString(), null);
+							formulaRow = -1;
+						}
+						break;
+					default:
+					}
+				}
+			};
+			formats[0] = new FormatTrackingHSSFListener(listener);
+			request.addListenerForAllRecords(formats[0]);
+			try {
+				new HSSFEventFactory().processWorkbookEvents(request, fs.getRoot());
+			} catch (SheetDone e) {
+				//其余工作表不再读取
+			}
+			rows.end();
+		}
+	}
+
+	//=====================================================xlsx，SAX
+
+	private void readXlsx(Path file, RowQueue queue) throws Exception {
+		try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+			XSSFReader reader = new XSSFReader(pkg);
+			ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+			Iterator<InputStream> sheets = reader.getSheetsData();
+			for (int i = 0; i < sheet && sheets.hasNext(); i++) {
+				sheets.next().close();
+			}
+			if (!sheets.hasNext()) {
+				throw new IOException("工作表不存在：" + sheet);
+			}
+			final RowCollector rows = new RowCollector(queue);
+			final RawValues values = new RawValues();
+			XSSFSheetXMLHandler.SheetContentsHandler contents = new XSSFSheetXMLHandler.SheetContentsHandler() {
+				private int row;
+
+				@Override
+				public void startRow(int rowNum) {
+					row = rowNum;
+				}
+
+				@Override
+				public void endRow(int rowNum) {
+				}
+
+				@Override
+				public void cell(String reference, String formattedValue, XSSFComment comment) {
+					rows.cell(row, new CellReference(reference).getCol(), formattedValue, values.raw);
+				}
+
+				@Override
+				public void headerFooter(String text, boolean isHeader, String tagName) {
+				}
+			};
+			XMLReader parser = SAXHelper.newXMLReader();
+			values.handler = new XSSFSheetXMLHandler(reader.getStylesTable(), strings, contents, new DataFormatter(), false);
+			parser.setContentHandler(values);
+			try (InputStream in = sheets.next()) {
+				parser.parse(new InputSource(in));
+			}
+			rows.end();
+		}
+	}
+
+	/**
+	 * 在XSSFSheetXMLHandler之前记下数值单元格&lt;v&gt;中的原始值，格式化后的文字可能带千分位、科学计数法
+	 */
+	private static final class RawValues extends DefaultHandler {
+		private ContentHandler handler;
+		private final StringBuilder v = new StringBuilder();
+		private boolean numeric = false;//当前单元格是否为数值（无t属性或t="n"）
+		private boolean inValue = false;
+		private String raw = null;//当前单元格的原始值，不是数值时为null
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			if ("c".equals(localName)) {
+				String t = attributes.getValue("t");
+				numeric = t == null || "n".equals(t);
+				raw = null;
+			} else if ("v".equals(localName)) {
+				inValue = true;
+				v.setLength(0);
+			}
+			handler.startElement(uri, localName, qName, attributes);
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if (inValue) {
+				v.append(ch, start, length);
+			}
+			handler.characters(ch, start, length);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if ("v".equals(localName)) {
+				inValue = false;
+				raw = numeric ? v.toString() : null;
+			}
+			handler.endElement(uri, localName, qName);
+		}
+	}
+
+	//=====================================================行到对象
+
+	/**
+	 * 数值单元格的原始值，不经过单元格格式
+	 */
+	private static String raw(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return null;
+		}
+		return BigDecimal.valueOf(value).toPlainString();
+	}
+
+	private void checkConfig() {
+		if (contentColumns == null) {
+			throw new IllegalStateException("contentColumns未设置");
+		}
+	}
+
+	private static boolean isZip(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return in.read() == 'P' && in.read() == 'K';
+		}
+	}
+
+	/**
+	 * 行到对象，构造方法及各列的属性在开始读取前解析一次
+	 */
+	private final class RecordFactory {
+		private final String[] columns = contentColumns.clone();
+		private final Constructor<T> constructor;
+		private final Field[] fields;
+
+		RecordFactory() {
+			if (type == null) {
+				constructor = null;
+				fields = null;
+				return;
+			}
+			try {
+				constructor = type.getDeclaredConstructor();
+				constructor.setAccessible(true);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException(type.getName() + "没有无参构造方法", e);
+			}
+			fields = new Field[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				try {
+					fields[i] = fieldCash.get(type, columns[i]);
+				} catch (NoSuchFieldException e) {
+					throw new IllegalStateException(type.getName() + "没有属性" + columns[i], e);
+				}
+			}
+		}
+
+		/**
+		 * @param values 各列的显示文字，String、Map使用
+		 * @param raws 数值单元格的原始值，数字类型的属性优先使用，其他单元格为null
+		 */
+		T create(String[] values, String[] raws) throws ReflectiveOperationException {
+			if (type == null) {
+				Map<String,Object> map = new LinkedHashMap<>();
+				for (int i = 0; i < columns.length; i++) {
+					map.put(columns[i], values[i]);
+				}
+				@SuppressWarnings("unchecked")
+				T record = (T) map;
+				return record;
+			}
+			T record = constructor.newInstance();
+			for (int i = 0; i < columns.length; i++) {
+				Class<?> fieldType = fields[i].getType();
+				boolean text = fieldType == String.class || fieldType == Object.class;
+				Object value = convert(text || raws[i] == null ? values[i] : raws[i], fieldType);
+				if (value != null) {
+					fields[i].set(record, value);
+				}
+			}
+			return record;
+		}
+	}
+
+	/**
+	 * 单元格文本转为属性类型，空文本为null
+	 */
+	private static Object convert(String text, Class<?> type) {
+		if (type == String.class || type == Object.class) {
+			return text;
+		}
+		if (text == null || text.trim().isEmpty()) {
+			return null;
+		}
+		String value = text.trim();
+		if (type == int.class || type == Integer.class) return new BigDecimal(value).intValueExact();
+		if (type == long.class || type == Long.class) return new BigDecimal(value).longValueExact();
+		if (type == double.class || type == Double.class) return Double.valueOf(value);
+		if (type == float.class || type == Float.class) return Float.valueOf(value);
+		if (type == short.class || type == Short.class) return new BigDecimal(value).shortValueExact();
+		if (type == byte.class || type == Byte.class) return new BigDecimal(value).byteValueExact();
+		if (type == boolean.class || type == Boolean.class) return Boolean.valueOf(value);
+		if (type == BigDecimal.class) return new BigDecimal(value);
+		throw new IllegalArgumentException("不支持的属性类型：" + type.getName());
+	}
+
+	/**
+	 * 把逐个单元格的事件拼成行，跳过表头、空行，保留末尾的行直到确认不是表尾
+	 */
+	private final class RowCollector {
+		private final RowQueue queue;
+		private final ArrayDeque<String[][]> held = new ArrayDeque<>();//{显示文字, 原始值}
+		private String[] values;
+		private String[] raws;
+		private String[] headerCells = headers == null ? null : new String[headers.length];
+		private int row = -1;
+		private boolean empty = true;
+		private boolean started = headers == null && skipRows <= 0;
+		private boolean ended = false;
+
+		RowCollector(RowQueue queue) {
+			this.queue = queue;
+			this.values = new String[queue.factory.columns.length];
+			this.raws = new String[values.length];
+		}
+
+		/**
+		 * @param text 显示文字
+		 * @param raw 数值单元格的原始值，其他为null
+		 */
+		void cell(int rowIndex, int column, String text, String raw) {
+			if (rowIndex != row) {
+				endRow();
+				row = rowIndex;
+				if (!started && headerCells == null) {
+					started = rowIndex >= skipRows;
+				}
+			}
+			int index = column - firstColumn;
+			if (!started) {
+				if (headerCells != null && index >= 0 && index < headerCells.length) {
+					headerCells[index] = text;
+				}
+				return;
+			}
+			if (index >= 0 && index < values.length && text != null && !text.isEmpty()) {
+				values[index] = text;
+				raws[index] = raw;
+				empty = false;
+			}
+		}
+
+		void end() {
+			if (ended) return;
+			ended = true;
+			endRow();
+			if (!started && headerCells != null) {
+				throw new IllegalStateException("工作表" + sheet + "中没有找到表头" + Arrays.toString(headers) + "，第一个内容列在第" + firstColumn + "列");
+			}
+		}
+
+		private void endRow() {
+			if (row < 0) return;
+			if (!started) {
+				if (headerCells != null) {
+					started = Arrays.equals(headerCells, headers);
+					Arrays.fill(headerCells, null);
+				}
+				return;
+			}
+			if (!empty) {
+				held.addLast(new String[][] { values, raws });
+				values = new String[values.length];
+				raws = new String[values.length];
+				empty = true;
+				if (held.size() > footerRows) {
+					try {
+						String[][] cells = held.pollFirst();
+						queue.put(queue.factory.create(cells[0], cells[1]));
+					} catch (ReflectiveOperationException e) {
+						throw new IllegalStateException("第" + (row + 1) + "行无法转换", e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 解析线程与Stream之间的有界队列，同时作为Stream的迭代器
+	 */
+	private final class RowQueue implements Iterator<T> {
+		private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+		private final RecordFactory factory;
+		private volatile boolean closed = false;
+		private Object next = null;
+
+		RowQueue(RecordFactory factory) {
+			this.factory = factory;
+		}
+
+		void put(Object record) {
+			try {
+				while (!queue.offer(record, 100, TimeUnit.MILLISECONDS)) {
+					if (closed) throw new Closed();
+				}
+			} catch (InterruptedException e) {
+				throw new Closed();
+			}
+		}
+
+		void finish() {
+			put(END);
+		}
+
+		void fail(Throwable error) {
+			try {
+				put(new Failure(error));
+			} catch (Closed e) {
+				//没有人再读取
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				try {
+					next = queue.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("读取被中断", e);
+				}
+			}
+			if (next instanceof Failure) {
+				Throwable error = ((Failure) next).error;
+				if (error instanceof IOException) throw new UncheckedIOException((IOException) error);
+				if (error instanceof RuntimeException) throw (RuntimeException) error;
+				throw new IllegalStateException("读取失败", error);
+			}
+			return next != END;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Object result = next;
+			next = null;
+			return (T) result;
+		}
+	}
+
+	private static final class Failure {
+		private final Throwable error;
+
+		Failure(Throwable error) {
+			this.error = error;
+		}
+	}
+
+	/**
+	 * 需要的工作表已读完，用于结束xls的事件循环
+	 */
+	private static final class SheetDone extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		SheetDone() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * Stream已关闭，用于结束解析线程
+	 */
+	private static final class Closed extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Closed() {
+			super(null, null, false, false);
+		}
+	}
+}
@@ -0,0 +1,413 @@
+package com.tornado.zy;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.WorkbookUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * EXCEL分区导出工具类，按分区属性的值把同一份数据拆分到多个工作表或多个文件，数据源只读取一遍.
+ * <br>每个分区第一次出现时向partition要一份导出配置并绘制表头部分，之后该分区的记录到达即追加写出，各分区都有完整的标题、表头及注释.
+ * <br>同时打开的分区数有上限，超出上限的新分区的记录先溢出到临时文件，数据源读完、已打开的分区全部结束后再从临时文件中读取，
+ * 如此反复直到没有溢出，因此分区数很多时临时文件会被读写多遍.
+ * <p>注意：
+ * <br>1.partition返回的配置只需设置标题、表头、内容列等，不要设置contentData，只支持普通模式内容；
+ * <br>2.发生溢出时记录需要可序列化（{@link java.io.Serializable}），例如HashMap或实现了Serializable的实体。
+ * 开始时试序列化第一条记录，不可序列化时：数据源为Collection且分区数超过maxOpen的立即抛出IllegalArgumentException，
+ * 其他数据源在第一次需要溢出时抛出IllegalStateException，不会写到一半才因NotSerializableException失败；
+ * <br>3.分区的顺序为第一次出现的顺序，溢出的分区排在后面</p>
+ * <pre>
+ * ExcelPartitionExportUtils.c("area", area -&gt; ExcelExportUtils.c().title(area + "学校统计").headers("名称", "类型").contentColumns("name", "type"))
+ *     .maxOpen(16)
+ *     .exportFiles(schools, Paths.get("/data/export/schools"));
+ * </pre>
+ * @author xlsiek
+ *
+ */
+public class ExcelPartitionExportUtils {
+	private final String keyProperty;//分区属性
+	private final Function<String,ExcelExportUtils> partition;//按分区值创建导出配置
+	private int maxOpen = 32;//同时打开的分区数上限
+	private Path spillDir = null;//溢出文件目录，null为系统临时目录
+	private ExlFieldCache fieldCash = new ExlFieldCache();
+
+	private ExcelPartitionExportUtils(String keyProperty, Function<String,ExcelExportUtils> partition) {
+		this.keyProperty = keyProperty;
+		this.partition = partition;
+	}
+
+	/**
+	 * 调用此方法初始化
+	 * @param keyProperty 分区属性，空值视为""
+	 * @param partition 根据分区值创建该分区的导出配置，每个分区调用一次
+	 * @return ExcelPartitionExportUtils
+	 */
+	public static ExcelPartitionExportUtils c(String keyProperty, Function<String,ExcelExportUtils> partition) {
+		return new ExcelPartitionExportUtils(keyProperty, partition);
+	}
+
+	/**
+	 * 设置同时打开的分区数上限，每个打开的分区持有一块待写出的记录，输出文件时还持有一个压缩流
+	 * @param maxOpen 上限
+	 * @return ExcelPartitionExportUtils
+	 */
+	public ExcelPartitionExportUtils maxOpen(int maxOpen) {
+		this.maxOpen = maxOpen < 1 ? 1 : maxOpen;
+		return this;
+	}
+
+	/**
+	 * 设置溢出文件目录
+	 * @param spillDir 目录，默认为系统临时目录
+	 * @return ExcelPartitionExportUtils
+	 */
+	public ExcelPartitionExportUtils spillDir(Path spillDir) {
+		this.spillDir = spillDir;
+		return this;
+	}
+
+	/**
+	 * 每个分区一个工作表，输出为一个xls工作簿。工作表名为分区值，过长或重复时截断、编号
+	 * @param data 数据源，只读取一遍
+	 * @param out 输出流，不会被关闭
+	 * @return 各分区的统计，按分区顺序。任意分区被取消时整个工作簿都不输出
+	 * @throws IOException
+	 */
+	public Map<String,ExlExportStats> exportSheets(Iterable<?> data, OutputStream out) throws IOException {
+		checkSpillable(data);
+		Workbook wb = new HSSFWorkbook();
+		ExlStyleRegistry styleRegistry = new ExlStyleRegistry(wb);//所有工作表共用
+		Set<String> names = new HashSet<>();
+		Map<String,ExcelExportUtils> exports = new LinkedHashMap<>();
+		try {
+			route(data.iterator(), exports, new Sink() {
+				@Override
+				public void open(String key, ExcelExportUtils export) throws IOException {
+					String name = uniqueName(WorkbookUtil.createSafeSheetName(key.isEmpty() ? "(空)" : key), names, 31);
+					export.begin(new ExlPoiSheetWriter(wb.createSheet(name), styleRegistry, export.getTempFontSize()));
+				}
+
+				@Override
+				public void close(String key, ExcelExportUtils export) throws IOException {
+					export.end();
+				}
+			});
+		} catch (ExlCancelToken.Cancelled e) {
+			wb.close();
+			return finishStats(exports, true);
+		}
+		wb.write(out);
+		return finishStats(exports, false);
+	}
+
+	/**
+	 * 每个分区一个流式xlsx文件，文件名为分区值，非法字符替换为_，重复时编号。同名文件将被覆盖
+	 * @param data 数据源，只读取一遍
+	 * @param dir 输出目录，不存在时创建
+	 * @return 各分区的统计，按分区顺序。某个分区被取消时已写出的文件保留，不完整的文件删除
+	 * @throws IOException
+	 */
+	public Map<String,ExlExportStats> exportFiles(Iterable<?> data, Path dir) throws IOException {
+		checkSpillable(data);
+		Files.createDirectories(dir);
+		Set<String> names = new HashSet<>();
+		Map<String,ExcelExportUtils> exports = new LinkedHashMap<>();
+		Map<String,Path> files = new HashMap<>();
+		Map<String,OutputStream> outs = new HashMap<>();
+		try {
+			route(data.iterator(), exports, new Sink() {
+				@Override
+				public void open(String key, ExcelExportUtils export) throws IOException {
+					Path file = dir.resolve(uniqueName(fileName(key), names, 200) + ".xlsx");
+					OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+					files.put(key, file);
+					outs.put(key, out);
+					export.begin(export.streamWriter(out));
+				}
+
+				@Override
+				public void close(String key, ExcelExportUtils export) throws IOException {
+					export.end();
+					outs.remove(key).close();
+				}
+			});
+		} catch (IOException | RuntimeException | Error e) {
+			for (Map.Entry<String,OutputStream> entry : outs.entrySet()) {
+				try {
+					entry.getValue().close();
+				} catch (IOException closeError) {
+					e.addSuppressed(closeError);
+				}
+				Files.deleteIfExists(files.get(entry.getKey()));
+			}
+			if (e instanceof ExlCancelToken.Cancelled) {
+				return finishStats(exports, true);
+			}
+			throw e;
+		}
+		return finishStats(exports, false);
+	}
+
+	/**
+	 * 分区的打开与结束
+	 */
+	private interface Sink {
+		void open(String key, ExcelExportUtils export) throws IOException;
+
+		void close(String key, ExcelExportUtils export) throws IOException;
+	}
+
+	/**
+	 * 把记录分发到各分区，超出上限的分区溢出到临时文件，结束后从溢出文件中再分发一遍
+	 * @param rows 记录
+	 * @param exports 已打开过的分区，按打开顺序
+	 */
+	private void route(Iterator<?> rows, Map<String,ExcelExportUtils> exports, Sink sink) throws IOException {
+		IOException notSpillable = null;//第一条记录试序列化的结果
+		boolean first = true;
+		while (rows != null) {
+			Iterator<?> source = rows;
+			rows = null;
+			Map<String,ExcelExportUtils> open = new LinkedHashMap<>();
+			Spill spill = null;
+			boolean done = false;
+			try {
+				while (source.hasNext()) {
+					Object record = source.next();
+					String key = key(record);
+					if (first) {
+						notSpillable = trySerialize(record);
+						first = false;
+					}
+					ExcelExportUtils export = open.get(key);
+					if (export == null) {
+						if (open.size() >= maxOpen) {
+							if (notSpillable != null) {
+								throw new IllegalStateException("分区数超过maxOpen(" + maxOpen + ")，需要溢出，但记录不可序列化："
+										+ record.getClass().getName() + "，请实现Serializable或调大maxOpen", notSpillable);
+							}
+							if (spill == null) {
+								spill = new Spill(spillDir);
+							}
+							spill.write(record);
+							continue;
+						}
+						export = partition.apply(key);
+						export.fieldCash(fieldCash);
+						export.startStats();
+						exports.put(key, export);
+						sink.open(key, export);
+						open.put(key, export);
+					}
+					export.append(record);
+				}
+				for (Map.Entry<String,ExcelExportUtils> entry : open.entrySet()) {
+					sink.close(entry.getKey(), entry.getValue());
+				}
+				if (spill != null) {
+					rows = spill.read();
+				}
+				done = true;
+			} finally {
+				if (source instanceof Spill) {
+					((Spill) source).delete();
+				}
+				if (!done) {
+					if (spill != null) {
+						spill.delete();
+					}
+					for (ExcelExportUtils export : open.values()) {
+						export.abort();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 数据源为Collection且第一条记录不可序列化时，统计分区数，超过maxOpen必然溢出，提前报错.
+	 * 其他数据源只能读取一遍，在需要溢出时报错
+	 */
+	private void checkSpillable(Iterable<?> data) {
+		if (!(data instanceof Collection) || ((Collection<?>) data).size() <= maxOpen) {
+			return;
+		}
+		Iterator<?> iterator = data.iterator();
+		Object first = iterator.next();
+		IOException notSpillable = trySerialize(first);
+		if (notSpillable == null) {
+			return;
+		}
+		Set<String> keys = new HashSet<>();
+		keys.add(key(first));
+		while (iterator.hasNext()) {
+			if (keys.add(key(iterator.next())) && keys.size() > maxOpen) {
+				throw new IllegalArgumentException("分区数超过maxOpen(" + maxOpen + ")，需要溢出，但记录不可序列化："
+						+ first.getClass().getName() + "，请实现Serializable或调大maxOpen", notSpillable);
+			}
+		}
+	}
+
+	/**
+	 * 试序列化一条记录
+	 * @return 不可序列化时为序列化的异常，否则为null
+	 */
+	private static IOException trySerialize(Object record) {
+		try (ObjectOutputStream out = new ObjectOutputStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		})) {
+			out.writeObject(record);
+			return null;
+		} catch (IOException e) {
+			return e;
+		}
+	}
+
+	private String key(Object record) {
+		if (record == null) {
+			throw new IllegalArgumentException("数据源中有null记录，无法取得分区属性" + keyProperty);
+		}
+		Object value;
+		if (record instanceof Map) {
+			value = ((Map<?,?>) record).get(keyProperty);
+		} else {
+			try {
+				value = fieldCash.get(record.getClass(), keyProperty).get(record);
+			} catch (NoSuchFieldException | IllegalAccessException e) {
+				throw new IllegalArgumentException("无法读取分区属性" + keyProperty, e);
+			}
+		}
+		return value == null ? "" : value.toString();
+	}
+
+	private static Map<String,ExlExportStats> finishStats(Map<String,ExcelExportUtils> exports, boolean cancelled) {
+		Map<String,ExlExportStats> stats = new LinkedHashMap<>();
+		for (Map.Entry<String,ExcelExportUtils> entry : exports.entrySet()) {
+			stats.put(entry.getKey(), entry.getValue().finishStats(cancelled));
+		}
+		return stats;
+	}
+
+	private static String fileName(String key) {
+		StringBuilder name = new StringBuilder(key.length());
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			name.append(c < 0x20 || "\\/:*?\"<>|".indexOf(c) >= 0 ? '_' : c);
+		}
+		return name.length() == 0 || name.charAt(0) == '.' ? "_" + name : name.toString();
+	}
+
+	/**
+	 * 不区分大小写地去重，重复时加(2)、(3)...，并保证不超过最大长度
+	 */
+	private static String uniqueName(String name, Set<String> used, int maxLength) {
+		if (name.length() > maxLength) {
+			name = name.substring(0, maxLength);
+		}
+		String result = name;
+		for (int i = 2; !used.add(result.toLowerCase()); i++) {
+			String suffix = "(" + i + ")";
+			result = name.substring(0, Math.min(name.length(), maxLength - suffix.length())) + suffix;
+		}
+		return result;
+	}
+
+	/**
+	 * 溢出文件，写完后作为记录的迭代器读回，读完或出错时删除
+	 */
+	private static final class Spill implements Iterator<Object> {
+		private final static int RESET_EVERY = 1024;//定期重置，避免序列化流的对象表无限增长
+		private final Path file;
+		private ObjectOutputStream out;
+		private ObjectInputStream in;
+		private int written = 0;
+		private Object next;
+
+		Spill(Path dir) throws IOException {
+			file = dir == null ? Files.createTempFile("exl-partition", ".spill") : Files.createTempFile(dir, "exl-partition", ".spill");
+			try {
+				out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+			} catch (IOException e) {
+				Files.deleteIfExists(file);
+				throw e;
+			}
+		}
+
+		void write(Object record) throws IOException {
+			try {
+				out.writeObject(record);
+			} catch (NotSerializableException e) {
+				throw new IllegalStateException("溢出的记录不可序列化：" + record.getClass().getName() + "，请实现Serializable或调大maxOpen", e);
+			}
+			if (++written % RESET_EVERY == 0) {
+				out.reset();
+			}
+		}
+
+		Spill read() throws IOException {
+			out.writeObject(null);//结束标记
+			out.close();
+			out = null;
+			in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+			next = readNext();
+			return this;
+		}
+
+		private Object readNext() {
+			try {
+				return in.readObject();
+			} catch (IOException | ClassNotFoundException e) {
+				throw new IllegalStateException("溢出文件读取失败", e);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Object next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			Object result = next;
+			next = readNext();
+			return result;
+		}
+
+		void delete() throws IOException {
+			if (out != null) {
+				out.close();
+			}
+			if (in != null) {
+				in.close();
+			}
+			Files.deleteIfExists(file);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package com.tornado.zy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.zip.Deflater;
+
+/**
+ * EXCEL滚动导出工具类，内容超过行数或字节数上限时结束当前文件、开始下一个，所有文件打包为一个zip输出，数据源只读取一遍.
+ * <br>每个文件是一个流式xlsx，都有完整的标题、表头及注释；生成的同时写入zip中的条目并推送给输出流，
+ * 写完的文件不会留在内存或磁盘上，内存与数据量、文件数都无关.
+ * <p>注意：
+ * <br>1.part返回的配置只需设置标题、表头、内容列等，不要设置contentData，只支持普通模式内容；
+ * <br>2.字节数上限为近似值，流式输出每{@link ExcelExportUtils#streamFlush(int, long)}推送一次，文件会超出上限最多一次推送的量及表尾；
+ * <br>3.小计、总计只在各自的文件内计算，分组不会在文件之间延续；
+ * <br>4.zip中的xlsx只存储不再压缩，整个zip不能超过4G；被取消或失败时zip不完整，调用方应丢弃</p>
+ * <pre>
+ * ExcelRollingExportUtils.c(part -&gt; ExcelExportUtils.c().title("学校统计(" + (part + 1) + ")").headers("名称", "类型").contentColumns("name", "type"))
+ *     .maxRows(100000).maxBytes(50L * 1024 * 1024).fileName("学校统计")
+ *     .export(schools, response.getOutputStream());
+ * </pre>
+ * @author xlsiek
+ *
+ */
+public class ExcelRollingExportUtils {
+	private final IntFunction<ExcelExportUtils> part;//按文件序号创建导出配置
+	private int maxRows = 1000000;//每个文件的内容行数上限，xlsx最多1048576行
+	private long maxBytes = Long.MAX_VALUE;//每个文件的字节数上限
+	private String fileName = "part";//zip中的文件名前缀
+	private ExlFieldCache fieldCash = new ExlFieldCache();
+
+	private ExcelRollingExportUtils(IntFunction<ExcelExportUtils> part) {
+		this.part = part;
+	}
+
+	/**
+	 * 调用此方法初始化
+	 * @param part 根据文件序号（从0开始）创建该文件的导出配置，每个文件调用一次
+	 * @return ExcelRollingExportUtils
+	 */
+	public static ExcelRollingExportUtils c(IntFunction<ExcelExportUtils> part) {
+		return new ExcelRollingExportUtils(part);
+	}
+
+	/**
+	 * 每个文件的内容行数上限，默认1000000
+	 * @param maxRows 行数
+	 * @return ExcelRollingExportUtils
+	 */
+	public ExcelRollingExportUtils maxRows(int maxRows) {
+		this.maxRows = maxRows < 1 ? 1 : maxRows;
+		return this;
+	}
+
+	/**
+	 * 每个文件的字节数上限，近似值，默认不限
+	 * @param maxBytes 字节数
+	 * @return ExcelRollingExportUtils
+	 */
+	public ExcelRollingExportUtils maxBytes(long maxBytes) {
+		this.maxBytes = maxBytes < 1 ? 1 : maxBytes;
+		return this;
+	}
+
+	/**
+	 * zip中的文件名前缀，文件名为前缀-序号.xlsx，序号从1开始
+	 * @param fileName 前缀，默认part
+	 * @return ExcelRollingExportUtils
+	 */
+	public ExcelRollingExportUtils fileName(String fileName) {
+		this.fileName = fileName;
+		return this;
+	}
+
+	/**
+	 * 导出为zip。没有数据时也输出一个只有表头的文件
+	 * @param data 数据源，只读取一遍
+	 * @param out 输出流，不会被关闭
+	 * @return 各文件的统计，按文件顺序。被取消时最后一个为被取消的文件
+	 * @throws IOException
+	 */
+	public List<ExlExportStats> export(Iterable<?> data, OutputStream out) throws IOException {
+		ExlZipOutput zip = new ExlZipOutput(out);
+		zip.level(Deflater.NO_COMPRESSION);
+		OutputStream entry = new EntryOutputStream(zip);
+		List<ExlExportStats> stats = new ArrayList<>();
+		Iterator<?> rows = data.iterator();
+		ExcelExportUtils export = null;
+		try {
+			do {
+				export = part.apply(stats.size());
+				export.fieldCash(fieldCash);
+				export.startStats();
+				zip.putEntry(fileName + "-" + (stats.size() + 1) + ".xlsx");
+				ExlXlsxStreamWriter writer = export.streamWriter(entry);
+				export.begin(writer);
+				for (int n = 0; n < maxRows && writer.getBytesWritten() < maxBytes && rows.hasNext(); n++) {
+					export.append(rows.next());
+				}
+				export.end();
+				zip.closeEntry();
+				stats.add(export.finishStats(false));
+				export = null;
+			} while (rows.hasNext());
+			zip.finish();
+		} catch (IOException | RuntimeException | Error e) {
+			if (export != null) {
+				export.abort();
+				if (e instanceof ExlCancelToken.Cancelled) {
+					stats.add(export.finishStats(true));
+					return stats;
+				}
+			}
+			throw e;
+		} finally {
+			zip.close();
+		}
+		return stats;
+	}
+
+	/**
+	 * 把一个文件的输出写入zip的当前条目，flush时推送已写入的部分
+	 */
+	private static final class EntryOutputStream extends OutputStream {
+		private final ExlZipOutput zip;
+
+		EntryOutputStream(ExlZipOutput zip) {
+			this.zip = zip;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			zip.write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			zip.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			zip.flush();
+		}
+	}
+}
@@ -0,0 +1,272 @@
+package com.tornado.zy;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * 并发导出的内存准入控制。每个导出开始前按行数、列数及输出方式估算占用的内存并预占，所有正在进行的导出的预占之和不超过预算，
+ * 超出时排队等待，按到达顺序放行.
+ * <br>xls的工作簿随行数×列数增长，等待超过{@link #maxWait(long)}或单个导出就超过预算时改为流式xlsx，流式输出只占一块内容的内存；
+ * 排序的导出在预算不够时缩小内存中一段的上限，多溢出几个临时文件.
+ * <br>估算见{@link ExcelExportUtils#estimateMemory(boolean)}，是保守的经验值，预算应留出数据源本身及其他业务的余量，例如最大堆的一半.
+ * 没有其他导出在进行时，超出预算的导出也会放行，不会永远等待
+ * <pre>
+ * private static final ExlAdmission ADMISSION = ExlAdmission.c(Runtime.getRuntime().maxMemory() / 2);
+ * ...
+ * ADMISSION.export(ExcelExportUtils.c().title("日报").contentColumns("one", "two").contentData(list), streaming -&gt; {
+ *     response.setContentType(streaming ? "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet" : "application/vnd.ms-excel");
+ *     return response.getOutputStream();
+ * });
+ * </pre>
+ * @author xlsiek
+ *
+ */
+public class ExlAdmission {
+	private final static long MIN_SORT_MEMORY = 1024 * 1024;//缩小排序内存的下限
+	private final long budget;
+	private long maxWait = 30 * 1000;//xls等待多久后改为流式
+	private boolean streamingFallback = true;//是否允许改为流式
+	private long reserved = 0;
+	private final LinkedList<Reservation> waiting = new LinkedList<>();//排队中，按到达顺序
+	private final List<Reservation> running = new ArrayList<>();
+
+	private ExlAdmission(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * 调用此方法初始化
+	 * @param budget 所有导出合计的内存预算，字节
+	 * @return ExlAdmission
+	 */
+	public static ExlAdmission c(long budget) {
+		return new ExlAdmission(budget);
+	}
+
+	/**
+	 * 预算不够时xls导出最多等待多久，之后改为流式xlsx。不允许改为流式时一直等待
+	 * @param millis 毫秒，0为不等待直接改为流式
+	 * @return ExlAdmission
+	 */
+	public ExlAdmission maxWait(long millis) {
+		this.maxWait = Math.max(millis, 0);
+		return this;
+	}
+
+	/**
+	 * 是否允许在预算不够时改为流式xlsx，默认允许。不允许时只排队等待
+	 * @param streamingFallback 是否允许
+	 * @return ExlAdmission
+	 */
+	public ExlAdmission streamingFallback(boolean streamingFallback) {
+		this.streamingFallback = streamingFallback;
+		return this;
+	}
+
+	/**
+	 * 预占内存后导出，结束后释放。默认输出xls，改为流式时输出xlsx，由output在输出第一个字节之前得知
+	 * @param export 导出配置
+	 * @param output 按输出方式打开输出流，不会被关闭
+	 * @return 本次导出的统计
+	 * @throws IOException 导出失败，或等待时被中断（{@link InterruptedIOException}）
+	 */
+	public ExlExportStats export(ExcelExportUtils export, Output output) throws IOException {
+		Reservation reservation = acquire(export);
+		try {
+			OutputStream out = output.open(reservation.streaming);
+			return reservation.streaming ? export.exportStreaming(out) : export.exportXls(out);
+		} finally {
+			release(reservation);
+		}
+	}
+
+	/**
+	 * 按输出方式打开输出流
+	 */
+	public interface Output {
+		/**
+		 * @param streaming true为流式xlsx，false为xls
+		 * @return 输出流
+		 * @throws IOException
+		 */
+		OutputStream open(boolean streaming) throws IOException;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * 正在进行的导出预占的内存之和
+	 * @return 字节数
+	 */
+	public synchronized long getReserved() {
+		return reserved;
+	}
+
+	/**
+	 * 排队等待的导出数
+	 * @return int
+	 */
+	public synchronized int getWaiting() {
+		return waiting.size();
+	}
+
+	/**
+	 * 正在进行的导出的预占情况，供监控
+	 * @return 快照，按开始顺序
+	 */
+	public synchronized List<Reservation> getReservations() {
+		return new ArrayList<>(running);
+	}
+
+	/**
+	 * 预占之和、排队数及各预占在同一时刻的快照，供监控及核对
+	 * @return Snapshot
+	 */
+	public synchronized Snapshot getSnapshot() {
+		return new Snapshot(reserved, waiting.size(), new ArrayList<>(running));
+	}
+
+	private Reservation acquire(ExcelExportUtils export) throws InterruptedIOException {
+		boolean canStream = streamingFallback && export.supportsStreaming();
+		Reservation reservation = new Reservation(Thread.currentThread().getName(), export.estimateMemory(false));
+		long sortMemory = export.getSortMemory();
+		synchronized (this) {
+			if (canStream && (reservation.bytes > budget || maxWait == 0)) {
+				reservation.stream(export.estimateMemory(true));
+			}
+			waiting.add(reservation);
+			long deadline = System.currentTimeMillis() + maxWait;
+			try {
+				while (true) {
+					if (waiting.peek() == reservation) {
+						long free = budget - reserved;
+						if (reservation.bytes <= free || running.isEmpty()) {
+							break;
+						}
+						long fixed = reservation.bytes - sortMemory;
+						if (sortMemory > 0 && fixed + MIN_SORT_MEMORY <= free) {
+							//排序改为更多地溢出到临时文件
+							export.sortMemory(free - fixed);
+							reservation.bytes = free;
+							break;
+						}
+					}
+					long now = System.currentTimeMillis();
+					if (canStream && !reservation.streaming && now >= deadline) {
+						reservation.stream(export.estimateMemory(true));
+						continue;
+					}
+					wait(canStream && !reservation.streaming ? deadline - now : 0);
+				}
+			} catch (InterruptedException e) {
+				waiting.remove(reservation);
+				notifyAll();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("等待内存预算时被中断");
+			}
+			waiting.remove();
+			reservation.startedMillis = System.currentTimeMillis();
+			reserved += reservation.bytes;
+			running.add(reservation);
+			notifyAll();//下一个排队的也许也放得下
+		}
+		return reservation;
+	}
+
+	private synchronized void release(Reservation reservation) {
+		running.remove(reservation);
+		reserved -= reservation.bytes;
+		notifyAll();
+	}
+
+	/**
+	 * 同一时刻的预占情况，单独调用各个get方法得到的值可能不属于同一时刻
+	 */
+	public static final class Snapshot {
+		private final long reserved;
+		private final int waiting;
+		private final List<Reservation> reservations;
+
+		Snapshot(long reserved, int waiting, List<Reservation> reservations) {
+			this.reserved = reserved;
+			this.waiting = waiting;
+			this.reservations = Collections.unmodifiableList(reservations);
+		}
+
+		/**
+		 * 正在进行的导出预占的内存之和，等于{@link #getReservations()}的字节数之和
+		 * @return 字节数
+		 */
+		public long getReserved() {
+			return reserved;
+		}
+
+		public int getWaiting() {
+			return waiting;
+		}
+
+		/**
+		 * 正在进行的导出的预占，按开始顺序
+		 * @return 不可修改的列表
+		 */
+		public List<Reservation> getReservations() {
+			return reservations;
+		}
+	}
+
+	/**
+	 * 一个导出的预占
+	 */
+	public static final class Reservation {
+		private final String name;
+		private long bytes;
+		private boolean streaming = false;
+		private long startedMillis = 0;
+
+		Reservation(String name, long bytes) {
+			this.name = name;
+			this.bytes = bytes;
+		}
+
+		void stream(long bytes) {
+			this.streaming = true;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * 发起导出的线程名
+		 * @return String
+		 */
+		public String getName() {
+			return name;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * 是否已改为流式xlsx
+		 * @return boolean
+		 */
+		public boolean isStreaming() {
+			return streaming;
+		}
+
+		public long getStartedMillis() {
+			return startedMillis;
+		}
+
+		@Override
+		public String toString() {
+			return name + (streaming ? "(xlsx)" : "(xls)") + ":" + bytes;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.tornado.zy;
+
+/**
+ * 普通模式内容的汇总方式，参见{@link ExcelExportUtils#aggregate(ExlAggregate, String...)}.
+ * <br>空值不参与汇总，无法解析为数字的值只参与计数
+ * 
+ * @author xlsiek
+ *
+ */
+public enum ExlAggregate {
+	/** 求和 */
+	SUM,
+	/** 非空值个数 */
+	COUNT,
+	/** 最小值 */
+	MIN,
+	/** 最大值 */
+	MAX,
+	/** 平均值 */
+	AVG
+}
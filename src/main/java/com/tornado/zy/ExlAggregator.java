@@ -0,0 +1,130 @@
+package com.tornado.zy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 按列累加汇总值，每个内容列一组基本类型的累加器，不保存数据本身.
+ * <br>分组小计与总计各用一个实例，行数据流过时逐行累加
+ * 
+ * @author xlsiek
+ *
+ */
+final class ExlAggregator {
+	private final ExlAggregate[] aggregates;//各内容列的汇总方式，不汇总的列为null
+	private final long[] count;//非空值个数
+	private final long[] numbers;//数值个数
+	private final double[] sum;
+	private final double[] min;
+	private final double[] max;
+
+	ExlAggregator(ExlAggregate[] aggregates) {
+		this.aggregates = aggregates;
+		int columns = aggregates.length;
+		count = new long[columns];
+		numbers = new long[columns];
+		sum = new double[columns];
+		min = new double[columns];
+		max = new double[columns];
+		reset();
+	}
+
+	/**
+	 * 累加一行
+	 * @param raw 按列存放的原始值，raw[列][块内行]，不汇总的列可以为null
+	 * @param r 块内行
+	 */
+	void add(String[][] raw, int r) {
+		for (int i = 0; i < aggregates.length; i++) {
+			if (aggregates[i] == null) {
+				continue;
+			}
+			String value = raw[i][r];
+			if (StringUtils.isEmpty(value)) {
+				continue;
+			}
+			count[i]++;
+			if (aggregates[i] == ExlAggregate.COUNT) {
+				continue;
+			}
+			if (!StringUtils.isNumber(value)) {
+				continue;//不是数字的值只计数
+			}
+			double number = Double.parseDouble(value);
+			numbers[i]++;
+			sum[i] += number;
+			if (number < min[i]) min[i] = number;
+			if (number > max[i]) max[i] = number;
+		}
+	}
+
+	/**
+	 * 该列是否有汇总值。除计数外，没有数值时为false
+	 * @param i 内容列
+	 * @return boolean
+	 */
+	boolean has(int i) {
+		return aggregates[i] == ExlAggregate.COUNT || (aggregates[i] != null && numbers[i] > 0);
+	}
+
+	/**
+	 * 该列的汇总值，调用前先检查{@link #has(int)}
+	 * @param i 内容列
+	 * @return double
+	 */
+	double result(int i) {
+		switch (aggregates[i]) {
+		case SUM:
+			return sum[i];
+		case COUNT:
+			return count[i];
+		case MIN:
+			return min[i];
+		case MAX:
+			return max[i];
+		default:
+			return sum[i] / numbers[i];
+		}
+	}
+
+	void reset() {
+		for (int i = 0; i < aggregates.length; i++) {
+			count[i] = 0;
+			numbers[i] = 0;
+			sum[i] = 0;
+			min[i] = Double.POSITIVE_INFINITY;
+			max[i] = Double.NEGATIVE_INFINITY;
+		}
+	}
+
+	/**
+	 * 保存累加状态，供断点续传
+	 * @param state 状态输出
+	 * @throws IOException
+	 */
+	void save(DataOutput state) throws IOException {
+		for (int i = 0; i < aggregates.length; i++) {
+			state.writeLong(count[i]);
+			state.writeLong(numbers[i]);
+			state.writeDouble(sum[i]);
+			state.writeDouble(min[i]);
+			state.writeDouble(max[i]);
+		}
+	}
+
+	/**
+	 * 恢复{@link #save(DataOutput)}保存的累加状态
+	 * @param state 状态输入
+	 * @throws IOException
+	 */
+	void restore(DataInput state) throws IOException {
+		for (int i = 0; i < aggregates.length; i++) {
+			count[i] = state.readLong();
+			numbers[i] = state.readLong();
+			sum[i] = state.readDouble();
+			min[i] = state.readDouble();
+			max[i] = state.readDouble();
+		}
+	}
+}
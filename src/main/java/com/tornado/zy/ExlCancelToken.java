@@ -0,0 +1,56 @@
+package com.tornado.zy;
+
+/**
+ * 导出取消标记。由调用方持有，例如浏览器断开下载时调用{@link #cancel()}，
+ * 导出在绘制每一行时检查该标记，尽快中止并释放工作簿，结果见{@link ExlExportStats#isCancelled()}.
+ * <br>可以在任意线程中取消，同一个标记可以同时用于多个导出
+ * 
+ * @author xlsiek
+ *
+ */
+public class ExlCancelToken {
+	private volatile boolean cancelled = false;
+
+	private ExlCancelToken() {
+
+	}
+
+	/**
+	 * 调用此方法初始化
+	 * @return ExlCancelToken
+	 */
+	public static ExlCancelToken c() {
+		return new ExlCancelToken();
+	}
+
+	/**
+	 * 取消
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * 已取消时抛出{@link Cancelled}，由导出入口捕获
+	 */
+	void check() {
+		if (cancelled) {
+			throw new Cancelled();
+		}
+	}
+
+	/**
+	 * 用于从绘制循环中退出，不记录堆栈
+	 */
+	static final class Cancelled extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Cancelled() {
+			super("导出已取消", null, false, false);
+		}
+	}
+}
@@ -1,7 +1,11 @@
 package com.tornado.zy;
 
+import java.util.Arrays;
+
 /**
  * 单元格（列），多个单元格存在一个行记录中。单元格支持合并行,合并列记录。
+ * <br>{@link ExlRow#addCell(ExlCell)}只拷贝单元格的属性，单元格记住所在的行及位置，添加之后的修改写回到行中；
+ * {@link ExlRow#getCell()}返回的单元格同样写回。位置被移除或替换后，修改只作用于单元格本身
  * 
  * @author xlsiek
  *
@@ -15,6 +19,10 @@ public class ExlCell {
 	private Object value;
 	
 	private String[] underLineString = null;//下划线文本
+	private ExlRow[] rows = null;//已添加到的行，修改时写回
+	private int[] rowIds = null;//在各行中的位置编号
+	private int[] rowIndexes = null;//在各行中的下标，用于快速找回位置
+	private int attached = 0;//添加的次数
 
 	private ExlCell(Object value, int rowspan, int colspan, boolean border) {
 		this.border = border;
@@ -86,6 +94,7 @@ public class ExlCell {
 	 */
 	public ExlCell alignLeft() {
 		alignCenter = false;
+		writeBack();
 		return this;
 	}
 
@@ -96,6 +105,7 @@ public class ExlCell {
 	 */
 	public ExlCell noBorder() {
 		border = false;
+		writeBack();
 		return this;
 	}
 
@@ -115,6 +125,7 @@ public class ExlCell {
 	 */
 	public ExlCell width(int width) {
 		this.width = width;
+		writeBack();
 		return this;
 	}
 	
@@ -125,6 +136,7 @@ public class ExlCell {
 	 */
 	public ExlCell uString(String... u){
 		underLineString = u;
+		writeBack();
 		return this;
 	}
 
@@ -140,6 +152,7 @@ public class ExlCell {
 		if (rowspan <= 1)
 			rowspan = 0;
 		this.rowspan = rowspan;
+		writeBack();
 	}
 
 	public int getColspan() {
@@ -150,6 +163,7 @@ public class ExlCell {
 		if (colspan <= 1)
 			colspan = 0;
 		this.colspan = colspan;
+		writeBack();
 	}
 
 	public Object getValue() {
@@ -158,10 +172,48 @@ public class ExlCell {
 
 	public void setValue(Object value) {
 		this.value = value;
+		writeBack();
 	}
 	
 	public String[] getUnderLineString(){
 		return underLineString;
 	}
 
+	/**
+	 * 添加到行中之后调用，此后的修改写回到该位置
+	 * @param row 行
+	 * @param id 位置编号
+	 * @param index 当前下标
+	 */
+	void attach(ExlRow row, int id, int index) {
+		if (rows == null) {
+			rows = new ExlRow[1];
+			rowIds = new int[1];
+			rowIndexes = new int[1];
+		} else if (attached == rows.length) {
+			rows = Arrays.copyOf(rows, attached * 2);
+			rowIds = Arrays.copyOf(rowIds, attached * 2);
+			rowIndexes = Arrays.copyOf(rowIndexes, attached * 2);
+		}
+		rows[attached] = row;
+		rowIds[attached] = id;
+		rowIndexes[attached] = index;
+		attached++;
+	}
+
+	/**
+	 * 属性修改后写回到所在的行，已不在行中的位置不再写回
+	 */
+	private void writeBack() {
+		if (rows == null) {
+			return;
+		}
+		for (int i = 0; i < attached; i++) {
+			if (rows[i] != null) {
+				rowIndexes[i] = rows[i].update(rowIds[i], rowIndexes[i], this);
+				if (rowIndexes[i] < 0) rows[i] = null;
+			}
+		}
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.tornado.zy;
+
+/**
+ * 自定义模式单元格样式，对齐方向与边框的四种组合，全局共享.
+ * key与{@link ExlStyleRegistry}中的样式名对应
+ * 
+ * @author xlsiek
+ *
+ */
+public enum ExlCellStyle {
+	CENTER_BORDER("cellcb"),
+	CENTER_NO_BORDER("cellcnb"),
+	LEFT_BORDER("celllb"),
+	LEFT_NO_BORDER("celllnb");
+
+	private final static ExlCellStyle[] VALUES = values();
+	private final String key;
+
+	ExlCellStyle(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * 根据对齐方向和边框获取样式
+	 * @param alignCenter 是否居中
+	 * @param border 是否有边框
+	 * @return ExlCellStyle
+	 */
+	public static ExlCellStyle of(boolean alignCenter, boolean border) {
+		return alignCenter ? (border ? CENTER_BORDER : CENTER_NO_BORDER) : (border ? LEFT_BORDER : LEFT_NO_BORDER);
+	}
+
+	static ExlCellStyle valueOf(int ordinal) {
+		return VALUES[ordinal];
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public boolean isAlignCenter() {
+		return this == CENTER_BORDER || this == CENTER_NO_BORDER;
+	}
+
+	public boolean isBorder() {
+		return this == CENTER_BORDER || this == LEFT_BORDER;
+	}
+}
@@ -0,0 +1,65 @@
+package com.tornado.zy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 写入{@link WritableByteChannel}的输出流，数据先放入一个直接缓冲区，满了或flush时整块写入通道，
+ * 避免每次写入时JDK为堆内存缓冲区额外复制一次
+ * 
+ * @author xlsiek
+ *
+ */
+class ExlChannelOutputStream extends OutputStream {
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer;
+
+	ExlChannelOutputStream(WritableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			drain();
+		}
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (!buffer.hasRemaining()) {
+				drain();
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.put(b, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drain();
+	}
+
+	/**
+	 * 只输出缓冲区，不关闭通道
+	 */
+	@Override
+	public void close() throws IOException {
+		drain();
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
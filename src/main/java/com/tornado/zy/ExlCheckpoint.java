@@ -0,0 +1,119 @@
+package com.tornado.zy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 断点续传的检查点文件，与输出文件同目录，名为"输出文件名.checkpoint"，参见{@link ExcelExportUtils#exportResumable(Path, int)}.
+ * <br>先写入临时文件并落盘，再原子替换，任何时候读到的都是某个完整的检查点。文件头记录配置的键，配置改变后原有检查点作废
+ *
+ * @author xlsiek
+ *
+ */
+final class ExlCheckpoint {
+	private final static int MAGIC = 0x45584c43;//EXLC
+	private final static int VERSION = 1;
+	private final Path file;
+	private final String key;
+
+	/**
+	 * @param output 输出文件
+	 * @param key 配置的键
+	 */
+	ExlCheckpoint(Path output, String key) {
+		this.file = output.resolveSibling(output.getFileName() + ".checkpoint");
+		this.key = key;
+	}
+
+	/**
+	 * 读取检查点，不存在时为null；不是同一配置或已损坏时删除并返回null
+	 * @return 定位到状态开始处的输入，由调用方关闭
+	 * @throws IOException
+	 */
+	DataInputStream open() throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 16 * 1024));
+		try {
+			if (in.readInt() == MAGIC && in.readInt() == VERSION && key.equals(readString(in))) {
+				return in;
+			}
+		} catch (EOFException e) {
+			//不完整，作废
+		}
+		in.close();
+		Files.delete(file);
+		return null;
+	}
+
+	/**
+	 * 保存检查点
+	 * @param state 写出状态
+	 * @throws IOException
+	 */
+	void save(State state) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 16 * 1024));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(out, key);
+			state.write(out);
+			out.flush();
+			channel.force(true);
+		}
+		Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * 导出完成，删除检查点
+	 * @throws IOException
+	 */
+	void delete() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * 检查点的内容
+	 */
+	interface State {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * 可以为null、不限长度的字符串
+	 */
+	static void writeString(DataOutput out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,180 @@
+package com.tornado.zy;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 断点续传的输出，参见{@link ExcelExportUtils#exportResumable(Path, int)}：管理输出文件的通道、检查点文件、流式写入器的状态
+ * 及数据源读取到的位置.
+ * <br>检查点依次记录写入器的状态、已读取的记录数、最后一条记录的键，之后是内容自身的状态（行号、分组及小计），
+ * 由{@link Content}按相同的顺序保存、恢复
+ *
+ * @author xlsiek
+ *
+ */
+final class ExlCheckpointer implements Closeable {
+	private final ExlCheckpoint checkpoint;
+	private final int every;//检查点间隔，块大小的整数倍，检查点总在块的边界
+	private final Iterable<?> data;
+	private final FileChannel channel;
+	private final ExlChannelOutputStream out;
+	private ExlXlsxStreamWriter writer = null;
+	private DataInputStream state = null;//从检查点继续时，尚未读取的内容状态
+	private int position = 0;//检查点时已读取的记录数
+	private String lastKey = null;//检查点时最后一条记录的键
+
+	/**
+	 * @param file 输出文件
+	 * @param key 配置的键，配置改变后原有检查点作废
+	 * @param every 检查点间隔行数
+	 * @param data 数据源，可以为null
+	 * @throws IOException
+	 */
+	ExlCheckpointer(Path file, String key, int every, Iterable<?> data) throws IOException {
+		this.checkpoint = new ExlCheckpoint(file, key);
+		this.every = every;
+		this.data = data;
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.out = new ExlChannelOutputStream(channel, 64 * 1024);
+	}
+
+	/**
+	 * 打开写入器：没有检查点时清空文件，由factory新建；否则截掉文件中最后一个检查点之后的部分并恢复写入器，
+	 * 之后重新绘制的部分不再输出，直到{@link #restore(Content)}
+	 * @param factory 新建写入器，创建时即写出包的开头，所以在清空文件之后调用
+	 * @param fontSize 临时字体大小
+	 * @param flushRows 刷新行数
+	 * @param flushBytes 刷新字节数
+	 * @return 写入器
+	 * @throws IOException
+	 */
+	ExlXlsxStreamWriter open(Factory factory, int fontSize, int flushRows, long flushBytes) throws IOException {
+		state = checkpoint.open();
+		if (state == null) {
+			channel.truncate(0);
+			writer = factory.create(out);
+		} else {
+			writer = ExlXlsxStreamWriter.resume(out, fontSize, flushRows, flushBytes, state);
+			channel.truncate(writer.getBytesWritten());
+			channel.position(writer.getBytesWritten());
+			position = state.readInt();
+			lastKey = ExlCheckpoint.readString(state);
+		}
+		return writer;
+	}
+
+	/**
+	 * 恢复内容的状态，在重新绘制内容之前的部分之后调用。没有检查点时什么也不做
+	 */
+	void restore(Content content) throws IOException {
+		if (state == null) {
+			return;
+		}
+		try {
+			writer.replayDone();
+			content.restore(position, state);
+		} finally {
+			state.close();
+			state = null;
+		}
+	}
+
+	/**
+	 * 从检查点的位置继续读取数据源：{@link ExlResumableSource}按位置及键继续，List直接定位，其他数据源从头读取并跳过
+	 */
+	Iterator<?> iterator() {
+		if (data == null) {
+			return Collections.emptyIterator();
+		}
+		if (data instanceof ExlResumableSource) {
+			return ((ExlResumableSource<?>) data).iterator(position, lastKey);
+		}
+		if (data instanceof List) {
+			return ((List<?>) data).listIterator(position);
+		}
+		Iterator<?> iterator = data.iterator();
+		for (int i = 0; i < position && iterator.hasNext(); i++) {
+			iterator.next();
+		}
+		return iterator;
+	}
+
+	/**
+	 * 写出一块内容之后调用，到了检查点的位置时，已写出的数据落盘后再保存检查点，检查点中的位置总是已经在文件中
+	 * @param position 已读取的记录数
+	 * @param last 最后读取的记录
+	 * @param content 内容的状态
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	void written(int position, Object last, Content content) throws IOException {
+		if (position % every != 0) {
+			return;
+		}
+		this.position = position;
+		lastKey = data instanceof ExlResumableSource ? ((ExlResumableSource<Object>) data).key(last) : null;
+		writer.checkpoint();
+		channel.force(false);
+		checkpoint.save(state -> {
+			writer.save(state);
+			state.writeInt(this.position);
+			ExlCheckpoint.writeString(state, lastKey);
+			content.save(state);
+		});
+	}
+
+	/**
+	 * 导出完成，写出剩余的数据
+	 */
+	void finish() throws IOException {
+		out.close();
+	}
+
+	/**
+	 * 导出完成并关闭之后，删除检查点
+	 */
+	void delete() throws IOException {
+		checkpoint.delete();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (state != null) {
+				state.close();
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * 新建写入器
+	 */
+	interface Factory {
+		ExlXlsxStreamWriter create(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * 内容自身的状态
+	 */
+	interface Content {
+		void save(DataOutput state) throws IOException;
+
+		/**
+		 * @param position 已读取的记录数
+		 * @param state 检查点
+		 */
+		void restore(int position, DataInput state) throws IOException;
+	}
+}
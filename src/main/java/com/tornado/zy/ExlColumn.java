@@ -0,0 +1,51 @@
+package com.tornado.zy;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注导出列。编译时由{@link ExlColumnProcessor}为标注了列的类生成行写入器（类名+ExlWriter，同一包），
+ * 直接调用getter取值，不使用反射，列名写错在编译时即报错.
+ * <pre>
+ * public class Item {
+ *     &#64;ExlColumn(order = 1, header = "名称")
+ *     private String one;
+ *     &#64;ExlColumn(order = 2, header = "金额", format = "0.00")
+ *     private double two;
+ *     ...
+ * }
+ * utils.rowWriter(new ItemExlWriter()).contentData(items);
+ * </pre>
+ * 标注在类上时类中所有实例字段（transient除外）都是列，按声明顺序，列名为字段名；类上只能使用默认属性，
+ * 需要改名、排序、格式化的字段再单独标注
+ * @author xlsiek
+ *
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.FIELD, ElementType.TYPE})
+public @interface ExlColumn {
+	/**
+	 * 列名，即{@link ExcelExportUtils#contentColumns(String...)}中的属性名，默认为字段名
+	 */
+	String name() default "";
+
+	/**
+	 * 列顺序，从小到大，相同时按字段声明顺序
+	 */
+	int order() default 0;
+
+	/**
+	 * 表头文字，默认为列名
+	 */
+	String header() default "";
+
+	/**
+	 * 格式，数字使用{@link java.text.DecimalFormat}，Date使用{@link java.text.SimpleDateFormat}，
+	 * java.time类型使用{@link java.time.format.DateTimeFormatter}。默认为toString
+	 */
+	String format() default "";
+}
@@ -0,0 +1,311 @@
+package com.tornado.zy;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * {@link ExlColumn}注解处理器，为每个标注了列的类生成{@link ExlRowWriter}实现.
+ * <br>生成的类与原类在同一包，类名为原类名+ExlWriter（内部类以_连接外部类名），每列一个列名常量，
+ * 例如contentColumns(ItemExlWriter.ONE, ItemExlWriter.TWO)，列名写错时无法编译.
+ * <br>取值优先使用getter（getXxx，boolean为isXxx），没有getter时直接访问非private字段，两者都没有时编译报错.
+ * <br>@ExlColumn标注在类上时，类中所有非static、非transient的字段都是列，字段上的@ExlColumn可以再指定列名、顺序、表头、格式.
+ * 泛型类的写入器以通配符实现，例如ExlRowWriter&lt;Box&lt;?&gt;&gt;
+ * <p>注册方式：使用本库的工程在编译参数中加入-processor com.tornado.zy.ExlColumnProcessor，
+ * 或在maven-compiler-plugin的annotationProcessorPaths中引入本库。
+ * 本库不声明META-INF/services，避免编译本库自身时加载尚未编译的处理器</p>
+ * @author xlsiek
+ *
+ */
+@SupportedAnnotationTypes("com.tornado.zy.ExlColumn")
+public class ExlColumnProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Set<TypeElement> types = new LinkedHashSet<>();
+		for (Element element : roundEnv.getElementsAnnotatedWith(ExlColumn.class)) {
+			types.add((TypeElement) (element instanceof TypeElement ? element : element.getEnclosingElement()));
+		}
+		for (TypeElement type : types) {
+			List<Column> columns = columns(type);
+			if (columns != null) {
+				write(type, columns);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 收集并检查列，按order及声明顺序排列
+	 * @return 有错误时为null，错误已报告
+	 */
+	private List<Column> columns(TypeElement type) {
+		boolean ok = true;
+		if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.PRIVATE)
+				|| (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))) {
+			error(type, "@ExlColumn只能用于顶层类或非private的静态内部类");
+			return null;
+		}
+		ExlColumn all = type.getAnnotation(ExlColumn.class);//标注在类上时所有实例字段都是列
+		if (all != null && (!all.name().isEmpty() || all.order() != 0 || !all.header().isEmpty() || !all.format().isEmpty())) {
+			error(type, "类上的@ExlColumn只表示所有实例字段都是列，name、order、header、format请标注在字段上");
+			return null;
+		}
+		List<ExecutableElement> methods = ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type));
+		List<Column> columns = new ArrayList<>();
+		Set<String> names = new HashSet<>();
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			ExlColumn annotation = field.getAnnotation(ExlColumn.class);
+			if (annotation == null && (all == null || field.getModifiers().contains(Modifier.STATIC)
+					|| field.getModifiers().contains(Modifier.TRANSIENT))) {
+				continue;
+			}
+			Column column = new Column();
+			column.index = columns.size();
+			column.name = field.getSimpleName().toString();
+			column.format = "";
+			if (annotation != null) {
+				column.order = annotation.order();
+				column.name = annotation.name().isEmpty() ? column.name : annotation.name();
+				column.header = annotation.header();
+				column.format = annotation.format();
+			}
+			column.header = column.header == null || column.header.isEmpty() ? column.name : column.header;
+			if (!names.add(column.name)) {
+				error(field, "列名重复：" + column.name);
+				ok = false;
+			}
+			if (field.getModifiers().contains(Modifier.STATIC)) {
+				error(field, "@ExlColumn不能用于静态字段");
+				ok = false;
+				continue;
+			}
+			ExecutableElement getter = getter(methods, field);
+			if (getter != null) {
+				column.access = getter.getSimpleName() + "()";
+				column.type = getter.getReturnType();
+			} else if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+				column.access = field.getSimpleName().toString();
+				column.type = field.asType();
+			} else {
+				error(field, "找不到" + field.getSimpleName() + "的getter，字段也不可访问");
+				ok = false;
+				continue;
+			}
+			if (!column.format.isEmpty()) {
+				column.formatter = formatter(field, column);
+				ok &= column.formatter != null;
+			}
+			columns.add(column);
+		}
+		columns.sort(Comparator.comparingInt((Column c) -> c.order).thenComparingInt(c -> c.index));
+		return ok ? columns : null;
+	}
+
+	private ExecutableElement getter(List<ExecutableElement> methods, VariableElement field) {
+		String name = field.getSimpleName().toString();
+		String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		boolean bool = field.asType().getKind() == TypeKind.BOOLEAN;
+		for (ExecutableElement method : methods) {
+			String methodName = method.getSimpleName().toString();
+			if (method.getParameters().isEmpty() && method.getReturnType().getKind() != TypeKind.VOID
+					&& !method.getModifiers().contains(Modifier.PRIVATE) && !method.getModifiers().contains(Modifier.STATIC)
+					&& (methodName.equals("get" + suffix) || (bool && methodName.equals("is" + suffix)))) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 检查格式并决定格式化类
+	 * @return 格式化类名，不适用时为null，错误已报告
+	 */
+	private String formatter(VariableElement field, Column column) {
+		TypeMirror type = column.type;
+		try {
+			if (isNumber(type)) {
+				new DecimalFormat(column.format);
+				return DecimalFormat.class.getName();
+			}
+			if (isAssignable(type, "java.util.Date")) {
+				new SimpleDateFormat(column.format);
+				return SimpleDateFormat.class.getName();
+			}
+			if (isAssignable(type, "java.time.temporal.TemporalAccessor")) {
+				DateTimeFormatter.ofPattern(column.format);
+				return DateTimeFormatter.class.getName();
+			}
+		} catch (IllegalArgumentException e) {
+			error(field, "格式错误：" + e.getMessage());
+			return null;
+		}
+		error(field, "format只适用于数字及日期类型");
+		return null;
+	}
+
+	private boolean isNumber(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return type.getKind() != TypeKind.BOOLEAN && type.getKind() != TypeKind.CHAR;
+		}
+		return isAssignable(type, "java.lang.Number");
+	}
+
+	private boolean isAssignable(TypeMirror type, String target) {
+		TypeElement element = processingEnv.getElementUtils().getTypeElement(target);
+		return element != null && processingEnv.getTypeUtils().isAssignable(type, element.asType());
+	}
+
+	private void write(TypeElement type, List<Column> columns) {
+		String packageName = ((PackageElement) packageOf(type)).getQualifiedName().toString();
+		String simpleName = writerName(type);
+		String linkType = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+		StringBuilder recordType = new StringBuilder(type.getQualifiedName());//泛型类以通配符实现，不使用原始类型
+		for (int i = 0; i < type.getTypeParameters().size(); i++) {
+			recordType.append(i == 0 ? "<?" : ", ?").append(i == type.getTypeParameters().size() - 1 ? ">" : "");
+		}
+		StringBuilder source = new StringBuilder(2048);
+		if (!packageName.isEmpty()) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+		source.append("/**\n * 由{@link com.tornado.zy.ExlColumnProcessor}根据{@link ").append(linkType).append("}生成，请勿修改\n */\n");
+		source.append("public final class ").append(simpleName).append(" implements com.tornado.zy.ExlRowWriter<")
+				.append(recordType).append("> {\n");
+		Set<String> constants = new HashSet<>(Arrays.asList("COLUMNS", "HEADERS"));
+		for (Column column : columns) {
+			String constant = constantName(column.name);
+			if (SourceVersion.isIdentifier(constant) && !SourceVersion.isKeyword(constant) && constants.add(constant)) {
+				source.append("\tpublic static final String ").append(constant).append(" = ").append(literal(column.name)).append(";\n");
+			}
+		}
+		source.append("\tprivate static final String[] COLUMNS = {");
+		for (int i = 0; i < columns.size(); i++) {
+			source.append(i == 0 ? "" : ", ").append(literal(columns.get(i).name));
+		}
+		source.append("};\n\tprivate static final String[] HEADERS = {");
+		for (int i = 0; i < columns.size(); i++) {
+			source.append(i == 0 ? "" : ", ").append(literal(columns.get(i).header));
+		}
+		source.append("};\n");
+		for (int i = 0; i < columns.size(); i++) {
+			Column column = columns.get(i);
+			if (column.formatter == null) {
+				continue;
+			}
+			if (column.formatter.equals(DateTimeFormatter.class.getName())) {
+				source.append("\tprivate static final ").append(column.formatter).append(" format").append(i).append(" = ")
+						.append(column.formatter).append(".ofPattern(").append(literal(column.format)).append(");\n");
+			} else {
+				source.append("\tprivate final ").append(column.formatter).append(" format").append(i).append(" = new ")
+						.append(column.formatter).append('(').append(literal(column.format)).append(");\n");
+			}
+		}
+		source.append("\n\t@Override\n\tpublic String[] columns() {\n\t\treturn COLUMNS.clone();\n\t}\n");
+		source.append("\n\t@Override\n\tpublic String[] headers() {\n\t\treturn HEADERS.clone();\n\t}\n");
+		source.append("\n\t@Override\n\tpublic String value(").append(recordType).append(" record, int column) {\n\t\tswitch (column) {\n");
+		for (int i = 0; i < columns.size(); i++) {
+			Column column = columns.get(i);
+			source.append("\t\tcase ").append(i).append(":\n");
+			if (column.type.getKind().isPrimitive()) {
+				source.append("\t\t\treturn ").append(column.formatter == null ? "String.valueOf(" : "format" + i + ".format(")
+						.append("record.").append(column.access).append(");\n");
+			} else {
+				String valueType = column.formatter != null && column.formatter.equals(DateTimeFormatter.class.getName())
+						? "java.time.temporal.TemporalAccessor" : "Object";
+				source.append("\t\t{\n\t\t\t").append(valueType).append(" value = record.").append(column.access).append(";\n");
+				source.append("\t\t\treturn value == null ? \"\" : ")
+						.append(column.formatter == null ? "value.toString()" : "format" + i + ".format(value)").append(";\n\t\t}\n");
+			}
+		}
+		source.append("\t\tdefault:\n\t\t\tthrow new IndexOutOfBoundsException(\"列下标\" + column);\n\t\t}\n\t}\n}\n");
+		String name = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+		try (Writer writer = processingEnv.getFiler().createSourceFile(name, type).openWriter()) {
+			writer.write(source.toString());
+		} catch (IOException e) {
+			error(type, "无法生成" + name + "：" + e.getMessage());
+		}
+	}
+
+	private static Element packageOf(Element element) {
+		while (element.getKind() != ElementKind.PACKAGE) {
+			element = element.getEnclosingElement();
+		}
+		return element;
+	}
+
+	/**
+	 * 原类名+ExlWriter，内部类以_连接外部类名
+	 */
+	private static String writerName(TypeElement type) {
+		StringBuilder name = new StringBuilder(type.getSimpleName());
+		for (Element outer = type.getEnclosingElement(); outer instanceof TypeElement; outer = outer.getEnclosingElement()) {
+			name.insert(0, '_').insert(0, outer.getSimpleName());
+		}
+		return name.append("ExlWriter").toString();
+	}
+
+	/**
+	 * schoolType -&gt; SCHOOL_TYPE
+	 */
+	private static String constantName(String name) {
+		StringBuilder constant = new StringBuilder(name.length() + 4);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isUpperCase(c) && i > 0 && !Character.isUpperCase(name.charAt(i - 1))) {
+				constant.append('_');
+			}
+			constant.append(Character.toUpperCase(c));
+		}
+		return constant.toString();
+	}
+
+	private String literal(String value) {
+		return processingEnv.getElementUtils().getConstantExpression(value);
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+	private static final class Column {
+		private int index;//声明顺序
+		private int order;
+		private String name;
+		private String header;
+		private String format;
+		private String access;//取值表达式，getter调用或字段名
+		private TypeMirror type;
+		private String formatter;//格式化类名
+	}
+}
@@ -0,0 +1,34 @@
+package com.tornado.zy;
+
+import java.util.List;
+
+/**
+ * 列渲染器，一次接收同一列连续若干行的值，适合批量处理（例如批量日期格式化、字典翻译）.
+ * <br>与{@link ExlCellRender}相比，每列每批只调用一次，而不是每个单元格调用一次.
+ * 
+ * @author xlsiek
+ *
+ */
+@FunctionalInterface
+public interface ExlColumnRender<T> {
+	/**
+	 * 格式化一批值，结果直接写回values
+	 * @param values 该列的原始值，只有前records.size()个有效，空值已转为""
+	 * @param records values对应的行记录
+	 * @param firstIndex 第一行的行号，从0开始
+	 */
+	void format(String[] values, List<T> records, int firstIndex);
+
+	/**
+	 * 将单元格渲染器包装为列渲染器
+	 * @param render 单元格渲染器
+	 * @return ExlColumnRender
+	 */
+	static <T> ExlColumnRender<T> of(ExlCellRender<T> render) {
+		return (values, records, firstIndex) -> {
+			for (int i = 0, size = records.size(); i < size; i++) {
+				values[i] = render.format(values[i], records.get(i), firstIndex + i);
+			}
+		};
+	}
+}
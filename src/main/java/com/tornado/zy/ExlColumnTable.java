@@ -0,0 +1,206 @@
+package com.tornado.zy;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 列式数据表，普通模式的另一种数据来源，参见{@link ExcelExportUtils#contentTable(ExlColumnTable)}.
+ * <br>每列是一个基本类型数组（int[]、long[]、double[]）或字典编码的字符串列（代码数组+字典），
+ * 可选一个BitSet标记空值。列按名称与{@link ExcelExportUtils#contentColumns(String...)}绑定，
+ * 导出时直接读取数组写入单元格，不创建行对象，也不装箱.
+ * <p>数值列写为excel数值单元格，long超过2^53的部分会丢失精度。注册了渲染器的列会先转为字符串再渲染，
+ * 渲染器的record参数为null</p>
+ * <pre>
+ * ExlColumnTable table = ExlColumnTable.c(ids.length)
+ *     .intColumn("id", ids)
+ *     .dictColumn("area", areaCodes, areaNames)
+ *     .doubleColumn("amount", amounts).nulls("amount", amountNulls);
+ * ExcelExportUtils.c().contentColumns("id", "area", "amount").contentTable(table).export(out);
+ * </pre>
+ * @author xlsiek
+ *
+ */
+public final class ExlColumnTable {
+	private final static byte INT = 0;
+	private final static byte LONG = 1;
+	private final static byte DOUBLE = 2;
+	private final static byte DICT = 3;
+
+	private final int rowCount;
+	private Map<String,Column> columns = new HashMap<>();
+
+	private ExlColumnTable(int rowCount) {
+		this.rowCount = rowCount;
+	}
+
+	/**
+	 * 初始化
+	 * @param rowCount 行数，所有列数组长度不能小于行数
+	 * @return ExlColumnTable
+	 */
+	public static ExlColumnTable c(int rowCount) {
+		return new ExlColumnTable(rowCount);
+	}
+
+	/**
+	 * 增加int列
+	 * @param name 列名
+	 * @param values 值
+	 * @return ExlColumnTable
+	 */
+	public ExlColumnTable intColumn(String name, int[] values) {
+		checkLength(name, values.length);
+		Column column = new Column(INT);
+		column.ints = values;
+		columns.put(name, column);
+		return this;
+	}
+
+	/**
+	 * 增加long列
+	 * @param name 列名
+	 * @param values 值
+	 * @return ExlColumnTable
+	 */
+	public ExlColumnTable longColumn(String name, long[] values) {
+		checkLength(name, values.length);
+		Column column = new Column(LONG);
+		column.longs = values;
+		columns.put(name, column);
+		return this;
+	}
+
+	/**
+	 * 增加double列
+	 * @param name 列名
+	 * @param values 值
+	 * @return ExlColumnTable
+	 */
+	public ExlColumnTable doubleColumn(String name, double[] values) {
+		checkLength(name, values.length);
+		Column column = new Column(DOUBLE);
+		column.doubles = values;
+		columns.put(name, column);
+		return this;
+	}
+
+	/**
+	 * 增加字典编码的字符串列，单元格值为dict[codes[行]]，代码为负数时视为空值
+	 * @param name 列名
+	 * @param codes 每行的代码
+	 * @param dict 字典
+	 * @return ExlColumnTable
+	 */
+	public ExlColumnTable dictColumn(String name, int[] codes, String[] dict) {
+		checkLength(name, codes.length);
+		Column column = new Column(DICT);
+		column.ints = codes;
+		column.dict = dict;
+		columns.put(name, column);
+		return this;
+	}
+
+	/**
+	 * 为已存在的列设置空值标记，置位的行输出为空单元格
+	 * @param name 列名
+	 * @param nulls 空值标记，下标为行号
+	 * @return ExlColumnTable
+	 */
+	public ExlColumnTable nulls(String name, BitSet nulls) {
+		column(name).nulls = nulls;
+		return this;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * 按名称获取列
+	 * @param name 列名
+	 * @return Column
+	 */
+	Column column(String name) {
+		Column column = columns.get(name);
+		if (column == null) {
+			throw new IllegalArgumentException("no column named " + name);
+		}
+		return column;
+	}
+
+	private void checkLength(String name, int length) {
+		if (length < rowCount) {
+			throw new IllegalArgumentException("column " + name + " has " + length + " values, expected " + rowCount);
+		}
+	}
+
+	/**
+	 * 一列数据，按类型只有一个数组有效
+	 */
+	static final class Column {
+		private final byte kind;
+		private int[] ints;//int列或字典列的代码
+		private long[] longs;
+		private double[] doubles;
+		private String[] dict;
+		private BitSet nulls;
+
+		private Column(byte kind) {
+			this.kind = kind;
+		}
+
+		boolean isNull(int row) {
+			return (nulls != null && nulls.get(row)) || (kind == DICT && ints[row] < 0);
+		}
+
+		/**
+		 * 将指定行的值直接写入单元格，空值只写样式
+		 * @param writer 写入目标
+		 * @param sheetRow 工作表中的行
+		 * @param column 工作表中的列
+		 * @param row 本表中的行号
+		 * @param style 样式
+		 */
+		void write(ExlSheetWriter writer, int sheetRow, int column, int row, String style) {
+			if (isNull(row)) {
+				writer.blank(sheetRow, column, style);
+				return;
+			}
+			switch (kind) {
+			case INT:
+				writer.cell(sheetRow, column, ints[row], style);
+				break;
+			case LONG:
+				writer.cell(sheetRow, column, longs[row], style);
+				break;
+			case DOUBLE:
+				writer.cell(sheetRow, column, doubles[row], style);
+				break;
+			default:
+				writer.cell(sheetRow, column, dict[ints[row]], style);
+			}
+		}
+
+		/**
+		 * 指定行的文本值，供渲染器使用，空值为""
+		 * @param row 行号
+		 * @return 文本
+		 */
+		String text(int row) {
+			if (isNull(row)) {
+				return "";
+			}
+			switch (kind) {
+			case INT:
+				return Integer.toString(ints[row]);
+			case LONG:
+				return Long.toString(longs[row]);
+			case DOUBLE:
+				return Double.toString(doubles[row]);
+			default:
+				return dict[ints[row]];
+			}
+		}
+	}
+}
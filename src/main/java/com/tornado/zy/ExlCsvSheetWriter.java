@@ -0,0 +1,190 @@
+package com.tornado.zy;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.TreeMap;
+
+/**
+ * CSV写入目标，与Excel的"另存为CSV"一致：工作表的每一行输出为一行，合并区域的值只在左上角，样式、行高、列宽均忽略.
+ * <br>{@link #rowsDone(int)}之前的行按顺序输出，中间没有单元格的行输出为空行，每行补齐到已出现的最大列数。
+ * 字段含逗号、双引号或换行时加双引号，行以CRLF结束（RFC 4180）.
+ * 参见{@link ExlTee#csv(OutputStream)}
+ *
+ * @author xlsiek
+ *
+ */
+final class ExlCsvSheetWriter implements ExlSheetWriter {
+	private final CountingOutputStream counter;
+	private final Writer out;
+	private final TreeMap<Integer,TreeMap<Integer,String>> rows = new TreeMap<>();//尚未输出的行
+	private int nextRow = 0;//下一个要输出的行
+	private int columnCount = 0;
+
+	/**
+	 * @param out 输出流，不会被关闭
+	 * @param charset 字符集
+	 */
+	ExlCsvSheetWriter(OutputStream out, Charset charset) {
+		this.counter = new CountingOutputStream(out);
+		this.out = new BufferedWriter(new OutputStreamWriter(counter, charset), 64 * 1024);
+	}
+
+	@Override
+	public void newRow(int row) {
+		rows.put(row, new TreeMap<>());
+	}
+
+	@Override
+	public void ensureRow(int row) {
+		row(row);
+	}
+
+	@Override
+	public void rowHeight(int row, float height) {
+		//CSV没有行高
+	}
+
+	@Override
+	public boolean isDefaultHeight(int row) {
+		return true;
+	}
+
+	@Override
+	public void cell(int row, int column, String value, String style) {
+		put(row, column, value);
+	}
+
+	@Override
+	public void cell(int row, int column, double value, String style) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			put(row, column, String.valueOf(value));
+		} else {
+			put(row, column, value == (long) value ? String.valueOf((long) value) : String.valueOf(value));
+		}
+	}
+
+	@Override
+	public void blank(int row, int column, String style) {
+		put(row, column, "");
+	}
+
+	@Override
+	public void underLineCell(int row, int column, String value, String[] underLines, String style) {
+		put(row, column, value);
+	}
+
+	@Override
+	public void merge(int row, int column, int rowspan, int colspan, boolean border) {
+		//值只在左上角
+	}
+
+	@Override
+	public void columnWidth(int column, int width) {
+		//CSV没有列宽
+	}
+
+	@Override
+	public void rowsDone(int row) throws IOException {
+		while (nextRow < row) {
+			TreeMap<Integer,String> cells = rows.remove(nextRow);
+			writeRow(cells);
+			nextRow++;
+		}
+	}
+
+	@Override
+	public void finish() throws IOException {
+		int end = rows.isEmpty() ? nextRow : rows.lastKey() + 1;
+		rowsDone(end);
+		out.flush();
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return counter.count;
+	}
+
+	private void put(int row, int column, String value) {
+		if (row < nextRow) {
+			throw new IllegalStateException("row " + row + " has already been written");
+		}
+		row(row).put(column, value == null ? "" : value);
+		columnCount = Math.max(columnCount, column + 1);
+	}
+
+	private TreeMap<Integer,String> row(int row) {
+		TreeMap<Integer,String> cells = rows.get(row);
+		if (cells == null) {
+			cells = new TreeMap<>();
+			rows.put(row, cells);
+		}
+		return cells;
+	}
+
+	private void writeRow(TreeMap<Integer,String> cells) throws IOException {
+		for (int c = 0; c < columnCount; c++) {
+			if (c > 0) {
+				out.write(',');
+			}
+			String value = cells == null ? null : cells.get(c);
+			if (value != null) {
+				escape(value);
+			}
+		}
+		out.write("\r\n");
+	}
+
+	private void escape(String value) throws IOException {
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			out.write(value);
+			return;
+		}
+		out.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				out.write('"');
+			}
+			out.write(c);
+		}
+		out.write('"');
+	}
+
+	/**
+	 * 统计写入下游的字节数
+	 */
+	private static final class CountingOutputStream extends FilterOutputStream {
+		private volatile long count = 0;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void close() {
+			//不关闭调用方的输出流
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.tornado.zy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 字典渲染器，将代码翻译为名称.字典在创建时一次性准备好，
+ * 数组字典按整数代码直接下标访问，Map字典使用内部的HashMap副本.
+ * <br>只依赖单元格的值，线程安全，可同时作为{@link ExlCellRender}与{@link ExlColumnRender}注册
+ * <pre>
+ * utils.columnRender(ExlDictRender.array("否", "是"), "three")
+ *      .columnRender(ExlDictRender.map(areaMap).orElse("未知"), "area");
+ * </pre>
+ * @author xlsiek
+ *
+ */
+public final class ExlDictRender implements ExlColumnRender<Object>, ExlCellRender<Object> {
+	private final String[] labels;//数组字典
+	private final int firstCode;//数组字典第一个元素对应的代码
+	private final Map<String,String> dict;//Map字典
+	private final String missing;//找不到时的名称，null则保留原值
+
+	private ExlDictRender(String[] labels, int firstCode, Map<String,String> dict, String missing) {
+		this.labels = labels;
+		this.firstCode = firstCode;
+		this.dict = dict;
+		this.missing = missing;
+	}
+
+	/**
+	 * 数组字典，代码从0开始
+	 * @param labels 名称，下标即代码
+	 * @return ExlDictRender
+	 */
+	public static ExlDictRender array(String... labels) {
+		return array(0, labels);
+	}
+
+	/**
+	 * 数组字典
+	 * @param firstCode 第一个名称对应的代码
+	 * @param labels 名称
+	 * @return ExlDictRender
+	 */
+	public static ExlDictRender array(int firstCode, String... labels) {
+		return new ExlDictRender(labels.clone(), firstCode, null, null);
+	}
+
+	/**
+	 * Map字典
+	 * @param dict 代码到名称的映射，会复制一份
+	 * @return ExlDictRender
+	 */
+	public static ExlDictRender map(Map<String,String> dict) {
+		return new ExlDictRender(null, 0, new HashMap<>(dict), null);
+	}
+
+	/**
+	 * 设置找不到代码时使用的名称，默认保留原值
+	 * @param missing 名称
+	 * @return 新的ExlDictRender
+	 */
+	public ExlDictRender orElse(String missing) {
+		return new ExlDictRender(labels, firstCode, dict, missing);
+	}
+
+	/**
+	 * 翻译单个代码
+	 * @param code 代码
+	 * @return 名称
+	 */
+	public String label(String code) {
+		String label;
+		if (labels != null) {
+			long index = parseCode(code) - firstCode;
+			label = index >= 0 && index < labels.length ? labels[(int) index] : null;
+		} else {
+			label = dict.get(code);
+		}
+		if (label == null) {
+			label = missing == null ? code : missing;
+		}
+		return label;
+	}
+
+	@Override
+	public String format(String v, Object record, int index) {
+		return label(v);
+	}
+
+	@Override
+	public void format(String[] values, List<Object> records, int firstIndex) {
+		for (int i = 0, size = records.size(); i < size; i++) {
+			values[i] = label(values[i]);
+		}
+	}
+
+	/**
+	 * 稳定的描述，作为导出缓存键的一部分，参见{@link ExlExportCache}
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("dict:");
+		if (labels != null) {
+			builder.append(firstCode).append(Arrays.toString(labels));
+		} else {
+			builder.append(new TreeMap<>(dict));
+		}
+		return builder.append(",missing=").append(missing).toString();
+	}
+
+	/**
+	 * 解析整数代码，不是整数或超过18位有效数字时返回Long.MIN_VALUE，避免抛异常.
+	 * 按long解析，前导0不计入位数，例如"0000000001"为1，超出int的代码不会溢出后错配
+	 */
+	private static long parseCode(String code) {
+		int length = code == null ? 0 : code.length();
+		if (length == 0) {
+			return Long.MIN_VALUE;
+		}
+		int i = 0;
+		boolean negative = code.charAt(0) == '-';
+		if (negative) {
+			if (length == 1) return Long.MIN_VALUE;
+			i = 1;
+		}
+		while (i < length - 1 && code.charAt(i) == '0') {
+			i++;
+		}
+		if (length - i > 18) {
+			return Long.MIN_VALUE;
+		}
+		long result = 0;
+		for (; i < length; i++) {
+			char c = code.charAt(i);
+			if (c < '0' || c > '9') {
+				return Long.MIN_VALUE;
+			}
+			result = result * 10 + (c - '0');
+		}
+		return negative ? -result : result;
+	}
+}
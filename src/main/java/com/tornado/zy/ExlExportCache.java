@@ -0,0 +1,343 @@
+package com.tornado.zy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 导出结果缓存。以导出配置（标题、表头、列、渲染器等，见{@link ExcelExportUtils}）及调用方给出的数据版本计算SHA-256作为键，
+ * 生成好的文件保存在本地目录中，命中时直接用{@link FileChannel#transferTo(long, long, WritableByteChannel)}发送，不再重新导出.
+ * <br>按总大小及存放时间淘汰，超出总大小时先淘汰最久未命中的文件。启动时会接管目录中已有的文件.
+ * <p>注意：
+ * <br>1.数据本身不参与计算，数据变化时调用方必须更换数据版本；
+ * <br>2.渲染器按toString区分，未覆盖toString且没有实例字段的命名类按类名区分，有状态的命名类渲染器应覆盖toString返回稳定的描述（例如{@link ExlDictRender}）；
+ * 有状态却未覆盖toString的命名类、lambda及匿名类没有稳定的描述，须通过{@link ExcelExportUtils#renderKey(String)}指定，否则计算键时抛出IllegalArgumentException；
+ * <br>3.ExcelExportUtils只能导出一次，每次请求都应新建配置</p>
+ * <pre>
+ * ExlExportCache cache = ExlExportCache.c(Paths.get("/data/export-cache")).maxBytes(1L &lt;&lt; 30).maxAge(10 * 60 * 1000);
+ * cache.export(ExcelExportUtils.c().title("统计").contentColumns("one", "two").contentData(list), "20170901", out);
+ * </pre>
+ * @author xlsiek
+ *
+ */
+public class ExlExportCache {
+	private final Path dir;
+	private long maxBytes = 512L * 1024 * 1024;//总大小上限
+	private long maxAge = 60 * 60 * 1000;//存放时间上限，毫秒
+	private boolean streaming = false;//缓存未命中时是否以流式xlsx导出
+	private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<>(16, 0.75f, true);//按命中顺序排列
+	private long totalBytes = 0;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	private ExlExportCache(Path dir) throws IOException {
+		this.dir = dir;
+		Files.createDirectories(dir);
+		File[] files = dir.toFile().listFiles();
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(".tmp")) {
+				//上次未完成的导出
+				Files.deleteIfExists(file.toPath());
+			} else if (name.endsWith(".xls") || name.endsWith(".xlsx")) {
+				put(name, file.length(), file.lastModified());
+			}
+		}
+	}
+
+	/**
+	 * 调用此方法初始化
+	 * @param dir 缓存目录，不存在时创建。目录应只供缓存使用
+	 * @return ExlExportCache
+	 * @throws IOException 目录无法创建
+	 */
+	public static ExlExportCache c(Path dir) throws IOException {
+		return new ExlExportCache(dir);
+	}
+
+	/**
+	 * 设置总大小上限
+	 * @param maxBytes 字节数
+	 * @return ExlExportCache
+	 */
+	public ExlExportCache maxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		return this;
+	}
+
+	/**
+	 * 设置存放时间上限，超过后不再命中
+	 * @param maxAge 毫秒
+	 * @return ExlExportCache
+	 */
+	public ExlExportCache maxAge(long maxAge) {
+		this.maxAge = maxAge;
+		return this;
+	}
+
+	/**
+	 * 未命中时以{@link ExcelExportUtils#exportStreaming(OutputStream)}生成xlsx，默认为xls
+	 * @param streaming 是否流式
+	 * @return ExlExportCache
+	 */
+	public ExlExportCache streaming(boolean streaming) {
+		this.streaming = streaming;
+		return this;
+	}
+
+	/**
+	 * 输出，命中时直接发送缓存的文件，否则导出到缓存目录后发送
+	 * @param export 导出配置
+	 * @param dataVersion 数据版本，数据变化时必须改变
+	 * @param out 输出通道，例如SocketChannel，不会被关闭
+	 * @return 是否命中。未命中且导出被取消时不输出任何内容，见export.getStats()
+	 * @throws IOException
+	 * @throws IllegalArgumentException 有渲染器没有稳定的描述且未设置{@link ExcelExportUtils#renderKey(String)}
+	 */
+	public boolean export(ExcelExportUtils export, String dataVersion, WritableByteChannel out) throws IOException {
+		String name = key(export, dataVersion) + (streaming ? ".xlsx" : ".xls");
+		if (lookup(name) && transfer(name, out)) {
+			hits.increment();
+			return true;
+		}
+		misses.increment();
+		Path temp = Files.createTempFile(dir, name, ".tmp");
+		try {
+			ExlExportStats stats;
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				if (streaming) {
+					stats = export.exportStreaming(channel);
+				} else {
+					stats = export.exportXls(Channels.newOutputStream(channel));
+				}
+			}
+			if (stats.isCancelled()) {
+				return false;
+			}
+			Files.move(temp, dir.resolve(name), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		File file = dir.resolve(name).toFile();
+		synchronized (this) {
+			put(name, file.length(), System.currentTimeMillis());
+			evict(name);
+		}
+		if (!transfer(name, out)) {
+			throw new NoSuchFileException(file.getPath(), null, "导出的文件被其他进程删除");
+		}
+		return false;
+	}
+
+	/**
+	 * 输出到流，同{@link #export(ExcelExportUtils, String, WritableByteChannel)}
+	 * @param export 导出配置
+	 * @param dataVersion 数据版本
+	 * @param out 输出流，不会被关闭
+	 * @return 是否命中
+	 * @throws IOException
+	 */
+	public boolean export(ExcelExportUtils export, String dataVersion, OutputStream out) throws IOException {
+		return export(export, dataVersion, Channels.newChannel(out));
+	}
+
+	/**
+	 * 计算缓存键
+	 * @param export 导出配置
+	 * @param dataVersion 数据版本
+	 * @return 64位十六进制
+	 * @throws IllegalArgumentException 有渲染器没有稳定的描述且未设置{@link ExcelExportUtils#renderKey(String)}
+	 */
+	public String key(ExcelExportUtils export, String dataVersion) {
+		return hash(export, dataVersion);
+	}
+
+	/**
+	 * 配置及数据版本的SHA-256，{@link ExlSingleFlight}也使用同样的键
+	 */
+	static String hash(ExcelExportUtils export, String dataVersion) {
+		StringBuilder key = new StringBuilder(256);
+		export.describe(key);
+		key.append("data=").append(dataVersion);
+		return sha256(key);
+	}
+
+	/**
+	 * SHA-256，64位十六进制
+	 */
+	static String sha256(CharSequence text) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(text.toString().getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		StringBuilder hex = new StringBuilder(64);
+		for (byte b : digest) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * 清空缓存
+	 * @throws IOException
+	 */
+	public synchronized void clear() throws IOException {
+		for (String name : entries.keySet()) {
+			Files.deleteIfExists(dir.resolve(name));
+		}
+		entries.clear();
+		totalBytes = 0;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * 渲染器标识，作为缓存键的一部分：覆盖了toString的使用其描述，没有实例字段的命名类使用类名.
+	 * <br>lambda及匿名类没有稳定的标识：实例标识在进程重启后不同，GC后还可能被其他实例重用而取到错误的文件；
+	 * 有实例字段却未覆盖toString的命名类，配置不同的实例类名相同，同样视为没有稳定的标识
+	 * @param render 渲染器
+	 * @return 标识，没有稳定的标识时为null
+	 */
+	static String identity(Object render) {
+		if (render instanceof ExlMemoRender) {
+			return ((ExlMemoRender) render).identity();
+		}
+		Class<?> type = render.getClass();
+		try {
+			if (type.getMethod("toString").getDeclaringClass() != Object.class) {
+				return type.getName() + ':' + render;
+			}
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		if (type.isSynthetic() || type.isAnonymousClass() || type.getName().contains("$$Lambda")) {
+			return null;
+		}
+		for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (!Modifier.isStatic(field.getModifiers())) {
+					return null;
+				}
+			}
+		}
+		return type.getName();
+	}
+
+	private synchronized boolean lookup(String name) {
+		Entry entry = entries.get(name);
+		if (entry == null) {
+			return false;
+		}
+		if (System.currentTimeMillis() - entry.created > maxAge) {
+			remove(name);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 发送缓存文件
+	 * @return 文件已被淘汰时返回false
+	 */
+	private boolean transfer(String name, WritableByteChannel out) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(dir.resolve(name), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			synchronized (this) {
+				remove(name);
+			}
+			return false;
+		}
+		try {
+			long size = channel.size();
+			for (long position = 0; position < size;) {
+				position += channel.transferTo(position, size - position, out);
+			}
+		} finally {
+			channel.close();
+		}
+		return true;
+	}
+
+	private void put(String name, long size, long created) {
+		Entry old = entries.put(name, new Entry(size, created));
+		totalBytes += size - (old == null ? 0 : old.size);
+	}
+
+	private void remove(String name) {
+		Entry entry = entries.remove(name);
+		if (entry != null) {
+			totalBytes -= entry.size;
+			try {
+				//正在发送的文件在类Unix系统上删除后仍可读完
+				Files.deleteIfExists(dir.resolve(name));
+			} catch (IOException e) {
+				//下次启动时会重新接管，再次淘汰
+			}
+		}
+	}
+
+	/**
+	 * 淘汰过期的文件，总大小超出时从最久未命中的开始淘汰
+	 * @param keep 刚生成、即将发送的文件，不淘汰
+	 */
+	private void evict(String keep) {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<String,Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String,Entry> entry = iterator.next();
+			if (!entry.getKey().equals(keep) && (totalBytes > maxBytes || now - entry.getValue().created > maxAge)) {
+				iterator.remove();
+				totalBytes -= entry.getValue().size;
+				try {
+					Files.deleteIfExists(dir.resolve(entry.getKey()));
+				} catch (IOException e) {
+					//同remove
+				}
+			}
+		}
+	}
+
+	private static final class Entry {
+		private final long size;
+		private final long created;
+
+		Entry(long size, long created) {
+			this.size = size;
+			this.created = created;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.tornado.zy;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 导出结果统计，流式导出等由方法直接返回，{@link ExcelExportUtils#export(java.io.OutputStream)}之后通过{@link ExcelExportUtils#getStats()}取得
+ * 
+ * @author xlsiek
+ *
+ */
+public class ExlExportStats {
+	private final int contentRows;//普通模式写出的内容行数
+	private final long elapsedMillis;//耗时
+	private final Map<String,ExlMemoRender.Stats> renderCaches;//各缓存渲染器的统计，仅为本次导出期间的增量
+	private final boolean cancelled;//是否被取消
+
+	ExlExportStats(int contentRows, long elapsedMillis, Map<String,ExlMemoRender.Stats> renderCaches, boolean cancelled) {
+		this.contentRows = contentRows;
+		this.elapsedMillis = elapsedMillis;
+		this.renderCaches = Collections.unmodifiableMap(renderCaches);
+		this.cancelled = cancelled;
+	}
+
+	public int getContentRows() {
+		return contentRows;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * 缓存渲染器统计，每个{@link ExlMemoRender}一项，key为注册了它的属性名，注册在多个属性上时按字母序以逗号连接，例如"area,city"
+	 * @return 属性-统计
+	 */
+	public Map<String,ExlMemoRender.Stats> getRenderCaches() {
+		return renderCaches;
+	}
+
+	/**
+	 * 是否被{@link ExlCancelToken}取消。取消时没有输出完整的文件：普通导出不写出任何内容，流式导出已写出的部分应丢弃
+	 * @return boolean
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public String toString() {
+		return "contentRows=" + contentRows + ", elapsedMillis=" + elapsedMillis + ", renderCaches=" + renderCaches
+				+ (cancelled ? ", cancelled" : "");
+	}
+}
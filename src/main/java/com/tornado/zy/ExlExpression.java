@@ -0,0 +1,663 @@
+package com.tornado.zy;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * 计算列的表达式，参见{@link ExcelExportUtils#computed(String, String)}.
+ * <br>表达式只解析一次，编译为一棵lambda树，每行求值时直接取属性的原始值（数字、字符串、布尔），不再拼接、解析字符串；
+ * 全部由常量组成的部分在编译时算好.
+ * <p>语法：
+ * <br>1.字面量：123、1.5、'文字'或"文字"（\转义）、true、false、null；
+ * <br>2.属性：name，嵌套属性a.b，Map记录按键取值；
+ * <br>3.运算：+ - * / %，== != &gt; &gt;= &lt; &lt;=，&amp;&amp; || !，条件 ? 值 : 值，括号；
+ * <br>4.函数：coalesce(a, b, ...)第一个非空值，round(x, n)四舍五入到n位小数，abs(x)，contains(文字, 子串)，len(文字)</p>
+ * <p>求值规则：
+ * <br>1.+ 任一侧为文字时拼接，null按空串；否则按数字相加；
+ * <br>2.整数之间的+ - * %结果为整数，含BigDecimal时按BigDecimal计算，其他按double；/ 总按double，除数为0时结果为null；
+ * <br>3.十进制数字形式的文字（可带正负号、小数点、指数，NaN、0x10等不算）参与运算、比较时按数字，常量在编译时转换；其他运算中出现null时结果为null，比较时null只等于null；
+ * <br>4.条件中null、false、0、空串为假</p>
+ * <pre>
+ * contains(line, 'NOT NULL') ? '否' : '是'
+ * round(done * 100 / total, 1) + '%'
+ * province + '-' + city
+ * </pre>
+ * @author xlsiek
+ *
+ */
+final class ExlExpression {
+	private final String source;
+	private final Node root;
+
+	private ExlExpression(String source, Node root) {
+		this.source = source;
+		this.root = root;
+	}
+
+	/**
+	 * 解析并编译表达式
+	 * @param source 表达式
+	 * @return ExlExpression
+	 * @throws IllegalArgumentException 语法错误，含出错位置
+	 */
+	static ExlExpression compile(String source) {
+		Parser parser = new Parser(source);
+		Node root = parser.parse();
+		return new ExlExpression(source, root);
+	}
+
+	/**
+	 * 对一条记录求值
+	 * @param record 行记录
+	 * @param fields 属性缓存
+	 * @return 原始值，Long、Double、BigDecimal、String、Boolean或属性本身的类型，可能为null
+	 */
+	Object evaluate(Object record, ExlFieldCache fields) {
+		return root.eval(record, fields);
+	}
+
+	/**
+	 * 求值并转为单元格文字，参见{@link #format(Object)}
+	 * @param record 行记录
+	 * @param fields 属性缓存
+	 * @return String
+	 */
+	String text(Object record, ExlFieldCache fields) {
+		return format(root.eval(record, fields));
+	}
+
+	String getSource() {
+		return source;
+	}
+
+	@Override
+	public String toString() {
+		return source;
+	}
+
+	/**
+	 * 编译后的节点
+	 */
+	private interface Node {
+		Object eval(Object record, ExlFieldCache fields);
+	}
+
+	/**
+	 * 常量节点，编译时折叠用
+	 */
+	private static final class Const implements Node {
+		private final Object value;
+		private final Number number;//数字形式，编译时转换一次，参见Parser.numeric、Parser.comparison
+
+		Const(Object value) {
+			this.value = value;
+			this.number = number(value);
+		}
+
+		@Override
+		public Object eval(Object record, ExlFieldCache fields) {
+			return value;
+		}
+	}
+
+	/**
+	 * 属性节点，记住上一次记录类型的Field，同类型的记录不再查缓存
+	 */
+	private static final class Property implements Node {
+		private final Node target;//null为行记录本身
+		private final String name;
+		private volatile Resolved resolved = null;
+
+		Property(Node target, String name) {
+			this.target = target;
+			this.name = name;
+		}
+
+		@Override
+		public Object eval(Object record, ExlFieldCache fields) {
+			Object obj = target == null ? record : target.eval(record, fields);
+			if (obj == null) {
+				return null;
+			}
+			if (obj instanceof Map) {
+				return ((Map<?,?>) obj).get(name);
+			}
+			Resolved r = resolved;
+			if (r == null || r.type != obj.getClass()) {
+				try {
+					r = new Resolved(obj.getClass(), fields.get(obj.getClass(), name));
+				} catch (NoSuchFieldException e) {
+					throw new IllegalArgumentException("计算列的属性" + name + "不存在：" + e.getMessage(), e);
+				}
+				resolved = r;
+			}
+			try {
+				return r.field.get(obj);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private static final class Resolved {
+		final Class<?> type;
+		final Field field;
+
+		Resolved(Class<?> type, Field field) {
+			this.type = type;
+			this.field = field;
+		}
+	}
+
+	//==================求值规则=============
+
+	private static boolean truthy(Object v) {
+		if (v == null) {
+			return false;
+		}
+		if (v instanceof Boolean) {
+			return (Boolean) v;
+		}
+		if (v instanceof Number) {
+			return ((Number) v).doubleValue() != 0;
+		}
+		return !v.toString().isEmpty();
+	}
+
+	/**
+	 * 转为数字，十进制数字形式的文字也转换，其他为null。
+	 * 先用{@link StringUtils#isNumber(String)}判断，不靠NumberFormatException；超出long的整数转为BigDecimal
+	 */
+	private static Number number(Object v) {
+		if (v == null || v instanceof Number) {
+			return (Number) v;
+		}
+		if (v instanceof Boolean) {
+			return null;
+		}
+		String s = v.toString().trim();
+		if (!StringUtils.isNumber(s)) {
+			return null;
+		}
+		if (s.indexOf('.') >= 0 || s.indexOf('e') >= 0 || s.indexOf('E') >= 0) {
+			return Double.parseDouble(s);
+		}
+		return s.length() <= 18 ? (Number) Long.parseLong(s) : new BigDecimal(s);
+	}
+
+	private static boolean integral(Number n) {
+		return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+	}
+
+	private static BigDecimal decimal(Number n) {
+		if (n instanceof BigDecimal) {
+			return (BigDecimal) n;
+		}
+		return integral(n) ? BigDecimal.valueOf(n.longValue()) : BigDecimal.valueOf(n.doubleValue());
+	}
+
+	private static Object arithmetic(char op, Object left, Object right) {
+		Number a = number(left);
+		Number b = number(right);
+		if (a == null || b == null) {
+			return null;
+		}
+		if (op == '/') {
+			double divisor = b.doubleValue();
+			return divisor == 0 ? null : a.doubleValue() / divisor;
+		}
+		if (integral(a) && integral(b)) {
+			long x = a.longValue(), y = b.longValue();
+			switch (op) {
+			case '+': return x + y;
+			case '-': return x - y;
+			case '*': return x * y;
+			default: return y == 0 ? null : x % y;
+			}
+		}
+		if (a instanceof BigDecimal || b instanceof BigDecimal) {
+			BigDecimal x = decimal(a), y = decimal(b);
+			switch (op) {
+			case '+': return x.add(y);
+			case '-': return x.subtract(y);
+			case '*': return x.multiply(y);
+			default: return y.signum() == 0 ? null : x.remainder(y);
+			}
+		}
+		double x = a.doubleValue(), y = b.doubleValue();
+		switch (op) {
+		case '+': return x + y;
+		case '-': return x - y;
+		case '*': return x * y;
+		default: return y == 0 ? null : x % y;
+		}
+	}
+
+	private static Object plus(Object left, Object right) {
+		if (left instanceof String || right instanceof String) {
+			return format(left) + format(right);
+		}
+		return arithmetic('+', left, right);
+	}
+
+	/**
+	 * 值的文字形式，单元格、拼接、比较都使用：null为空串，整数值的小数不带小数点，其他小数不用科学计数法
+	 */
+	private static String format(Object value) {
+		if (value == null) {
+			return "";
+		}
+		if (value instanceof Double || value instanceof Float) {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				return "";
+			}
+			if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+				return String.valueOf((long) d);
+			}
+			return BigDecimal.valueOf(d).stripTrailingZeros().toPlainString();
+		}
+		if (value instanceof BigDecimal) {
+			return ((BigDecimal) value).toPlainString();
+		}
+		return String.valueOf(value);
+	}
+
+	/**
+	 * 比较，两侧都能转为数字时按数值，否则按文字。有null时返回null
+	 * @param a left的数字形式
+	 * @param b right的数字形式
+	 */
+	private static Integer compare(Object left, Number a, Object right, Number b) {
+		if (left == null || right == null) {
+			return null;
+		}
+		if (a != null && b != null) {
+			if (integral(a) && integral(b)) {
+				return Long.compare(a.longValue(), b.longValue());
+			}
+			if (a instanceof BigDecimal || b instanceof BigDecimal) {
+				return decimal(a).compareTo(decimal(b));
+			}
+			return Double.compare(a.doubleValue(), b.doubleValue());
+		}
+		return format(left).compareTo(format(right));
+	}
+
+	private static boolean equal(Object left, Number a, Object right, Number b) {
+		if (left == null || right == null) {
+			return left == right;
+		}
+		if (left instanceof Boolean || right instanceof Boolean) {
+			return left.equals(right);
+		}
+		Integer c = compare(left, a, right, b);
+		return c != null && c == 0;
+	}
+
+	/**
+	 * 比较运算，参数为两侧的值及其数字形式
+	 */
+	private interface Comparison {
+		Object apply(Object left, Number a, Object right, Number b);
+	}
+
+	//==================语法分析、编译=============
+
+	private static final class Parser {
+		private final String s;
+		private int pos = 0;
+
+		Parser(String s) {
+			if (s == null) {
+				throw new IllegalArgumentException("表达式为空");
+			}
+			this.s = s;
+		}
+
+		Node parse() {
+			Node node = ternary();
+			skip();
+			if (pos < s.length()) {
+				throw error("多余的内容");
+			}
+			return node;
+		}
+
+		private Node ternary() {
+			Node condition = or();
+			if (!eat("?")) {
+				return condition;
+			}
+			Node yes = ternary();
+			expect(":");
+			Node no = ternary();
+			return fold(new Node[] { condition, yes, no }, (record, fields) ->
+					truthy(condition.eval(record, fields)) ? yes.eval(record, fields) : no.eval(record, fields));
+		}
+
+		private Node or() {
+			Node left = and();
+			while (eat("||")) {
+				Node l = left, r = and();
+				left = fold(new Node[] { l, r }, (record, fields) -> truthy(l.eval(record, fields)) || truthy(r.eval(record, fields)));
+			}
+			return left;
+		}
+
+		private Node and() {
+			Node left = equality();
+			while (eat("&&")) {
+				Node l = left, r = equality();
+				left = fold(new Node[] { l, r }, (record, fields) -> truthy(l.eval(record, fields)) && truthy(r.eval(record, fields)));
+			}
+			return left;
+		}
+
+		private Node equality() {
+			Node left = relational();
+			while (true) {
+				Node l = left;
+				if (eat("==")) {
+					Node r = relational();
+					left = comparison(l, r, ExlExpression::equal);
+				} else if (eat("!=")) {
+					Node r = relational();
+					left = comparison(l, r, (a, an, b, bn) -> !equal(a, an, b, bn));
+				} else {
+					return left;
+				}
+			}
+		}
+
+		private Node relational() {
+			Node left = additive();
+			while (true) {
+				Node l = left;
+				if (eat("<=")) {
+					Node r = additive();
+					left = comparison(l, r, (a, an, b, bn) -> test(compare(a, an, b, bn), c -> c <= 0));
+				} else if (eat(">=")) {
+					Node r = additive();
+					left = comparison(l, r, (a, an, b, bn) -> test(compare(a, an, b, bn), c -> c >= 0));
+				} else if (eat("<")) {
+					Node r = additive();
+					left = comparison(l, r, (a, an, b, bn) -> test(compare(a, an, b, bn), c -> c < 0));
+				} else if (eat(">")) {
+					Node r = additive();
+					left = comparison(l, r, (a, an, b, bn) -> test(compare(a, an, b, bn), c -> c > 0));
+				} else {
+					return left;
+				}
+			}
+		}
+
+		private Node additive() {
+			Node left = multiplicative();
+			while (true) {
+				Node l = left;
+				if (eat("+")) {
+					Node r = multiplicative();
+					left = fold(new Node[] { l, r }, (record, fields) -> plus(l.eval(record, fields), r.eval(record, fields)));
+				} else if (eat("-")) {
+					Node x = numeric(l), r = numeric(multiplicative());
+					left = fold(new Node[] { x, r }, (record, fields) -> arithmetic('-', x.eval(record, fields), r.eval(record, fields)));
+				} else {
+					return left;
+				}
+			}
+		}
+
+		private Node multiplicative() {
+			Node left = unary();
+			while (true) {
+				skip();
+				char op = pos < s.length() ? s.charAt(pos) : 0;
+				if (op != '*' && op != '/' && op != '%') {
+					return left;
+				}
+				pos++;
+				Node l = numeric(left), r = numeric(unary());
+				left = fold(new Node[] { l, r }, (record, fields) -> arithmetic(op, l.eval(record, fields), r.eval(record, fields)));
+			}
+		}
+
+		private Node unary() {
+			if (eat("!")) {
+				Node operand = unary();
+				return fold(new Node[] { operand }, (record, fields) -> !truthy(operand.eval(record, fields)));
+			}
+			if (eat("-")) {
+				Node operand = numeric(unary());
+				return fold(new Node[] { operand }, (record, fields) -> arithmetic('-', 0L, operand.eval(record, fields)));
+			}
+			return primary();
+		}
+
+		private Node primary() {
+			skip();
+			if (pos >= s.length()) {
+				throw error("表达式不完整");
+			}
+			char c = s.charAt(pos);
+			if (c == '(') {
+				pos++;
+				Node node = ternary();
+				expect(")");
+				return node;
+			}
+			if (c == '\'' || c == '"') {
+				return new Const(string(c));
+			}
+			if (Character.isDigit(c) || c == '.') {
+				return new Const(numberLiteral());
+			}
+			if (!Character.isJavaIdentifierStart(c)) {
+				throw error("无法识别的字符" + c);
+			}
+			String name = identifier();
+			switch (name) {
+			case "true": return new Const(Boolean.TRUE);
+			case "false": return new Const(Boolean.FALSE);
+			case "null": return new Const(null);
+			default: break;
+			}
+			if (eat("(")) {
+				return function(name);
+			}
+			Node node = new Property(null, name);
+			while (eat(".")) {
+				skip();
+				if (pos >= s.length() || !Character.isJavaIdentifierStart(s.charAt(pos))) {
+					throw error("缺少属性名");
+				}
+				node = new Property(node, identifier());
+			}
+			return node;
+		}
+
+		private Node function(String name) {
+			int at = pos;
+			List<Node> args = new ArrayList<>();
+			if (!eat(")")) {
+				do {
+					args.add(ternary());
+				} while (eat(","));
+				expect(")");
+			}
+			Node[] a = args.toArray(new Node[0]);
+			switch (name) {
+			case "coalesce":
+				if (a.length == 0) break;
+				return fold(a, (record, fields) -> {
+					for (Node arg : a) {
+						Object v = arg.eval(record, fields);
+						if (v != null) return v;
+					}
+					return null;
+				});
+			case "round":
+				if (a.length != 2) break;
+				a[0] = numeric(a[0]);
+				a[1] = numeric(a[1]);
+				return fold(a, (record, fields) -> {
+					Number x = number(a[0].eval(record, fields));
+					Number n = number(a[1].eval(record, fields));
+					if (x == null || n == null) return null;
+					if (x instanceof Double && (((Double) x).isNaN() || ((Double) x).isInfinite())) return null;
+					return decimal(x).setScale(n.intValue(), RoundingMode.HALF_UP);
+				});
+			case "abs":
+				if (a.length != 1) break;
+				a[0] = numeric(a[0]);
+				return fold(a, (record, fields) -> {
+					Number x = number(a[0].eval(record, fields));
+					if (x == null) return null;
+					if (integral(x)) return Math.abs(x.longValue());
+					if (x instanceof BigDecimal) return ((BigDecimal) x).abs();
+					return Math.abs(x.doubleValue());
+				});
+			case "contains":
+				if (a.length != 2) break;
+				return fold(a, (record, fields) -> {
+					Object text = a[0].eval(record, fields);
+					Object part = a[1].eval(record, fields);
+					return text != null && part != null && format(text).contains(format(part));
+				});
+			case "len":
+				if (a.length != 1) break;
+				return fold(a, (record, fields) -> {
+					Object text = a[0].eval(record, fields);
+					return text == null ? null : (Object) (long) format(text).length();
+				});
+			default:
+				throw error(at, "未知函数" + name);
+			}
+			throw error(at, "函数" + name + "的参数个数不对");
+		}
+
+		/**
+		 * 参数都是常量时编译期求值
+		 */
+		private static Node fold(Node[] operands, Node node) {
+			for (Node operand : operands) {
+				if (!(operand instanceof Const)) {
+					return node;
+				}
+			}
+			return new Const(node.eval(null, null));
+		}
+
+		/**
+		 * 只按数字使用的运算数：常量换成其数字形式，每行不再转换
+		 */
+		private static Node numeric(Node node) {
+			if (node instanceof Const && !(((Const) node).value instanceof Number)) {
+				return new Const(((Const) node).number);
+			}
+			return node;
+		}
+
+		/**
+		 * 比较节点：常量一侧的数字形式在编译时已转换，每行只转换另一侧
+		 */
+		private static Node comparison(Node l, Node r, Comparison comparison) {
+			boolean constLeft = l instanceof Const, constRight = r instanceof Const;
+			Number a = constLeft ? ((Const) l).number : null;
+			Number b = constRight ? ((Const) r).number : null;
+			return fold(new Node[] { l, r }, (record, fields) -> {
+				Object left = l.eval(record, fields);
+				Object right = r.eval(record, fields);
+				return comparison.apply(left, constLeft ? a : number(left), right, constRight ? b : number(right));
+			});
+		}
+
+		private static Object test(Integer c, IntPredicate predicate) {
+			return c != null && predicate.test(c);
+		}
+
+		private String string(char quote) {
+			int at = pos++;
+			StringBuilder b = new StringBuilder();
+			while (pos < s.length()) {
+				char c = s.charAt(pos++);
+				if (c == quote) {
+					return b.toString();
+				}
+				if (c == '\\' && pos < s.length()) {
+					c = s.charAt(pos++);
+				}
+				b.append(c);
+			}
+			throw error(at, "文字缺少结束的引号");
+		}
+
+		private Number numberLiteral() {
+			int at = pos;
+			while (pos < s.length() && (Character.isDigit(s.charAt(pos)) || s.charAt(pos) == '.')) {
+				pos++;
+			}
+			String text = s.substring(at, pos);
+			try {
+				return text.indexOf('.') < 0 ? (Number) Long.valueOf(text) : (Number) Double.valueOf(text);
+			} catch (NumberFormatException e) {
+				throw error(at, "数字格式不对：" + text);
+			}
+		}
+
+		private String identifier() {
+			int at = pos++;
+			while (pos < s.length() && Character.isJavaIdentifierPart(s.charAt(pos))) {
+				pos++;
+			}
+			return s.substring(at, pos);
+		}
+
+		private void skip() {
+			while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		/**
+		 * 当前位置是token时跳过它。单字符的运算符不吞掉双字符运算符的前半，例如&lt;不匹配&lt;=之外的&lt;
+		 */
+		private boolean eat(String token) {
+			skip();
+			if (!s.startsWith(token, pos)) {
+				return false;
+			}
+			if (token.length() == 1 && pos + 1 < s.length()) {
+				char next = s.charAt(pos + 1);
+				char c = token.charAt(0);
+				if ((c == '!' || c == '<' || c == '>') && next == '=') {
+					return false;
+				}
+				if ((c == '|' || c == '&') && next == c) {
+					return false;
+				}
+			}
+			pos += token.length();
+			return true;
+		}
+
+		private void expect(String token) {
+			if (!eat(token)) {
+				throw error("缺少" + token);
+			}
+		}
+
+		private IllegalArgumentException error(String message) {
+			return error(pos, message);
+		}
+
+		private IllegalArgumentException error(int at, String message) {
+			return new IllegalArgumentException("表达式" + s + "第" + (at + 1) + "个字符处" + message);
+		}
+	}
+}
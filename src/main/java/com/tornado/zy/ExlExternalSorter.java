@@ -0,0 +1,389 @@
+package com.tornado.zy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 内容行外部排序，参见{@link ExcelExportUtils#sortBy(String, boolean)}.
+ * <br>已渲染的行先在内存中攒成一段，估算的占用超过上限时排好序写入临时文件，最后多路归并读出；
+ * 全部行都在上限之内时不写文件，直接在内存中排序.
+ * <br>每行保存各列渲染后的值及需要原始值的列（排序列、小计列）的原始值，按排序列的原始值比较：
+ * 都是十进制数字时按数值比较（NaN、1f等按文字），升序时数字排在文字之前，空值无论升降序都排在最后，相同时保持原有顺序.
+ * <br>临时文件格式：每个字符串为变长整数的长度（null为0，否则为UTF-8字节数+1）加UTF-8字节，按行依次存放
+ *
+ * @author xlsiek
+ *
+ */
+final class ExlExternalSorter implements Closeable {
+	private final static int MAX_FAN_IN = 64;//一次归并的最多段数，超出时先逐遍归并成较大的段
+	private final static int ROW_OVERHEAD = 64;//每行的对象开销估算
+	private final static int STRING_OVERHEAD = 48;//每个字符串的对象开销估算
+	private final int columns;
+	private final boolean[] rawColumns;//需要保存原始值的列
+	private final int[] keyColumns;//排序列，按优先级
+	private final boolean[] ascending;
+	private final long maxMemory;
+	private final Comparator<SortRow> comparator;
+	private final List<SortRow> buffer = new ArrayList<>();
+	private long bufferBytes = 0;
+	private final List<Path> runs = new ArrayList<>();
+	private final List<Closeable> open = new ArrayList<>();
+
+	/**
+	 * @param columns 列数
+	 * @param rawColumns 需要保存原始值的列
+	 * @param keyColumns 排序列，必须保存原始值
+	 * @param ascending 各排序列是否升序
+	 * @param maxMemory 内存中一段的占用上限，字节
+	 */
+	ExlExternalSorter(int columns, boolean[] rawColumns, int[] keyColumns, boolean[] ascending, long maxMemory) {
+		this.columns = columns;
+		this.rawColumns = rawColumns;
+		this.keyColumns = keyColumns;
+		this.ascending = ascending;
+		this.maxMemory = maxMemory;
+		this.comparator = this::compare;
+	}
+
+	/**
+	 * 加入一块行
+	 * @param values 渲染后的值，values[列][块内行]
+	 * @param raw 原始值，raw[列][块内行]，不需要原始值的列为null
+	 * @param size 行数
+	 * @throws IOException 临时文件写入失败
+	 */
+	void add(String[][] values, String[][] raw, int size) throws IOException {
+		for (int r = 0; r < size; r++) {
+			SortRow row = new SortRow(columns);
+			long bytes = ROW_OVERHEAD;
+			for (int i = 0; i < columns; i++) {
+				row.values[i] = values[i][r];
+				bytes += size(row.values[i]);
+				if (rawColumns[i]) {
+					row.raw[i] = raw[i][r];
+					bytes += size(row.raw[i]);
+				}
+			}
+			row.parseKeys(keyColumns);
+			buffer.add(row);
+			bufferBytes += bytes;
+			if (bufferBytes >= maxMemory) {
+				spill();
+			}
+		}
+	}
+
+	/**
+	 * 结束加入，按顺序读出
+	 * @return 读取游标
+	 * @throws IOException 临时文件读写失败
+	 */
+	Cursor sorted() throws IOException {
+		buffer.sort(comparator);
+		if (runs.isEmpty()) {
+			return new MemoryCursor();
+		}
+		if (!buffer.isEmpty()) {
+			spill();
+		}
+		while (runs.size() > MAX_FAN_IN) {
+			//每一遍把相邻的段按组归并，归并后的段按组的顺序接在后面，相同的行仍按原有顺序。
+			//各组互不相交，每遍每行只读写一次，共log(段数)遍
+			int count = runs.size();
+			for (int from = 0; from < count; from += MAX_FAN_IN) {
+				List<Path> group = new ArrayList<>(runs.subList(from, Math.min(from + MAX_FAN_IN, count)));
+				if (group.size() == 1) {
+					runs.add(group.get(0));
+					continue;
+				}
+				Path merged = newRun();
+				try (MergeCursor cursor = new MergeCursor(group); DataOutputStream out = openOut(merged)) {
+					SortRow row;
+					while ((row = cursor.nextRow()) != null) {
+						write(out, row);
+					}
+				} finally {
+					for (Path run : group) {
+						Files.deleteIfExists(run);
+					}
+				}
+			}
+			runs.subList(0, count).clear();
+		}
+		MergeCursor cursor = new MergeCursor(runs);
+		open.add(cursor);
+		return cursor;
+	}
+
+	/**
+	 * 删除所有临时文件
+	 */
+	@Override
+	public void close() throws IOException {
+		for (Closeable closeable : open) {
+			closeable.close();
+		}
+		open.clear();
+		for (Path run : runs) {
+			Files.deleteIfExists(run);
+		}
+		runs.clear();
+		buffer.clear();
+	}
+
+	/**
+	 * 按顺序读取排好序的行
+	 */
+	interface Cursor {
+		/**
+		 * 读取下一行到values[列][index]及raw[列][index]
+		 * @return 没有更多行时为false
+		 * @throws IOException 临时文件读取失败
+		 */
+		boolean next(String[][] values, String[][] raw, int index) throws IOException;
+	}
+
+	private void spill() throws IOException {
+		buffer.sort(comparator);
+		Path run = newRun();
+		try (DataOutputStream out = openOut(run)) {
+			for (SortRow row : buffer) {
+				write(out, row);
+			}
+		}
+		buffer.clear();
+		bufferBytes = 0;
+	}
+
+	private Path newRun() throws IOException {
+		Path run = Files.createTempFile("exl-sort", ".run");
+		runs.add(run);
+		return run;
+	}
+
+	private static DataOutputStream openOut(Path run) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 64 * 1024));
+	}
+
+	private void write(DataOutputStream out, SortRow row) throws IOException {
+		for (int i = 0; i < columns; i++) {
+			writeString(out, row.values[i]);
+			if (rawColumns[i]) {
+				writeString(out, row.raw[i]);
+			}
+		}
+	}
+
+	private SortRow read(DataInputStream in) throws IOException {
+		int first;
+		try {
+			first = readVarInt(in);
+		} catch (EOFException e) {
+			return null;
+		}
+		SortRow row = new SortRow(columns);
+		for (int i = 0; i < columns; i++) {
+			row.values[i] = i == 0 ? readString(in, first) : readString(in, readVarInt(in));
+			if (rawColumns[i]) {
+				row.raw[i] = readString(in, readVarInt(in));
+			}
+		}
+		row.parseKeys(keyColumns);
+		return row;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.write(0);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in, int length) throws IOException {
+		if (length == 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length - 1];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	private static long size(String value) {
+		return value == null ? 0 : STRING_OVERHEAD + 2L * value.length();
+	}
+
+	private int compare(SortRow a, SortRow b) {
+		for (int k = 0; k < keyColumns.length; k++) {
+			Object x = a.keys[k];
+			Object y = b.keys[k];
+			int result;
+			if (x == null || y == null) {
+				//空值总在最后
+				result = x == null ? (y == null ? 0 : 1) : -1;
+			} else {
+				if (x instanceof Double) {
+					result = y instanceof Double ? Double.compare((Double) x, (Double) y) : -1;
+				} else {
+					result = y instanceof Double ? 1 : ((String) x).compareTo((String) y);
+				}
+				if (!ascending[k]) {
+					result = -result;
+				}
+			}
+			if (result != 0) {
+				return result;
+			}
+		}
+		return 0;
+	}
+
+	private static void copy(SortRow row, String[][] values, String[][] raw, int index) {
+		for (int i = 0; i < row.values.length; i++) {
+			values[i][index] = row.values[i];
+			if (raw != null && raw[i] != null) {
+				raw[i][index] = row.raw[i];
+			}
+		}
+	}
+
+	private final class MemoryCursor implements Cursor {
+		private int position = 0;
+
+		@Override
+		public boolean next(String[][] values, String[][] raw, int index) {
+			if (position == buffer.size()) {
+				return false;
+			}
+			copy(buffer.get(position), values, raw, index);
+			buffer.set(position++, null);//读过的行可以回收
+			return true;
+		}
+	}
+
+	/**
+	 * 多路归并，相同的行按段的顺序读出，保持稳定
+	 */
+	private final class MergeCursor implements Cursor, Closeable {
+		private final List<DataInputStream> inputs = new ArrayList<>();
+		private final PriorityQueue<Head> heads;
+
+		MergeCursor(List<Path> runs) throws IOException {
+			heads = new PriorityQueue<>(runs.size(), (a, b) -> {
+				int result = compare(a.row, b.row);
+				return result != 0 ? result : Integer.compare(a.run, b.run);
+			});
+			try {
+				for (int i = 0; i < runs.size(); i++) {
+					DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(runs.get(i)), 16 * 1024));
+					inputs.add(in);
+					SortRow row = read(in);
+					if (row != null) {
+						heads.add(new Head(row, i, in));
+					}
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		SortRow nextRow() throws IOException {
+			Head head = heads.poll();
+			if (head == null) {
+				return null;
+			}
+			SortRow row = head.row;
+			head.row = read(head.in);
+			if (head.row != null) {
+				heads.add(head);
+			}
+			return row;
+		}
+
+		@Override
+		public boolean next(String[][] values, String[][] raw, int index) throws IOException {
+			SortRow row = nextRow();
+			if (row == null) {
+				return false;
+			}
+			copy(row, values, raw, index);
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (DataInputStream in : inputs) {
+				in.close();
+			}
+			inputs.clear();
+		}
+	}
+
+	private static final class Head {
+		private SortRow row;
+		private final int run;
+		private final DataInputStream in;
+
+		Head(SortRow row, int run, DataInputStream in) {
+			this.row = row;
+			this.run = run;
+			this.in = in;
+		}
+	}
+
+	private static final class SortRow {
+		private final String[] values;
+		private final String[] raw;
+		private Object[] keys;//排序列解析后的值：Double、String或null（空值）
+
+		SortRow(int columns) {
+			values = new String[columns];
+			raw = new String[columns];
+		}
+
+		void parseKeys(int[] keyColumns) {
+			keys = new Object[keyColumns.length];
+			for (int k = 0; k < keyColumns.length; k++) {
+				String value = raw[keyColumns[k]];
+				if (StringUtils.isEmpty(value)) {
+					continue;
+				}
+				keys[k] = StringUtils.isNumber(value) ? (Object) Double.parseDouble(value) : value;
+			}
+		}
+	}
+}
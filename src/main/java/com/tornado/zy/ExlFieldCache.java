@@ -0,0 +1,49 @@
+package com.tornado.zy;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 属性访问缓存，按类型+属性名缓存反射得到的{@link Field}.线程安全，可在批量导出的多个工作表之间共享
+ * 
+ * @author xlsiek
+ *
+ */
+class ExlFieldCache {
+	private final ConcurrentHashMap<Class<?>,Map<String,Field>> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * 获取指定类型的属性，找不到时沿父类查找
+	 * @param type 类型
+	 * @param property 属性名
+	 * @return Field
+	 * @throws NoSuchFieldException 整个继承链中都不存在该属性
+	 */
+	Field get(Class<?> type, String property) throws NoSuchFieldException {
+		Map<String,Field> fields = cache.get(type);
+		if(fields == null){
+			fields = new ConcurrentHashMap<>();
+			Map<String,Field> exists = cache.putIfAbsent(type, fields);
+			if(exists != null) fields = exists;
+		}
+		Field field = fields.get(property);
+		if(field == null){
+			field = find(type, property);
+			field.setAccessible(true);
+			fields.put(property, field);
+		}
+		return field;
+	}
+
+	private Field find(Class<?> type, String property) throws NoSuchFieldException {
+		for(Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()){
+			try{
+				return c.getDeclaredField(property);
+			}catch(NoSuchFieldException e){
+				//继续查找父类
+			}
+		}
+		throw new NoSuchFieldException(type.getName() + "." + property);
+	}
+}
@@ -0,0 +1,114 @@
+package com.tornado.zy;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 单元格占位表，记录工作表中已被使用（包括被合并）的位置，每行一个BitSet
+ * 
+ * @author xlsiek
+ *
+ */
+class ExlGrid {
+	private List<BitSet> rows = new ArrayList<>();
+
+	/**
+	 * 指定行是否已有位置被占用
+	 * @param row 行
+	 * @return boolean
+	 */
+	boolean hasRow(int row) {
+		return row < rows.size() && rows.get(row) != null && !rows.get(row).isEmpty();
+	}
+
+	/**
+	 * 指定位置是否已被占用
+	 */
+	boolean isFilled(int row, int column) {
+		return row < rows.size() && rows.get(row) != null && rows.get(row).get(column);
+	}
+
+	/**
+	 * 指定行第一个可用的列
+	 * @param row 行
+	 * @return 列
+	 */
+	int firstFree(int row) {
+		return row < rows.size() && rows.get(row) != null ? rows.get(row).nextClearBit(0) : 0;
+	}
+
+	/**
+	 * 指定行被占用的最大列，整行为空时为-1
+	 * @param row 行
+	 * @return 列
+	 */
+	int lastColumn(int row) {
+		return row < rows.size() && rows.get(row) != null ? rows.get(row).length() - 1 : -1;
+	}
+
+	/**
+	 * 指定行区间内是否没有任何占用
+	 * @param fromRow 起始行
+	 * @param rowCount 行数
+	 * @return boolean
+	 */
+	boolean isEmpty(int fromRow, int rowCount) {
+		for (int row = fromRow; row < fromRow + rowCount; row++) {
+			if (hasRow(row)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 占用一个区域，合并数为0时视为1
+	 * @param row 起始行
+	 * @param column 起始列
+	 * @param rowspan 行合并数
+	 * @param colspan 列合并数
+	 */
+	void fill(int row, int column, int rowspan, int colspan) {
+		int rowCount = rowspan == 0 ? 1 : rowspan;
+		int columnCount = colspan == 0 ? 1 : colspan;
+		for (int i = 0; i < rowCount; i++) {
+			bits(row + i).set(column, column + columnCount);
+		}
+	}
+
+	/**
+	 * 区域内第一个已被占用的位置，没有时返回null
+	 * @return {行,列}
+	 */
+	int[] findFilled(int row, int column, int rowspan, int colspan) {
+		int rowCount = rowspan == 0 ? 1 : rowspan;
+		int columnCount = colspan == 0 ? 1 : colspan;
+		for (int i = 0; i < rowCount; i++) {
+			if (row + i >= rows.size() || rows.get(row + i) == null) continue;
+			int filled = rows.get(row + i).nextSetBit(column);
+			if (filled != -1 && filled < column + columnCount) {
+				return new int[]{row + i, filled};
+			}
+		}
+		return null;
+	}
+
+	ExlGrid copy() {
+		ExlGrid copy = new ExlGrid();
+		for (BitSet bits : rows) {
+			copy.rows.add(bits == null ? null : (BitSet) bits.clone());
+		}
+		return copy;
+	}
+
+	private BitSet bits(int row) {
+		while (rows.size() <= row) {
+			rows.add(null);
+		}
+		BitSet bits = rows.get(row);
+		if (bits == null) {
+			bits = new BitSet();
+			rows.set(row, bits);
+		}
+		return bits;
+	}
+}
@@ -0,0 +1,201 @@
+package com.tornado.zy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 自定义模式的布局结果。将一组{@link ExlRow}一次性解析为每个单元格的位置（行、列、行列合并、列宽、样式），
+ * 单元格依次放在所在行第一个未被占用的位置，解析时即检查合并区域是否重叠，重叠时抛出IllegalArgumentException.
+ * <br>解析结果不可变、与POI无关，可以单独测试，也可以缓存后重复使用，参见{@link ExcelExportUtils#complexHeader(ExlLayout)}.
+ * 行号均相对于第一行，绘制时再加上起始行
+ * <pre>
+ * private static final ExlLayout HEADER = ExlLayout.solve(headerRows);
+ * ...
+ * ExcelExportUtils.c().complexHeader(HEADER)...
+ * </pre>
+ * 注意：解析时拷贝了rows，之后再修改rows不会反映到布局中
+ * @author xlsiek
+ *
+ */
+public final class ExlLayout {
+	private final List<ExlRow> rows;//解析时的行，公开的solve为拷贝
+	private final int[] heights;//行高
+	private final int size;//单元格数
+	private final int[] rowIndexes;//相对行
+	private final int[] columns;
+	private final int[] rowspans;
+	private final int[] colspans;
+	private final int[] widths;
+	private final ExlCellStyle[] styles;
+	private final Object[] values;
+	private final String[][] underLineStrings;
+	private final int[] rowStarts;//每个ExlRow的第一个单元格在布局中的下标，最后一个元素为size
+
+	private ExlLayout(List<ExlRow> rows, int size) {
+		this.rows = Collections.unmodifiableList(rows);
+		this.heights = new int[rows.size()];
+		this.size = size;
+		this.rowIndexes = new int[size];
+		this.columns = new int[size];
+		this.rowspans = new int[size];
+		this.colspans = new int[size];
+		this.widths = new int[size];
+		this.styles = new ExlCellStyle[size];
+		this.values = new Object[size];
+		this.underLineStrings = new String[size][];
+		this.rowStarts = new int[rows.size() + 1];
+	}
+
+	/**
+	 * 解析一组行，从第0行、空白工作表开始
+	 * @param rows 行
+	 * @return ExlLayout
+	 */
+	public static ExlLayout solve(List<ExlRow> rows) {
+		List<ExlRow> copies = new ArrayList<>(rows.size());
+		for (ExlRow row : rows) {
+			copies.add(row.copy());
+		}
+		return solve(copies, new ExlGrid(), 0);
+	}
+
+	/**
+	 * 在已有占位的基础上解析一组行，不修改occupied。不拷贝rows，解析结果只在绘制时使用
+	 * @param rows 行
+	 * @param occupied 已有占位
+	 * @param originRow 第一行所在的绝对行号
+	 * @return ExlLayout
+	 */
+	static ExlLayout solve(List<ExlRow> rows, ExlGrid occupied, int originRow) {
+		int size = 0;
+		for (ExlRow row : rows) {
+			size += row.size();
+		}
+		ExlLayout layout = new ExlLayout(rows, size);
+		ExlGrid grid = occupied.copy();
+		int n = 0;
+		for (int r = 0; r < rows.size(); r++) {
+			ExlRow row = rows.get(r);
+			int rowIndex = originRow + r;
+			layout.rowStarts[r] = n;
+			layout.heights[r] = row.getHeight();
+			for (int i = 0; i < row.size(); i++) {
+				int column = grid.firstFree(rowIndex);
+				int rowspan = row.getRowspan(i);
+				int colspan = row.getColspan(i);
+				int[] filled = grid.findFilled(rowIndex, column, rowspan, colspan);
+				if (filled != null) {
+					throw new IllegalArgumentException("cell " + i + " of row " + r + " (" + row.getValue(i) + ") overlaps row "
+							+ (filled[0] - originRow) + " column " + filled[1]);
+				}
+				grid.fill(rowIndex, column, rowspan, colspan);
+				layout.rowIndexes[n] = r;
+				layout.columns[n] = column;
+				layout.rowspans[n] = rowspan;
+				layout.colspans[n] = colspan;
+				layout.widths[n] = row.getWidth(i);
+				layout.styles[n] = row.getStyle(i);
+				layout.values[n] = row.getValue(i);
+				layout.underLineStrings[n] = row.getUnderLineString(i);
+				n++;
+			}
+		}
+		layout.rowStarts[rows.size()] = n;
+		return layout;
+	}
+
+	/**
+	 * 解析时的行，预先解析的布局所在区域已有占位时据此重新解析，并用于计算缓存键，不要修改
+	 * @return 只读的行列表
+	 */
+	List<ExlRow> rows() {
+		return rows;
+	}
+
+	/**
+	 * 行高
+	 * @param row 相对行
+	 * @return 行高，0为默认
+	 */
+	public int getHeight(int row) {
+		return heights[row];
+	}
+
+	/**
+	 * 行数，即ExlRow的个数，不包含向下合并超出的部分
+	 * @return 行数
+	 */
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	/**
+	 * 单元格数
+	 * @return 单元格数
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 指定行第一个单元格的下标
+	 * @param row 相对行
+	 * @return 下标
+	 */
+	public int rowStart(int row) {
+		return rowStarts[row];
+	}
+
+	/**
+	 * 指定行最后一个单元格之后的下标
+	 * @param row 相对行
+	 * @return 下标
+	 */
+	public int rowEnd(int row) {
+		return rowStarts[row + 1];
+	}
+
+	public int getRow(int index) {
+		return rowIndexes[index];
+	}
+
+	public int getColumn(int index) {
+		return columns[index];
+	}
+
+	public int getRowspan(int index) {
+		return rowspans[index];
+	}
+
+	public int getColspan(int index) {
+		return colspans[index];
+	}
+
+	public int getWidth(int index) {
+		return widths[index];
+	}
+
+	public ExlCellStyle getStyle(int index) {
+		return styles[index];
+	}
+
+	public Object getValue(int index) {
+		return values[index];
+	}
+
+	public String[] getUnderLineString(int index) {
+		return underLineStrings[index];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			builder.append(Arrays.toString(new int[]{rowIndexes[i], columns[i], rowspans[i], colspans[i]}))
+					.append('=').append(getValue(i)).append('\n');
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,212 @@
+package com.tornado.zy;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 带缓存的渲染器，按单元格原始值缓存渲染结果，适用于查外部字典、格式化开销大且值重复较多的渲染.
+ * <br>缓存有容量上限，容量为所有分段合计，值的分布不均时也不会提前淘汰。缓存分段加锁，可在并行导出(参见{@link ExcelBatchExportUtils})中共用；
+ * 超出容量时优先淘汰新值所在分段中最久未使用的值，分段为空时依次淘汰其他分段的，因此是近似的最近最少使用(LRU).
+ * 并发写入时合计可能短暂超出容量，写入的线程随即淘汰回容量以内
+ * <p>只有结果仅取决于单元格值的渲染才能缓存：
+ * {@link #of(Function, int)}包装只接收值的函数；依赖record或index的{@link ExlCellRender}不能缓存，
+ * 除非调用方确认其结果与record、index无关，并通过{@link #pure(ExlCellRender, int)}声明</p>
+ * <pre>
+ * utils.render(ExlMemoRender.of(v -&gt; dictService.name(v), 1024), "area");
+ * </pre>
+ * 命中、未命中、淘汰次数可以通过导出结果{@link ExlExportStats#getRenderCaches()}查看
+ * @author xlsiek
+ *
+ */
+public final class ExlMemoRender implements ExlCellRender<Object> {
+	private final static int SEGMENTS = 16;//分段数，必须为2的幂
+	private final ExlCellRender<Object> render;
+	private final Object source;//调用方传入的函数或渲染器，用作标识
+	private final Segment[] segments = new Segment[SEGMENTS];
+	private final int maxSize;
+	private final AtomicInteger size = new AtomicInteger();//所有分段合计的值个数
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	private ExlMemoRender(ExlCellRender<Object> render, Object source, int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+		}
+		this.render = render;
+		this.source = source;
+		this.maxSize = maxSize;
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * 包装一个只依赖单元格值的渲染函数
+	 * @param render 渲染函数，入参为单元格原始值
+	 * @param maxSize 最多缓存的值个数，所有分段合计
+	 * @return ExlMemoRender
+	 */
+	public static ExlMemoRender of(Function<String,String> render, int maxSize) {
+		return new ExlMemoRender((v, record, index) -> render.apply(v), render, maxSize);
+	}
+
+	/**
+	 * 包装一个声明为纯函数的渲染器。调用方保证其结果只取决于v，与record、index无关，否则缓存结果将是错误的
+	 * @param render 渲染器
+	 * @param maxSize 最多缓存的值个数，所有分段合计
+	 * @return ExlMemoRender
+	 */
+	public static ExlMemoRender pure(ExlCellRender<?> render, int maxSize) {
+		@SuppressWarnings("unchecked")//行记录原样传给被包装的渲染器，其类型由注册该渲染器的调用方保证
+		ExlCellRender<Object> cellRender = (ExlCellRender<Object>) render;
+		return new ExlMemoRender(cellRender, render, maxSize);
+	}
+
+	@Override
+	public String format(String v, Object record, int index) {
+		if (v == null) {
+			return render.format(v, record, index);
+		}
+		int home = spread(v.hashCode()) & (SEGMENTS - 1);
+		Segment segment = segments[home];
+		String result;
+		synchronized (segment) {
+			result = segment.get(v);
+		}
+		if (result != null) {
+			hits.increment();
+			return result;
+		}
+		misses.increment();
+		//渲染放在锁外执行，并发时同一个值可能被渲染多次，结果一致
+		result = render.format(v, record, index);
+		if (result != null) {
+			boolean added;
+			synchronized (segment) {
+				added = segment.put(v, result) == null;
+			}
+			if (added && size.incrementAndGet() > maxSize) {
+				evict(home);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 淘汰到容量以内，从新值所在分段开始，每次只锁一个分段
+	 */
+	private void evict(int home) {
+		for (int i = 0; size.get() > maxSize && i < SEGMENTS; ) {
+			Segment segment = segments[(home + i) & (SEGMENTS - 1)];
+			boolean removed = false;
+			synchronized (segment) {
+				if (!segment.isEmpty()) {
+					Iterator<String> eldest = segment.keySet().iterator();
+					eldest.next();
+					eldest.remove();
+					removed = true;
+				}
+			}
+			if (removed) {
+				size.decrementAndGet();
+				evictions.increment();
+			} else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * 当前累计的缓存统计
+	 * @return Stats
+	 */
+	public Stats stats() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return new Stats(hits.sum(), misses.sum(), evictions.sum(), size);
+	}
+
+	/**
+	 * 以被包装的函数或渲染器的标识作为缓存键中的标识，参见{@link ExlExportCache}
+	 * @return 被包装的是lambda等没有稳定标识的对象时为null
+	 */
+	String identity() {
+		String identity = ExlExportCache.identity(source);
+		return identity == null ? null : "memo:" + identity;
+	}
+
+	@Override
+	public String toString() {
+		return "memo:" + source;
+	}
+
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * 单个分段，访问顺序的LinkedHashMap，第一个值为最久未使用的
+	 */
+	private static final class Segment extends LinkedHashMap<String,String> {
+		private static final long serialVersionUID = 1L;
+
+		Segment() {
+			super(16, 0.75f, true);
+		}
+	}
+
+	/**
+	 * 缓存统计
+	 */
+	public static final class Stats {
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+		private final int size;
+
+		Stats(long hits, long misses, long evictions, int size) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.size = size;
+		}
+
+		/**
+		 * 与更早的统计相减，得到期间的增量，size保持当前值
+		 * @param before 更早的统计
+		 * @return Stats
+		 */
+		Stats minus(Stats before) {
+			return new Stats(hits - before.hits, misses - before.misses, evictions - before.evictions, size);
+		}
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		public long getEvictions() {
+			return evictions;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		@Override
+		public String toString() {
+			return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size;
+		}
+	}
+}
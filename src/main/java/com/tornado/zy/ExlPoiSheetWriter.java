@@ -0,0 +1,174 @@
+package com.tornado.zy;
+
+import org.apache.poi.hssf.usermodel.HSSFPrintSetup;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.RegionUtil;
+
+import java.util.Map;
+
+/**
+ * 写入POI工作表，工作簿整体在内存中，由调用方最后一次性输出
+ * 
+ * @author xlsiek
+ *
+ */
+class ExlPoiSheetWriter implements ExlSheetWriter {
+	private final static String[] COLUMN_NAME_ARR = {"A","B","C","D","E","F","G","H","I","J","K","L","M","N","O","P","Q","R","S","T","U","V","W","X","Y","Z"
+			,"AA","AB","AC","AD","AE","AF","AG","AH","AI","AJ","AK","AL","AM","AN","AO","AP","AQ","AR","AS","AT","AU","AV","AW","AX","AY","AZ"};
+	private final Sheet sheet;
+	private final ExlStyleRegistry styleRegistry;
+	private final int fontSize;
+	private final Map<String, CellStyle> styles;
+	private final boolean pageSetup;//是否设置页面，模板自带页面设置时为false
+	private Row lastRow;//最近访问的行，内容循环中同一行连续写多个单元格
+
+	ExlPoiSheetWriter(Sheet sheet, ExlStyleRegistry styleRegistry, int fontSize) {
+		this.sheet = sheet;
+		this.styleRegistry = styleRegistry;
+		this.fontSize = fontSize;
+		this.styles = styleRegistry.styles(fontSize);
+		this.pageSetup = true;
+		sheet.setFitToPage(true);
+		sheet.setHorizontallyCenter(true);
+	}
+
+	/**
+	 * 写入模板复制出的工作表，使用模板中的样式，不改动模板的页面设置，不支持下划线文本
+	 * @param sheet 工作表
+	 * @param styles 样式名-样式
+	 */
+	ExlPoiSheetWriter(Sheet sheet, Map<String, CellStyle> styles) {
+		this.sheet = sheet;
+		this.styleRegistry = null;
+		this.fontSize = 0;
+		this.styles = styles;
+		this.pageSetup = false;
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return -1;
+	}
+
+	Sheet getSheet() {
+		return sheet;
+	}
+
+	@Override
+	public void newRow(int row) {
+		lastRow = sheet.createRow(row);
+	}
+
+	@Override
+	public void ensureRow(int row) {
+		row(row);
+	}
+
+	@Override
+	public void rowHeight(int row, float height) {
+		row(row).setHeightInPoints(height);
+	}
+
+	@Override
+	public boolean isDefaultHeight(int row) {
+		return row(row).getHeightInPoints() == sheet.getDefaultRowHeightInPoints();
+	}
+
+	@Override
+	public void cell(int row, int column, String value, String style) {
+		Cell cell = row(row).createCell(column);
+		cell.setCellValue(value);
+		if (style != null) cell.setCellStyle(styles.get(style));
+	}
+
+	@Override
+	public void cell(int row, int column, double value, String style) {
+		Cell cell = row(row).createCell(column);
+		cell.setCellValue(value);
+		if (style != null) cell.setCellStyle(styles.get(style));
+	}
+
+	@Override
+	public void blank(int row, int column, String style) {
+		Cell cell = row(row).createCell(column);
+		if (style != null) cell.setCellStyle(styles.get(style));
+	}
+
+	@Override
+	public void underLineCell(int row, int column, String value, String[] underLines, String style) {
+		Cell cell = row(row).createCell(column);
+		cell.setCellValue(returnUnderLineText(value, underLines));
+		if (style != null) cell.setCellStyle(styles.get(style));
+	}
+
+	@Override
+	public void merge(int beginRow, int beginColumn, int rowspan, int colspan, boolean hasBorder) {
+		if(rowspan == 0) rowspan = 1;
+		if(colspan == 0) colspan = 1;
+		//1代表自身.
+		String exp = "$" + (COLUMN_NAME_ARR[beginColumn]) + "$" + (beginRow + 1) + ":$" + (COLUMN_NAME_ARR[beginColumn + colspan - 1]) + "$" + (beginRow + rowspan);
+		CellRangeAddress cellRangeAddress = CellRangeAddress.valueOf(exp);
+		sheet.addMergedRegion(cellRangeAddress);
+		if(hasBorder){
+			RegionUtil.setBorderTop(1, cellRangeAddress, sheet);
+	        RegionUtil.setBorderLeft(1, cellRangeAddress, sheet);
+	        RegionUtil.setBorderBottom(1, cellRangeAddress, sheet);
+	        RegionUtil.setBorderRight(1, cellRangeAddress, sheet);
+		}
+		lastRow = null;//RegionUtil可能新建了行
+	}
+
+	@Override
+	public void columnWidth(int column, int width) {
+		sheet.setColumnWidth(column, width*256);
+	}
+
+	@Override
+	public void rowsDone(int row) {
+		//整个工作簿最后一次性输出
+	}
+
+	@Override
+	public void finish() {
+		if (!pageSetup) {
+			return;
+		}
+		sheet.getPrintSetup().setPaperSize(HSSFPrintSetup.A4_PAPERSIZE);
+		sheet.setMargin(HSSFSheet.BottomMargin,( double ) 0.5 );// 页边距（下）  
+		sheet.setMargin(HSSFSheet.LeftMargin,( double ) 0.1 );// 页边距（左）  
+		sheet.setMargin(HSSFSheet.RightMargin,( double ) 0.1 );// 页边距（右）  
+		sheet.setMargin(HSSFSheet.TopMargin,( double ) 0.5 );// 页边距（上）  
+	}
+
+	private Row row(int rowIndex) {
+		if (lastRow != null && lastRow.getRowNum() == rowIndex) {
+			return lastRow;
+		}
+		Row row = sheet.getRow(rowIndex);
+		lastRow = row == null ? sheet.createRow(rowIndex) : row;
+		return lastRow;
+	}
+
+	private RichTextString returnUnderLineText(String value,String[] uStrs){
+		Font font = styleRegistry.underLineFont(fontSize);
+		RichTextString richString = sheet.getWorkbook().getCreationHelper().createRichTextString(value);
+		int preIndex = -1;
+		Font tempFont = styleRegistry.plainFont(fontSize);
+		richString.applyFont(tempFont);
+		for(String str : uStrs){
+			int b = value.indexOf(str,preIndex);
+			int e = str.length();
+			preIndex = b + e;
+			richString.applyFont(b, b + e, font);
+		}
+		
+		return richString;
+	}
+}
@@ -0,0 +1,271 @@
+package com.tornado.zy;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 预览写入目标，只在内存中记录单元格、合并区域、行高及列宽，不建工作簿，最后输出为HTML表格或JSON.
+ * 参见{@link ExcelExportUtils#previewHtml(int)}
+ *
+ * @author xlsiek
+ *
+ */
+final class ExlPreviewWriter implements ExlSheetWriter {
+	private final TreeMap<Integer,PreviewRow> rows = new TreeMap<>();
+	private final Map<Long,int[]> merges = new HashMap<>();//左上角 -> {行数, 列数}
+	private final Set<Long> covered = new HashSet<>();//被合并区域覆盖的非左上角位置
+	private final TreeMap<Integer,Integer> columnWidths = new TreeMap<>();
+	private int columnCount = 0;
+	private boolean truncated = false;
+
+	@Override
+	public void newRow(int row) {
+		rows.put(row, new PreviewRow());
+	}
+
+	@Override
+	public void ensureRow(int row) {
+		row(row);
+	}
+
+	@Override
+	public void rowHeight(int row, float height) {
+		row(row).height = height;
+	}
+
+	@Override
+	public boolean isDefaultHeight(int row) {
+		return row(row).height == 0;
+	}
+
+	@Override
+	public void cell(int row, int column, String value, String style) {
+		put(row, column, value, style, false);
+	}
+
+	@Override
+	public void cell(int row, int column, double value, String style) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			put(row, column, String.valueOf(value), style, false);
+		} else {
+			put(row, column, value == (long) value ? String.valueOf((long) value) : String.valueOf(value), style, true);
+		}
+	}
+
+	@Override
+	public void blank(int row, int column, String style) {
+		put(row, column, "", style, false);
+	}
+
+	@Override
+	public void underLineCell(int row, int column, String value, String[] underLines, String style) {
+		put(row, column, value, style, false);
+	}
+
+	@Override
+	public void merge(int row, int column, int rowspan, int colspan, boolean border) {
+		int rowCount = rowspan == 0 ? 1 : rowspan;
+		int columnCount = colspan == 0 ? 1 : colspan;
+		merges.put(key(row, column), new int[]{rowCount, columnCount});
+		for (int r = row; r < row + rowCount; r++) {
+			for (int c = column; c < column + columnCount; c++) {
+				if (r != row || c != column) covered.add(key(r, c));
+			}
+		}
+		this.columnCount = Math.max(this.columnCount, column + columnCount);
+	}
+
+	@Override
+	public void columnWidth(int column, int width) {
+		columnWidths.put(column, width);
+	}
+
+	@Override
+	public void rowsDone(int row) {
+		//最后一次性输出
+	}
+
+	@Override
+	public void finish() {
+		//最后一次性输出
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return -1;
+	}
+
+	/**
+	 * 内容被截断，数据源还有更多行
+	 */
+	void truncated() {
+		truncated = true;
+	}
+
+	/**
+	 * 输出为HTML表格。单元格的class为样式名，例如"cellcb"，由页面自行定义样式
+	 * @return HTML
+	 */
+	String toHtml() {
+		StringBuilder html = new StringBuilder(4096);
+		html.append("<table class=\"exl-preview\">");
+		if (!columnWidths.isEmpty()) {
+			html.append("<colgroup>");
+			for (int c = 0; c < columnCount; c++) {
+				Integer width = columnWidths.get(c);
+				html.append(width == null ? "<col>" : "<col style=\"width:" + width + "em\">");
+			}
+			html.append("</colgroup>");
+		}
+		int lastRow = rows.isEmpty() ? -1 : rows.lastKey();
+		for (int r = 0; r <= lastRow; r++) {
+			PreviewRow row = rows.get(r);
+			html.append(row != null && row.height > 0 ? "<tr style=\"height:" + row.height + "pt\">" : "<tr>");
+			for (int c = 0; c < columnCount; c++) {
+				if (covered.contains(key(r, c))) {
+					continue;
+				}
+				PreviewCell cell = row == null ? null : row.cells.get(c);
+				html.append("<td");
+				if (cell != null && cell.style != null) {
+					html.append(" class=\"").append(cell.style).append('"');
+				}
+				int[] span = merges.get(key(r, c));
+				if (span != null) {
+					if (span[0] > 1) html.append(" rowspan=\"").append(span[0]).append('"');
+					if (span[1] > 1) html.append(" colspan=\"").append(span[1]).append('"');
+				}
+				html.append('>');
+				if (cell != null) {
+					escapeHtml(html, cell.value);
+				}
+				html.append("</td>");
+			}
+			html.append("</tr>");
+		}
+		return html.append("</table>").toString();
+	}
+
+	/**
+	 * 输出为JSON：{"columns":列数,"truncated":是否截断,"rows":[{"row":行,"height":行高,"cells":[{"column":列,"value":值,"style":样式,"rowspan":行数,"colspan":列数}]}]}.
+	 * <br>没有单元格的行及被合并覆盖的单元格不输出，数值单元格的value为数字
+	 * @return JSON
+	 */
+	String toJson() {
+		StringBuilder json = new StringBuilder(4096);
+		json.append("{\"columns\":").append(columnCount).append(",\"truncated\":").append(truncated).append(",\"rows\":[");
+		boolean firstRow = true;
+		for (Map.Entry<Integer,PreviewRow> entry : rows.entrySet()) {
+			int r = entry.getKey();
+			PreviewRow row = entry.getValue();
+			if (row.cells.isEmpty()) {
+				continue;
+			}
+			json.append(firstRow ? "" : ",").append("{\"row\":").append(r);
+			firstRow = false;
+			if (row.height > 0) {
+				json.append(",\"height\":").append(row.height);
+			}
+			json.append(",\"cells\":[");
+			boolean firstCell = true;
+			for (Map.Entry<Integer,PreviewCell> cellEntry : row.cells.entrySet()) {
+				int c = cellEntry.getKey();
+				if (covered.contains(key(r, c))) {
+					continue;
+				}
+				PreviewCell cell = cellEntry.getValue();
+				json.append(firstCell ? "" : ",").append("{\"column\":").append(c).append(",\"value\":");
+				firstCell = false;
+				if (cell.number) {
+					json.append(cell.value);
+				} else {
+					escapeJson(json, cell.value);
+				}
+				if (cell.style != null) {
+					json.append(",\"style\":");
+					escapeJson(json, cell.style);
+				}
+				int[] span = merges.get(key(r, c));
+				if (span != null) {
+					json.append(",\"rowspan\":").append(span[0]).append(",\"colspan\":").append(span[1]);
+				}
+				json.append('}');
+			}
+			json.append("]}");
+		}
+		return json.append("]}").toString();
+	}
+
+	private void put(int row, int column, String value, String style, boolean number) {
+		row(row).cells.put(column, new PreviewCell(value, style, number));
+		columnCount = Math.max(columnCount, column + 1);
+	}
+
+	private PreviewRow row(int row) {
+		PreviewRow previewRow = rows.get(row);
+		if (previewRow == null) {
+			previewRow = new PreviewRow();
+			rows.put(row, previewRow);
+		}
+		return previewRow;
+	}
+
+	private static long key(int row, int column) {
+		return ((long) row << 32) | column;
+	}
+
+	private static void escapeHtml(StringBuilder out, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '<': out.append("&lt;"); break;
+			case '>': out.append("&gt;"); break;
+			case '&': out.append("&amp;"); break;
+			case '"': out.append("&quot;"); break;
+			case '\n': out.append("<br>"); break;
+			default: out.append(c);
+			}
+		}
+	}
+
+	private static void escapeJson(StringBuilder out, String value) {
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"': out.append("\\\""); break;
+			case '\\': out.append("\\\\"); break;
+			case '\n': out.append("\\n"); break;
+			case '\r': out.append("\\r"); break;
+			case '\t': out.append("\\t"); break;
+			default:
+				if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+					out.append(String.format("\\u%04x", (int) c));
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		out.append('"');
+	}
+
+	private static final class PreviewRow {
+		private float height = 0;
+		private final TreeMap<Integer,PreviewCell> cells = new TreeMap<>();
+	}
+
+	private static final class PreviewCell {
+		private final String value;
+		private final String style;
+		private final boolean number;
+
+		PreviewCell(String value, String style, boolean number) {
+			this.value = value == null ? "" : value;
+			this.style = style;
+			this.number = number;
+		}
+	}
+}
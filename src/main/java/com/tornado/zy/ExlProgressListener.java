@@ -0,0 +1,19 @@
+package com.tornado.zy;
+
+/**
+ * 导出进度回调，参见{@link ExcelExportUtils#progress(ExlProgressListener, int)}.
+ * <br>在导出线程中调用，实现应尽量轻量，例如只更新一个volatile变量供页面轮询
+ * 
+ * @author xlsiek
+ *
+ */
+public interface ExlProgressListener {
+
+	/**
+	 * 进度
+	 * @param rows 已写出的内容行数
+	 * @param totalRows 预计的内容总行数，数据源无法预知大小时为-1
+	 * @param bytes 已输出给调用方的字节数，非流式输出时为-1
+	 */
+	void progress(int rows, int totalRows, long bytes);
+}
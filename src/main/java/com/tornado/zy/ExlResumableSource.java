@@ -0,0 +1,45 @@
+package com.tornado.zy;
+
+import java.util.Iterator;
+
+/**
+ * 可以从中途继续读取的数据源，参见{@link ExcelExportUtils#exportResumable(java.nio.file.Path, int)}.
+ * <br>从检查点继续时不必从头读取：position为已读取的记录数，key为最后读取的那条记录的键（见{@link #key(Object)}），
+ * 例如数据库按主键排序分页时可以"where id &gt; key"继续查询，而不是偏移position行
+ * <pre>
+ * ExlResumableSource&lt;School&gt; source = new ExlResumableSource&lt;School&gt;() {
+ *     public Iterator&lt;School&gt; iterator(long position, String key) {
+ *         return schoolDao.scanAfter(key == null ? 0 : Long.parseLong(key));
+ *     }
+ *     public String key(School school) {
+ *         return String.valueOf(school.getId());
+ *     }
+ * };
+ * </pre>
+ * @author xlsiek
+ *
+ */
+public interface ExlResumableSource<T> extends Iterable<T> {
+
+	/**
+	 * 从指定位置继续读取
+	 * @param position 已读取的记录数，从头读取时为0
+	 * @param key 最后读取的记录的键，从头读取或未实现{@link #key(Object)}时为null
+	 * @return 之后的记录
+	 */
+	Iterator<T> iterator(long position, String key);
+
+	/**
+	 * 记录的键，只在检查点时对该块的最后一条记录调用。默认为null，只按position继续
+	 * @param record 行记录
+	 * @return 键
+	 */
+	default String key(T record) {
+		return null;
+	}
+
+	@Override
+	default Iterator<T> iterator() {
+		return iterator(0, null);
+	}
+}
@@ -1,17 +1,30 @@
 package com.tornado.zy;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * 行，代表工作表的一行记录。暂时支持高度属性
+ * <br>单元格按列存放在基本类型数组中（值、行列合并、列宽、样式），不保留{@link ExlCell}对象，
+ * {@link #addCell(ExlCell)}只是拷贝其属性，大型自定义表格的模型内存因此只与单元格数量的几个数组相当.
+ * <br>添加之后仍可修改该ExlCell对象，修改会写回到行中；同一个对象添加多次时写回到所有位置。
+ * {@link #getCell()}视图取出的单元格同样写回，视图支持set、remove
  * 
  * @author xlsiek
  *
  */
 public class ExlRow {
+	private final static int INITIAL_CAPACITY = 4;
 	private int height;
-	private List<ExlCell> cell = new ArrayList<>();
+	private int size = 0;//单元格数
+	private Object[] values = new Object[INITIAL_CAPACITY];
+	private int[] spans = new int[INITIAL_CAPACITY];//高16位行合并数，低16位列合并数
+	private int[] widths = null;//列宽，只有设置过时才分配
+	private byte[] styles = new byte[INITIAL_CAPACITY];//ExlCellStyle序号
+	private String[][] underLineStrings = null;//下划线文本，只有设置过时才分配
+	private int[] ids = new int[INITIAL_CAPACITY];//各位置的编号，供添加后修改的单元格找回自己的位置
+	private int nextId = 0;
 
 	private ExlRow() {
 
@@ -42,17 +55,225 @@ public class ExlRow {
 	}
 
 	/**
-	 * 向指定的行添加一个单元格
+	 * 向指定的行添加一个单元格。拷贝其属性，之后对该单元格的修改写回到行中
 	 * 
 	 * @param cell 单元格
 	 * @return ExlRow
 	 */
 	public ExlRow addCell(ExlCell cell) {
-		this.cell.add(cell);
+		int index = append(cell.getValue(), cell.getRowspan(), cell.getColspan(), ExlCellStyle.of(cell.isAlignCenter(), cell.isBorder()));
+		store(index, cell);
+		cell.attach(this, ids[index], index);
 		return this;
 	}
 
+	/**
+	 * 向指定的行添加一个单元格，不创建{@link ExlCell}对象
+	 * 
+	 * @param value 值
+	 * @param rowspan 行合并数
+	 * @param colspan 列合并数
+	 * @param style 样式
+	 * @return ExlRow
+	 */
+	public ExlRow addCell(Object value, int rowspan, int colspan, ExlCellStyle style) {
+		append(value, rowspan <= 1 ? 0 : rowspan, colspan <= 1 ? 0 : colspan, style);
+		return this;
+	}
+
+	/**
+	 * 单元格列表视图，每次get都会按下标新建一个{@link ExlCell}，修改它会写回到行中；set、remove直接修改行.
+	 * 仅用于兼容，绘制时请使用按下标访问的方法
+	 * 
+	 * @return 单元格列表
+	 */
 	public List<ExlCell> getCell() {
+		return new AbstractList<ExlCell>() {
+			@Override
+			public ExlCell get(int index) {
+				ExlCell cell = snapshot(index);
+				cell.attach(ExlRow.this, ids[index], index);
+				return cell;
+			}
+
+			@Override
+			public ExlCell set(int index, ExlCell cell) {
+				ExlCell previous = snapshot(index);
+				ids[index] = nextId++;//原位置上取出的单元格不再写回
+				update(ids[index], index, cell);
+				cell.attach(ExlRow.this, ids[index], index);
+				return previous;
+			}
+
+			@Override
+			public boolean add(ExlCell cell) {
+				addCell(cell);
+				return true;
+			}
+
+			@Override
+			public ExlCell remove(int index) {
+				ExlCell previous = snapshot(index);
+				removeAt(index);
+				return previous;
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * 单元格数
+	 * @return 单元格数
+	 */
+	public int size() {
+		return size;
+	}
+
+	public Object getValue(int index) {
+		checkIndex(index);
+		return values[index];
+	}
+
+	public int getRowspan(int index) {
+		checkIndex(index);
+		return spans[index] >>> 16;
+	}
+
+	public int getColspan(int index) {
+		checkIndex(index);
+		return spans[index] & 0xFFFF;
+	}
+
+	public int getWidth(int index) {
+		checkIndex(index);
+		return widths == null ? 0 : widths[index];
+	}
+
+	public ExlCellStyle getStyle(int index) {
+		checkIndex(index);
+		return ExlCellStyle.valueOf(styles[index]);
+	}
+
+	public String[] getUnderLineString(int index) {
+		checkIndex(index);
+		return underLineStrings == null ? null : underLineStrings[index];
+	}
+
+	/**
+	 * 拷贝行高及所有单元格，之前添加的{@link ExlCell}不会写回到拷贝中
+	 * @return 新的行
+	 */
+	ExlRow copy() {
+		ExlRow row = new ExlRow();
+		row.height = height;
+		row.size = size;
+		row.values = values.clone();
+		row.spans = spans.clone();
+		row.widths = widths == null ? null : widths.clone();
+		row.styles = styles.clone();
+		if (underLineStrings != null) {
+			row.underLineStrings = new String[underLineStrings.length][];
+			for (int i = 0; i < size; i++) {
+				row.underLineStrings[i] = underLineStrings[i] == null ? null : underLineStrings[i].clone();
+			}
+		}
+		row.ids = ids.clone();
+		row.nextId = nextId;
+		return row;
+	}
+
+	/**
+	 * 单元格修改后写回
+	 * @param id 添加时的位置编号
+	 * @param hint 添加时的下标，之前的单元格被移除后会变化
+	 * @param cell 单元格
+	 * @return 位置仍在行中时返回当前下标，已被移除或替换时返回-1
+	 */
+	int update(int id, int hint, ExlCell cell) {
+		int index = hint < size && ids[hint] == id ? hint : -1;
+		for (int i = 0; index < 0 && i < size; i++) {
+			if (ids[i] == id) index = i;
+		}
+		if (index >= 0) {
+			checkSpan(cell.getRowspan(), cell.getColspan());
+			values[index] = cell.getValue();
+			spans[index] = cell.getRowspan() << 16 | cell.getColspan();
+			styles[index] = (byte) ExlCellStyle.of(cell.isAlignCenter(), cell.isBorder()).ordinal();
+			store(index, cell);
+		}
+		return index;
+	}
+
+	/**
+	 * 拷贝单元格的宽度及下划线文本
+	 */
+	private void store(int index, ExlCell cell) {
+		if (cell.getWidth() != 0 || widths != null) {
+			if (widths == null) widths = new int[values.length];
+			widths[index] = cell.getWidth();
+		}
+		if (cell.getUnderLineString() != null || underLineStrings != null) {
+			if (underLineStrings == null) underLineStrings = new String[values.length][];
+			underLineStrings[index] = cell.getUnderLineString() == null ? null : cell.getUnderLineString().clone();
+		}
+	}
+
+	/**
+	 * 按下标新建一个与该位置属性相同的单元格
+	 */
+	private ExlCell snapshot(int index) {
+		checkIndex(index);
+		ExlCell cell = ExlCell.c(values[index], getRowspan(index), getColspan(index), getStyle(index).isBorder()).width(getWidth(index));
+		if (!getStyle(index).isAlignCenter()) cell.alignLeft();
+		if (getUnderLineString(index) != null) cell.uString(getUnderLineString(index).clone());
 		return cell;
 	}
-}
\ No newline at end of file
+
+	private void removeAt(int index) {
+		checkIndex(index);
+		int moved = size - index - 1;
+		System.arraycopy(values, index + 1, values, index, moved);
+		System.arraycopy(spans, index + 1, spans, index, moved);
+		System.arraycopy(styles, index + 1, styles, index, moved);
+		System.arraycopy(ids, index + 1, ids, index, moved);
+		if (widths != null) System.arraycopy(widths, index + 1, widths, index, moved);
+		if (underLineStrings != null) System.arraycopy(underLineStrings, index + 1, underLineStrings, index, moved);
+		size--;
+		values[size] = null;
+		if (underLineStrings != null) underLineStrings[size] = null;
+	}
+
+	private static void checkSpan(int rowspan, int colspan) {
+		if (rowspan > 0xFFFF || colspan > 0xFFFF) {
+			throw new IllegalArgumentException("span too large: " + rowspan + "," + colspan);
+		}
+	}
+
+	private int append(Object value, int rowspan, int colspan, ExlCellStyle style) {
+		checkSpan(rowspan, colspan);
+		if (size == values.length) {
+			int capacity = size * 2;
+			values = Arrays.copyOf(values, capacity);
+			spans = Arrays.copyOf(spans, capacity);
+			styles = Arrays.copyOf(styles, capacity);
+			ids = Arrays.copyOf(ids, capacity);
+			if (widths != null) widths = Arrays.copyOf(widths, capacity);
+			if (underLineStrings != null) underLineStrings = Arrays.copyOf(underLineStrings, capacity);
+		}
+		values[size] = value;
+		spans[size] = rowspan << 16 | colspan;
+		styles[size] = (byte) style.ordinal();
+		ids[size] = nextId++;
+		return size++;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+		}
+	}
+}
@@ -0,0 +1,343 @@
+package com.tornado.zy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 行记录的取值方式，按记录的类型每次导出选定一次，之后每个单元格直接按下标、键或句柄取值，不再逐格判断类型、查找属性.
+ * <p>支持的记录：
+ * <br>1.Map：内容列即键，键数组预先取出；
+ * <br>2.Object[]及List（例如原生查询的结果行）：内容列为数字时按该下标，否则按内容列的位置；
+ * <br>3.record（Java 16及以上）：按规范访问方法的MethodHandle，没有该组件的列取值为空；
+ * <br>4.其他实体：按属性的Field，找不到的属性取值为空.
+ * <br>缺少的列在选定取值方式时确定一次，此后每行直接取空值，不报错也不输出日志
+ * <br>同一块中出现不同类型的记录时逐条选择</p>
+ *
+ * @author xlsiek
+ *
+ */
+abstract class ExlRowAdapter {
+	private final static Method IS_RECORD = method(Class.class, "isRecord");
+	private final static Method RECORD_COMPONENTS = method(Class.class, "getRecordComponents");
+
+	/**
+	 * 是否适用于该记录
+	 * @param record 行记录
+	 * @return boolean
+	 */
+	abstract boolean accepts(Object record);
+
+	/**
+	 * 取一列的原始值
+	 * @param record 行记录，须已{@link #accepts(Object)}
+	 * @param column 内容列的下标
+	 * @return 原始值
+	 */
+	abstract Object get(Object record, int column);
+
+	/**
+	 * 取一列的文字，空值为空串
+	 * @param record 行记录
+	 * @param column 内容列的下标
+	 * @return String
+	 */
+	final String text(Object record, int column) {
+		String result = String.valueOf(get(record, column));
+		return "null".equals(result) ? "" : result;//去掉空值
+	}
+
+	/**
+	 * 是否适用于一块中的全部记录
+	 * @param records 行记录
+	 * @return boolean
+	 */
+	boolean acceptsAll(List<Object> records) {
+		for (int r = 0, size = records.size(); r < size; r++) {
+			if (!accepts(records.get(r))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 按一块记录选定取值方式：全部适用于第一条记录的类型时使用该类型的方式，否则逐条选择
+	 * @param records 行记录，不能为空
+	 * @param columns 内容列
+	 * @param fields 属性缓存
+	 * @return ExlRowAdapter
+	 */
+	static ExlRowAdapter of(List<Object> records, String[] columns, ExlFieldCache fields) {
+		ExlRowAdapter adapter = of(records.get(0), columns, fields);
+		if (adapter.acceptsAll(records)) {
+			return adapter;
+		}
+		return new Mixed(columns, fields);
+	}
+
+	/**
+	 * 适用于该记录的取值方式
+	 */
+	static ExlRowAdapter of(Object record, String[] columns, ExlFieldCache fields) {
+		if (record == null) {
+			return new Mixed(columns, fields);
+		}
+		if (record instanceof Map) {
+			return new MapRow(columns);
+		}
+		if (record instanceof Object[]) {
+			return new ArrayRow(columns);
+		}
+		if (record instanceof List) {
+			return new ListRow(columns);
+		}
+		if (isRecord(record.getClass())) {
+			ExlRowAdapter adapter = RecordRow.of(record.getClass(), columns);
+			if (adapter != null) {
+				return adapter;
+			}
+		}
+		return new BeanRow(record.getClass(), columns, fields);
+	}
+
+	private static boolean isRecord(Class<?> type) {
+		try {
+			return IS_RECORD != null && (Boolean) IS_RECORD.invoke(type);
+		} catch (ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	private static Method method(Class<?> type, String name) {
+		try {
+			return type.getMethod(name);
+		} catch (NoSuchMethodException e) {
+			return null;//Java 16之前没有record
+		}
+	}
+
+	/**
+	 * 按位置取值的记录的下标：内容列为非负整数时按该数字，否则按内容列的位置
+	 */
+	private static int[] indexes(String[] columns) {
+		int[] indexes = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			indexes[i] = i;
+			String column = columns[i];
+			if (!column.isEmpty() && column.length() < 10) {
+				boolean digits = true;
+				for (int k = 0; k < column.length() && digits; k++) {
+					digits = Character.isDigit(column.charAt(k));
+				}
+				if (digits) {
+					indexes[i] = Integer.parseInt(column);
+				}
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Map：键数组预先取出
+	 */
+	private static final class MapRow extends ExlRowAdapter {
+		private final String[] keys;
+
+		MapRow(String[] columns) {
+			this.keys = columns.clone();
+		}
+
+		@Override
+		boolean accepts(Object record) {
+			return record instanceof Map;
+		}
+
+		@Override
+		Object get(Object record, int column) {
+			return ((Map<?,?>) record).get(keys[column]);
+		}
+	}
+
+	/**
+	 * Object[]：按预先算好的下标，超出长度的为空
+	 */
+	private static final class ArrayRow extends ExlRowAdapter {
+		private final int[] indexes;
+
+		ArrayRow(String[] columns) {
+			this.indexes = indexes(columns);
+		}
+
+		@Override
+		boolean accepts(Object record) {
+			return record instanceof Object[];
+		}
+
+		@Override
+		Object get(Object record, int column) {
+			Object[] row = (Object[]) record;
+			int index = indexes[column];
+			return index < row.length ? row[index] : null;
+		}
+	}
+
+	/**
+	 * List：按预先算好的下标，超出长度的为空
+	 */
+	private static final class ListRow extends ExlRowAdapter {
+		private final int[] indexes;
+
+		ListRow(String[] columns) {
+			this.indexes = indexes(columns);
+		}
+
+		@Override
+		boolean accepts(Object record) {
+			return record instanceof List;
+		}
+
+		@Override
+		Object get(Object record, int column) {
+			List<?> row = (List<?>) record;
+			int index = indexes[column];
+			return index < row.size() ? row.get(index) : null;
+		}
+	}
+
+	/**
+	 * record：按规范访问方法的句柄，句柄已转为(Object)Object
+	 */
+	private static final class RecordRow extends ExlRowAdapter {
+		private final static MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+		private final Class<?> type;
+		private final MethodHandle[] accessors;
+
+		private RecordRow(Class<?> type, MethodHandle[] accessors) {
+			this.type = type;
+			this.accessors = accessors;
+		}
+
+		/**
+		 * @return 无法访问时（例如模块未开放）为null，改为按Field取值
+		 */
+		static ExlRowAdapter of(Class<?> type, String[] columns) {
+			try {
+				Map<String,Method> components = new HashMap<>();
+				for (Object component : (Object[]) RECORD_COMPONENTS.invoke(type)) {
+					Class<?> componentType = component.getClass();
+					String name = (String) componentType.getMethod("getName").invoke(component);
+					components.put(name, (Method) componentType.getMethod("getAccessor").invoke(component));
+				}
+				MethodHandles.Lookup lookup = MethodHandles.lookup();
+				MethodHandle[] accessors = new MethodHandle[columns.length];
+				for (int i = 0; i < columns.length; i++) {
+					Method accessor = components.get(columns[i]);
+					if (accessor == null) {
+						continue;//没有该组件，取值为空
+					}
+					accessor.setAccessible(true);
+					accessors[i] = lookup.unreflect(accessor).asType(GETTER);
+				}
+				return new RecordRow(type, accessors);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				return null;
+			}
+		}
+
+		@Override
+		boolean accepts(Object record) {
+			return record != null && record.getClass() == type;
+		}
+
+		@Override
+		Object get(Object record, int column) {
+			MethodHandle accessor = accessors[column];
+			if (accessor == null) {
+				return null;
+			}
+			try {
+				return (Object) accessor.invokeExact(record);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * 实体：按属性的Field
+	 */
+	private static final class BeanRow extends ExlRowAdapter {
+		private final Class<?> type;
+		private final Field[] fields;
+
+		BeanRow(Class<?> type, String[] columns, ExlFieldCache cache) {
+			this.type = type;
+			this.fields = new Field[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				try {
+					fields[i] = cache.get(type, columns[i]);
+				} catch (NoSuchFieldException e) {
+					//没有该属性，取值为空
+				}
+			}
+		}
+
+		@Override
+		boolean accepts(Object record) {
+			return record != null && record.getClass() == type;
+		}
+
+		@Override
+		Object get(Object record, int column) {
+			Field field = fields[column];
+			if (field == null) {
+				return null;
+			}
+			try {
+				return field.get(record);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * 类型不一的记录：按类型逐条选择，空记录取值为空
+	 */
+	private static final class Mixed extends ExlRowAdapter {
+		private final String[] columns;
+		private final ExlFieldCache fields;
+		private final Map<Class<?>,ExlRowAdapter> adapters = new HashMap<>();
+
+		Mixed(String[] columns, ExlFieldCache fields) {
+			this.columns = columns;
+			this.fields = fields;
+		}
+
+		@Override
+		boolean accepts(Object record) {
+			return true;
+		}
+
+		@Override
+		Object get(Object record, int column) {
+			if (record == null) {
+				return null;
+			}
+			ExlRowAdapter adapter = adapters.get(record.getClass());
+			if (adapter == null) {
+				adapter = ExlRowAdapter.of(record, columns, fields);
+				adapters.put(record.getClass(), adapter);
+			}
+			return adapter.get(record, column);
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.tornado.zy;
+
+/**
+ * 行写入器，按列下标直接取出记录的值，代替按属性名反射取值.
+ * <br>一般由{@link ExlColumnProcessor}根据{@link ExlColumn}生成，参见{@link ExcelExportUtils#rowWriter(ExlRowWriter)}.
+ * 生成的写入器持有格式化对象，不是线程安全的，每次导出新建一个
+ * 
+ * @author xlsiek
+ *
+ */
+public interface ExlRowWriter<T> {
+
+	/**
+	 * 列名，按列顺序
+	 * @return String[]
+	 */
+	String[] columns();
+
+	/**
+	 * 表头文字，与{@link #columns()}一一对应
+	 * @return String[]
+	 */
+	String[] headers();
+
+	/**
+	 * 取值
+	 * @param record 行记录
+	 * @param column {@link #columns()}中的下标
+	 * @return 格式化后的值，空值为""
+	 */
+	String value(T record, int column);
+}
@@ -0,0 +1,98 @@
+package com.tornado.zy;
+
+import java.io.IOException;
+
+/**
+ * 工作表写入目标。{@link ExcelExportUtils}只通过行、列下标描述要写的内容，
+ * 由具体实现决定写到POI工作表（{@link ExlPoiSheetWriter}）还是边生成边输出的流（{@link ExlXlsxStreamWriter}）.
+ * <br>样式使用{@link ExlStyleRegistry}中的样式名，例如"cellcb"，为null时不设置样式
+ * 
+ * @author xlsiek
+ *
+ */
+interface ExlSheetWriter {
+
+	/**
+	 * 新建一行，已存在时替换原有行
+	 * @param row 行
+	 */
+	void newRow(int row);
+
+	/**
+	 * 确保行存在，不存在时新建
+	 * @param row 行
+	 */
+	void ensureRow(int row);
+
+	/**
+	 * 设置行高
+	 * @param row 行，必须已存在
+	 * @param height 高，单位pt
+	 */
+	void rowHeight(int row, float height);
+
+	/**
+	 * 行高是否仍为默认值
+	 * @param row 行，必须已存在
+	 * @return boolean
+	 */
+	boolean isDefaultHeight(int row);
+
+	/**
+	 * 写入文本单元格
+	 */
+	void cell(int row, int column, String value, String style);
+
+	/**
+	 * 写入数值单元格
+	 */
+	void cell(int row, int column, double value, String style);
+
+	/**
+	 * 写入空单元格，只有样式
+	 */
+	void blank(int row, int column, String style);
+
+	/**
+	 * 写入带下划线的文本单元格，underLines依次出现的部分加下划线
+	 */
+	void underLineCell(int row, int column, String value, String[] underLines, String style);
+
+	/**
+	 * 合并区域，合并数为0时视为1
+	 * @param border 是否给合并区域加边框
+	 */
+	void merge(int row, int column, int rowspan, int colspan, boolean border);
+
+	/**
+	 * 设置列宽
+	 * @param column 列
+	 * @param width 宽，单位为一个字宽
+	 */
+	void columnWidth(int column, int width);
+
+	/**
+	 * 通知写入目标row之前的行都已写完，流式输出可以将这些行输出
+	 * @param row 行
+	 * @throws IOException
+	 */
+	void rowsDone(int row) throws IOException;
+
+	/**
+	 * 所有内容写完，设置页面并输出剩余部分
+	 * @throws IOException
+	 */
+	void finish() throws IOException;
+
+	/**
+	 * 已输出给调用方的字节数，不能边生成边输出时为-1
+	 * @return 字节数
+	 */
+	long getBytesWritten();
+
+	/**
+	 * 释放占用的资源（例如压缩器），不再输出。完成、取消或失败之后都应调用，可重复调用
+	 */
+	default void close() {
+	}
+}
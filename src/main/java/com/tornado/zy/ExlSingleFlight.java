@@ -0,0 +1,322 @@
+package com.tornado.zy;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 合并相同的并发导出。配置及数据版本相同（键与{@link ExlExportCache}一致）的请求同时到达时只导出一次，
+ * 第一个请求在自己的线程中导出，结果同时写入自己的输出流及一块共享缓冲区，其他请求从缓冲区读取并写入各自的输出流.
+ * <br>导出过程中才到达的请求也会加入，先补发已生成的部分再跟随输出，因此一波并发请求只导出一次。导出结束后再到达的请求将重新导出.
+ * <p>注意：
+ * <br>1.跟随的请求传入的ExcelExportUtils不会被执行，数据源应按需读取（例如{@link ExcelExportUtils#contentSource(Iterable)}）才能省下查询；
+ * <br>2.导出失败或被取消时，所有跟随的请求都抛出IOException；
+ * <br>3.第一个请求的客户端断开时，导出继续进行，其他请求不受影响；
+ * <br>4.渲染器按稳定的描述参与计算键，lambda及匿名类渲染器没有稳定的描述，
+ * 须通过{@link ExcelExportUtils#renderKey(String)}指定，否则抛出IllegalArgumentException，参见{@link ExlExportCache}；
+ * <br>5.后到的请求要从头补发，共享缓冲区须保留整个文件直到最后一个请求读完：每个进行中的导出在内存中占用至多{@link #memoryLimit(int)}字节，
+ * 超出的部分写入临时文件，临时文件在最后一个请求读完后删除，磁盘占用与导出文件大小相同</p>
+ * <pre>
+ * private static final ExlSingleFlight FLIGHTS = ExlSingleFlight.c().streaming(true);
+ * ...
+ * FLIGHTS.export(ExcelExportUtils.c().title("日报").contentColumns("one", "two").contentSource(query), reportDate, response.getOutputStream());
+ * </pre>
+ * @author xlsiek
+ *
+ */
+public class ExlSingleFlight {
+	private final ConcurrentHashMap<String,SharedBuffer> flights = new ConcurrentHashMap<>();
+	private boolean streaming = false;//是否以流式xlsx导出
+	private int memoryLimit = 4 * 1024 * 1024;//共享缓冲区在内存中保留的字节数
+
+	private ExlSingleFlight() {
+
+	}
+
+	/**
+	 * 调用此方法初始化
+	 * @return ExlSingleFlight
+	 */
+	public static ExlSingleFlight c() {
+		return new ExlSingleFlight();
+	}
+
+	/**
+	 * 以{@link ExcelExportUtils#exportStreaming(OutputStream)}导出xlsx，跟随的请求可以边生成边收到数据。默认为xls
+	 * @param streaming 是否流式
+	 * @return ExlSingleFlight
+	 */
+	public ExlSingleFlight streaming(boolean streaming) {
+		this.streaming = streaming;
+		return this;
+	}
+
+	/**
+	 * 共享缓冲区在内存中保留的字节数（按64K取整），超出的部分写入临时文件。默认4M
+	 * @param memoryLimit 字节数
+	 * @return ExlSingleFlight
+	 */
+	public ExlSingleFlight memoryLimit(int memoryLimit) {
+		if (memoryLimit < 0) {
+			throw new IllegalArgumentException("memoryLimit不能为负数");
+		}
+		this.memoryLimit = memoryLimit;
+		return this;
+	}
+
+	/**
+	 * 输出，相同的导出正在进行时加入该导出，否则自己导出
+	 * @param export 导出配置
+	 * @param dataVersion 数据版本，数据变化时必须改变
+	 * @param out 输出流，不会被关闭
+	 * @return 是否加入了其他请求的导出
+	 * @throws IOException 导出或输出失败
+	 * @throws IllegalArgumentException 有渲染器没有稳定的描述且未设置renderKey
+	 */
+	public boolean export(ExcelExportUtils export, String dataVersion, OutputStream out) throws IOException {
+		String key = ExlExportCache.hash(export, dataVersion) + (streaming ? ".xlsx" : ".xls");
+		SharedBuffer buffer = new SharedBuffer(memoryLimit);
+		SharedBuffer running;
+		while ((running = flights.putIfAbsent(key, buffer)) != null) {
+			if (running.join()) {
+				try {
+					running.copyTo(out);
+				} finally {
+					running.leave();
+				}
+				return true;
+			}
+			flights.remove(key, running);
+		}
+		TeeOutputStream tee = new TeeOutputStream(buffer, out);
+		try {
+			ExlExportStats stats = streaming ? export.exportStreaming(tee) : export.exportXls(tee);
+			if (stats.isCancelled()) {
+				buffer.fail(new IOException("共享的导出已取消"));
+				return false;
+			}
+			buffer.finish();
+		} catch (IOException | RuntimeException | Error e) {
+			buffer.fail(e);
+			throw e;
+		} finally {
+			flights.remove(key, buffer);
+			buffer.leave();
+		}
+		if (tee.outError != null) {
+			throw tee.outError;
+		}
+		return false;
+	}
+
+	/**
+	 * 正在进行的导出数
+	 * @return int
+	 */
+	public int getRunning() {
+		return flights.size();
+	}
+
+	/**
+	 * 只追加的共享缓冲区，前memoryLimit字节按块保存在内存中，已写入的块不再移动，读取方可以在锁外复制；
+	 * 超出的部分追加到临时文件，读取方按位置读取。最后一个使用者离开后关闭并删除临时文件
+	 */
+	private static final class SharedBuffer {
+		private final static int CHUNK = 64 * 1024;
+		private final List<byte[]> chunks = new ArrayList<>();
+		private final long memoryLimit;
+		private FileChannel file = null;
+		private long size = 0;
+		private boolean done = false;
+		private Throwable error = null;
+		private int users = 1;//第一个请求及正在读取的请求
+		private boolean released = false;
+
+		SharedBuffer(int memoryLimit) {
+			this.memoryLimit = (memoryLimit + CHUNK - 1) / CHUNK * (long) CHUNK;
+		}
+
+		synchronized void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0 && size < memoryLimit) {
+				int inChunk = (int) (size % CHUNK);
+				if (inChunk == 0) {
+					chunks.add(new byte[CHUNK]);
+				}
+				int n = Math.min(len, CHUNK - inChunk);
+				System.arraycopy(b, off, chunks.get(chunks.size() - 1), inChunk, n);
+				size += n;
+				off += n;
+				len -= n;
+			}
+			if (len > 0) {
+				if (file == null) {
+					file = FileChannel.open(Files.createTempFile("exl-flight", ".tmp"), StandardOpenOption.READ,
+							StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+				}
+				ByteBuffer src = ByteBuffer.wrap(b, off, len);
+				while (src.hasRemaining()) {
+					file.write(src, size - memoryLimit + src.position() - off);
+				}
+				size += len;
+			}
+		}
+
+		void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		synchronized void publish() {
+			notifyAll();
+		}
+
+		synchronized void finish() {
+			done = true;
+			notifyAll();
+		}
+
+		synchronized void fail(Throwable error) {
+			this.error = error;
+			done = true;
+			notifyAll();
+		}
+
+		/**
+		 * 加入读取，缓冲区已释放时返回false
+		 */
+		synchronized boolean join() {
+			if (released) {
+				return false;
+			}
+			users++;
+			return true;
+		}
+
+		/**
+		 * 第一个请求或读取的请求离开，没有使用者时释放临时文件
+		 */
+		synchronized void leave() {
+			if (--users == 0) {
+				released = true;
+				chunks.clear();
+				if (file != null) {
+					try {
+						file.close();
+					} catch (IOException e) {
+						//临时文件随关闭删除，关闭失败不影响已完成的输出
+					}
+				}
+			}
+		}
+
+		/**
+		 * 从头开始复制到out，直到导出结束
+		 */
+		void copyTo(OutputStream out) throws IOException {
+			long position = 0;
+			ByteBuffer read = null;
+			while (true) {
+				long available;
+				byte[] chunk = null;
+				synchronized (this) {
+					while (position == size && !done) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new InterruptedIOException("等待共享的导出时被中断");
+						}
+					}
+					if (error != null) {
+						throw new IOException("共享的导出失败", error);
+					}
+					if (position == size) {
+						return;
+					}
+					available = size;
+					if (position < memoryLimit) {
+						chunk = chunks.get((int) (position / CHUNK));
+					}
+				}
+				if (chunk != null) {
+					int inChunk = (int) (position % CHUNK);
+					int n = (int) Math.min(available - position, CHUNK - inChunk);
+					out.write(chunk, inChunk, n);
+					position += n;
+				} else {
+					if (read == null) {
+						read = ByteBuffer.allocate(CHUNK);
+					}
+					read.clear();
+					read.limit((int) Math.min(available - position, CHUNK));
+					while (read.hasRemaining()) {
+						if (file.read(read, position - memoryLimit + read.position()) < 0) {
+							throw new IOException("共享导出的临时文件被截断");
+						}
+					}
+					out.write(read.array(), 0, read.position());
+					position += read.position();
+				}
+				if (position == available) {
+					out.flush();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 同时写入共享缓冲区及第一个请求的输出流。输出流出错后不再写入，导出继续供其他请求使用
+	 */
+	private static final class TeeOutputStream extends OutputStream {
+		private final SharedBuffer buffer;
+		private final OutputStream out;
+		private IOException outError = null;
+
+		TeeOutputStream(SharedBuffer buffer, OutputStream out) {
+			this.buffer = buffer;
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			buffer.write(b);
+			if (outError == null) {
+				try {
+					out.write(b);
+				} catch (IOException e) {
+					outError = e;
+				}
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			buffer.write(b, off, len);
+			if (outError == null) {
+				try {
+					out.write(b, off, len);
+				} catch (IOException e) {
+					outError = e;
+				}
+			}
+		}
+
+		@Override
+		public void flush() {
+			buffer.publish();
+			if (outError == null) {
+				try {
+					out.flush();
+				} catch (IOException e) {
+					outError = e;
+				}
+			}
+		}
+	}
+}
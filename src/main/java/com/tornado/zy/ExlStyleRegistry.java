@@ -0,0 +1,148 @@
+package com.tornado.zy;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 样式及字体登记表。一个工作簿只持有一份，同一工作簿中的多个工作表共享已创建的样式与字体，
+ * 避免每个工作表（或每个下划线单元格）都重复创建，excel对样式和字体数量均有上限.
+ * <br>非线程安全，只允许在写工作簿的线程中使用
+ * 
+ * @author xlsiek
+ *
+ */
+class ExlStyleRegistry {
+	private final Workbook wb;
+	private Map<Integer,Map<String, CellStyle>> styles = new HashMap<>();//按字体大小缓存的样式组，0为默认字体
+	private Map<Integer,Font> plainFonts = new HashMap<>();
+	private Map<Integer,Font> underLineFonts = new HashMap<>();
+
+	ExlStyleRegistry(Workbook wb) {
+		this.wb = wb;
+	}
+
+	Workbook getWorkbook() {
+		return wb;
+	}
+
+	/**
+	 * 获取指定字体大小的样式组，不存在则创建
+	 * @param fontSize 字体大小，0为默认
+	 * @return 样式组
+	 */
+	Map<String, CellStyle> styles(int fontSize) {
+		Map<String, CellStyle> result = styles.get(fontSize);
+		if(result == null){
+			result = createStyles(fontSize);
+			styles.put(fontSize, result);
+		}
+		return result;
+	}
+
+	/**
+	 * 普通字体
+	 * @param fontSize 字体大小，0为默认
+	 * @return Font
+	 */
+	Font plainFont(int fontSize) {
+		Font font = plainFonts.get(fontSize);
+		if(font == null){
+			font = wb.createFont();
+			if (fontSize > 0) {
+				font.setFontHeightInPoints((short) fontSize);
+			}
+			plainFonts.put(fontSize, font);
+		}
+		return font;
+	}
+
+	/**
+	 * 下划线字体
+	 * @param fontSize 字体大小，0为默认
+	 * @return Font
+	 */
+	Font underLineFont(int fontSize) {
+		Font font = underLineFonts.get(fontSize);
+		if(font == null){
+			font = wb.createFont();
+			font.setUnderline(Font.U_SINGLE); // 下划线
+			if (fontSize > 0) {
+				font.setFontHeightInPoints((short) fontSize);
+			}
+			underLineFonts.put(fontSize, font);
+		}
+		return font;
+	}
+
+	private Map<String, CellStyle> createStyles(int fontSize) {
+		Map<String, CellStyle> styles = new HashMap<String, CellStyle>();
+		CellStyle style;
+		style = wb.createCellStyle();
+		style.setAlignment(CellStyle.ALIGN_CENTER);
+		style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
+		Font titleFont = wb.createFont();
+		titleFont.setFontHeightInPoints((short) 18);
+		style.setFont(titleFont);
+		styles.put("title", style);
+		
+		Font tempFont = null;
+		if(fontSize > 0){
+			tempFont = plainFont(fontSize);
+		}
+		style = wb.createCellStyle();
+		style.setAlignment(CellStyle.ALIGN_CENTER);
+		style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
+		style.setWrapText(true);
+		style.setBorderRight(BorderStyle.THIN);
+		style.setRightBorderColor(IndexedColors.BLACK.getIndex());
+		style.setBorderLeft(BorderStyle.THIN);
+		style.setLeftBorderColor(IndexedColors.BLACK.getIndex());
+		style.setBorderTop(BorderStyle.THIN);
+		style.setTopBorderColor(IndexedColors.BLACK.getIndex());
+		style.setBorderBottom(BorderStyle.THIN);
+		style.setBottomBorderColor(IndexedColors.BLACK.getIndex());
+		styles.put("cellcb", style);
+		
+
+		style = wb.createCellStyle();
+		style.setAlignment(CellStyle.ALIGN_CENTER);
+		style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
+		style.setWrapText(true);
+		styles.put("cellcnb", style);
+
+		style = wb.createCellStyle();
+		style.setAlignment(CellStyle.ALIGN_LEFT);
+		style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
+		style.setWrapText(true);
+		style.setBorderRight(BorderStyle.THIN);
+		style.setRightBorderColor(IndexedColors.BLACK.getIndex());
+		style.setBorderLeft(BorderStyle.THIN);
+		style.setLeftBorderColor(IndexedColors.BLACK.getIndex());
+		style.setBorderTop(BorderStyle.THIN);
+		style.setTopBorderColor(IndexedColors.BLACK.getIndex());
+		style.setBorderBottom(BorderStyle.THIN);
+		style.setBottomBorderColor(IndexedColors.BLACK.getIndex());
+		styles.put("celllb", style);
+
+		style = wb.createCellStyle();
+		style.setAlignment(CellStyle.ALIGN_LEFT);
+		style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
+		style.setWrapText(true);
+		styles.put("celllnb", style);
+
+		if(tempFont != null){
+			styles.get("cellcb").setFont(tempFont);
+			styles.get("cellcnb").setFont(tempFont);
+			styles.get("celllb").setFont(tempFont);
+			styles.get("celllnb").setFont(tempFont);
+		}
+		
+		return styles;
+	}
+}
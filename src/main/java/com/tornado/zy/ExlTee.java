@@ -0,0 +1,183 @@
+package com.tornado.zy;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一次导出同时输出多种格式，例如给人看的xls与供系统导入的CSV.
+ * <br>数据源只读取一遍，取值、渲染器对每个单元格只执行一次，写入操作分发给各输出，各输出在自己的线程中写入.
+ * 每个输出最多缓存{@link #queueRows(int)}行，最慢的输出跟不上时导出等待，不会无限缓存.
+ * <p>注意：
+ * <br>1.xls的工作簿在内存中生成，全部写完后才输出；xlsx、CSV边生成边输出；
+ * <br>2.CSV与Excel的"另存为CSV"一致，标题、表头也各占一行，只要表格本身时不要设置标题等；
+ * <br>3.任意输出失败时导出失败，被取消或失败时各输出流中可能已有部分数据；输出流都不会被关闭；
+ * <br>4.不支持模板导出</p>
+ * <pre>
+ * ExlTee.c().xls(xlsOut).csv(csvOut)
+ *     .export(ExcelExportUtils.c().headers("名称", "类型").contentColumns("name", "type").contentSource(query));
+ * </pre>
+ * @author xlsiek
+ *
+ */
+public class ExlTee {
+	private final List<Output> outputs = new ArrayList<>();
+	private int queueRows = 1024;//每个输出最多缓存的行数
+
+	private ExlTee() {
+
+	}
+
+	/**
+	 * 调用此方法初始化
+	 * @return ExlTee
+	 */
+	public static ExlTee c() {
+		return new ExlTee();
+	}
+
+	/**
+	 * 输出xls
+	 * @param out 输出流
+	 * @return ExlTee
+	 */
+	public ExlTee xls(OutputStream out) {
+		outputs.add(new Output("xls", out, null));
+		return this;
+	}
+
+	/**
+	 * 输出流式xlsx，参见{@link ExcelExportUtils#exportStreaming(OutputStream)}
+	 * @param out 输出流
+	 * @return ExlTee
+	 */
+	public ExlTee xlsx(OutputStream out) {
+		outputs.add(new Output("xlsx", out, null));
+		return this;
+	}
+
+	/**
+	 * 输出UTF-8的CSV，不带BOM
+	 * @param out 输出流
+	 * @return ExlTee
+	 */
+	public ExlTee csv(OutputStream out) {
+		return csv(out, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 输出指定字符集的CSV，例如给Excel直接打开时使用GBK
+	 * @param out 输出流
+	 * @param charset 字符集
+	 * @return ExlTee
+	 */
+	public ExlTee csv(OutputStream out, Charset charset) {
+		outputs.add(new Output("csv", out, charset));
+		return this;
+	}
+
+	/**
+	 * 每个输出最多缓存的行数，达到时导出等待该输出
+	 * @param queueRows 行数
+	 * @return ExlTee
+	 */
+	public ExlTee queueRows(int queueRows) {
+		this.queueRows = queueRows < 1 ? 1 : queueRows;
+		return this;
+	}
+
+	/**
+	 * 导出到所有输出
+	 * @param export 导出配置
+	 * @return 本次导出的统计。进度监听收到的字节数为各输出已输出的字节数之和
+	 * @throws IOException 任意输出失败
+	 */
+	public ExlExportStats export(ExcelExportUtils export) throws IOException {
+		if (!export.supportsStreaming()) {
+			throw new UnsupportedOperationException("模板导出不支持同时输出多种格式");
+		}
+		if (outputs.isEmpty()) {
+			throw new IllegalStateException("没有输出");
+		}
+		export.startStats();
+		List<Target> targets = new ArrayList<>(outputs.size());
+		for (Output output : outputs) {
+			targets.add(output.open(export));
+		}
+		ExlTeeSheetWriter tee = new ExlTeeSheetWriter(targets, queueRows);
+		try {
+			export.draw(tee);
+		} catch (ExlCancelToken.Cancelled e) {
+			tee.abort();
+			return export.finishStats(true);
+		} catch (IOException | RuntimeException | Error e) {
+			tee.abort();
+			throw e;
+		}
+		return export.finishStats(false);
+	}
+
+	/**
+	 * 一个输出的设置
+	 */
+	private static final class Output {
+		private final String format;
+		private final OutputStream out;
+		private final Charset charset;
+
+		Output(String format, OutputStream out, Charset charset) {
+			this.format = format;
+			this.out = out;
+			this.charset = charset;
+		}
+
+		Target open(ExcelExportUtils export) throws IOException {
+			switch (format) {
+			case "xls":
+				Workbook wb = new HSSFWorkbook();
+				ExlPoiSheetWriter writer = new ExlPoiSheetWriter(wb.createSheet(), new ExlStyleRegistry(wb), export.getTempFontSize());
+				return new Target(format, writer, () -> wb.write(out));
+			case "xlsx":
+				return new Target(format, export.streamWriter(out), null);
+			default:
+				return new Target(format, new ExlCsvSheetWriter(out, charset), null);
+			}
+		}
+	}
+
+	/**
+	 * 一个输出的写入目标，写完后执行complete，例如输出xls工作簿
+	 */
+	static final class Target {
+		final String format;
+		final ExlSheetWriter writer;
+		private final Complete complete;
+
+		Target(String format, ExlSheetWriter writer, Complete complete) {
+			this.format = format;
+			this.writer = writer;
+			this.complete = complete;
+		}
+
+		void complete() throws IOException {
+			if (complete != null) {
+				complete.run();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return format;
+		}
+	}
+
+	interface Complete {
+		void run() throws IOException;
+	}
+}
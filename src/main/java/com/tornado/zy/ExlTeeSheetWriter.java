@@ -0,0 +1,227 @@
+package com.tornado.zy;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 同时写入多个目标，参见{@link ExlTee}.
+ * <br>调用线程只记录写入操作，每次{@link #rowsDone(int)}把攒下的一批操作交给各目标的队列，各目标在自己的线程中依次执行，
+ * 渲染、取值只在调用线程中做一次。队列有上限，最慢的目标的队列满时调用线程等待，不会无限缓存行.
+ * <br>行高是否为默认值由本类自己记录，不向目标查询
+ *
+ * @author xlsiek
+ *
+ */
+final class ExlTeeSheetWriter implements ExlSheetWriter {
+	private final static List<Op> END = new ArrayList<>();//结束标记
+	private final Branch[] branches;
+	private List<Op> batch = new ArrayList<>();
+	private final TreeSet<Integer> heightSet = new TreeSet<>();//尚未写完的行中设置过行高的
+
+	/**
+	 * @param targets 写入目标
+	 * @param queueBatches 每个目标最多缓存多少批，内容部分每行一批
+	 */
+	ExlTeeSheetWriter(List<ExlTee.Target> targets, int queueBatches) {
+		branches = new Branch[targets.size()];
+		for (int i = 0; i < branches.length; i++) {
+			branches[i] = new Branch(targets.get(i), queueBatches, "exl-tee-" + i);
+		}
+		for (Branch branch : branches) {
+			branch.thread.start();
+		}
+	}
+
+	@Override
+	public void newRow(int row) {
+		heightSet.remove(row);
+		batch.add(writer -> writer.newRow(row));
+	}
+
+	@Override
+	public void ensureRow(int row) {
+		batch.add(writer -> writer.ensureRow(row));
+	}
+
+	@Override
+	public void rowHeight(int row, float height) {
+		heightSet.add(row);
+		batch.add(writer -> writer.rowHeight(row, height));
+	}
+
+	@Override
+	public boolean isDefaultHeight(int row) {
+		return !heightSet.contains(row);
+	}
+
+	@Override
+	public void cell(int row, int column, String value, String style) {
+		batch.add(writer -> writer.cell(row, column, value, style));
+	}
+
+	@Override
+	public void cell(int row, int column, double value, String style) {
+		batch.add(writer -> writer.cell(row, column, value, style));
+	}
+
+	@Override
+	public void blank(int row, int column, String style) {
+		batch.add(writer -> writer.blank(row, column, style));
+	}
+
+	@Override
+	public void underLineCell(int row, int column, String value, String[] underLines, String style) {
+		batch.add(writer -> writer.underLineCell(row, column, value, underLines, style));
+	}
+
+	@Override
+	public void merge(int row, int column, int rowspan, int colspan, boolean border) {
+		batch.add(writer -> writer.merge(row, column, rowspan, colspan, border));
+	}
+
+	@Override
+	public void columnWidth(int column, int width) {
+		batch.add(writer -> writer.columnWidth(column, width));
+	}
+
+	@Override
+	public void rowsDone(int row) throws IOException {
+		batch.add(writer -> writer.rowsDone(row));
+		heightSet.headSet(row).clear();
+		publish(batch);
+		batch = new ArrayList<>();
+	}
+
+	/**
+	 * 交出最后一批并等待所有目标写完
+	 */
+	@Override
+	public void finish() throws IOException {
+		batch.add(ExlSheetWriter::finish);
+		publish(batch);
+		batch = null;
+		publish(END);
+		IOException error = null;
+		for (Branch branch : branches) {
+			try {
+				branch.thread.join();
+			} catch (InterruptedException e) {
+				abort();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("等待输出完成时被中断");
+			}
+			error = branch.addError(error);
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * 已输出的字节数之和，为近似值。所有目标都不能边生成边输出时为-1
+	 */
+	@Override
+	public long getBytesWritten() {
+		long bytes = -1;
+		for (Branch branch : branches) {
+			long written = branch.target.writer.getBytesWritten();
+			if (written >= 0) {
+				bytes = Math.max(bytes, 0) + written;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * 中止，各目标的线程不再执行之后的操作
+	 */
+	void abort() {
+		for (Branch branch : branches) {
+			branch.thread.interrupt();
+		}
+	}
+
+	private void publish(List<Op> ops) throws IOException {
+		for (Branch branch : branches) {
+			if (branch.error != null) {
+				throw branch.addError(null);
+			}
+			try {
+				branch.queue.put(ops);
+			} catch (InterruptedException e) {
+				abort();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("等待输出时被中断");
+			}
+		}
+	}
+
+	/**
+	 * 对一个写入目标的操作
+	 */
+	private interface Op {
+		void apply(ExlSheetWriter writer) throws IOException;
+	}
+
+	/**
+	 * 一个写入目标及其队列、线程。出错后丢弃之后的操作，调用线程在下次交出时得知
+	 */
+	private static final class Branch implements Runnable {
+		private final ExlTee.Target target;
+		private final BlockingQueue<List<Op>> queue;
+		private final Thread thread;
+		private volatile Throwable error = null;
+
+		Branch(ExlTee.Target target, int queueBatches, String name) {
+			this.target = target;
+			this.queue = new ArrayBlockingQueue<>(queueBatches);
+			this.thread = new Thread(this, name);
+			this.thread.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				List<Op> ops;
+				while ((ops = queue.take()) != END) {
+					if (error != null) {
+						continue;
+					}
+					try {
+						for (Op op : ops) {
+							op.apply(target.writer);
+						}
+					} catch (IOException | RuntimeException | Error e) {
+						error = e;
+					}
+				}
+				if (error == null) {
+					target.complete();
+				}
+			} catch (InterruptedException e) {
+				//中止
+			} catch (IOException | RuntimeException | Error e) {
+				error = e;
+			} finally {
+				target.writer.close();
+			}
+		}
+
+		IOException addError(IOException previous) {
+			if (error == null) {
+				return previous;
+			}
+			IOException e = error instanceof IOException ? (IOException) error : new IOException(target + "输出失败", error);
+			if (previous == null) {
+				return e;
+			}
+			previous.addSuppressed(e);
+			return previous;
+		}
+	}
+}
@@ -0,0 +1,410 @@
+package com.tornado.zy;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 模板工作簿，由业务人员在Excel中设计好表头、样式、合并单元格，再用占位符标出要填的位置：
+ * <br>1.<b>${名称}</b> 变量，填入{@link ExcelExportUtils#templateVar(String, Object)}的值，未设置时依次取title、subtitle、fileMark、comments；
+ * <br>2.<b>$[属性]</b> 数据行，只能有一行，每条记录复制该行的样式、行高写一行，属性取值及渲染同普通模式的contentColumns；
+ * <br>3.数据行以下的行为表尾，随数据行数整体下移，表尾中的公式原样保留，不会调整引用范围.
+ * <p>数据行及表尾在加载时从模板中取出一次，记录为位置、样式下标，剩余的表头部分保存为原型字节。
+ * POI不能在内存中复制工作簿，每次导出都要完整解析一遍原型字节，开销与表头部分的大小成正比，与数据行数无关；
+ * 省下的是查找占位符、取出表尾及逐个创建表头样式、合并单元格的工作。{@link #load(Path)}按文件缓存，文件修改后自动重新解析.
+ * <br>xlsx模板解析出原型后以SXSSF流式写数据行及表尾，内存中只保留表头部分及最近的若干行.
+ * 数据行中的合并单元格不支持，解析时去掉</p>
+ * <pre>
+ * ExcelExportUtils.c().template(ExlTemplate.load(Paths.get("/templates/school.xls")))
+ *      .templateVar("date", "2017-09-01").contentData(schools).render(render, "type")
+ *      .export(out);
+ * </pre>
+ * @author xlsiek
+ *
+ */
+public final class ExlTemplate {
+	private final static Pattern VARIABLE = Pattern.compile("\\$\\{([^}]+)\\}");
+	private final static Pattern PROPERTY = Pattern.compile("^\\s*\\$\\[([^\\]]+)\\]\\s*$");
+	private final static ConcurrentHashMap<Path,ExlTemplate> CACHE = new ConcurrentHashMap<>();
+	private final long modified;//模板文件修改时间，用于判断缓存是否失效
+	private final String digest;//模板内容的SHA-256，作为导出缓存键的一部分
+	private final byte[] prototype;//去掉数据行及表尾后的工作簿
+	private final boolean xlsx;
+	private final int sheetIndex;
+	private final int dataRow;//数据行在模板中的位置，模板没有数据行时为-1
+	private final float dataHeight;//数据行行高，-1为默认
+	private final String[] properties;//数据行各单元格的属性
+	private final int[] dataColumns;
+	private final int[] dataStyles;
+	private final int[] variableRows;//变量单元格
+	private final int[] variableColumns;
+	private final String[] variableTexts;
+	private final float[] footerHeights;//表尾各行行高，-1为默认
+	private final int[] footerRows;//表尾单元格，行为相对表尾第一行的偏移
+	private final int[] footerColumns;
+	private final int[] footerStyles;
+	private final Object[] footerValues;//String、Double、Boolean或Formula
+	private final List<CellRangeAddress> footerMerges;//表尾的合并区域，行为相对偏移
+
+	private ExlTemplate(Workbook wb, boolean xlsx, long modified, String digest) throws IOException {
+		this.xlsx = xlsx;
+		this.modified = modified;
+		this.digest = digest;
+		int sheetIndex = 0;
+		Row data = null;
+		for (int s = 0; s < wb.getNumberOfSheets() && data == null; s++) {
+			data = findDataRow(wb.getSheetAt(s));
+			if (data != null) sheetIndex = s;
+		}
+		this.sheetIndex = sheetIndex;
+		Sheet sheet = wb.getSheetAt(sheetIndex);
+		this.dataRow = data == null ? -1 : data.getRowNum();
+
+		//数据行
+		List<String> properties = new ArrayList<>();
+		List<Integer> dataColumns = new ArrayList<>();
+		List<Integer> dataStyles = new ArrayList<>();
+		if (data != null) {
+			for (Cell cell : data) {
+				Matcher matcher = cell.getCellTypeEnum() == CellType.STRING ? PROPERTY.matcher(cell.getStringCellValue()) : null;
+				if (matcher != null && matcher.matches()) {
+					properties.add(matcher.group(1).trim());
+					dataColumns.add(cell.getColumnIndex());
+					dataStyles.add((int) cell.getCellStyle().getIndex());
+				}
+			}
+			this.dataHeight = data.getHeight() == sheet.getDefaultRowHeight() ? -1 : data.getHeightInPoints();
+		} else {
+			this.dataHeight = -1;
+		}
+		this.properties = properties.toArray(new String[0]);
+		this.dataColumns = toArray(dataColumns);
+		this.dataStyles = toArray(dataStyles);
+
+		//表尾及数据行上的合并区域
+		List<CellRangeAddress> footerMerges = new ArrayList<>();
+		for (int i = sheet.getNumMergedRegions() - 1; data != null && i >= 0; i--) {
+			CellRangeAddress merge = sheet.getMergedRegion(i);
+			if (merge.getLastRow() >= dataRow) {
+				if (merge.getFirstRow() > dataRow) {
+					footerMerges.add(0, new CellRangeAddress(merge.getFirstRow() - dataRow - 1, merge.getLastRow() - dataRow - 1,
+							merge.getFirstColumn(), merge.getLastColumn()));
+				}
+				sheet.removeMergedRegion(i);
+			}
+		}
+		this.footerMerges = footerMerges;
+
+		//表尾
+		List<Float> footerHeights = new ArrayList<>();
+		List<Integer> footerRows = new ArrayList<>();
+		List<Integer> footerColumns = new ArrayList<>();
+		List<Integer> footerStyles = new ArrayList<>();
+		List<Object> footerValues = new ArrayList<>();
+		int lastRow = sheet.getLastRowNum();
+		for (int r = dataRow + 1; data != null && r <= lastRow; r++) {
+			Row row = sheet.getRow(r);
+			footerHeights.add(row == null || row.getHeight() == sheet.getDefaultRowHeight() ? -1f : row.getHeightInPoints());
+			if (row == null) continue;
+			for (Cell cell : row) {
+				footerRows.add(r - dataRow - 1);
+				footerColumns.add(cell.getColumnIndex());
+				footerStyles.add((int) cell.getCellStyle().getIndex());
+				footerValues.add(cellValue(cell));
+			}
+			sheet.removeRow(row);
+		}
+		if (data != null) {
+			sheet.removeRow(data);
+		}
+		this.footerHeights = new float[footerHeights.size()];
+		for (int i = 0; i < this.footerHeights.length; i++) {
+			this.footerHeights[i] = footerHeights.get(i);
+		}
+		this.footerRows = toArray(footerRows);
+		this.footerColumns = toArray(footerColumns);
+		this.footerStyles = toArray(footerStyles);
+		this.footerValues = footerValues.toArray();
+
+		//变量，表尾中的变量在填写表尾时替换
+		List<Integer> variableRows = new ArrayList<>();
+		List<Integer> variableColumns = new ArrayList<>();
+		List<String> variableTexts = new ArrayList<>();
+		for (Row row : sheet) {
+			for (Cell cell : row) {
+				if (cell.getCellTypeEnum() == CellType.STRING && VARIABLE.matcher(cell.getStringCellValue()).find()) {
+					variableRows.add(row.getRowNum());
+					variableColumns.add(cell.getColumnIndex());
+					variableTexts.add(cell.getStringCellValue());
+				}
+			}
+		}
+		this.variableRows = toArray(variableRows);
+		this.variableColumns = toArray(variableColumns);
+		this.variableTexts = variableTexts.toArray(new String[0]);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		wb.write(out);
+		this.prototype = out.toByteArray();
+	}
+
+	/**
+	 * 加载模板文件，按路径缓存，文件修改时间变化后重新解析
+	 * @param file 模板文件，.xls或.xlsx
+	 * @return ExlTemplate
+	 * @throws IOException 读取或解析失败
+	 */
+	public static ExlTemplate load(Path file) throws IOException {
+		long modified = Files.getLastModifiedTime(file).toMillis();
+		ExlTemplate template = CACHE.get(file);
+		if (template == null || template.modified != modified) {
+			try (InputStream in = Files.newInputStream(file)) {
+				template = parse(in, modified);
+			}
+			CACHE.put(file, template);
+		}
+		return template;
+	}
+
+	/**
+	 * 解析模板，不缓存，调用方应保存返回值重复使用
+	 * @param in 模板，.xls或.xlsx，不会被关闭
+	 * @return ExlTemplate
+	 * @throws IOException 读取或解析失败
+	 */
+	public static ExlTemplate parse(InputStream in) throws IOException {
+		return parse(in, -1);
+	}
+
+	private static ExlTemplate parse(InputStream in, long modified) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for (int n; (n = in.read(buffer)) > 0;) {
+			bytes.write(buffer, 0, n);
+		}
+		byte[] source = bytes.toByteArray();
+		Workbook wb;
+		try {
+			wb = WorkbookFactory.create(new ByteArrayInputStream(source));
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("无法解析模板", e);
+		}
+		StringBuilder digest = new StringBuilder(64);
+		try {
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(source)) {
+				digest.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		return new ExlTemplate(wb, wb instanceof XSSFWorkbook, modified, digest.toString());
+	}
+
+	/**
+	 * 以模板内容的摘要作为描述，参见{@link ExlExportCache}
+	 */
+	@Override
+	public String toString() {
+		return "template:" + digest;
+	}
+
+	/**
+	 * 输出格式与模板一致
+	 * @return 是否为xlsx
+	 */
+	boolean isXlsx() {
+		return xlsx;
+	}
+
+	/**
+	 * 解析原型字节得到一个新的工作簿，每次调用都是一次完整的解析
+	 * @return Workbook
+	 * @throws IOException
+	 */
+	Workbook newWorkbook() throws IOException {
+		InputStream in = new ByteArrayInputStream(prototype);
+		return xlsx ? new XSSFWorkbook(in) : new HSSFWorkbook(in);
+	}
+
+	int getSheetIndex() {
+		return sheetIndex;
+	}
+
+	/**
+	 * 数据行的位置，没有数据行时为-1
+	 * @return int
+	 */
+	int getDataRow() {
+		return dataRow;
+	}
+
+	float getDataHeight() {
+		return dataHeight;
+	}
+
+	String[] getProperties() {
+		return properties.clone();
+	}
+
+	/**
+	 * 数据行各单元格所在的列，与{@link #getProperties()}一一对应
+	 */
+	int[] getDataColumns() {
+		return dataColumns.clone();
+	}
+
+	/**
+	 * 数据行样式，key为"tpl"加列号，供{@link ExlPoiSheetWriter}使用
+	 * @param wb 由{@link #newWorkbook()}复制的工作簿
+	 * @return 样式名-样式
+	 */
+	Map<String,CellStyle> styles(Workbook wb) {
+		Map<String,CellStyle> styles = new HashMap<>();
+		for (int i = 0; i < dataColumns.length; i++) {
+			styles.put("tpl" + dataColumns[i], wb.getCellStyleAt(dataStyles[i]));
+		}
+		return styles;
+	}
+
+	/**
+	 * 替换变量
+	 * @param sheet 复制出的工作表
+	 * @param variables 变量
+	 */
+	void fillVariables(Sheet sheet, Map<String,Object> variables) {
+		for (int i = 0; i < variableTexts.length; i++) {
+			setVariableCell(sheet.getRow(variableRows[i]).getCell(variableColumns[i]), variableTexts[i], variables);
+		}
+	}
+
+	/**
+	 * 在数据行之后写表尾
+	 * @param sheet 复制出的工作表，可以是流式工作表
+	 * @param firstRow 表尾第一行
+	 * @param variables 变量
+	 */
+	void drawFooter(Sheet sheet, int firstRow, Map<String,Object> variables) {
+		Workbook wb = sheet.getWorkbook();
+		Row[] rows = new Row[footerHeights.length];//流式工作表中写出的行不能再取回
+		for (int r = 0; r < footerHeights.length; r++) {
+			rows[r] = sheet.createRow(firstRow + r);
+			if (footerHeights[r] >= 0) {
+				rows[r].setHeightInPoints(footerHeights[r]);
+			}
+		}
+		for (int i = 0; i < footerRows.length; i++) {
+			Cell cell = rows[footerRows[i]].createCell(footerColumns[i]);
+			cell.setCellStyle(wb.getCellStyleAt(footerStyles[i]));
+			Object value = footerValues[i];
+			if (value instanceof Formula) {
+				cell.setCellFormula(((Formula) value).formula);
+			} else if (value instanceof Double) {
+				cell.setCellValue((Double) value);
+			} else if (value instanceof Boolean) {
+				cell.setCellValue((Boolean) value);
+			} else if (value != null) {
+				setVariableCell(cell, (String) value, variables);
+			}
+		}
+		for (CellRangeAddress merge : footerMerges) {
+			sheet.addMergedRegion(new CellRangeAddress(merge.getFirstRow() + firstRow, merge.getLastRow() + firstRow,
+					merge.getFirstColumn(), merge.getLastColumn()));
+		}
+	}
+
+	/**
+	 * 整个单元格就是一个变量且值为数值时写数值，否则按文本替换
+	 */
+	private static void setVariableCell(Cell cell, String text, Map<String,Object> variables) {
+		Matcher matcher = VARIABLE.matcher(text);
+		if (matcher.matches()) {
+			Object value = variables.get(matcher.group(1).trim());
+			if (value instanceof Number) {
+				cell.setCellValue(((Number) value).doubleValue());
+			} else {
+				cell.setCellValue(value == null ? "" : value.toString());
+			}
+			return;
+		}
+		StringBuffer result = new StringBuffer();
+		boolean found = false;
+		while (matcher.find()) {
+			Object value = variables.get(matcher.group(1).trim());
+			matcher.appendReplacement(result, Matcher.quoteReplacement(value == null ? "" : value.toString()));
+			found = true;
+		}
+		if (found) {
+			matcher.appendTail(result);
+			cell.setCellValue(result.toString());
+		} else {
+			cell.setCellValue(text);
+		}
+	}
+
+	private static Row findDataRow(Sheet sheet) {
+		for (Row row : sheet) {
+			for (Cell cell : row) {
+				if (cell.getCellTypeEnum() == CellType.STRING && PROPERTY.matcher(cell.getStringCellValue()).matches()) {
+					return row;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Object cellValue(Cell cell) {
+		switch (cell.getCellTypeEnum()) {
+		case STRING:
+			return cell.getStringCellValue();
+		case NUMERIC:
+			return cell.getNumericCellValue();
+		case BOOLEAN:
+			return cell.getBooleanCellValue();
+		case FORMULA:
+			return new Formula(cell.getCellFormula());
+		default:
+			return null;
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = list.get(i);
+		}
+		return result;
+	}
+
+	private static final class Formula {
+		private final String formula;
+
+		Formula(String formula) {
+			this.formula = formula;
+		}
+	}
+}
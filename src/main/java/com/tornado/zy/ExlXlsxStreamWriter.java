@@ -0,0 +1,493 @@
+package com.tornado.zy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 边生成边输出的xlsx写入目标，参见{@link ExcelExportUtils#exportStreaming(OutputStream)}.
+ * <br>创建时即输出工作簿的固定部分，之后每当{@link #rowsDone(int)}通知某行之前的行已写完，就把这些行写入sheet1.xml，
+ * 累计达到指定的行数或字节数时把已压缩的数据推送给调用方的输出流.
+ * <p>限制：
+ * <br>1.列宽只在输出第一行内容之前生效，因此应通过表头单元格或forceColumnWidth设置；
+ * <br>2.带边框的合并区域用带边框的空单元格补齐，已经输出的行不能再修改；
+ * <br>3.单元格均为内联字符串或数值，不使用共享字符串表</p>
+ * <p>断点续传（参见{@link ExcelExportUtils#exportResumable(java.nio.file.Path, int)}）：{@link #checkpoint()}时之前的行都已输出，
+ * 只需保存压缩流的状态及已输出到哪一行；{@link #resume}之后重新绘制内容之前的部分以恢复尚未输出的行（例如与内容重叠的列头）及合并区域，
+ * 重新绘制期间对已输出行的写入被丢弃，{@link #replayDone()}后恢复正常</p>
+ * 
+ * @author xlsiek
+ *
+ */
+class ExlXlsxStreamWriter implements ExlSheetWriter {
+	private final static String XML_HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+	private final static String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+	private final static String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+	private final static int BORDER_XF = 6;//合并区域补齐用，只有边框
+	private final static int BUFFER_CHARS = 16 * 1024;//xml缓冲区达到该长度时压缩写出
+	private final ExlZipOutput zip;
+	private final int fontSize;
+	private final int flushRows;
+	private final long flushBytes;
+	private final StringBuilder xml = new StringBuilder(BUFFER_CHARS + 1024);
+	private final TreeMap<Integer,StreamRow> rows = new TreeMap<>();//尚未输出的行
+	private final TreeMap<Integer,Integer> columnWidths = new TreeMap<>();
+	private final StringBuilder merges = new StringBuilder();
+	private int mergeCount = 0;
+	private boolean sheetStarted = false;
+	private int firstOpenRow = 0;//该行之前的行都已输出
+	private int rowsSinceFlush = 0;
+	private long bytesAtFlush = 0;
+	private boolean replaying = false;//断点续传时重新绘制内容之前的部分，已输出的行不再写入
+
+	/**
+	 * @param out 输出流
+	 * @param fontSize 内容字体大小，0为默认
+	 * @param sheetName 工作表名
+	 * @param flushRows 每输出多少行推送一次
+	 * @param flushBytes 每输出多少字节推送一次
+	 * @throws IOException
+	 */
+	ExlXlsxStreamWriter(OutputStream out, int fontSize, String sheetName, int flushRows, long flushBytes) throws IOException {
+		this.zip = new ExlZipOutput(out);
+		this.fontSize = fontSize;
+		this.flushRows = flushRows;
+		this.flushBytes = flushBytes;
+		writePackageParts(sheetName);
+		zip.putEntry("xl/worksheets/sheet1.xml");
+		zip.flush();//固定部分先推送出去
+	}
+
+	private ExlXlsxStreamWriter(ExlZipOutput zip, int fontSize, int flushRows, long flushBytes) {
+		this.zip = zip;
+		this.fontSize = fontSize;
+		this.flushRows = flushRows;
+		this.flushBytes = flushBytes;
+	}
+
+	/**
+	 * 从检查点继续，之后进入重新绘制状态，直到{@link #replayDone()}
+	 * @param out 输出流，须已定位到检查点时已输出的字节数之后
+	 * @param fontSize 内容字体大小，0为默认
+	 * @param flushRows 每输出多少行推送一次
+	 * @param flushBytes 每输出多少字节推送一次
+	 * @param state {@link #save(DataOutput)}保存的状态
+	 * @return ExlXlsxStreamWriter
+	 * @throws IOException
+	 */
+	static ExlXlsxStreamWriter resume(OutputStream out, int fontSize, int flushRows, long flushBytes, DataInput state) throws IOException {
+		int firstOpenRow = state.readInt();
+		ExlXlsxStreamWriter writer = new ExlXlsxStreamWriter(ExlZipOutput.restore(out, state), fontSize, flushRows, flushBytes);
+		writer.firstOpenRow = firstOpenRow;
+		writer.sheetStarted = true;
+		writer.bytesAtFlush = writer.zip.getBytesWritten();
+		writer.replaying = true;
+		return writer;
+	}
+
+	/**
+	 * 重新绘制结束
+	 */
+	void replayDone() {
+		replaying = false;
+	}
+
+	/**
+	 * 检查点：已写完的行全部压缩输出并flush下游，压缩重新开始，推送计数归零。调用前须已通过{@link #rowsDone(int)}通知内容行写完
+	 * @throws IOException
+	 */
+	void checkpoint() throws IOException {
+		if (!sheetStarted) {
+			startSheet();
+		}
+		flushXml();
+		zip.checkpoint();
+		rowsSinceFlush = 0;
+		bytesAtFlush = zip.getBytesWritten();
+	}
+
+	/**
+	 * 保存检查点的状态，须紧接在{@link #checkpoint()}之后调用
+	 * @param state 状态输出
+	 * @throws IOException
+	 */
+	void save(DataOutput state) throws IOException {
+		state.writeInt(firstOpenRow);
+		zip.save(state);
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return zip.getBytesWritten();
+	}
+
+	@Override
+	public void close() {
+		zip.close();
+	}
+
+	/**
+	 * 是否已释放，见{@link #close()}
+	 * @return boolean
+	 */
+	boolean isClosed() {
+		return zip.isClosed();
+	}
+
+	@Override
+	public void newRow(int row) {
+		if (replaying && row < firstOpenRow) {
+			return;
+		}
+		checkOpen(row);
+		rows.put(row, new StreamRow());
+	}
+
+	@Override
+	public void ensureRow(int row) {
+		row(row);
+	}
+
+	@Override
+	public void rowHeight(int row, float height) {
+		row(row).height = height;
+	}
+
+	@Override
+	public boolean isDefaultHeight(int row) {
+		return row(row).height < 0;
+	}
+
+	@Override
+	public void cell(int row, int column, String value, String style) {
+		StringBuilder c = cellStart(column, row, style).append(" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+		escape(c, value);
+		row(row).put(column, c.append("</t></is></c>").toString());
+	}
+
+	@Override
+	public void cell(int row, int column, double value, String style) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			//<v>中不能是NaN、Infinity，否则excel无法打开，写为文本
+			cell(row, column, String.valueOf(value), style);
+			return;
+		}
+		StringBuilder c = cellStart(column, row, style).append("><v>");
+		if (value == (long) value) {
+			c.append((long) value);
+		} else {
+			c.append(value);
+		}
+		row(row).put(column, c.append("</v></c>").toString());
+	}
+
+	@Override
+	public void blank(int row, int column, String style) {
+		row(row).put(column, cellStart(column, row, style).append("/>").toString());
+	}
+
+	@Override
+	public void underLineCell(int row, int column, String value, String[] underLines, String style) {
+		boolean[] underLine = new boolean[value.length()];
+		int preIndex = -1;
+		for (String str : underLines) {
+			int b = value.indexOf(str, preIndex);
+			if (b < 0) continue;
+			Arrays.fill(underLine, b, b + str.length(), true);
+			preIndex = b + str.length();
+		}
+		StringBuilder c = cellStart(column, row, style).append(" t=\"inlineStr\"><is>");
+		int begin = 0;
+		for (int i = 1; i <= value.length(); i++) {
+			if (i == value.length() || underLine[i] != underLine[begin]) {
+				c.append("<r><rPr>");
+				if (underLine[begin]) c.append("<u/>");
+				c.append("<sz val=\"").append(fontSize > 0 ? fontSize : 11).append("\"/></rPr><t xml:space=\"preserve\">");
+				escape(c, value.substring(begin, i));
+				c.append("</t></r>");
+				begin = i;
+			}
+		}
+		row(row).put(column, c.append("</is></c>").toString());
+	}
+
+	@Override
+	public void merge(int row, int column, int rowspan, int colspan, boolean border) {
+		int rowCount = rowspan == 0 ? 1 : rowspan;
+		int columnCount = colspan == 0 ? 1 : colspan;
+		merges.append("<mergeCell ref=\"");
+		reference(merges, column, row).append(':');
+		reference(merges, column + columnCount - 1, row + rowCount - 1).append("\"/>");
+		mergeCount++;
+		if (border) {
+			for (int r = Math.max(row, firstOpenRow); r < row + rowCount; r++) {
+				StreamRow streamRow = row(r);
+				for (int c = column; c < column + columnCount; c++) {
+					if (!streamRow.has(c)) streamRow.put(c, cellStart(c, r, null).append(" s=\"").append(BORDER_XF).append("\"/>").toString());
+				}
+			}
+		}
+	}
+
+	@Override
+	public void columnWidth(int column, int width) {
+		if (!sheetStarted) {
+			columnWidths.put(column, width);
+		}
+	}
+
+	@Override
+	public void rowsDone(int row) throws IOException {
+		if (!sheetStarted) {
+			startSheet();
+		}
+		while (!rows.isEmpty() && rows.firstKey() < row) {
+			Map.Entry<Integer,StreamRow> entry = rows.pollFirstEntry();
+			writeRow(entry.getKey(), entry.getValue());
+			rowsSinceFlush++;
+		}
+		if (row > firstOpenRow) {
+			firstOpenRow = row;
+		}
+		if (rowsSinceFlush >= flushRows || zip.getBytesWritten() - bytesAtFlush >= flushBytes) {
+			flushXml();
+			zip.flush();
+			rowsSinceFlush = 0;
+			bytesAtFlush = zip.getBytesWritten();
+		}
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (!sheetStarted) {
+			startSheet();
+		}
+		Iterator<Map.Entry<Integer,StreamRow>> iterator = rows.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Integer,StreamRow> entry = iterator.next();
+			writeRow(entry.getKey(), entry.getValue());
+			iterator.remove();
+		}
+		xml.append("</sheetData>");
+		if (mergeCount > 0) {
+			xml.append("<mergeCells count=\"").append(mergeCount).append("\">").append(merges).append("</mergeCells>");
+		}
+		xml.append("<printOptions horizontalCentered=\"1\"/>")
+				.append("<pageMargins left=\"0.1\" right=\"0.1\" top=\"0.5\" bottom=\"0.5\" header=\"0.3\" footer=\"0.3\"/>")
+				.append("<pageSetup paperSize=\"9\" fitToWidth=\"1\" fitToHeight=\"1\"/>")
+				.append("</worksheet>");
+		flushXml();
+		zip.closeEntry();
+		zip.finish();
+	}
+
+	private void startSheet() throws IOException {
+		sheetStarted = true;
+		xml.append(XML_HEAD).append("<worksheet xmlns=\"").append(MAIN_NS).append("\" xmlns:r=\"").append(REL_NS).append("\">")
+				.append("<sheetPr><pageSetUpPr fitToPage=\"1\"/></sheetPr>")
+				.append("<sheetFormatPr defaultRowHeight=\"15\"/>");
+		if (!columnWidths.isEmpty()) {
+			xml.append("<cols>");
+			for (Map.Entry<Integer,Integer> entry : columnWidths.entrySet()) {
+				int column = entry.getKey() + 1;
+				xml.append("<col min=\"").append(column).append("\" max=\"").append(column)
+						.append("\" width=\"").append(entry.getValue()).append("\" customWidth=\"1\"/>");
+			}
+			xml.append("</cols>");
+		}
+		xml.append("<sheetData>");
+	}
+
+	private void writeRow(int rowIndex, StreamRow row) throws IOException {
+		xml.append("<row r=\"").append(rowIndex + 1).append('"');
+		if (row.height >= 0) {
+			xml.append(" ht=\"").append(row.height).append("\" customHeight=\"1\"");
+		}
+		xml.append('>');
+		row.appendCells(xml);
+		xml.append("</row>");
+		if (xml.length() >= BUFFER_CHARS) {
+			flushXml();
+		}
+	}
+
+	private void flushXml() throws IOException {
+		if (xml.length() > 0) {
+			zip.write(xml.toString());
+			xml.setLength(0);
+		}
+	}
+
+	private StreamRow row(int row) {
+		StreamRow streamRow = rows.get(row);
+		if (streamRow == null) {
+			if (replaying && row < firstOpenRow) {
+				return new StreamRow();//已输出，丢弃
+			}
+			checkOpen(row);
+			streamRow = new StreamRow();
+			rows.put(row, streamRow);
+		}
+		return streamRow;
+	}
+
+	private void checkOpen(int row) {
+		if (row < firstOpenRow) {
+			throw new IllegalStateException("row " + row + " has already been written");
+		}
+	}
+
+	private StringBuilder cellStart(int column, int row, String style) {
+		StringBuilder c = new StringBuilder(64).append("<c r=\"");
+		reference(c, column, row).append('"');
+		int xf = styleIndex(style);
+		if (xf > 0) {
+			c.append(" s=\"").append(xf).append('"');
+		}
+		return c;
+	}
+
+	private static int styleIndex(String style) {
+		if (style == null) return 0;
+		switch (style) {
+		case "title": return 1;
+		case "cellcb": return 2;
+		case "cellcnb": return 3;
+		case "celllb": return 4;
+		case "celllnb": return 5;
+		default: return 0;
+		}
+	}
+
+	static StringBuilder reference(StringBuilder builder, int column, int row) {
+		int start = builder.length();
+		for (int c = column + 1; c > 0; c = (c - 1) / 26) {
+			builder.insert(start, (char) ('A' + (c - 1) % 26));
+		}
+		return builder.append(row + 1);
+	}
+
+	static void escape(StringBuilder builder, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '&': builder.append("&amp;"); break;
+			case '<': builder.append("&lt;"); break;
+			case '>': builder.append("&gt;"); break;
+			case '"': builder.append("&quot;"); break;
+			default:
+				if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') builder.append(c);
+			}
+		}
+	}
+
+	private void writePackageParts(String sheetName) throws IOException {
+		zip.putEntry("[Content_Types].xml");
+		zip.write(XML_HEAD + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+				+ "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+				+ "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+				+ "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+				+ "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>"
+				+ "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+				+ "</Types>");
+		zip.closeEntry();
+		zip.putEntry("_rels/.rels");
+		zip.write(XML_HEAD + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+				+ "<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+				+ "</Relationships>");
+		zip.closeEntry();
+		StringBuilder workbook = new StringBuilder(XML_HEAD).append("<workbook xmlns=\"").append(MAIN_NS).append("\" xmlns:r=\"")
+				.append(REL_NS).append("\"><sheets><sheet name=\"");
+		escape(workbook, sheetName);
+		workbook.append("\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>");
+		zip.putEntry("xl/workbook.xml");
+		zip.write(workbook.toString());
+		zip.closeEntry();
+		zip.putEntry("xl/_rels/workbook.xml.rels");
+		zip.write(XML_HEAD + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+				+ "<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+				+ "<Relationship Id=\"rId2\" Type=\"" + REL_NS + "/styles\" Target=\"styles.xml\"/>"
+				+ "</Relationships>");
+		zip.closeEntry();
+		zip.putEntry("xl/styles.xml");
+		zip.write(styles());
+		zip.closeEntry();
+	}
+
+	/**
+	 * 与{@link ExlStyleRegistry}对应的样式：1 title，2 cellcb，3 cellcnb，4 celllb，5 celllnb，另有6只有边框
+	 */
+	private String styles() {
+		int size = fontSize > 0 ? fontSize : 11;
+		String border = "<border><left style=\"thin\"><color indexed=\"8\"/></left><right style=\"thin\"><color indexed=\"8\"/></right>"
+				+ "<top style=\"thin\"><color indexed=\"8\"/></top><bottom style=\"thin\"><color indexed=\"8\"/></bottom><diagonal/></border>";
+		String center = "<alignment horizontal=\"center\" vertical=\"center\" wrapText=\"1\"/>";
+		String left = "<alignment horizontal=\"left\" vertical=\"center\" wrapText=\"1\"/>";
+		return XML_HEAD + "<styleSheet xmlns=\"" + MAIN_NS + "\">"
+				+ "<fonts count=\"3\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font>"
+				+ "<font><sz val=\"18\"/><name val=\"Calibri\"/></font>"
+				+ "<font><sz val=\"" + size + "\"/><name val=\"Calibri\"/></font></fonts>"
+				+ "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>"
+				+ "<borders count=\"2\"><border><left/><right/><top/><bottom/><diagonal/></border>" + border + "</borders>"
+				+ "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+				+ "<cellXfs count=\"7\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+				+ "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\" applyAlignment=\"1\"><alignment horizontal=\"center\" vertical=\"center\"/></xf>"
+				+ "<xf numFmtId=\"0\" fontId=\"2\" fillId=\"0\" borderId=\"1\" xfId=\"0\" applyFont=\"1\" applyBorder=\"1\" applyAlignment=\"1\">" + center + "</xf>"
+				+ "<xf numFmtId=\"0\" fontId=\"2\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\" applyAlignment=\"1\">" + center + "</xf>"
+				+ "<xf numFmtId=\"0\" fontId=\"2\" fillId=\"0\" borderId=\"1\" xfId=\"0\" applyFont=\"1\" applyBorder=\"1\" applyAlignment=\"1\">" + left + "</xf>"
+				+ "<xf numFmtId=\"0\" fontId=\"2\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\" applyAlignment=\"1\">" + left + "</xf>"
+				+ "<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"1\" xfId=\"0\" applyBorder=\"1\"/>"
+				+ "</cellXfs><cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles></styleSheet>";
+	}
+
+	/**
+	 * 尚未输出的一行，单元格按写入顺序存放，输出时按列排序，同一列以最后一次为准
+	 */
+	private static final class StreamRow {
+		private float height = -1;
+		private int size = 0;
+		private int[] columns = new int[8];
+		private String[] cells = new String[8];
+		private boolean sorted = true;
+
+		void put(int column, String cell) {
+			if (size == columns.length) {
+				columns = Arrays.copyOf(columns, size * 2);
+				cells = Arrays.copyOf(cells, size * 2);
+			}
+			if (size > 0 && column <= columns[size - 1]) {
+				sorted = false;
+			}
+			columns[size] = column;
+			cells[size++] = cell;
+		}
+
+		boolean has(int column) {
+			for (int i = 0; i < size; i++) {
+				if (columns[i] == column) return true;
+			}
+			return false;
+		}
+
+		void appendCells(StringBuilder xml) {
+			if (sorted) {
+				for (int i = 0; i < size; i++) {
+					xml.append(cells[i]);
+				}
+				return;
+			}
+			TreeMap<Integer,String> byColumn = new TreeMap<>();
+			for (int i = 0; i < size; i++) {
+				byColumn.put(columns[i], cells[i]);
+			}
+			for (String cell : byColumn.values()) {
+				xml.append(cell);
+			}
+		}
+	}
+}
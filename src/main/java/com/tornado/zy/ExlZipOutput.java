@@ -0,0 +1,360 @@
+package com.tornado.zy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 可以中途把已压缩数据推送给下游的zip输出.
+ * <br>{@link java.util.zip.ZipOutputStream}在条目结束前不会输出deflate缓冲区中的数据，
+ * 这里每个条目使用数据描述符(data descriptor)，{@link #flush()}时以SYNC_FLUSH输出已压缩的数据，
+ * 下游因此可以在整个文件生成完之前就收到前面的字节.
+ * <br>所有条目使用固定的时间戳，相同内容得到完全相同的字节。不支持zip64，单个条目及整个文件不能超过4G
+ * <br>{@link #checkpoint()}把当前条目已压缩的数据以FULL_FLUSH全部输出并重新开始压缩，之后的输出不再依赖之前的压缩状态，
+ * 配合{@link #save(DataOutput)}、{@link #restore(OutputStream, DataInput)}可以从该位置继续输出
+ * 
+ * @author xlsiek
+ *
+ */
+class ExlZipOutput {
+	private final static int DOS_TIME = 0;//00:00:00
+	private final static int DOS_DATE = (1 << 5) | 1;//1980-01-01
+	private final static int FLAGS = 0x0808;//数据描述符 + UTF-8文件名
+	private final OutputStream out;
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	private final CRC32 crc = new CRC32();
+	private final byte[] buffer = new byte[8192];
+	private final List<Entry> entries = new ArrayList<>();//已完成的条目，用于中央目录
+	private long written = 0;//已输出的字节数
+	private byte[] entryName = null;
+	private long entryOffset = 0;
+	private long entryCrc = 0;//当前条目在最后一个检查点之前部分的crc
+	private long entryRead = 0;//当前条目在最后一个检查点之前的原始字节数
+	private long entryCompressed = 0;//当前条目在最后一个检查点之前的压缩字节数
+	private boolean closed = false;
+
+	ExlZipOutput(OutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * 设置压缩级别，对之后的条目有效。条目本身已是压缩数据时（例如xlsx）使用{@link Deflater#NO_COMPRESSION}，只存储不再压缩
+	 * @param level 压缩级别
+	 */
+	void level(int level) {
+		deflater.setLevel(level);
+	}
+
+	/**
+	 * 开始一个条目，上一个条目必须已经关闭
+	 * @param name 条目名
+	 * @throws IOException
+	 */
+	void putEntry(String name) throws IOException {
+		if (entryName != null) {
+			throw new IllegalStateException("entry not closed");
+		}
+		entryName = name.getBytes(StandardCharsets.UTF_8);
+		entryOffset = written;
+		entryCrc = 0;
+		entryRead = 0;
+		entryCompressed = 0;
+		crc.reset();
+		deflater.reset();
+		writeInt(0x04034b50);
+		writeShort(20);
+		writeShort(FLAGS);
+		writeShort(Deflater.DEFLATED);
+		writeShort(DOS_TIME);
+		writeShort(DOS_DATE);
+		writeInt(0);//crc、大小在数据描述符中给出
+		writeInt(0);
+		writeInt(0);
+		writeShort(entryName.length);
+		writeShort(0);
+		writeBytes(entryName, 0, entryName.length);
+	}
+
+	void write(byte[] b, int off, int len) throws IOException {
+		crc.update(b, off, len);
+		deflater.setInput(b, off, len);
+		while (!deflater.needsInput()) {
+			deflate(Deflater.NO_FLUSH);
+		}
+	}
+
+	void write(String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * 输出当前条目已压缩的全部数据并flush下游
+	 * @throws IOException
+	 */
+	void flush() throws IOException {
+		if (entryName != null) {
+			int n;
+			do {
+				n = deflate(Deflater.SYNC_FLUSH);
+			} while (n == buffer.length);
+		}
+		out.flush();
+	}
+
+	/**
+	 * 检查点：当前条目已压缩的数据以FULL_FLUSH全部输出，压缩器及crc重新开始，已有部分的crc、大小累计下来，并flush下游.
+	 * <br>检查点的位置必须是确定的，从检查点继续时才能得到与不中断时完全相同的字节
+	 * @throws IOException
+	 */
+	void checkpoint() throws IOException {
+		if (entryName != null) {
+			int n;
+			do {
+				n = deflate(Deflater.FULL_FLUSH);
+			} while (n == buffer.length);
+			entryCrc = combine(entryCrc, crc.getValue(), deflater.getBytesRead());
+			entryRead += deflater.getBytesRead();
+			entryCompressed += deflater.getBytesWritten();
+			crc.reset();
+			deflater.reset();
+		}
+		out.flush();
+	}
+
+	/**
+	 * 保存检查点的状态，须紧接在{@link #checkpoint()}之后调用
+	 * @param state 状态输出
+	 * @throws IOException
+	 */
+	void save(DataOutput state) throws IOException {
+		state.writeLong(written);
+		state.writeInt(entries.size());
+		for (Entry entry : entries) {
+			state.writeInt(entry.name.length);
+			state.write(entry.name);
+			state.writeLong(entry.crc);
+			state.writeLong(entry.compressed);
+			state.writeLong(entry.size);
+			state.writeLong(entry.offset);
+		}
+		state.writeInt(entryName == null ? -1 : entryName.length);
+		if (entryName != null) {
+			state.write(entryName);
+		}
+		state.writeLong(entryOffset);
+		state.writeLong(entryCrc);
+		state.writeLong(entryRead);
+		state.writeLong(entryCompressed);
+	}
+
+	/**
+	 * 从检查点的状态继续输出，out须已定位到检查点时已输出的字节数（见{@link #getBytesWritten()}）之后
+	 * @param out 输出流
+	 * @param state {@link #save(DataOutput)}保存的状态
+	 * @return ExlZipOutput
+	 * @throws IOException
+	 */
+	static ExlZipOutput restore(OutputStream out, DataInput state) throws IOException {
+		ExlZipOutput zip = new ExlZipOutput(out);
+		zip.written = state.readLong();
+		for (int i = state.readInt(); i > 0; i--) {
+			byte[] name = new byte[state.readInt()];
+			state.readFully(name);
+			zip.entries.add(new Entry(name, state.readLong(), state.readLong(), state.readLong(), state.readLong()));
+		}
+		int nameLength = state.readInt();
+		if (nameLength >= 0) {
+			zip.entryName = new byte[nameLength];
+			state.readFully(zip.entryName);
+		}
+		zip.entryOffset = state.readLong();
+		zip.entryCrc = state.readLong();
+		zip.entryRead = state.readLong();
+		zip.entryCompressed = state.readLong();
+		return zip;
+	}
+
+	void closeEntry() throws IOException {
+		deflater.finish();
+		while (!deflater.finished()) {
+			deflate(Deflater.NO_FLUSH);
+		}
+		long compressed = entryCompressed + deflater.getBytesWritten();
+		long size = entryRead + deflater.getBytesRead();
+		long crcValue = combine(entryCrc, crc.getValue(), deflater.getBytesRead());
+		if (compressed > 0xFFFFFFFFL || size > 0xFFFFFFFFL || written > 0xFFFFFFFFL) {
+			throw new IOException("zip64 is not supported");
+		}
+		writeInt(0x08074b50);
+		writeInt((int) crcValue);
+		writeInt((int) compressed);
+		writeInt((int) size);
+		entries.add(new Entry(entryName, crcValue, compressed, size, entryOffset));
+		entryName = null;
+	}
+
+	/**
+	 * 输出中央目录，结束整个文件，不关闭下游
+	 * @throws IOException
+	 */
+	void finish() throws IOException {
+		if (entryName != null) {
+			closeEntry();
+		}
+		long directoryOffset = written;
+		for (Entry entry : entries) {
+			byte[] name = entry.name;
+			writeInt(0x02014b50);
+			writeShort(20);
+			writeShort(20);
+			writeShort(FLAGS);
+			writeShort(Deflater.DEFLATED);
+			writeShort(DOS_TIME);
+			writeShort(DOS_DATE);
+			writeInt((int) entry.crc);
+			writeInt((int) entry.compressed);
+			writeInt((int) entry.size);
+			writeShort(name.length);
+			writeShort(0);
+			writeShort(0);
+			writeShort(0);
+			writeShort(0);
+			writeInt(0);
+			writeInt((int) entry.offset);
+			writeBytes(name, 0, name.length);
+		}
+		long directorySize = written - directoryOffset;
+		writeInt(0x06054b50);
+		writeShort(0);
+		writeShort(0);
+		writeShort(entries.size());
+		writeShort(entries.size());
+		writeInt((int) directorySize);
+		writeInt((int) directoryOffset);
+		writeShort(0);
+		close();
+		out.flush();
+	}
+
+	/**
+	 * 释放压缩器的本地内存，之后不能再输出。{@link #finish()}时自动调用，取消或失败时须由调用方调用，可重复调用
+	 */
+	void close() {
+		deflater.end();
+		closed = true;
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * 已输出到下游的字节数
+	 * @return 字节数
+	 */
+	long getBytesWritten() {
+		return written;
+	}
+
+	private int deflate(int flush) throws IOException {
+		int n = deflater.deflate(buffer, 0, buffer.length, flush);
+		if (n > 0) {
+			writeBytes(buffer, 0, n);
+		}
+		return n;
+	}
+
+	/**
+	 * 由两段各自的crc得到连接后的crc，同zlib的crc32_combine
+	 * @param crc1 第一段的crc
+	 * @param crc2 第二段的crc
+	 * @param length2 第二段的字节数
+	 */
+	static long combine(long crc1, long crc2, long length2) {
+		if (length2 <= 0) {
+			return crc1;
+		}
+		long[] even = new long[32];//偶数次方的gf(2)矩阵
+		long[] odd = new long[32];
+		odd[0] = 0xEDB88320L;//crc-32多项式
+		long row = 1;
+		for (int n = 1; n < 32; n++) {
+			odd[n] = row;
+			row <<= 1;
+		}
+		gf2Square(even, odd);//2个0位
+		gf2Square(odd, even);//4个0位
+		do {
+			//每次平方，对应length2的一位
+			gf2Square(even, odd);
+			if ((length2 & 1) != 0) {
+				crc1 = gf2Times(even, crc1);
+			}
+			length2 >>= 1;
+			if (length2 == 0) {
+				break;
+			}
+			gf2Square(odd, even);
+			if ((length2 & 1) != 0) {
+				crc1 = gf2Times(odd, crc1);
+			}
+			length2 >>= 1;
+		} while (length2 != 0);
+		return crc1 ^ crc2;
+	}
+
+	private static long gf2Times(long[] matrix, long vector) {
+		long sum = 0;
+		for (int i = 0; vector != 0; i++, vector >>>= 1) {
+			if ((vector & 1) != 0) {
+				sum ^= matrix[i];
+			}
+		}
+		return sum;
+	}
+
+	private static void gf2Square(long[] square, long[] matrix) {
+		for (int n = 0; n < 32; n++) {
+			square[n] = gf2Times(matrix, matrix[n]);
+		}
+	}
+
+	private void writeBytes(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		written += len;
+	}
+
+	private void writeShort(int v) throws IOException {
+		out.write(v & 0xff);
+		out.write((v >>> 8) & 0xff);
+		written += 2;
+	}
+
+	private void writeInt(int v) throws IOException {
+		writeShort(v & 0xffff);
+		writeShort((v >>> 16) & 0xffff);
+	}
+
+	private static final class Entry {
+		final byte[] name;
+		final long crc;
+		final long compressed;
+		final long size;
+		final long offset;
+
+		Entry(byte[] name, long crc, long compressed, long size, long offset) {
+			this.name = name;
+			this.crc = crc;
+			this.compressed = compressed;
+			this.size = size;
+			this.offset = offset;
+		}
+	}
+}
@@ -11,6 +11,37 @@ public class StringUtils {
         return s == null || s.length() == 0;
     }
 
+    /**
+     * 是否为十进制数字：可带正负号、小数点及指数，前后可有空白，例如-1.5e3。
+     * 为true时Double.parseDouble一定成功，逐值判断时用它代替捕获NumberFormatException
+     */
+    static boolean isNumber(String s) {
+        if (s == null) return false;
+        int i = 0;
+        int end = s.length();
+        while (i < end && s.charAt(i) <= ' ') i++;
+        while (end > i && s.charAt(end - 1) <= ' ') end--;
+        if (i < end && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
+        int digits = 0;
+        for (; i < end && isDigit(s.charAt(i)); i++) digits++;
+        if (i < end && s.charAt(i) == '.') {
+            for (i++; i < end && isDigit(s.charAt(i)); i++) digits++;
+        }
+        if (digits == 0) return false;
+        if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
+            int exponent = 0;
+            for (; i < end && isDigit(s.charAt(i)); i++) exponent++;
+            if (exponent == 0) return false;
+        }
+        return i == end;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
     public static void main(String[] args) {
         System.out.println("".length());
     }
@@ -0,0 +1,180 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExcelBatchExportUtils}.
+ */
+public class ExcelBatchExportUtilsTest
+    extends TestCase
+{
+    public ExcelBatchExportUtilsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExcelBatchExportUtilsTest.class );
+    }
+
+    /**
+     * 并行准备与顺序导出得到同一个工作簿，渲染器在线程池中执行
+     */
+    public void testParallelSameAsSerial() throws Exception
+    {
+        Set<Thread> renderThreads = Collections.synchronizedSet( new HashSet<Thread>() );
+        byte[] parallel = export( batch( renderThreads ).parallelism( 4 ) );
+        assertFalse( renderThreads.contains( Thread.currentThread() ) );
+
+        renderThreads.clear();
+        byte[] serial = export( batch( renderThreads ).parallelism( 1 ) );
+        assertEquals( Collections.singleton( Thread.currentThread() ), renderThreads );
+
+        assertEquals( dump( serial ), dump( parallel ) );
+        Workbook wb = new HSSFWorkbook( new ByteArrayInputStream( parallel ) );
+        assertEquals( 3, wb.getNumberOfSheets() );
+        assertEquals( "学校1", wb.getSheetName( 1 ) );
+        assertEquals( "n1_599[1]", wb.getSheetAt( 1 ).getRow( 601 ).getCell( 1 ).getStringCellValue() );
+    }
+
+    /**
+     * 有排序、小计的工作表不在线程池中准备，在绘制时按原始值处理
+     */
+    public void testSortAndAggregateSkipPreparation() throws Exception
+    {
+        Set<Thread> renderThreads = Collections.synchronizedSet( new HashSet<Thread>() );
+        ExlCellRender<Object> render = ( value, record, index ) -> {
+            renderThreads.add( Thread.currentThread() );
+            return value;
+        };
+        ExcelBatchExportUtils batch = ExcelBatchExportUtils.c().parallelism( 4 )
+            .sheet( "排序", ExcelExportUtils.c().headers( "编号", "名称" ).contentColumns( "id", "name" )
+                .contentData( rows( 0, 300 ) ).sortBy( "id", false ).render( render, "name" ) )
+            .sheet( "总计", ExcelExportUtils.c().headers( "名称", "编号" ).contentColumns( "name", "id" )
+                .contentData( rows( 0, 300 ) ).grandTotal( "合计" ).aggregate( ExlAggregate.SUM, "id" ).render( render, "name" ) );
+        Workbook wb = new HSSFWorkbook( new ByteArrayInputStream( export( batch ) ) );
+        assertEquals( Collections.singleton( Thread.currentThread() ), renderThreads );
+
+        Sheet sorted = wb.getSheetAt( 0 );
+        assertEquals( "299", sorted.getRow( 1 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "0", sorted.getRow( 300 ).getCell( 0 ).getStringCellValue() );
+        Sheet total = wb.getSheetAt( 1 );
+        assertEquals( "合计", total.getRow( 301 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( 44850d, total.getRow( 301 ).getCell( 1 ).getNumericCellValue() );
+    }
+
+    /**
+     * 线程池中的工作表被取消时整个工作簿都不输出，各工作表的统计均为已取消；其他异常包装为IOException
+     */
+    public void testCancelledInWorker() throws Exception
+    {
+        ExlCancelToken token = ExlCancelToken.c();
+        ExlCellRender<Object> cancel = ( value, record, index ) -> {
+            token.cancel();
+            return value;
+        };
+        ExcelBatchExportUtils batch = ExcelBatchExportUtils.c().parallelism( 2 )
+            .sheet( "一", ExcelExportUtils.c().contentColumns( "id", "name" ).contentData( rows( 0, 1000 ) ).cancelToken( token ) )
+            .sheet( "二", ExcelExportUtils.c().contentColumns( "id", "name" ).contentData( rows( 0, 1000 ) )
+                .cancelToken( token ).render( cancel, "name" ) );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<ExlExportStats> stats = batch.export( out );
+        assertEquals( 0, out.size() );
+        assertEquals( 2, stats.size() );
+        assertTrue( stats.get( 0 ).isCancelled() );
+        assertTrue( stats.get( 1 ).isCancelled() );
+
+        ExlCellRender<Object> fail = ( value, record, index ) -> {
+            throw new IllegalStateException( "渲染失败" );
+        };
+        batch = ExcelBatchExportUtils.c().parallelism( 2 )
+            .sheet( "一", ExcelExportUtils.c().contentColumns( "id", "name" ).contentData( rows( 0, 10 ) ) )
+            .sheet( "二", ExcelExportUtils.c().contentColumns( "id", "name" ).contentData( rows( 0, 10 ) ).render( fail, "name" ) );
+        try
+        {
+            batch.export( new ByteArrayOutputStream() );
+            fail();
+        }
+        catch ( IOException e )
+        {
+            assertTrue( e.getCause() instanceof IllegalStateException );
+        }
+    }
+
+    private static ExcelBatchExportUtils batch( Set<Thread> renderThreads )
+    {
+        ExcelBatchExportUtils batch = ExcelBatchExportUtils.c();
+        for ( int s = 0; s < 3; s++ )
+        {
+            final int sheet = s;
+            batch.sheet( "学校" + s, ExcelExportUtils.c().title( "学校" + s ).headers( "编号", "名称" )
+                .contentColumns( "id", "name" ).contentData( rows( s, 600 + s * 100 ) ).forceColumnWidth( 1, 20 )
+                .render( ( value, record, index ) -> {
+                    renderThreads.add( Thread.currentThread() );
+                    return value + "[" + sheet + "]";
+                }, "name" ) );
+        }
+        return batch;
+    }
+
+    private static byte[] export( ExcelBatchExportUtils batch ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batch.export( out );
+        return out.toByteArray();
+    }
+
+    /**
+     * 工作簿的全部单元格、合并区域及样式序号
+     */
+    private static String dump( byte[] bytes ) throws IOException
+    {
+        Workbook wb = new HSSFWorkbook( new ByteArrayInputStream( bytes ) );
+        StringBuilder dump = new StringBuilder();
+        for ( Sheet sheet : wb )
+        {
+            dump.append( sheet.getSheetName() ).append( sheet.getMergedRegions() ).append( '\n' );
+            for ( org.apache.poi.ss.usermodel.Row row : sheet )
+            {
+                for ( org.apache.poi.ss.usermodel.Cell cell : row )
+                {
+                    dump.append( cell.getAddress() ).append( '=' ).append( cell.toString() )
+                        .append( '#' ).append( cell.getCellStyle().getIndex() ).append( ' ' );
+                }
+                dump.append( row.getHeight() ).append( '\n' );
+            }
+        }
+        return dump.toString();
+    }
+
+    private static List<Map<String,Object>> rows( int sheet, int count )
+    {
+        List<Map<String,Object>> rows = new ArrayList<>();
+        for ( int i = 0; i < count; i++ )
+        {
+            Map<String,Object> row = new HashMap<>();
+            row.put( "id", i );
+            row.put( "name", "n" + sheet + "_" + i );
+            rows.add( row );
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,332 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExcelImportUtils}.
+ */
+public class ExcelImportUtilsTest
+    extends TestCase
+{
+    public ExcelImportUtilsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExcelImportUtilsTest.class );
+    }
+
+    /**
+     * xls：按表头定位内容，丢弃注释行，读回为实体并转换属性类型
+     */
+    public void testBeanRoundTripXls() throws Exception
+    {
+        List<School> schools = new ArrayList<>();
+        for ( int i = 0; i < 1500; i++ )
+        {
+            schools.add( new School( "学校" + i, i, i + 0.5, i % 2 == 0 ) );
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().title( "学校" ).headers( "名称", "班级", "金额", "开放" ).contentColumns( "name", "classes", "amount", "open" )
+            .contentData( schools ).comments( "注释" ).export( out );
+        Path file = Files.createTempFile( "import", ".xls" );
+        try
+        {
+            Files.write( file, out.toByteArray() );
+            List<School> read;
+            try ( Stream<School> stream = ExcelImportUtils.c( School.class ).headers( "名称", "班级", "金额", "开放" )
+                .contentColumns( "name", "classes", "amount", "open" ).footerRows( 1 ).read( file ) )
+            {
+                read = stream.collect( Collectors.toList() );
+            }
+            assertEquals( 1500, read.size() );
+            for ( int i = 0; i < 1500; i += 149 )
+            {
+                assertEquals( schools.get( i ).toString(), read.get( i ).toString() );
+            }
+        }
+        finally
+        {
+            Files.delete( file );
+        }
+    }
+
+    /**
+     * xlsx：流式导出的文件从输入流读回为Map，空单元格为null
+     */
+    public void testMapRoundTripXlsx() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().title( "片区" ).headers( "编号", "名称" ).contentColumns( "id", "name" ).contentData( rows( 3000 ) )
+            .exportStreaming( out );
+        Set<Path> before = tempFiles();
+        List<Map<String,Object>> read;
+        try ( Stream<Map<String,Object>> stream = ExcelImportUtils.map().skipRows( 2 ).contentColumns( "id", "name" )
+            .read( new ByteArrayInputStream( out.toByteArray() ) ) )
+        {
+            read = stream.collect( Collectors.toList() );
+        }
+        assertEquals( 3000, read.size() );
+        assertEquals( "0", read.get( 0 ).get( "id" ) );
+        assertEquals( "n2999", read.get( 2999 ).get( "name" ) );
+        assertTrue( read.get( 7 ).containsKey( "name" ) );
+        assertNull( read.get( 7 ).get( "name" ) );
+        assertEquals( before, tempFiles() );
+    }
+
+    /**
+     * 提前关闭：解析线程随即停止，临时文件被删除
+     */
+    public void testEarlyClose() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().headers( "编号", "名称" ).contentColumns( "id", "name" ).contentData( rows( 20000 ) ).export( out );
+        Set<Path> before = tempFiles();
+        Stream<Map<String,Object>> stream = ExcelImportUtils.map().headers( "编号", "名称" ).contentColumns( "id", "name" )
+            .read( new ByteArrayInputStream( out.toByteArray() ) );
+        Iterator<Map<String,Object>> iterator = stream.iterator();
+        for ( int i = 0; i < 10; i++ )
+        {
+            assertEquals( String.valueOf( i ), iterator.next().get( "id" ) );
+        }
+        stream.close();
+        assertEquals( before, tempFiles() );
+        for ( int i = 0; i < 100 && parserRunning(); i++ )
+        {
+            Thread.sleep( 10 );
+        }
+        assertFalse( parserRunning() );
+    }
+
+    /**
+     * 配置有误时立即失败，不留下临时文件
+     */
+    public void testInvalidConfig() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().contentColumns( "id", "name" ).contentData( rows( 10 ) ).export( out );
+        Set<Path> before = tempFiles();
+        try
+        {
+            ExcelImportUtils.map().read( new ByteArrayInputStream( out.toByteArray() ) );
+            fail();
+        }
+        catch ( IllegalStateException e )
+        {
+            assertTrue( e.getMessage().contains( "contentColumns" ) );
+        }
+        try
+        {
+            ExcelImportUtils.c( School.class ).contentColumns( "name", "area" ).read( new ByteArrayInputStream( out.toByteArray() ) );
+            fail();
+        }
+        catch ( IllegalStateException e )
+        {
+            assertTrue( e.getMessage().contains( "area" ) );
+        }
+        assertEquals( before, tempFiles() );
+    }
+
+    /**
+     * 数字类型的属性取原始值：千分位格式、13位整数、数值公式都不受显示格式影响；Map仍为显示的文字
+     */
+    public void testFormattedNumbers() throws Exception
+    {
+        for ( boolean xlsx : new boolean[] { false, true } )
+        {
+            Path file = Files.createTempFile( "import", xlsx ? ".xlsx" : ".xls" );
+            try
+            {
+                Workbook wb = xlsx ? new XSSFWorkbook() : new HSSFWorkbook();
+                CellStyle thousands = wb.createCellStyle();
+                thousands.setDataFormat( wb.createDataFormat().getFormat( "#,##0.00" ) );
+                org.apache.poi.ss.usermodel.Sheet sheet = wb.createSheet();
+                Row header = sheet.createRow( 0 );
+                header.createCell( 0 ).setCellValue( "名称" );
+                header.createCell( 1 ).setCellValue( "金额" );
+                header.createCell( 2 ).setCellValue( "编号" );
+                header.createCell( 3 ).setCellValue( "两倍" );
+                for ( int i = 1; i <= 3; i++ )
+                {
+                    Row row = sheet.createRow( i );
+                    row.createCell( 0 ).setCellValue( "账户" + i );
+                    Cell amount = row.createCell( 1 );
+                    amount.setCellValue( 1234.5 * i );
+                    amount.setCellStyle( thousands );
+                    row.createCell( 2 ).setCellValue( 1234567890120L + i );
+                    row.createCell( 3 ).setCellFormula( "B" + ( i + 1 ) + "*2" );
+                }
+                wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+                try ( OutputStream out = Files.newOutputStream( file ) )
+                {
+                    wb.write( out );
+                }
+                wb.close();
+
+                List<Account> accounts;
+                try ( Stream<Account> stream = ExcelImportUtils.c( Account.class ).headers( "名称", "金额", "编号", "两倍" )
+                    .contentColumns( "name", "amount", "id", "twice" ).read( file ) )
+                {
+                    accounts = stream.collect( Collectors.toList() );
+                }
+                assertEquals( 3, accounts.size() );
+                assertEquals( "账户2", accounts.get( 1 ).name );
+                assertEquals( 2469.0, accounts.get( 1 ).amount );
+                assertEquals( 1234567890122L, accounts.get( 1 ).id );
+                assertEquals( 0, new BigDecimal( "7407" ).compareTo( accounts.get( 2 ).twice ) );
+
+                List<Map<String,Object>> maps;
+                try ( Stream<Map<String,Object>> stream = ExcelImportUtils.map().skipRows( 1 ).contentColumns( "name", "amount" ).read( file ) )
+                {
+                    maps = stream.collect( Collectors.toList() );
+                }
+                assertEquals( "1,234.50", maps.get( 0 ).get( "amount" ) );
+            }
+            finally
+            {
+                Files.delete( file );
+            }
+        }
+    }
+
+    /**
+     * 表头不在第一列时按firstColumn定位；找不到表头时读取报错，而不是静默地没有数据
+     */
+    public void testHeadersAfterFirstColumn() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Workbook wb = new HSSFWorkbook();
+        org.apache.poi.ss.usermodel.Sheet sheet = wb.createSheet();
+        for ( int i = 0; i < 4; i++ )
+        {
+            Row row = sheet.createRow( i );
+            row.createCell( 0 ).setCellValue( i == 0 ? "序号" : String.valueOf( i ) );
+            row.createCell( 1 ).setCellValue( i == 0 ? "编号" : "id" + i );
+            row.createCell( 2 ).setCellValue( i == 0 ? "名称" : "n" + i );
+        }
+        wb.write( out );
+        wb.close();
+
+        List<Map<String,Object>> read;
+        try ( Stream<Map<String,Object>> stream = ExcelImportUtils.map().headers( "编号", "名称" ).firstColumn( 1 )
+            .contentColumns( "id", "name" ).read( new ByteArrayInputStream( out.toByteArray() ) ) )
+        {
+            read = stream.collect( Collectors.toList() );
+        }
+        assertEquals( 3, read.size() );
+        assertEquals( "id1", read.get( 0 ).get( "id" ) );
+        assertEquals( "n3", read.get( 2 ).get( "name" ) );
+
+        try ( Stream<Map<String,Object>> stream = ExcelImportUtils.map().headers( "编号", "名称" )
+            .contentColumns( "id", "name" ).read( new ByteArrayInputStream( out.toByteArray() ) ) )
+        {
+            stream.count();
+            fail();
+        }
+        catch ( IllegalStateException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( "表头" ) );
+        }
+    }
+
+    private static boolean parserRunning()
+    {
+        for ( Thread thread : Thread.getAllStackTraces().keySet() )
+        {
+            if ( "exl-import".equals( thread.getName() ) && thread.isAlive() )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<Path> tempFiles() throws IOException
+    {
+        Set<Path> files = new HashSet<>();
+        try ( DirectoryStream<Path> dir = Files.newDirectoryStream( Paths.get( System.getProperty( "java.io.tmpdir" ) ), "exl-import*.tmp" ) )
+        {
+            for ( Path file : dir )
+            {
+                files.add( file );
+            }
+        }
+        return files;
+    }
+
+    private static List<Map<String,Object>> rows( int count )
+    {
+        List<Map<String,Object>> rows = new ArrayList<>();
+        for ( int i = 0; i < count; i++ )
+        {
+            Map<String,Object> row = new HashMap<>();
+            row.put( "id", i );
+            row.put( "name", i == 7 ? null : "n" + i );
+            rows.add( row );
+        }
+        return rows;
+    }
+
+    public static class Account
+    {
+        private String name;
+        private double amount;
+        private long id;
+        private BigDecimal twice;
+    }
+
+    public static class School
+    {
+        private String name;
+        private int classes;
+        private double amount;
+        private boolean open;
+
+        School()
+        {
+        }
+
+        School( String name, int classes, double amount, boolean open )
+        {
+            this.name = name;
+            this.classes = classes;
+            this.amount = amount;
+            this.open = open;
+        }
+
+        public String toString()
+        {
+            return name + "," + classes + "," + amount + "," + open;
+        }
+    }
+}
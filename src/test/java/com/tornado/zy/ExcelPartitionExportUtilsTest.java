@@ -0,0 +1,150 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExcelPartitionExportUtils}.
+ */
+public class ExcelPartitionExportUtilsTest
+    extends TestCase
+{
+    public ExcelPartitionExportUtilsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExcelPartitionExportUtilsTest.class );
+    }
+
+    /**
+     * 分区数超过上限时溢出，每个分区一个带表头的文件，行不丢失、顺序不变
+     */
+    public void testFilesWithSpill() throws Exception
+    {
+        List<Map<String,Object>> data = new ArrayList<>();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            Map<String,Object> record = new HashMap<>();
+            record.put( "area", "area" + ( i % 7 ) );
+            record.put( "name", "学校" + i );
+            data.add( record );
+        }
+        Path dir = Files.createTempDirectory( "partition" );
+        Path spillDir = Files.createTempDirectory( "spill" );
+        try
+        {
+            Map<String,ExlExportStats> stats = ExcelPartitionExportUtils
+                .c( "area", area -> ExcelExportUtils.c().title( area + "统计" ).headers( "片区", "名称" ).contentColumns( "area", "name" ) )
+                .maxOpen( 3 ).spillDir( spillDir ).exportFiles( data, dir );
+            assertEquals( 7, stats.size() );
+            assertEquals( "area0", stats.keySet().iterator().next() );
+            assertEquals( 0, spillDir.toFile().list().length );
+
+            for ( int k = 0; k < 7; k++ )
+            {
+                assertEquals( k < 6 ? 143 : 142, stats.get( "area" + k ).getContentRows() );
+                try ( InputStream in = Files.newInputStream( dir.resolve( "area" + k + ".xlsx" ) ) )
+                {
+                    Sheet sheet = new XSSFWorkbook( in ).getSheetAt( 0 );
+                    assertEquals( "area" + k + "统计", sheet.getRow( 0 ).getCell( 0 ).getStringCellValue() );
+                    assertEquals( "名称", sheet.getRow( 1 ).getCell( 1 ).getStringCellValue() );
+                    assertEquals( "学校" + k, sheet.getRow( 2 ).getCell( 1 ).getStringCellValue() );
+                    assertEquals( "学校" + ( k + 7 ), sheet.getRow( 3 ).getCell( 1 ).getStringCellValue() );
+                }
+            }
+        }
+        finally
+        {
+            for ( File file : dir.toFile().listFiles() )
+            {
+                file.delete();
+            }
+            Files.delete( dir );
+            Files.delete( spillDir );
+        }
+    }
+
+    /**
+     * 记录不可序列化：Collection数据源分区数超过上限时开始前就报错，未超过时正常导出；
+     * 只能读一遍的数据源在需要溢出时报错；null记录报错
+     */
+    public void testNotSerializableRecords() throws Exception
+    {
+        List<Item> data = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            data.add( new Item( "area" + ( i % 5 ), "学校" + i ) );
+        }
+        AtomicInteger partitions = new AtomicInteger();
+        ExcelPartitionExportUtils utils = ExcelPartitionExportUtils.c( "area", area -> {
+            partitions.incrementAndGet();
+            return ExcelExportUtils.c().headers( "片区", "名称" ).contentColumns( "area", "name" );
+        } ).maxOpen( 3 );
+        try
+        {
+            utils.exportSheets( data, new ByteArrayOutputStream() );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( Item.class.getName() ) );
+            assertTrue( e.getCause() instanceof NotSerializableException );
+        }
+        assertEquals( 0, partitions.get() );
+
+        Iterable<Item> source = data::iterator;
+        try
+        {
+            utils.exportSheets( source, new ByteArrayOutputStream() );
+            fail();
+        }
+        catch ( IllegalStateException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( "maxOpen" ) );
+        }
+
+        assertEquals( 5, utils.maxOpen( 5 ).exportSheets( data, new ByteArrayOutputStream() ).size() );
+
+        data.add( 3, null );
+        try
+        {
+            utils.exportSheets( data, new ByteArrayOutputStream() );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( "null" ) );
+        }
+    }
+
+    public static class Item
+    {
+        private final String area;
+        private final String name;
+
+        Item( String area, String name )
+        {
+            this.area = area;
+            this.name = name;
+        }
+    }
+}
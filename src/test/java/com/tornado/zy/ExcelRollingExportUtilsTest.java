@@ -0,0 +1,148 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExcelRollingExportUtils}.
+ */
+public class ExcelRollingExportUtilsTest
+    extends TestCase
+{
+    public ExcelRollingExportUtilsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExcelRollingExportUtilsTest.class );
+    }
+
+    /**
+     * 按行数滚动：每个文件都有标题、表头，内容依次接续；前面的文件在数据源读完之前就已输出
+     */
+    public void testRollByRows() throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final int[] outputBeforeLastRow = new int[1];
+        Iterable<Map<String,Object>> data = () -> new Iterator<Map<String,Object>>()
+        {
+            private int next = 0;
+
+            public boolean hasNext()
+            {
+                return next < 2500;
+            }
+
+            public Map<String,Object> next()
+            {
+                if ( next == 2499 )
+                {
+                    outputBeforeLastRow[0] = out.size();
+                }
+                return row( next++ );
+            }
+        };
+        List<ExlExportStats> stats = ExcelRollingExportUtils.c( part -> ExcelExportUtils.c().title( "滚动" + ( part + 1 ) )
+            .headers( "编号", "名称" ).contentColumns( "id", "name" ) ).maxRows( 1000 ).fileName( "学校" ).export( data, out );
+
+        assertEquals( 3, stats.size() );
+        assertEquals( 1000, stats.get( 0 ).getContentRows() );
+        assertEquals( 500, stats.get( 2 ).getContentRows() );
+        assertTrue( outputBeforeLastRow[0] > 0 );
+
+        List<Sheet> sheets = read( out.toByteArray(), "学校-1.xlsx", "学校-2.xlsx", "学校-3.xlsx" );
+        for ( int i = 0; i < 3; i++ )
+        {
+            Sheet sheet = sheets.get( i );
+            assertEquals( "滚动" + ( i + 1 ), sheet.getRow( 0 ).getCell( 0 ).getStringCellValue() );
+            assertEquals( "名称", sheet.getRow( 1 ).getCell( 1 ).getStringCellValue() );
+            assertEquals( String.valueOf( i * 1000 ), sheet.getRow( 2 ).getCell( 0 ).getStringCellValue() );
+        }
+        assertEquals( "n2499", sheets.get( 2 ).getRow( 501 ).getCell( 1 ).getStringCellValue() );
+        assertEquals( 501, sheets.get( 2 ).getLastRowNum() );
+    }
+
+    /**
+     * 按字节数滚动，每个文件超出上限不多于一次推送；没有数据时输出一个只有表头的文件
+     */
+    public void testRollByBytesAndEmptySource() throws Exception
+    {
+        List<Map<String,Object>> data = new ArrayList<>();
+        for ( int i = 0; i < 3000; i++ )
+        {
+            data.add( row( i ) );
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<ExlExportStats> stats = ExcelRollingExportUtils.c( part -> ExcelExportUtils.c().headers( "编号", "名称" )
+            .contentColumns( "id", "name" ).streamFlush( 100, 1024 ) ).maxBytes( 8 * 1024 ).export( data, out );
+        assertTrue( stats.size() > 1 );
+        int rows = 0;
+        for ( ExlExportStats part : stats )
+        {
+            rows += part.getContentRows();
+        }
+        assertEquals( 3000, rows );
+        ZipInputStream zip = new ZipInputStream( new ByteArrayInputStream( out.toByteArray() ) );
+        for ( ZipEntry entry; ( entry = zip.getNextEntry() ) != null; )
+        {
+            ByteArrayOutputStream part = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for ( int n; ( n = zip.read( buffer ) ) > 0; )
+            {
+                part.write( buffer, 0, n );
+            }
+            assertTrue( entry.getName() + ":" + part.size(), part.size() < 8 * 1024 + 8 * 1024 );
+        }
+
+        out = new ByteArrayOutputStream();
+        stats = ExcelRollingExportUtils.c( part -> ExcelExportUtils.c().headers( "编号", "名称" ).contentColumns( "id", "name" ) )
+            .export( new ArrayList<>(), out );
+        assertEquals( 1, stats.size() );
+        Sheet sheet = read( out.toByteArray(), "part-1.xlsx" ).get( 0 );
+        assertEquals( "编号", sheet.getRow( 0 ).getCell( 0 ).getStringCellValue() );
+    }
+
+    private static List<Sheet> read( byte[] bytes, String... names ) throws Exception
+    {
+        List<Sheet> sheets = new ArrayList<>();
+        ZipInputStream zip = new ZipInputStream( new ByteArrayInputStream( bytes ) );
+        for ( String name : names )
+        {
+            ZipEntry entry = zip.getNextEntry();
+            assertEquals( name, entry.getName() );
+            ByteArrayOutputStream part = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for ( int n; ( n = zip.read( buffer ) ) > 0; )
+            {
+                part.write( buffer, 0, n );
+            }
+            sheets.add( new XSSFWorkbook( new ByteArrayInputStream( part.toByteArray() ) ).getSheetAt( 0 ) );
+        }
+        assertNull( zip.getNextEntry() );
+        return sheets;
+    }
+
+    private static Map<String,Object> row( int i )
+    {
+        Map<String,Object> row = new HashMap<>();
+        row.put( "id", i );
+        row.put( "name", "n" + i );
+        return row;
+    }
+}
@@ -0,0 +1,184 @@
+package com.tornado.zy;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlAdmission}.
+ */
+public class ExlAdmissionTest
+    extends TestCase
+{
+    private static final int ROWS = 20000;
+
+    private static final String[] COLUMNS = { "c0", "c1", "c2", "c3", "c4", "c5", "c6", "c7", "c8", "c9" };
+
+    public ExlAdmissionTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlAdmissionTest.class );
+    }
+
+    /**
+     * 超载：预算只够两个xls同时进行，12个导出同时到达，预占之和始终不超过预算，全部完成，等不及的改为流式
+     */
+    public void testOverloadStaysWithinBudget() throws Exception
+    {
+        final List<Map<String, Object>> data = data();
+        long xls = export( data ).estimateMemory( false );
+        final ExlAdmission admission = ExlAdmission.c( xls * 2 + xls / 2 ).maxWait( 200 );
+        final AtomicLong maxReserved = new AtomicLong();
+        final AtomicInteger streamed = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool( 12 );
+        List<Future<ExlExportStats>> futures = new ArrayList<>();
+        for ( int i = 0; i < 12; i++ )
+        {
+            futures.add( pool.submit( () -> admission.export( export( data ), streaming -> {
+                ExlAdmission.Snapshot snapshot = admission.getSnapshot();
+                long reserved = 0;
+                for ( ExlAdmission.Reservation reservation : snapshot.getReservations() )
+                {
+                    reserved += reservation.getBytes();
+                }
+                assertEquals( reserved, snapshot.getReserved() );
+                maxReserved.accumulateAndGet( reserved, Math::max );
+                if ( streaming )
+                {
+                    streamed.incrementAndGet();
+                }
+                return new NullOutputStream();
+            } ) ) );
+        }
+        HeapSampler heap = new HeapSampler();
+        heap.start();
+        for ( Future<ExlExportStats> future : futures )
+        {
+            assertEquals( ROWS, future.get().getContentRows() );
+        }
+        pool.shutdown();
+        heap.interrupt();
+        heap.join();
+        assertTrue( heap.peak + " > " + admission.getBudget(), heap.peak <= admission.getBudget() );
+        assertTrue( maxReserved.get() <= admission.getBudget() );
+        assertTrue( streamed.get() > 0 );
+        assertEquals( 0, admission.getReserved() );
+        assertEquals( 0, admission.getWaiting() );
+    }
+
+    /**
+     * 单个xls就超过预算时直接流式；不允许改为流式时没有其他导出也会放行
+     */
+    public void testOversizedExport() throws Exception
+    {
+        List<Map<String, Object>> data = data();
+        final boolean[] streaming = new boolean[1];
+        ExlAdmission admission = ExlAdmission.c( 4 * 1024 * 1024 );
+        admission.export( export( data ), s -> {
+            streaming[0] = s;
+            return new NullOutputStream();
+        } );
+        assertTrue( streaming[0] );
+
+        admission = ExlAdmission.c( 4 * 1024 * 1024 ).streamingFallback( false );
+        admission.export( export( data ), s -> {
+            streaming[0] = s;
+            return new NullOutputStream();
+        } );
+        assertFalse( streaming[0] );
+    }
+
+    private static ExcelExportUtils export( List<Map<String, Object>> data )
+    {
+        return ExcelExportUtils.c().title( "准入" ).headers( COLUMNS ).contentColumns( COLUMNS ).contentData( data );
+    }
+
+    private static List<Map<String, Object>> data()
+    {
+        List<Map<String, Object>> data = new ArrayList<>();
+        for ( int i = 0; i < ROWS; i++ )
+        {
+            Map<String, Object> row = new HashMap<>();
+            for ( int c = 0; c < COLUMNS.length; c++ )
+            {
+                row.put( COLUMNS[c], "v" + ( i * 31 + c ) % 1000 );
+            }
+            data.add( row );
+        }
+        return data;
+    }
+
+    /**
+     * 采样各堆内存池在最近一次GC后的占用，减去开始时的占用，即导出实际保留的内存的峰值
+     */
+    private static final class HeapSampler extends Thread
+    {
+        private final long baseline;
+        volatile long peak = 0;
+
+        HeapSampler()
+        {
+            System.gc();
+            baseline = live();
+            setDaemon( true );
+        }
+
+        public void run()
+        {
+            try
+            {
+                while ( true )
+                {
+                    peak = Math.max( peak, live() - baseline );
+                    Thread.sleep( 2 );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                peak = Math.max( peak, live() - baseline );
+            }
+        }
+
+        private static long live()
+        {
+            long used = 0;
+            for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+            {
+                if ( pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null )
+                {
+                    used += pool.getCollectionUsage().getUsed();
+                }
+            }
+            return used;
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream
+    {
+        public void write( int b )
+        {
+        }
+
+        public void write( byte[] b, int off, int len )
+        {
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExcelExportUtils#groupBy(String, String)}.
+ */
+public class ExlAggregateTest
+    extends TestCase
+{
+    public ExlAggregateTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlAggregateTest.class );
+    }
+
+    /**
+     * 分组变化时插入小计，总计在注释行之前，汇总使用渲染前的原始值
+     */
+    public void testSubtotalsAndGrandTotal() throws Exception
+    {
+        List<Map<String,Object>> data = new ArrayList<>();
+        String[] areas = { "东区", "东区", "西区", "西区", "西区" };
+        for ( int i = 0; i < areas.length; i++ )
+        {
+            Map<String,Object> record = new HashMap<>();
+            record.put( "area", areas[i] );
+            record.put( "count", i + 1 );
+            record.put( "score", i * 10 );
+            data.add( record );
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils export = ExcelExportUtils.c().headers( "片区", "数量", "分数" ).contentColumns( "area", "count", "score" )
+            .contentData( data ).render( ( value, record, index ) -> value + "分", "score" )
+            .groupBy( "area", "{key}小计" ).grandTotal( "合计" )
+            .aggregate( ExlAggregate.SUM, "count" ).aggregate( ExlAggregate.AVG, "score" )
+            .comments( "注释" );
+        export.export( out );
+        ExlExportStats stats = export.getStats();
+        assertEquals( 5, stats.getContentRows() );
+
+        Sheet sheet = new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 );
+        assertEquals( "10分", sheet.getRow( 2 ).getCell( 2 ).getStringCellValue() );
+        assertRow( sheet.getRow( 3 ), "东区小计", 3, 5 );
+        assertRow( sheet.getRow( 7 ), "西区小计", 12, 30 );
+        assertRow( sheet.getRow( 8 ), "合计", 15, 20 );
+        assertEquals( "注释", sheet.getRow( 9 ).getCell( 0 ).getStringCellValue() );
+    }
+
+    /**
+     * 不是十进制数字的值（abc、1f、NaN等）只计数，不参与求和、最大值
+     */
+    public void testNonNumericValuesOnlyCounted() throws Exception
+    {
+        String[] values = { "1", "2.5", "abc", "", "1f", "NaN", " 3 ", "-1e1" };
+        List<Map<String,Object>> data = new ArrayList<>();
+        for ( String value : values )
+        {
+            Map<String,Object> record = new HashMap<>();
+            record.put( "sum", value );
+            record.put( "count", value );
+            record.put( "max", value );
+            data.add( record );
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().headers( "合计", "求和", "计数", "最大" ).contentColumns( "label", "sum", "count", "max" )
+            .contentData( data ).grandTotal( "合计" ).aggregate( ExlAggregate.SUM, "sum" )
+            .aggregate( ExlAggregate.COUNT, "count" ).aggregate( ExlAggregate.MAX, "max" ).export( out );
+        Row total = new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 ).getRow( 9 );
+        assertEquals( "合计", total.getCell( 0 ).getStringCellValue() );
+        assertEquals( -3.5, total.getCell( 1 ).getNumericCellValue() );
+        assertEquals( 7d, total.getCell( 2 ).getNumericCellValue() );
+        assertEquals( 3d, total.getCell( 3 ).getNumericCellValue() );
+    }
+
+    private static void assertRow( Row row, String label, double count, double score )
+    {
+        assertEquals( label, row.getCell( 0 ).getStringCellValue() );
+        assertEquals( count, row.getCell( 1 ).getNumericCellValue() );
+        assertEquals( score, row.getCell( 2 ).getNumericCellValue() );
+    }
+}
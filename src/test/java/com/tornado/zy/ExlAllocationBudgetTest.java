@@ -0,0 +1,304 @@
+package com.tornado.zy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * 每行内容分配的字节数不超过记录的预算，防止内容热路径上的分配悄悄翻倍.
+ * <p>每个场景先预热，再分别导出N行、2N行，用当前线程的分配计数（com.sun.management.ThreadMXBean）之差除以N，
+ * 抵消工作簿、样式等固定部分，取几次中的最小值。预算记录在allocation-budgets.properties中.
+ * <br>有意增加或减少了分配时，用-Dexl.allocation.update=true运行本测试，按实测值加余量重写预算文件，随改动一起提交：
+ * <br>mvn test -Dtest=ExlAllocationBudgetTest -Dexl.allocation.update=true</p>
+ * JVM不支持线程分配计数时跳过
+ */
+public class ExlAllocationBudgetTest
+    extends TestCase
+{
+    private static final String BUDGETS = "allocation-budgets.properties";
+
+    private static final Path BUDGETS_SOURCE = Paths.get( "src/test/resources/com/tornado/zy", BUDGETS );
+
+    private static final int ROWS = 2000;
+
+    private static final int WARMUP = 5;
+
+    private static final int RUNS = 3;
+
+    private static final double HEADROOM = 1.2;
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private static final Map<String, Long> measured = new TreeMap<>();
+
+    public ExlAllocationBudgetTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlAllocationBudgetTest.class );
+    }
+
+    /**
+     * 实体行，反射取值，xls
+     */
+    public void testBeanRowsXls() throws Exception
+    {
+        check( "bean.xls", rows -> {
+            List<Item> data = items( rows );
+            return () -> ExcelExportUtils.c().title( "实体" ).headers( "一", "二", "三" )
+                .contentColumns( "one", "two", "three" ).contentData( data ).export( new NullOutputStream() );
+        } );
+    }
+
+    /**
+     * 实体行，流式xlsx
+     */
+    public void testBeanRowsStreaming() throws Exception
+    {
+        check( "bean.xlsx", rows -> {
+            List<Item> data = items( rows );
+            return () -> ExcelExportUtils.c().title( "实体" ).headers( "一", "二", "三" )
+                .contentColumns( "one", "two", "three" ).contentData( data ).exportStreaming( new NullOutputStream() );
+        } );
+    }
+
+    /**
+     * Map行
+     */
+    public void testMapRows() throws Exception
+    {
+        check( "map.xlsx", rows -> {
+            List<Map<String, Object>> data = maps( rows );
+            return () -> ExcelExportUtils.c().headers( "编号", "名称", "类型" ).contentColumns( "id", "name", "type" )
+                .contentData( data ).exportStreaming( new NullOutputStream() );
+        } );
+    }
+
+    /**
+     * 单元格渲染器及字典列渲染器
+     */
+    public void testRenderedColumns() throws Exception
+    {
+        check( "render.xlsx", rows -> {
+            List<Map<String, Object>> data = maps( rows );
+            return () -> ExcelExportUtils.c().headers( "编号", "名称", "类型" ).contentColumns( "id", "name", "type" )
+                .contentData( data ).render( ( value, record, index ) -> value + "号", "name" )
+                .columnRender( ExlDictRender.array( "小学", "初中", "高中" ), "type" ).exportStreaming( new NullOutputStream() );
+        } );
+    }
+
+    /**
+     * 自定义表头及带下划线单元格的自定义内容，xls
+     */
+    public void testComplexLayoutWithUnderlines() throws Exception
+    {
+        check( "complex.xls", rows -> {
+            List<ExlRow> header = new ArrayList<>();
+            header.add( ExlRow.c().height( 20 ).addCell( ExlCell.c( "项目", 2, 0 ) ).addCell( ExlCell.c( "情况", 0, 2 ) ) );
+            header.add( ExlRow.c().addCell( ExlCell.c( "签字", 0, 0 ) ).addCell( ExlCell.c( "日期", 0, 0 ) ) );
+            List<ExlRow> content = new ArrayList<>();
+            for ( int i = 0; i < rows; i++ )
+            {
+                content.add( ExlRow.c().addCell( ExlCell.c( "第" + i + "项" ) )
+                    .addCell( ExlCell.c( "签字：____" ).uString( "____" ) ).addCell( ExlCell.c( "2017-09-" + ( i % 30 + 1 ) ) ) );
+            }
+            return () -> ExcelExportUtils.c().complexHeader( header ).complexContent( content ).export( new NullOutputStream() );
+        } );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        if ( Boolean.getBoolean( "exl.allocation.update" ) && THREADS != null )
+        {
+            writeBudgets();
+        }
+    }
+
+    private void check( String name, Scenario scenario ) throws Exception
+    {
+        if ( THREADS == null )
+        {
+            return;//JVM不支持按线程统计分配量，跳过
+        }
+        for ( int i = 0; i < WARMUP; i++ )
+        {
+            scenario.prepare( ROWS ).run();
+            scenario.prepare( ROWS * 2 ).run();
+        }
+        long perRow = Long.MAX_VALUE;
+        for ( int i = 0; i < RUNS; i++ )
+        {
+            long single = allocated( scenario, ROWS );
+            long twice = allocated( scenario, ROWS * 2 );
+            perRow = Math.min( perRow, Math.max( twice - single, 0 ) / ROWS );
+        }
+        synchronized ( measured )
+        {
+            measured.put( name, perRow );
+        }
+        if ( Boolean.getBoolean( "exl.allocation.update" ) )
+        {
+            return;
+        }
+        Long budget = budgets().get( name );
+        assertNotNull( "no allocation budget for " + name + ", run with -Dexl.allocation.update=true", budget );
+        assertTrue( name + " allocates " + perRow + " bytes/row, budget " + budget, perRow <= budget );
+    }
+
+    /**
+     * 只计导出本身，数据在计数之前准备好
+     */
+    private static long allocated( Scenario scenario, int rows ) throws Exception
+    {
+        Export export = scenario.prepare( rows );
+        long id = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes( id );
+        export.run();
+        return THREADS.getThreadAllocatedBytes( id ) - before;
+    }
+
+    private static Map<String, Long> budgets() throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream in = ExlAllocationBudgetTest.class.getResourceAsStream( BUDGETS );
+        if ( in != null )
+        {
+            try
+            {
+                properties.load( in );
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        Map<String, Long> budgets = new TreeMap<>();
+        for ( String name : properties.stringPropertyNames() )
+        {
+            budgets.put( name, Long.valueOf( properties.getProperty( name ).trim() ) );
+        }
+        return budgets;
+    }
+
+    /**
+     * 保留未测到的场景，测到的按实测值加余量重写
+     */
+    private static void writeBudgets() throws IOException
+    {
+        Map<String, Long> budgets = budgets();
+        synchronized ( measured )
+        {
+            for ( Map.Entry<String, Long> entry : measured.entrySet() )
+            {
+                budgets.put( entry.getKey(), (long) Math.ceil( entry.getValue() * HEADROOM / 16 ) * 16 );
+            }
+        }
+        Files.createDirectories( BUDGETS_SOURCE.getParent() );
+        Writer out = Files.newBufferedWriter( BUDGETS_SOURCE, StandardCharsets.ISO_8859_1 );
+        try
+        {
+            out.write( "# Allocated bytes per content row, measured by ExlAllocationBudgetTest plus 20% headroom.\n" );
+            out.write( "# Regenerate deliberately: mvn test -Dtest=ExlAllocationBudgetTest -Dexl.allocation.update=true\n" );
+            for ( Map.Entry<String, Long> entry : budgets.entrySet() )
+            {
+                out.write( entry.getKey() + "=" + entry.getValue() + "\n" );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threads()
+    {
+        try
+        {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if ( !( bean instanceof com.sun.management.ThreadMXBean ) )
+            {
+                return null;
+            }
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if ( !threads.isThreadAllocatedMemorySupported() )
+            {
+                return null;
+            }
+            threads.setThreadAllocatedMemoryEnabled( true );
+            return threads;
+        }
+        catch ( LinkageError | UnsupportedOperationException e )
+        {
+            return null;
+        }
+    }
+
+    private static List<Item> items( int rows )
+    {
+        List<Item> items = new ArrayList<>( rows );
+        for ( int i = 0; i < rows; i++ )
+        {
+            Item item = new Item();
+            item.setOne( "id_" + i % 500 );
+            item.setTwo( "VARCHAR(" + i % 64 + ")" );
+            item.setThree( i % 3 == 0 ? "否" : "是" );
+            items.add( item );
+        }
+        return items;
+    }
+
+    private static List<Map<String, Object>> maps( int rows )
+    {
+        List<Map<String, Object>> data = new ArrayList<>( rows );
+        for ( int i = 0; i < rows; i++ )
+        {
+            Map<String, Object> row = new HashMap<>();
+            row.put( "id", i );
+            row.put( "name", "n" + i % 500 );
+            row.put( "type", i % 3 );
+            data.add( row );
+        }
+        return data;
+    }
+
+    private interface Scenario
+    {
+        Export prepare( int rows );
+    }
+
+    private interface Export
+    {
+        void run() throws Exception;
+    }
+
+    private static final class NullOutputStream extends OutputStream
+    {
+        public void write( int b )
+        {
+        }
+
+        public void write( byte[] b, int off, int len )
+        {
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlCancelToken} and {@link ExlProgressListener}.
+ */
+public class ExlCancelTokenTest
+    extends TestCase
+{
+    private static final int ROWS = 10000;
+
+    public ExlCancelTokenTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlCancelTokenTest.class );
+    }
+
+    /**
+     * xls：内容写到一半时取消，数据源不再继续读取（最多多读一块），统计为已取消，什么都不输出
+     */
+    public void testCancelStopsReadingSource() throws Exception
+    {
+        final ExlCancelToken token = ExlCancelToken.c();
+        CountingSource source = new CountingSource( ROWS );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils export = ExcelExportUtils.c().title( "取消" ).headers( "编号", "名称" ).contentColumns( "id", "name" )
+            .contentSource( source ).cancelToken( token ).progress( ( rows, totalRows, bytes ) -> {
+                if ( rows >= 300 )
+                {
+                    token.cancel();
+                }
+            }, 100 );
+        export.export( out );
+        ExlExportStats stats = export.getStats();
+        assertTrue( stats.isCancelled() );
+        assertTrue( stats.toString().contains( "cancelled" ) );
+        assertEquals( 301, stats.getContentRows() );
+        assertTrue( "read " + source.read, source.read <= 512 );
+        assertEquals( 0, out.size() );
+        assertTrue( token.isCancelled() );
+
+        source = new CountingSource( ROWS );
+        export = ExcelExportUtils.c().contentColumns( "id", "name" ).contentSource( source ).cancelToken( token );
+        export.export( out );
+        stats = export.getStats();
+        assertTrue( stats.isCancelled() );
+        assertTrue( "read " + source.read, source.read <= 256 );
+        assertEquals( 0, out.size() );
+    }
+
+    /**
+     * 进度：行数不减，最后一次为总行数；已知总数时totalRows为总数，xls的字节数为-1，流式输出的字节数不减
+     */
+    public void testProgressMonotonicAndReachesTotal() throws Exception
+    {
+        final List<long[]> calls = new ArrayList<>();
+        ExlProgressListener listener = ( rows, totalRows, bytes ) -> calls.add( new long[] { rows, totalRows, bytes } );
+        ExcelExportUtils export = ExcelExportUtils.c().contentColumns( "id", "name" ).contentData( rows( 1000 ) ).progress( listener, 64 );
+        export.export( new ByteArrayOutputStream() );
+        ExlExportStats stats = export.getStats();
+        assertFalse( stats.isCancelled() );
+        assertProgress( calls, 1000, 1000 );
+        for ( long[] call : calls )
+        {
+            assertEquals( -1, call[2] );
+        }
+
+        calls.clear();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().contentColumns( "id", "name" ).contentSource( new CountingSource( 3000 ) ).streamFlush( 100, 1024 )
+            .progress( listener, 100 ).exportStreaming( out );
+        assertProgress( calls, 3000, -1 );
+        long bytes = 0;
+        for ( long[] call : calls )
+        {
+            assertTrue( call[2] >= bytes );
+            bytes = call[2];
+        }
+        assertTrue( bytes > 0 );
+        assertTrue( bytes <= out.size() );
+    }
+
+    /**
+     * 流式导出在排序暂存阶段被取消：释放压缩器，删除排序的临时文件，已输出的部分只有固定部分
+     */
+    public void testCancelledStreamingReleasesResources() throws Exception
+    {
+        Set<Path> before = sortRuns();
+        final ExlCancelToken token = ExlCancelToken.c();
+        ExcelExportUtils export = ExcelExportUtils.c().contentColumns( "id", "name" ).contentSource( new CountingSource( ROWS ) )
+            .sortBy( "name", false ).sortMemory( 16 * 1024 ).cancelToken( token )
+            .render( ( value, record, index ) -> {
+                if ( index == 5000 )
+                {
+                    token.cancel();
+                }
+                return value;
+            }, "name" );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExlXlsxStreamWriter writer = export.streamWriter( out );
+        long fixedBytes = writer.getBytesWritten();
+        export.startStats();
+        ExlExportStats stats = export.exportStreaming( writer );
+        assertTrue( stats.isCancelled() );
+        assertEquals( 0, stats.getContentRows() );
+        assertTrue( writer.isClosed() );
+        assertEquals( fixedBytes, out.size() );
+        assertEquals( before, sortRuns() );
+
+        writer = export.streamWriter( new ByteArrayOutputStream() );
+        export = ExcelExportUtils.c().contentColumns( "id", "name" ).contentSource( new CountingSource( 10 ) );
+        export.startStats();
+        assertFalse( export.exportStreaming( writer ).isCancelled() );
+        assertTrue( writer.isClosed() );
+    }
+
+    private static void assertProgress( List<long[]> calls, int rows, int totalRows )
+    {
+        assertFalse( calls.isEmpty() );
+        long last = 0;
+        for ( long[] call : calls )
+        {
+            assertTrue( call[0] >= last );
+            assertEquals( totalRows, call[1] );
+            last = call[0];
+        }
+        assertEquals( rows, last );
+    }
+
+    private static Set<Path> sortRuns() throws IOException
+    {
+        Set<Path> runs = new HashSet<>();
+        try ( DirectoryStream<Path> dir = Files.newDirectoryStream( Paths.get( System.getProperty( "java.io.tmpdir" ) ), "exl-sort*.run" ) )
+        {
+            for ( Path run : dir )
+            {
+                runs.add( run );
+            }
+        }
+        return runs;
+    }
+
+    private static List<Map<String,Object>> rows( int count )
+    {
+        List<Map<String,Object>> rows = new ArrayList<>();
+        for ( int i = 0; i < count; i++ )
+        {
+            rows.add( row( i ) );
+        }
+        return rows;
+    }
+
+    private static Map<String,Object> row( int i )
+    {
+        Map<String,Object> row = new HashMap<>();
+        row.put( "id", i );
+        row.put( "name", "n" + i );
+        return row;
+    }
+
+    /**
+     * 记录读取了多少条的数据源，不是Collection，总行数未知
+     */
+    private static class CountingSource implements Iterable<Map<String,Object>>
+    {
+        private final int count;
+        int read = 0;
+
+        CountingSource( int count )
+        {
+            this.count = count;
+        }
+
+        public Iterator<Map<String,Object>> iterator()
+        {
+            return new Iterator<Map<String,Object>>()
+            {
+                public boolean hasNext()
+                {
+                    return read < count;
+                }
+
+                public Map<String,Object> next()
+                {
+                    return row( read++ );
+                }
+
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URLClassLoader;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlColumnProcessor}.
+ */
+public class ExlColumnProcessorTest
+    extends TestCase
+{
+    private static final String SCHOOL = "package demo;\n"
+        + "import com.tornado.zy.ExlColumn;\n"
+        + "public class School {\n"
+        + "    @ExlColumn(order = 2, header = \"金额\", format = \"0.00\") private double amount;\n"
+        + "    @ExlColumn(order = 1, header = \"名称\") private String name;\n"
+        + "    @ExlColumn(name = \"open\", order = 3) boolean opened;\n"
+        + "    public School(String name, double amount, boolean opened) { this.name = name; this.amount = amount; this.opened = opened; }\n"
+        + "    public double getAmount() { return amount; }\n"
+        + "    public String getName() { return name; }\n"
+        + "}\n";
+
+    private static final String BOX = "package demo;\n"
+        + "import com.tornado.zy.ExlColumn;\n"
+        + "@ExlColumn\n"
+        + "public class Box<T extends Number, L> {\n"
+        + "    @ExlColumn(format = \"0.0\") private T amount;\n"
+        + "    private L label;\n"
+        + "    transient int cache;\n"
+        + "    static int count;\n"
+        + "    @ExlColumn(order = -1, header = \"名称\") public String name;\n"
+        + "    public Box(String name, T amount, L label) { this.name = name; this.amount = amount; this.label = label; }\n"
+        + "    public T getAmount() { return amount; }\n"
+        + "    public L getLabel() { return label; }\n"
+        + "}\n";
+
+    private Path dir;
+
+    public ExlColumnProcessorTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlColumnProcessorTest.class );
+    }
+
+    protected void setUp() throws Exception
+    {
+        dir = Files.createTempDirectory( "exlcolumn" );
+    }
+
+    protected void tearDown() throws Exception
+    {
+        try ( Stream<Path> files = Files.walk( dir ) )
+        {
+            files.sorted( Comparator.reverseOrder() ).map( Path::toFile ).forEach( File::delete );
+        }
+    }
+
+    /**
+     * 生成的写入器按order排列列，使用getter或字段取值并格式化
+     */
+    public void testGeneratedWriter() throws Exception
+    {
+        StringWriter messages = new StringWriter();
+        assertTrue( messages.toString(), compile( dir, SCHOOL, messages ) );
+
+        try ( URLClassLoader loader = new URLClassLoader( new URL[] { dir.toUri().toURL() }, getClass().getClassLoader() ) )
+        {
+            Class<?> writerType = loader.loadClass( "demo.SchoolExlWriter" );
+            assertEquals( "amount", writerType.getField( "AMOUNT" ).get( null ) );
+            ExlRowWriter<?> writer = (ExlRowWriter<?>) writerType.newInstance();
+            assertEquals( Arrays.asList( "name", "amount", "open" ), Arrays.asList( writer.columns() ) );
+            assertEquals( Arrays.asList( "名称", "金额", "open" ), Arrays.asList( writer.headers() ) );
+
+            Class<?> schoolType = loader.loadClass( "demo.School" );
+            List<Object> data = new ArrayList<>();
+            data.add( schoolType.getConstructor( String.class, double.class, boolean.class ).newInstance( "一中", 1.5, true ) );
+            data.add( schoolType.getConstructor( String.class, double.class, boolean.class ).newInstance( null, 2, false ) );
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ExcelExportUtils.c().rowWriter( writer ).contentData( data ).export( out );
+            HSSFWorkbook wb = new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) );
+            Row header = wb.getSheetAt( 0 ).getRow( 0 );
+            assertEquals( "金额", header.getCell( 1 ).getStringCellValue() );
+            Row first = wb.getSheetAt( 0 ).getRow( 1 );
+            assertEquals( "一中", first.getCell( 0 ).getStringCellValue() );
+            assertEquals( "1.50", first.getCell( 1 ).getStringCellValue() );
+            assertEquals( "true", first.getCell( 2 ).getStringCellValue() );
+            assertEquals( "", wb.getSheetAt( 0 ).getRow( 2 ).getCell( 0 ).getStringCellValue() );
+        }
+    }
+
+    /**
+     * 类上的@ExlColumn：所有实例字段都是列，字段上的标注覆盖默认值；泛型类的写入器以通配符实现，不使用原始类型
+     */
+    public void testClassLevelAndGenericType() throws Exception
+    {
+        StringWriter messages = new StringWriter();
+        assertTrue( messages.toString(), compile( dir, "Box", BOX, messages ) );
+
+        try ( URLClassLoader loader = new URLClassLoader( new URL[] { dir.toUri().toURL() }, getClass().getClassLoader() ) )
+        {
+            Class<?> writerType = loader.loadClass( "demo.BoxExlWriter" );
+            assertEquals( "com.tornado.zy.ExlRowWriter<demo.Box<?, ?>>", writerType.getGenericInterfaces()[0].getTypeName() );
+            ExlRowWriter<?> writer = (ExlRowWriter<?>) writerType.newInstance();
+            assertEquals( Arrays.asList( "name", "amount", "label" ), Arrays.asList( writer.columns() ) );
+            assertEquals( Arrays.asList( "名称", "amount", "label" ), Arrays.asList( writer.headers() ) );
+
+            Object box = loader.loadClass( "demo.Box" ).getConstructor( String.class, Number.class, Object.class )
+                .newInstance( "箱", 2, "甲" );
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ExcelExportUtils.c().rowWriter( writer ).contentData( Collections.singletonList( box ) ).export( out );
+            Row first = new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 ).getRow( 1 );
+            assertEquals( "箱", first.getCell( 0 ).getStringCellValue() );
+            assertEquals( "2.0", first.getCell( 1 ).getStringCellValue() );
+            assertEquals( "甲", first.getCell( 2 ).getStringCellValue() );
+        }
+
+        messages = new StringWriter();
+        assertFalse( compile( dir, "Box", BOX.replace( "@ExlColumn\n", "@ExlColumn(header = \"箱\")\n" ), messages ) );
+        assertTrue( messages.toString(), messages.toString().contains( "类上的@ExlColumn" ) );
+    }
+
+    /**
+     * 字段不可访问时编译报错
+     */
+    public void testInaccessibleFieldFails() throws Exception
+    {
+        StringWriter messages = new StringWriter();
+        assertFalse( compile( dir,
+            SCHOOL.replace( "@ExlColumn(name = \"open\", order = 3) boolean", "@ExlColumn private boolean" ), messages ) );
+        assertTrue( messages.toString(), messages.toString().contains( "opened" ) );
+    }
+
+    private static boolean compile( Path dir, String source, StringWriter messages )
+    {
+        return compile( dir, "School", source, messages );
+    }
+
+    private static boolean compile( Path dir, String name, String source, StringWriter messages )
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        JavaFileObject file = new SimpleJavaFileObject( URI.create( "string:///demo/" + name + ".java" ), JavaFileObject.Kind.SOURCE )
+        {
+            @Override
+            public CharSequence getCharContent( boolean ignoreEncodingErrors )
+            {
+                return source;
+            }
+        };
+        List<String> options = Arrays.asList( "-d", dir.toString(), "-s", dir.toString(), "-encoding", "UTF-8",
+            "-classpath", System.getProperty( "java.class.path" ) + File.pathSeparator + dir );
+        JavaCompiler.CompilationTask task = compiler.getTask( messages, null, null, options, null, Collections.singletonList( file ) );
+        task.setProcessors( Collections.singletonList( new ExlColumnProcessor() ) );
+        return task.call();
+    }
+}
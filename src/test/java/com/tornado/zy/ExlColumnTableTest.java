@@ -0,0 +1,188 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlColumnTable}.
+ */
+public class ExlColumnTableTest
+    extends TestCase
+{
+    private static final int ROWS = 600;
+
+    public ExlColumnTableTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlColumnTableTest.class );
+    }
+
+    /**
+     * xls：数值列写为数值单元格，字典列写为名称，空值标记及负数代码为空单元格
+     */
+    public void testColumnsXls() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils export = ExcelExportUtils.c().headers( "编号", "人数", "金额", "片区" )
+            .contentColumns( "id", "people", "amount", "area" ).contentTable( table() );
+        export.export( out );
+        assertEquals( ROWS, export.getStats().getContentRows() );
+        assertColumns( new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 ) );
+    }
+
+    /**
+     * 流式xlsx与xls的结果一致
+     */
+    public void testColumnsStreaming() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().headers( "编号", "人数", "金额", "片区" ).contentColumns( "id", "people", "amount", "area" )
+            .contentTable( table() ).exportStreaming( out );
+        assertColumns( new XSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 ) );
+    }
+
+    /**
+     * 注册了渲染器的列按块转为字符串渲染，record为null、行号连续，空值为""；未渲染的列仍写数值
+     */
+    public void testRenderedColumns() throws Exception
+    {
+        for ( boolean streaming : new boolean[] { false, true } )
+        {
+            final List<Integer> indexes = new ArrayList<>();
+            final List<Object> records = new ArrayList<>();
+            ExcelExportUtils utils = ExcelExportUtils.c().contentColumns( "id", "amount", "area", "people" )
+                .contentTable( table() )
+                .render( ( value, record, index ) -> {
+                    indexes.add( index );
+                    records.add( record );
+                    return "#" + value;
+                }, "id" )
+                .render( ( value, record, index ) -> value.isEmpty() ? "无" : value, "amount" )
+                .columnRender( ExlDictRender.map( java.util.Collections.singletonMap( "东区", "东" ) ), "area" );
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if ( streaming )
+            {
+                utils.exportStreaming( out );
+            }
+            else
+            {
+                utils.export( out );
+            }
+            Sheet sheet = streaming ? new XSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 )
+                : new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 );
+            assertEquals( ROWS, indexes.size() );
+            for ( int i = 0; i < ROWS; i++ )
+            {
+                assertEquals( i, indexes.get( i ).intValue() );
+                assertNull( records.get( i ) );
+            }
+            assertEquals( "#0", sheet.getRow( 0 ).getCell( 0 ).getStringCellValue() );
+            assertEquals( "#599", sheet.getRow( 599 ).getCell( 0 ).getStringCellValue() );
+            assertEquals( "0.5", sheet.getRow( 0 ).getCell( 1 ).getStringCellValue() );
+            assertEquals( "无", sheet.getRow( 7 ).getCell( 1 ).getStringCellValue() );
+            assertEquals( "东", sheet.getRow( 0 ).getCell( 2 ).getStringCellValue() );
+            assertEquals( "西区", sheet.getRow( 1 ).getCell( 2 ).getStringCellValue() );
+            assertEquals( "", sheet.getRow( 2 ).getCell( 2 ).getStringCellValue() );
+            assertEquals( CellType.NUMERIC, sheet.getRow( 0 ).getCell( 3 ).getCellTypeEnum() );
+        }
+    }
+
+    /**
+     * 列数组短于行数、绑定不存在的列时报错
+     */
+    public void testInvalidColumns() throws Exception
+    {
+        try
+        {
+            ExlColumnTable.c( 3 ).intColumn( "id", new int[2] );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage().contains( "id" ) );
+        }
+        try
+        {
+            ExlColumnTable.c( 3 ).nulls( "id", new BitSet() );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage().contains( "id" ) );
+        }
+        try
+        {
+            ExcelExportUtils.c().contentColumns( "id", "none" ).contentTable( ExlColumnTable.c( 1 ).intColumn( "id", new int[1] ) )
+                .export( new ByteArrayOutputStream() );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage().contains( "none" ) );
+        }
+    }
+
+    /**
+     * id为int，people为long（含超出int的值），amount为double且每7行一个空值，area为字典列且每3行一个负数代码
+     */
+    private static ExlColumnTable table()
+    {
+        int[] ids = new int[ROWS];
+        long[] people = new long[ROWS];
+        double[] amounts = new double[ROWS];
+        int[] areas = new int[ROWS];
+        BitSet amountNulls = new BitSet();
+        for ( int i = 0; i < ROWS; i++ )
+        {
+            ids[i] = i;
+            people[i] = i == 1 ? 1L << 40 : i * 10L;
+            amounts[i] = i + 0.5;
+            areas[i] = i % 3 == 2 ? -1 : i % 3;
+            if ( i % 7 == 0 && i > 0 )
+            {
+                amountNulls.set( i );
+            }
+        }
+        return ExlColumnTable.c( ROWS ).intColumn( "id", ids ).longColumn( "people", people ).doubleColumn( "amount", amounts )
+            .nulls( "amount", amountNulls ).dictColumn( "area", areas, new String[] { "东区", "西区" } );
+    }
+
+    private static void assertColumns( Sheet sheet )
+    {
+        assertEquals( "编号", sheet.getRow( 0 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( ROWS, sheet.getLastRowNum() );
+        assertEquals( 0d, sheet.getRow( 1 ).getCell( 0 ).getNumericCellValue() );
+        assertEquals( 599d, sheet.getRow( ROWS ).getCell( 0 ).getNumericCellValue() );
+        assertEquals( (double) ( 1L << 40 ), sheet.getRow( 2 ).getCell( 1 ).getNumericCellValue() );
+        assertEquals( 5990d, sheet.getRow( ROWS ).getCell( 1 ).getNumericCellValue() );
+        assertEquals( 0.5d, sheet.getRow( 1 ).getCell( 2 ).getNumericCellValue() );
+        assertBlank( sheet.getRow( 8 ).getCell( 2 ) );
+        assertEquals( 8.5d, sheet.getRow( 9 ).getCell( 2 ).getNumericCellValue() );
+        assertEquals( "东区", sheet.getRow( 1 ).getCell( 3 ).getStringCellValue() );
+        assertEquals( "西区", sheet.getRow( 2 ).getCell( 3 ).getStringCellValue() );
+        assertBlank( sheet.getRow( 3 ).getCell( 3 ) );
+    }
+
+    private static void assertBlank( Cell cell )
+    {
+        assertNotNull( cell );
+        assertEquals( CellType.BLANK, cell.getCellTypeEnum() );
+    }
+}
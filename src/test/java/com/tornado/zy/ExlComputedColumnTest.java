@@ -0,0 +1,179 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExcelExportUtils#computed(String, String)}.
+ */
+public class ExlComputedColumnTest
+    extends TestCase
+{
+    public ExlComputedColumnTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlComputedColumnTest.class );
+    }
+
+    /**
+     * 拼接、比例、条件标签代替手写渲染器，计算后的值还可以再渲染、参与总计
+     */
+    public void testComputedColumnsOnBeans() throws Exception
+    {
+        List<Task> data = new ArrayList<>();
+        data.add( new Task( "东区", "一组", 3, 4, "id INT NOT NULL", new BigDecimal( "10.10" ) ) );
+        data.add( new Task( "西区", null, 0, 0, "name VARCHAR(20)", new BigDecimal( "0.20" ) ) );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().headers( "名称", "完成率", "可空", "金额" ).contentColumns( "name", "rate", "nullable", "amount" )
+            .computed( "name", "area + '-' + team" )
+            .computed( "rate", "total == 0 ? '-' : round(done * 100 / total, 1) + '%'" )
+            .computed( "nullable", "contains(line, 'NOT NULL') ? '否' : '是'" )
+            .computed( "amount", "price * 2 + 0.5" )
+            .render( ( value, record, index ) -> "[" + value + "]", "nullable" )
+            .grandTotal( "合计" ).aggregate( ExlAggregate.SUM, "amount" )
+            .contentData( data ).export( out );
+
+        Sheet sheet = new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 );
+        assertEquals( "东区-一组", sheet.getRow( 1 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "75.0%", sheet.getRow( 1 ).getCell( 1 ).getStringCellValue() );
+        assertEquals( "[否]", sheet.getRow( 1 ).getCell( 2 ).getStringCellValue() );
+        assertEquals( "20.70", sheet.getRow( 1 ).getCell( 3 ).getStringCellValue() );
+        assertEquals( "西区-", sheet.getRow( 2 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "-", sheet.getRow( 2 ).getCell( 1 ).getStringCellValue() );
+        assertEquals( "[是]", sheet.getRow( 2 ).getCell( 2 ).getStringCellValue() );
+        assertEquals( 21.6, sheet.getRow( 3 ).getCell( 3 ).getNumericCellValue(), 1e-9 );
+    }
+
+    /**
+     * Map记录：+ 遇到文字时拼接，其他运算及比较中数字形式的文字按数字，空值、除数为0时为空
+     */
+    public void testTypedEvaluationOnMaps()
+    {
+        Map<String,Object> record = new HashMap<>();
+        record.put( "a", 7 );
+        record.put( "b", "2" );
+        record.put( "c", null );
+        record.put( "d", 2.5 );
+        record.put( "s", "x" );
+        ExlFieldCache fields = new ExlFieldCache();
+        assertEquals( "72", text( "a + b", record, fields ) );
+        assertEquals( "5", text( "a - b", record, fields ) );
+        assertEquals( "3.5", text( "a / b", record, fields ) );
+        assertEquals( "1", text( "a % b", record, fields ) );
+        assertEquals( "17.5", text( "a * d", record, fields ) );
+        assertEquals( "", text( "a / (b - 2)", record, fields ) );
+        assertEquals( "", text( "a + c", record, fields ) );
+        assertEquals( "x7", text( "s + c + a", record, fields ) );
+        assertEquals( "true", text( "a > b && b >= 2 && c == null && s != 'y'", record, fields ) );
+        assertEquals( "false", text( "c > 1 || !(a == '7')", record, fields ) );
+        assertEquals( "x", text( "coalesce(c, s)", record, fields ) );
+        assertEquals( "3", text( "abs(-3)", record, fields ) );
+        assertEquals( "1", text( "len(s)", record, fields ) );
+        assertEquals( "2.50", text( "round(d, 2)", record, fields ) );
+        assertEquals( "-4.5", text( "-a + d * 1", record, fields ) );
+        assertEquals( "it's", text( "'it\\'s'", record, fields ) );
+    }
+
+    /**
+     * 数字形式的文字：十进制数字按数值，超出long的整数按BigDecimal，NaN、0x10、1f等按文字；常量与属性值的规则相同
+     */
+    public void testNumericLookingText()
+    {
+        Map<String,Object> record = new HashMap<>();
+        record.put( "a", 7 );
+        record.put( "e", " 3 " );
+        record.put( "f", "1e2" );
+        record.put( "g", "NaN" );
+        record.put( "h", "0x10" );
+        record.put( "i", "12345678901234567890" );
+        record.put( "j", "1f" );
+        record.put( "s", "x" );
+        ExlFieldCache fields = new ExlFieldCache();
+        assertEquals( "6", text( "e * 2", record, fields ) );
+        assertEquals( "true", text( "f > 99 && f == 100", record, fields ) );
+        assertEquals( "", text( "g - 1", record, fields ) );
+        assertEquals( "", text( "h * 2", record, fields ) );
+        assertEquals( "", text( "j * 2", record, fields ) );
+        assertEquals( "12345678901234567889", text( "i - 1", record, fields ) );
+        assertEquals( "123456789012345678901", text( "i + 1", record, fields ) );
+        assertEquals( "true", text( "i > 9223372036854775807", record, fields ) );
+        assertEquals( "true", text( "a == '7.0' && '7.0' == a && a < '10' && '-1.5e1' < a", record, fields ) );
+        assertEquals( "false", text( "s < '10'", record, fields ) );
+        assertEquals( "true", text( "g > '1'", record, fields ) );
+        assertEquals( "4", text( "a - ' 3'", record, fields ) );
+        assertEquals( "", text( "a * '0x10'", record, fields ) );
+        assertEquals( "1.5", text( "abs('-1.5')", record, fields ) );
+        assertEquals( "2.3", text( "round(a / '3', '1')", record, fields ) );
+        assertEquals( "-2", text( "-'2'", record, fields ) );
+        assertEquals( "true", text( "'10' > 9", record, fields ) );
+    }
+
+    /**
+     * 语法错误在设置时就报出，并指出位置
+     */
+    public void testSyntaxErrors()
+    {
+        assertSyntaxError( "a +", "第4个字符" );
+        assertSyntaxError( "(a + b", "缺少)" );
+        assertSyntaxError( "a ? b", "缺少:" );
+        assertSyntaxError( "'abc", "引号" );
+        assertSyntaxError( "foo(a)", "未知函数foo" );
+        assertSyntaxError( "round(a)", "参数个数" );
+        assertSyntaxError( "a b", "多余" );
+    }
+
+    private static String text( String expression, Object record, ExlFieldCache fields )
+    {
+        return ExlExpression.compile( expression ).text( record, fields );
+    }
+
+    private static void assertSyntaxError( String expression, String message )
+    {
+        try
+        {
+            ExcelExportUtils.c().computed( "x", expression );
+            fail( expression );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( message ) );
+        }
+    }
+
+    public static class Task
+    {
+        private String area;
+        private String team;
+        private int done;
+        private long total;
+        private String line;
+        private BigDecimal price;
+
+        Task( String area, String team, int done, long total, String line, BigDecimal price )
+        {
+            this.area = area;
+            this.team = team;
+            this.done = done;
+            this.total = total;
+            this.line = line;
+            this.price = price;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlDictRender}.
+ */
+public class ExlDictRenderTest
+    extends TestCase
+{
+    public ExlDictRenderTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlDictRenderTest.class );
+    }
+
+    /**
+     * 数组字典按整数代码取名称，不是整数、越界的保留原值或使用orElse
+     */
+    public void testArrayDict()
+    {
+        ExlDictRender dict = ExlDictRender.array( "小学", "初中", "高中" );
+        assertEquals( "小学", dict.label( "0" ) );
+        assertEquals( "高中", dict.label( "2" ) );
+        assertEquals( "3", dict.label( "3" ) );
+        assertEquals( "-1", dict.label( "-1" ) );
+        assertEquals( "", dict.label( "" ) );
+        assertEquals( "-", dict.label( "-" ) );
+        assertEquals( "1.0", dict.label( "1.0" ) );
+        assertEquals( "未知", dict.orElse( "未知" ).label( "一" ) );
+        assertEquals( "初中", dict.orElse( "未知" ).label( "1" ) );
+
+        ExlDictRender offset = ExlDictRender.array( -1, "未填", "否", "是" );
+        assertEquals( "未填", offset.label( "-1" ) );
+        assertEquals( "是", offset.label( "1" ) );
+    }
+
+    /**
+     * 超过9位的代码：前导0不计，超出int的代码不会溢出后错配到某个名称
+     */
+    public void testLongCodes()
+    {
+        ExlDictRender dict = ExlDictRender.array( "零", "一", "二" );
+        assertEquals( "一", dict.label( "0000000001" ) );
+        assertEquals( "零", dict.label( "0000000000000" ) );
+        assertEquals( "4294967296", dict.label( "4294967296" ) );
+        assertEquals( "4294967297", dict.label( "4294967297" ) );
+        assertEquals( "-4294967296", dict.label( "-4294967296" ) );
+        assertEquals( "12345678901234567890", dict.label( "12345678901234567890" ) );
+
+        ExlDictRender high = ExlDictRender.array( Integer.MAX_VALUE - 1, "倒数第二", "最后" );
+        assertEquals( "最后", high.label( String.valueOf( Integer.MAX_VALUE ) ) );
+        assertEquals( "x", high.label( "x" ) );
+
+        Map<String,String> areas = new HashMap<>();
+        areas.put( "330100000000", "杭州市" );
+        ExlDictRender map = ExlDictRender.map( areas ).orElse( "未知" );
+        assertEquals( "杭州市", map.label( "330100000000" ) );
+        assertEquals( "未知", map.label( "330200000000" ) );
+    }
+
+    /**
+     * 作为列渲染器注册，先执行同一属性的单元格渲染；toString稳定，可作为缓存键
+     */
+    public void testColumnRenderInExport() throws Exception
+    {
+        List<Map<String,Object>> data = new ArrayList<>();
+        for ( int i = 0; i < 600; i++ )
+        {
+            Map<String,Object> row = new HashMap<>();
+            row.put( "type", i % 4 );
+            row.put( "level", i % 2 );
+            data.add( row );
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().headers( "类型", "级别" ).contentColumns( "type", "level" ).contentData( data )
+            .columnRender( ExlDictRender.array( "小学", "初中", "高中" ), "type" )
+            .render( ( value, record, index ) -> String.valueOf( Integer.parseInt( value ) + 1 ), "level" )
+            .columnRender( ExlDictRender.array( 1, "一级", "二级" ), "level" ).export( out );
+        Sheet sheet = new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 );
+        assertEquals( "小学", sheet.getRow( 1 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "3", sheet.getRow( 4 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "二级", sheet.getRow( 600 ).getCell( 1 ).getStringCellValue() );
+
+        assertEquals( ExlDictRender.array( "否", "是" ).toString(), ExlDictRender.array( "否", "是" ).toString() );
+        Map<String,String> dict = new HashMap<>();
+        dict.put( "b", "乙" );
+        dict.put( "a", "甲" );
+        assertEquals( "dict:{a=甲, b=乙},missing=null", ExlDictRender.map( dict ).toString() );
+        assertFalse( ExlDictRender.array( "否", "是" ).toString().equals( ExlDictRender.array( "否", "是" ).orElse( "" ).toString() ) );
+    }
+}
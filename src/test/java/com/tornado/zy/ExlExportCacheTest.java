@@ -0,0 +1,265 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlExportCache}.
+ */
+public class ExlExportCacheTest
+    extends TestCase
+{
+    private Path dir;
+
+    public ExlExportCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlExportCacheTest.class );
+    }
+
+    protected void setUp() throws Exception
+    {
+        dir = Files.createTempDirectory( "exlcache" );
+    }
+
+    protected void tearDown() throws Exception
+    {
+        try ( Stream<Path> files = Files.walk( dir ) )
+        {
+            files.sorted( Comparator.reverseOrder() ).map( Path::toFile ).forEach( File::delete );
+        }
+    }
+
+    /**
+     * 相同的配置及数据版本命中，发送同样的内容；数据版本变化后不命中
+     */
+    public void testHitAndVersionMiss() throws Exception
+    {
+        ExlExportCache cache = ExlExportCache.c( dir );
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        assertFalse( cache.export( export( 100 ), "v1", first ) );
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        assertTrue( cache.export( export( 100 ), "v1", second ) );
+        assertTrue( first.size() > 0 );
+        assertTrue( Arrays.equals( first.toByteArray(), second.toByteArray() ) );
+        assertEquals( first.size(), cache.getTotalBytes() );
+
+        ByteArrayOutputStream changed = new ByteArrayOutputStream();
+        assertFalse( cache.export( export( 200 ), "v2", changed ) );
+        assertFalse( Arrays.equals( first.toByteArray(), changed.toByteArray() ) );
+        assertEquals( 1, cache.getHits() );
+        assertEquals( 2, cache.getMisses() );
+        assertEquals( 2, files().length );
+        assertFalse( cache.key( export( 100 ), "v1" ).equals( cache.key( export( 100 ), "v2" ) ) );
+    }
+
+    /**
+     * 渲染器按稳定的描述计算键：lambda须指定renderKey，描述不同的渲染器键不同
+     */
+    public void testRenderKey() throws Exception
+    {
+        ExlExportCache cache = ExlExportCache.c( dir );
+        ExlCellRender<Object> upper = ( value, record, index ) -> value.toUpperCase();
+        try
+        {
+            cache.key( export( 10 ).render( upper, "name" ), "v1" );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage().contains( "name" ) );
+        }
+        try
+        {
+            cache.key( export( 10 ).render( ExlMemoRender.of( v -> v + "!", 16 ), "name" ), "v1" );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage().contains( "renderKey" ) );
+        }
+
+        assertFalse( cache.export( export( 10 ).render( upper, "name" ).renderKey( "upper-v1" ), "v1", new ByteArrayOutputStream() ) );
+        ExlCellRender<Object> other = ( value, record, index ) -> value.toUpperCase();
+        assertTrue( cache.export( export( 10 ).render( other, "name" ).renderKey( "upper-v1" ), "v1", new ByteArrayOutputStream() ) );
+        assertFalse( cache.export( export( 10 ).render( upper, "name" ).renderKey( "upper-v2" ), "v1", new ByteArrayOutputStream() ) );
+        assertFalse( cache.key( export( 10 ).render( upper, "name" ).renderKey( "k" ), "v1" )
+            .equals( cache.key( export( 10 ).render( upper, "id" ).renderKey( "k" ), "v1" ) ) );
+
+        assertEquals( cache.key( export( 10 ).render( ExlMemoRender.of( new Suffix( "!" ), 16 ), "name" ), "v1" ),
+            cache.key( export( 10 ).render( ExlMemoRender.of( new Suffix( "!" ), 64 ), "name" ), "v1" ) );
+        assertFalse( cache.key( export( 10 ).render( ExlMemoRender.of( new Suffix( "!" ), 16 ), "name" ), "v1" )
+            .equals( cache.key( export( 10 ).render( ExlMemoRender.of( new Suffix( "?" ), 16 ), "name" ), "v1" ) ) );
+        assertFalse( cache.key( export( 10 ).columnRender( ExlDictRender.array( "否", "是" ), "id" ), "v1" )
+            .equals( cache.key( export( 10 ).columnRender( ExlDictRender.array( "否", "是", "未知" ), "id" ), "v1" ) ) );
+    }
+
+    /**
+     * 有实例字段却未覆盖toString的命名类：配置不同的两个实例不能按类名共用一个键，须指定renderKey；无状态的命名类按类名区分
+     */
+    public void testStatefulNamedRender() throws Exception
+    {
+        ExlExportCache cache = ExlExportCache.c( dir );
+        try
+        {
+            cache.key( export( 10 ).render( new Prefix( "A-" ), "name" ), "v1" );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage().contains( "renderKey" ) );
+        }
+        assertFalse( cache.key( export( 10 ).render( new Prefix( "A-" ), "name" ).renderKey( "prefix:A-" ), "v1" )
+            .equals( cache.key( export( 10 ).render( new Prefix( "B-" ), "name" ).renderKey( "prefix:B-" ), "v1" ) ) );
+        assertEquals( cache.key( export( 10 ).render( new Upper(), "name" ), "v1" ),
+            cache.key( export( 10 ).render( new Upper(), "name" ), "v1" ) );
+    }
+
+    /**
+     * 总大小超出上限时淘汰最久未命中的文件，刚生成的文件保留
+     */
+    public void testEvictByMaxBytes() throws Exception
+    {
+        ExlExportCache cache = ExlExportCache.c( dir );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.export( export( 100 ), "v1", out );
+        cache.maxBytes( out.size() * 2 + out.size() / 2 );
+        cache.export( export( 100 ), "v2", new ByteArrayOutputStream() );
+        assertTrue( cache.export( export( 100 ), "v1", new ByteArrayOutputStream() ) );
+        cache.export( export( 100 ), "v3", new ByteArrayOutputStream() );
+        assertEquals( 2, files().length );
+        assertTrue( cache.getTotalBytes() <= out.size() * 2 + out.size() / 2 );
+
+        assertTrue( cache.export( export( 100 ), "v1", new ByteArrayOutputStream() ) );
+        assertTrue( cache.export( export( 100 ), "v3", new ByteArrayOutputStream() ) );
+        assertFalse( cache.export( export( 100 ), "v2", new ByteArrayOutputStream() ) );
+
+        cache.maxBytes( 1 );
+        cache.export( export( 100 ), "v4", new ByteArrayOutputStream() );
+        assertEquals( 1, files().length );
+        assertEquals( out.size(), cache.getTotalBytes() );
+    }
+
+    /**
+     * 超过存放时间的文件不再命中，并被删除
+     */
+    public void testEvictByMaxAge() throws Exception
+    {
+        ExlExportCache cache = ExlExportCache.c( dir ).maxAge( 300 );
+        cache.export( export( 100 ), "v1", new ByteArrayOutputStream() );
+        assertTrue( cache.export( export( 100 ), "v1", new ByteArrayOutputStream() ) );
+        Thread.sleep( 400 );
+        assertFalse( cache.export( export( 100 ), "v1", new ByteArrayOutputStream() ) );
+        assertEquals( 1, files().length );
+
+        cache.export( export( 100 ), "v2", new ByteArrayOutputStream() );
+        Thread.sleep( 400 );
+        cache.export( export( 100 ), "v3", new ByteArrayOutputStream() );
+        assertEquals( 1, files().length );
+        assertEquals( 1, cache.getHits() );
+    }
+
+    /**
+     * 启动时接管目录中已有的文件，删除未完成的临时文件
+     */
+    public void testAdoptExistingFiles() throws Exception
+    {
+        ExlExportCache cache = ExlExportCache.c( dir ).streaming( true );
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        cache.export( export( 100 ), "v1", first );
+        Files.write( dir.resolve( "unfinished.xlsx123.tmp" ), new byte[] { 1, 2, 3 } );
+
+        ExlExportCache restarted = ExlExportCache.c( dir ).streaming( true );
+        assertEquals( 1, files().length );
+        assertEquals( first.size(), restarted.getTotalBytes() );
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        assertTrue( restarted.export( export( 100 ), "v1", second ) );
+        assertTrue( Arrays.equals( first.toByteArray(), second.toByteArray() ) );
+
+        restarted.clear();
+        assertEquals( 0, files().length );
+        assertEquals( 0, restarted.getTotalBytes() );
+    }
+
+    private File[] files()
+    {
+        return dir.toFile().listFiles();
+    }
+
+    private static ExcelExportUtils export( int rows )
+    {
+        List<Map<String,Object>> data = new ArrayList<>();
+        for ( int i = 0; i < rows; i++ )
+        {
+            Map<String,Object> row = new HashMap<>();
+            row.put( "id", i % 2 );
+            row.put( "name", "n" + i );
+            data.add( row );
+        }
+        return ExcelExportUtils.c().title( "缓存" ).headers( "编号", "名称" ).contentColumns( "id", "name" ).contentData( data );
+    }
+
+    /**
+     * 有状态的命名渲染函数，toString为稳定的描述
+     */
+    private static final class Prefix implements ExlCellRender<Object>
+    {
+        private final String prefix;
+
+        Prefix( String prefix )
+        {
+            this.prefix = prefix;
+        }
+
+        public String format( String value, Object record, int index )
+        {
+            return prefix + value;
+        }
+    }
+
+    private static final class Upper implements ExlCellRender<Object>
+    {
+        public String format( String value, Object record, int index )
+        {
+            return value.toUpperCase();
+        }
+    }
+
+    private static final class Suffix implements Function<String,String>
+    {
+        private final String suffix;
+
+        Suffix( String suffix )
+        {
+            this.suffix = suffix;
+        }
+
+        public String apply( String value )
+        {
+            return value + suffix;
+        }
+
+        public String toString()
+        {
+            return "suffix:" + suffix;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlExternalSorter}.
+ */
+public class ExlExternalSorterTest
+    extends TestCase
+{
+    public ExlExternalSorterTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlExternalSorterTest.class );
+    }
+
+    /**
+     * 每行一段临时文件，多路归并后数字按数值降序、空值在最后，相同值保持原有顺序
+     */
+    public void testSpilledRunsMergeStably() throws Exception
+    {
+        String[] scores = { "9", "", "10", "9", "abc", "100", "9", "" };
+        List<Map<String,Object>> data = new ArrayList<>();
+        for ( int i = 0; i < 200; i++ )
+        {
+            Map<String,Object> record = new HashMap<>();
+            record.put( "score", scores[i % scores.length] );
+            record.put( "seq", i );
+            data.add( record );
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().contentColumns( "score", "seq" ).contentData( data )
+            .sortBy( "score", false ).sortMemory( 1 ).export( out );
+        Sheet sheet = new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 );
+
+        List<String> expected = new ArrayList<>();
+        for ( String score : new String[] { "abc", "100", "10", "9", "" } )
+        {
+            for ( int i = 0; i < 200; i++ )
+            {
+                if ( scores[i % scores.length].equals( score ) )
+                {
+                    expected.add( score + ":" + i );
+                }
+            }
+        }
+        for ( int r = 0; r < 200; r++ )
+        {
+            assertEquals( expected.get( r ), sheet.getRow( r ).getCell( 0 ).getStringCellValue() + ":"
+                + sheet.getRow( r ).getCell( 1 ).getStringCellValue() );
+        }
+    }
+
+    /**
+     * 段数远超一次归并的上限时逐遍归并，仍保持稳定；数字形式按数值，NaN、1f、0x10等按文字
+     */
+    public void testManyRunsAndNumericLooking() throws Exception
+    {
+        String[] scores = { "1e2", "-3.5", " 7", "1f", "NaN", "0x10", "+4", ".5", "5.", "1e", "-", "99999999999999999999" };
+        List<Map<String,Object>> data = new ArrayList<>();
+        for ( int i = 0; i < 3000; i++ )
+        {
+            Map<String,Object> record = new HashMap<>();
+            record.put( "score", scores[i % scores.length] );
+            record.put( "seq", i );
+            data.add( record );
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().contentColumns( "score", "seq" ).contentData( data )
+            .sortBy( "score", true ).sortMemory( 1 ).export( out );
+        Sheet sheet = new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 );
+
+        List<String> expected = new ArrayList<>();
+        for ( String score : new String[] { "-3.5", ".5", "+4", "5.", " 7", "1e2", "99999999999999999999",
+            "-", "0x10", "1e", "1f", "NaN" } )
+        {
+            for ( int i = 0; i < 3000; i++ )
+            {
+                if ( scores[i % scores.length].equals( score ) )
+                {
+                    expected.add( score + ":" + i );
+                }
+            }
+        }
+        for ( int r = 0; r < 3000; r++ )
+        {
+            assertEquals( expected.get( r ), sheet.getRow( r ).getCell( 0 ).getStringCellValue() + ":"
+                + sheet.getRow( r ).getCell( 1 ).getStringCellValue() );
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.tornado.zy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlLayout}.
+ */
+public class ExlLayoutTest
+    extends TestCase
+{
+    public ExlLayoutTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlLayoutTest.class );
+    }
+
+    /**
+     * 合并单元格占住的位置会被后续行跳过
+     */
+    public void testSpansPushCellsRight()
+    {
+        List<ExlRow> rows = new ArrayList<>();
+        rows.add( ExlRow.c().addCell( ExlCell.c( "项目", 2, 3 ) ).addCell( ExlCell.c( "总数", 2, 0 ) ).addCell( ExlCell.c( "性质", 0, 2 ) ) );
+        rows.add( ExlRow.c().addCell( ExlCell.c( "公办" ).width( 10 ) ).addCell( ExlCell.c( "民办" ).alignLeft() ) );
+
+        ExlLayout layout = ExlLayout.solve( rows );
+
+        assertEquals( 5, layout.size() );
+        assertEquals( 0, layout.getColumn( 0 ) );
+        assertEquals( 3, layout.getColumn( 1 ) );
+        assertEquals( 4, layout.getColumn( 2 ) );
+        assertEquals( 1, layout.getRow( 3 ) );
+        assertEquals( 4, layout.getColumn( 3 ) );
+        assertEquals( 10, layout.getWidth( 3 ) );
+        assertEquals( 5, layout.getColumn( 4 ) );
+        assertEquals( ExlCellStyle.LEFT_BORDER, layout.getStyle( 4 ) );
+        assertEquals( 3, layout.rowStart( 1 ) );
+        assertEquals( 5, layout.rowEnd( 1 ) );
+    }
+
+    /**
+     * 在已有占位的区域上解析
+     */
+    public void testSolveAgainstOccupiedGrid()
+    {
+        ExlGrid grid = new ExlGrid();
+        grid.fill( 5, 0, 2, 1 );
+        List<ExlRow> rows = new ArrayList<>();
+        rows.add( ExlRow.c().addCell( ExlCell.c( "a" ) ) );
+        rows.add( ExlRow.c().addCell( ExlCell.c( "b", 0, 2 ) ) );
+
+        ExlLayout layout = ExlLayout.solve( rows, grid, 5 );
+
+        assertEquals( 1, layout.getColumn( 0 ) );
+        assertEquals( 1, layout.getColumn( 1 ) );
+        assertFalse( grid.isFilled( 5, 1 ) );
+    }
+
+    public void testOverlapIsRejected()
+    {
+        List<ExlRow> rows = new ArrayList<>();
+        rows.add( ExlRow.c().addCell( ExlCell.c( "a" ) ).addCell( ExlCell.c( "b", 2, 0 ) ) );
+        rows.add( ExlRow.c().addCell( ExlCell.c( "c", 0, 3 ) ) );
+        try
+        {
+            ExlLayout.solve( rows );
+            fail( "overlap not detected" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage().contains( "column 1" ) );
+        }
+    }
+
+    /**
+     * 解析之后修改行及已添加的单元格，布局及其中的行不受影响
+     */
+    public void testRowsCopiedOnSolve()
+    {
+        ExlCell cell = ExlCell.c( "a" );
+        List<ExlRow> rows = new ArrayList<>();
+        rows.add( ExlRow.c().height( 30 ).addCell( cell ) );
+
+        ExlLayout layout = ExlLayout.solve( rows );
+        rows.get( 0 ).height( 50 ).addCell( ExlCell.c( "b" ) );
+        cell.width( 20 );
+
+        assertEquals( 30, layout.getHeight( 0 ) );
+        assertEquals( 0, layout.getWidth( 0 ) );
+        assertEquals( 30, layout.rows().get( 0 ).getHeight() );
+        assertEquals( 1, layout.rows().get( 0 ).size() );
+        assertEquals( 0, layout.rows().get( 0 ).getWidth( 0 ) );
+        assertEquals( 20, rows.get( 0 ).getWidth( 0 ) );
+    }
+}
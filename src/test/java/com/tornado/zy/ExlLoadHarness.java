@@ -0,0 +1,665 @@
+package com.tornado.zy;
+
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并发导出压测：在进程内用合成数据同时进行多个导出，统计每个导出的耗时分布（p50/p99/最大值）、吞吐量及GC、堆的情况，
+ * 用来确定一个节点能同时承受多少导出。不依赖外部服务，同样的参数（含seed）每次导出的行数、数据都相同.
+ * <br>每个导出按权重从行数组合中抽取行数，数据由行号算出，边导出边生成，不占用数据本身的内存；输出丢弃，只计字节数.
+ * 耗时分布按HdrHistogram的方式记录：2位有效数字的对数分桶，最大值精确，报告格式与HdrHistogram的百分位输出相同.
+ * <pre>
+ * java -cp target/classes:target/test-classes:... com.tornado.zy.ExlLoadHarness threads=1,4,16,64 exports=400 mix=100:70,5000:25,50000:5 streaming=true
+ * </pre>
+ * 压测工具只在测试代码中，不随库发布.
+ * 参数：threads并发数，可逗号分隔依次压测；exports每轮导出数；warmup预热导出数；mix行数:权重；columns列数；
+ * streaming是否流式xlsx；virtual是否使用虚拟线程（Java 21及以上）；admission内存预算字节数，设置后经{@link ExlAdmission}导出；seed随机种子
+ * @author xlsiek
+ *
+ */
+public class ExlLoadHarness {
+	private int threads = 8;//并发数
+	private boolean virtualThreads = false;
+	private int exports = 200;//每轮导出数
+	private int warmup = 20;//预热导出数，不计入统计
+	private List<int[]> mix = new ArrayList<>();//行数、权重
+	private int columns = 10;
+	private boolean streaming = true;
+	private ExlAdmission admission = null;
+	private long seed = 20171012L;
+
+	private ExlLoadHarness() {
+
+	}
+
+	/**
+	 * 调用此方法初始化
+	 * @return ExlLoadHarness
+	 */
+	public static ExlLoadHarness c() {
+		return new ExlLoadHarness();
+	}
+
+	/**
+	 * 并发数，即同时进行的导出数
+	 * @param threads 线程数
+	 * @return ExlLoadHarness
+	 */
+	public ExlLoadHarness threads(int threads) {
+		this.threads = threads < 1 ? 1 : threads;
+		return this;
+	}
+
+	/**
+	 * 是否使用虚拟线程，需要Java 21及以上
+	 * @param virtualThreads 是否使用
+	 * @return ExlLoadHarness
+	 */
+	public ExlLoadHarness virtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+		return this;
+	}
+
+	/**
+	 * 每轮的导出数
+	 * @param exports 导出数
+	 * @return ExlLoadHarness
+	 */
+	public ExlLoadHarness exports(int exports) {
+		this.exports = exports < 1 ? 1 : exports;
+		return this;
+	}
+
+	/**
+	 * 预热的导出数，预热不计入统计
+	 * @param warmup 导出数
+	 * @return ExlLoadHarness
+	 */
+	public ExlLoadHarness warmup(int warmup) {
+		this.warmup = Math.max(warmup, 0);
+		return this;
+	}
+
+	/**
+	 * 增加一种导出大小，每个导出按权重抽取。未设置时为100:70,5000:25,50000:5
+	 * @param rows 内容行数
+	 * @param weight 权重
+	 * @return ExlLoadHarness
+	 */
+	public ExlLoadHarness mix(int rows, int weight) {
+		this.mix.add(new int[] { rows, weight });
+		return this;
+	}
+
+	/**
+	 * 内容列数，默认10
+	 * @param columns 列数
+	 * @return ExlLoadHarness
+	 */
+	public ExlLoadHarness columns(int columns) {
+		this.columns = columns < 1 ? 1 : columns;
+		return this;
+	}
+
+	/**
+	 * 是否流式输出xlsx，默认是；否则输出xls
+	 * @param streaming 是否流式
+	 * @return ExlLoadHarness
+	 */
+	public ExlLoadHarness streaming(boolean streaming) {
+		this.streaming = streaming;
+		return this;
+	}
+
+	/**
+	 * 经准入控制导出，此时输出方式由准入控制决定
+	 * @param admission 准入控制
+	 * @return ExlLoadHarness
+	 */
+	public ExlLoadHarness admission(ExlAdmission admission) {
+		this.admission = admission;
+		return this;
+	}
+
+	/**
+	 * 随机种子，决定每个导出的大小
+	 * @param seed 种子
+	 * @return ExlLoadHarness
+	 */
+	public ExlLoadHarness seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * 预热后压测一轮
+	 * @return 报告
+	 * @throws InterruptedException 等待导出结束时被中断
+	 */
+	public Report run() throws InterruptedException {
+		List<int[]> mix = this.mix.isEmpty() ? defaultMix() : this.mix;
+		if (warmup > 0) {
+			execute(schedule(mix, warmup, seed ^ 0x5DEECE66DL), null);
+		}
+		int[] schedule = schedule(mix, exports, seed);
+		Histogram latency = new Histogram();
+		List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		long gcCount = 0, gcMillis = 0;
+		for (GarbageCollectorMXBean gc : collectors) {
+			gcCount -= Math.max(gc.getCollectionCount(), 0);
+			gcMillis -= Math.max(gc.getCollectionTime(), 0);
+		}
+		List<MemoryPoolMXBean> heap = new ArrayList<>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				heap.add(pool);
+			}
+		}
+		long begin = System.nanoTime();
+		Result result = execute(schedule, latency);
+		long wallNanos = System.nanoTime() - begin;
+		for (GarbageCollectorMXBean gc : collectors) {
+			gcCount += Math.max(gc.getCollectionCount(), 0);
+			gcMillis += Math.max(gc.getCollectionTime(), 0);
+		}
+		long heapPeak = 0;
+		for (MemoryPoolMXBean pool : heap) {
+			heapPeak += pool.getPeakUsage().getUsed();
+		}
+		Report report = new Report();
+		report.threads = threads;
+		report.virtualThreads = virtualThreads;
+		report.latency = latency;
+		report.wallMillis = wallNanos / 1000000;
+		report.rows = result.rows.get();
+		report.bytes = result.bytes.get();
+		report.errors = result.errors.get();
+		report.firstError = result.firstError;
+		report.streamed = result.streamed.get();
+		report.gcCount = gcCount;
+		report.gcMillis = gcMillis;
+		report.heapPeak = heapPeak;
+		report.heapMax = Runtime.getRuntime().maxMemory();
+		return report;
+	}
+
+	/**
+	 * 命令行入口，参数见类说明，按threads依次压测并输出报告
+	 * @param args key=value
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		ExlLoadHarness harness = ExlLoadHarness.c();
+		String[] levels = { String.valueOf(harness.threads) };
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (eq < 0) {
+				throw new IllegalArgumentException("参数格式为key=value：" + arg);
+			}
+			String key = arg.substring(0, eq);
+			String value = arg.substring(eq + 1);
+			switch (key) {
+			case "threads": levels = value.split(","); break;
+			case "exports": harness.exports(Integer.parseInt(value)); break;
+			case "warmup": harness.warmup(Integer.parseInt(value)); break;
+			case "columns": harness.columns(Integer.parseInt(value)); break;
+			case "streaming": harness.streaming(Boolean.parseBoolean(value)); break;
+			case "virtual": harness.virtualThreads(Boolean.parseBoolean(value)); break;
+			case "admission": harness.admission(ExlAdmission.c(Long.parseLong(value))); break;
+			case "seed": harness.seed(Long.parseLong(value)); break;
+			case "mix":
+				for (String item : value.split(",")) {
+					String[] pair = item.split(":");
+					harness.mix(Integer.parseInt(pair[0]), pair.length > 1 ? Integer.parseInt(pair[1]) : 1);
+				}
+				break;
+			default: throw new IllegalArgumentException("未知参数" + key);
+			}
+		}
+		for (String level : levels) {
+			System.out.println(harness.threads(Integer.parseInt(level.trim())).run());
+		}
+	}
+
+	//==================内部=============
+
+	private static List<int[]> defaultMix() {
+		List<int[]> mix = new ArrayList<>();
+		mix.add(new int[] { 100, 70 });
+		mix.add(new int[] { 5000, 25 });
+		mix.add(new int[] { 50000, 5 });
+		return mix;
+	}
+
+	/**
+	 * 按权重抽取每个导出的行数
+	 */
+	private static int[] schedule(List<int[]> mix, int count, long seed) {
+		int total = 0;
+		for (int[] item : mix) {
+			total += item[1];
+		}
+		Random random = new Random(seed);
+		int[] schedule = new int[count];
+		for (int i = 0; i < count; i++) {
+			int pick = random.nextInt(total);
+			for (int[] item : mix) {
+				if ((pick -= item[1]) < 0) {
+					schedule[i] = item[0];
+					break;
+				}
+			}
+		}
+		return schedule;
+	}
+
+	private Result execute(int[] schedule, Histogram latency) throws InterruptedException {
+		Result result = new Result();
+		AtomicInteger next = new AtomicInteger();
+		ThreadFactory factory = virtualThreads ? virtualThreadFactory() : r -> {
+			Thread thread = new Thread(r);
+			thread.setDaemon(true);
+			return thread;
+		};
+		String[] columnNames = new String[columns];
+		for (int c = 0; c < columns; c++) {
+			columnNames[c] = "c" + c;
+		}
+		Runnable worker = () -> {
+			for (int i; (i = next.getAndIncrement()) < schedule.length; ) {
+				long begin = System.nanoTime();
+				try {
+					ExcelExportUtils export = ExcelExportUtils.c().title("压测" + i).headers(columnNames).contentColumns(columnNames)
+							.contentSource(new SyntheticSource(columnNames, schedule[i], i));
+					CountingOutputStream out = new CountingOutputStream();
+					ExlExportStats stats;
+					if (admission != null) {
+						stats = admission.export(export, s -> {
+							if (s) result.streamed.incrementAndGet();
+							return out;
+						});
+					} else if (streaming) {
+						result.streamed.incrementAndGet();
+						stats = export.exportStreaming(out);
+					} else {
+						export.export(out);
+						stats = export.getStats();
+					}
+					result.rows.addAndGet(stats.getContentRows());
+					result.bytes.addAndGet(out.count);
+				} catch (Exception | OutOfMemoryError e) {
+					result.error(e);
+				}
+				if (latency != null) {
+					latency.record((System.nanoTime() - begin) / 1000);
+				}
+			}
+		};
+		Thread[] workers = new Thread[Math.min(threads, schedule.length)];
+		for (int t = 0; t < workers.length; t++) {
+			workers[t] = factory.newThread(worker);
+			workers[t].setName("exl-load-" + t);
+			workers[t].start();
+		}
+		for (Thread thread : workers) {
+			thread.join();
+		}
+		return result;
+	}
+
+	private static ThreadFactory virtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("虚拟线程需要Java 21及以上", e);
+		}
+	}
+
+	private static final class Result {
+		final AtomicLong rows = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicInteger errors = new AtomicInteger();
+		final AtomicInteger streamed = new AtomicInteger();
+		volatile String firstError = null;
+
+		void error(Throwable e) {
+			if (errors.getAndIncrement() == 0) {
+				firstError = e.toString();
+			}
+		}
+	}
+
+	/**
+	 * 合成数据：按行号算出每个单元格，不同的导出数据不同，同一导出每次相同
+	 */
+	private static final class SyntheticSource implements Iterable<Map<String,Object>> {
+		private final String[] columns;
+		private final int rows;
+		private final int salt;
+
+		SyntheticSource(String[] columns, int rows, int salt) {
+			this.columns = columns;
+			this.rows = rows;
+			this.salt = salt;
+		}
+
+		@Override
+		public Iterator<Map<String,Object>> iterator() {
+			return new Iterator<Map<String,Object>>() {
+				private int next = 0;
+
+				@Override
+				public boolean hasNext() {
+					return next < rows;
+				}
+
+				@Override
+				public Map<String,Object> next() {
+					if (next >= rows) {
+						throw new NoSuchElementException();
+					}
+					Map<String,Object> row = new HashMap<>();
+					long h = (next++ + 1L) * 0x9E3779B97F4A7C15L + salt;
+					for (int c = 0; c < columns.length; c++) {
+						h ^= h >>> 29;
+						h *= 0xBF58476D1CE4E5B9L;
+						row.put(columns[c], (c % 3 == 0) ? (Object) (h >>> 44) : "v" + Long.toString(h >>> 40, 36));
+					}
+					return row;
+				}
+			};
+		}
+	}
+
+	/**
+	 * 只计数的输出
+	 */
+	private static final class CountingOutputStream extends OutputStream {
+		private long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	/**
+	 * HdrHistogram方式的耗时分布，单位微秒：小于128的值精确，之上每个2的幂区间分64个桶，相对误差不超过1/64.
+	 * 线程安全
+	 */
+	static final class Histogram {
+		private final static int SUB_BUCKETS = 64;
+		private final AtomicLong[] counts = new AtomicLong[SUB_BUCKETS * 60];
+		private final AtomicLong total = new AtomicLong();
+		private final AtomicLong sum = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+		private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+		Histogram() {
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = new AtomicLong();
+			}
+		}
+
+		void record(long value) {
+			value = Math.max(value, 0);
+			counts[index(value)].incrementAndGet();
+			total.incrementAndGet();
+			sum.addAndGet(value);
+			max.accumulateAndGet(value, Math::max);
+			min.accumulateAndGet(value, Math::min);
+		}
+
+		static int index(long value) {
+			int magnitude = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - 6);
+			return magnitude * SUB_BUCKETS + (int) (value >>> magnitude);
+		}
+
+		/**
+		 * 桶内的最大值，与HdrHistogram的highestEquivalentValue一致
+		 */
+		static long highest(int index) {
+			int magnitude = index < 2 * SUB_BUCKETS ? 0 : index / SUB_BUCKETS - 1;
+			long sub = index - (long) magnitude * SUB_BUCKETS;
+			return ((sub + 1) << magnitude) - 1;
+		}
+
+		long getTotalCount() {
+			return total.get();
+		}
+
+		long getMax() {
+			return total.get() == 0 ? 0 : max.get();
+		}
+
+		long getMin() {
+			return total.get() == 0 ? 0 : min.get();
+		}
+
+		double getMean() {
+			long n = total.get();
+			return n == 0 ? 0 : (double) sum.get() / n;
+		}
+
+		/**
+		 * 百分位上的值，不超过最大值
+		 * @param percentile 0~100
+		 */
+		long valueAt(double percentile) {
+			long n = total.get();
+			if (n == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i].get();
+				if (seen >= rank) {
+					return Math.min(highest(i), getMax());
+				}
+			}
+			return getMax();
+		}
+
+		/**
+		 * 与HdrHistogram的outputPercentileDistribution相同格式，值按scale换算
+		 */
+		void output(StringBuilder out, double scale) {
+			out.append(String.format(Locale.ROOT, "%12s %14s %10s %14s%n%n", "Value", "Percentile", "TotalCount", "1/(1-Percentile)"));
+			long n = total.get();
+			double[] percentiles = { 0, 50, 75, 90, 95, 99, 99.9, 99.99, 100 };
+			for (double p : percentiles) {
+				long value = valueAt(p);
+				long count = countAtOrBelow(value);
+				if (p < 100) {
+					out.append(String.format(Locale.ROOT, "%12.3f %2.12f %10d %14.2f%n", value / scale, p / 100, count, 1 / (1 - p / 100)));
+				} else {
+					out.append(String.format(Locale.ROOT, "%12.3f %2.12f %10d%n", value / scale, 1.0, count));
+				}
+			}
+			double mean = getMean();
+			double variance = 0;
+			for (int i = 0; i < counts.length; i++) {
+				long c = counts[i].get();
+				if (c > 0) {
+					double d = Math.min(highest(i), getMax()) - mean;
+					variance += d * d * c;
+				}
+			}
+			double deviation = n == 0 ? 0 : Math.sqrt(variance / n);
+			out.append(String.format(Locale.ROOT, "#[Mean    = %12.3f, StdDeviation   = %12.3f]%n", mean / scale, deviation / scale));
+			out.append(String.format(Locale.ROOT, "#[Max     = %12.3f, Total count    = %12d]%n", getMax() / scale, n));
+			out.append(String.format(Locale.ROOT, "#[Buckets = %12d, SubBuckets     = %12d]%n", counts.length / SUB_BUCKETS, SUB_BUCKETS));
+		}
+
+		private long countAtOrBelow(long value) {
+			long seen = 0;
+			for (int i = 0, last = index(value); i <= last; i++) {
+				seen += counts[i].get();
+			}
+			return seen;
+		}
+	}
+
+	/**
+	 * 一轮压测的报告，耗时单位为毫秒
+	 */
+	public static final class Report {
+		private int threads;
+		private boolean virtualThreads;
+		private Histogram latency;
+		private long wallMillis;
+		private long rows;
+		private long bytes;
+		private int errors;
+		private String firstError;
+		private int streamed;
+		private long gcCount;
+		private long gcMillis;
+		private long heapPeak;
+		private long heapMax;
+
+		public int getThreads() {
+			return threads;
+		}
+
+		public boolean isVirtualThreads() {
+			return virtualThreads;
+		}
+
+		/**
+		 * 完成的导出数，含失败的
+		 * @return long
+		 */
+		public long getExports() {
+			return latency.getTotalCount();
+		}
+
+		/**
+		 * 耗时的百分位
+		 * @param percentile 0~100，例如99.9
+		 * @return 毫秒
+		 */
+		public double getLatencyMillis(double percentile) {
+			return latency.valueAt(percentile) / 1000.0;
+		}
+
+		public double getMaxLatencyMillis() {
+			return latency.getMax() / 1000.0;
+		}
+
+		public long getWallMillis() {
+			return wallMillis;
+		}
+
+		/**
+		 * 每秒完成的导出数
+		 * @return double
+		 */
+		public double getExportsPerSecond() {
+			return wallMillis == 0 ? 0 : getExports() * 1000.0 / wallMillis;
+		}
+
+		/**
+		 * 每秒写出的内容行数
+		 * @return double
+		 */
+		public double getRowsPerSecond() {
+			return wallMillis == 0 ? 0 : rows * 1000.0 / wallMillis;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public int getErrors() {
+			return errors;
+		}
+
+		/**
+		 * 第一个失败的原因，没有失败时为null
+		 * @return String
+		 */
+		public String getFirstError() {
+			return firstError;
+		}
+
+		/**
+		 * 以流式xlsx输出的导出数
+		 * @return int
+		 */
+		public int getStreamed() {
+			return streamed;
+		}
+
+		public long getGcCount() {
+			return gcCount;
+		}
+
+		public long getGcMillis() {
+			return gcMillis;
+		}
+
+		/**
+		 * 本轮期间各堆内存池峰值之和
+		 * @return 字节数
+		 */
+		public long getHeapPeak() {
+			return heapPeak;
+		}
+
+		public long getHeapMax() {
+			return heapMax;
+		}
+
+		/**
+		 * 一行摘要
+		 * @return String
+		 */
+		public String summary() {
+			return String.format(Locale.ROOT,
+					"threads=%d%s exports=%d errors=%d p50=%.1fms p99=%.1fms max=%.1fms throughput=%.1f/s rows=%.0f/s gc=%d/%dms heapPeak=%dM/%dM",
+					threads, virtualThreads ? "(virtual)" : "", getExports(), errors, getLatencyMillis(50), getLatencyMillis(99),
+					getMaxLatencyMillis(), getExportsPerSecond(), getRowsPerSecond(), gcCount, gcMillis, heapPeak >> 20, heapMax >> 20);
+		}
+
+		/**
+		 * 摘要及HdrHistogram格式的耗时分布，单位毫秒
+		 */
+		@Override
+		public String toString() {
+			StringBuilder out = new StringBuilder();
+			out.append("# ").append(summary()).append(System.lineSeparator());
+			if (firstError != null) {
+				out.append("# first error: ").append(firstError).append(System.lineSeparator());
+			}
+			latency.output(out, 1000.0);
+			return out.toString();
+		}
+	}
+}
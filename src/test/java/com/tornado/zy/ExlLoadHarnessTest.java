@@ -0,0 +1,93 @@
+package com.tornado.zy;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlLoadHarness}.
+ */
+public class ExlLoadHarnessTest
+    extends TestCase
+{
+    public ExlLoadHarnessTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlLoadHarnessTest.class );
+    }
+
+    /**
+     * 小规模压测：同样的种子得到同样的工作量，报告中的百分位有序
+     */
+    public void testReproducibleReport() throws Exception
+    {
+        ExlLoadHarness harness = ExlLoadHarness.c().threads( 4 ).exports( 40 ).warmup( 4 ).mix( 20, 3 ).mix( 300, 1 ).columns( 4 )
+            .seed( 7 );
+        ExlLoadHarness.Report first = harness.run();
+        ExlLoadHarness.Report second = harness.streaming( false ).run();
+
+        assertEquals( 40, first.getExports() );
+        assertEquals( 0, first.getErrors() );
+        assertEquals( 40, first.getStreamed() );
+        assertEquals( 0, second.getStreamed() );
+        assertEquals( first.getRows(), second.getRows() );
+        assertTrue( first.getLatencyMillis( 50 ) <= first.getLatencyMillis( 99 ) );
+        assertTrue( first.getLatencyMillis( 99 ) <= first.getMaxLatencyMillis() );
+        assertTrue( first.getBytes() > 0 );
+        assertTrue( first.toString().contains( "1/(1-Percentile)" ) );
+        assertTrue( first.toString().contains( "Total count    =           40" ) );
+    }
+
+    /**
+     * 耗时分桶：小于128精确，之上相对误差不超过1/64
+     */
+    public void testHistogramPrecision()
+    {
+        for ( long value : new long[] { 0, 1, 127, 128, 129, 1000, 123456, 987654321L, Long.MAX_VALUE / 4 } )
+        {
+            long highest = ExlLoadHarness.Histogram.highest( ExlLoadHarness.Histogram.index( value ) );
+            assertTrue( value + " -> " + highest, highest >= value );
+            assertTrue( value + " -> " + highest, highest - value <= Math.max( value / 64, 0 ) + 1 );
+        }
+        ExlLoadHarness.Histogram histogram = new ExlLoadHarness.Histogram();
+        for ( int i = 1; i <= 1000; i++ )
+        {
+            histogram.record( i );
+        }
+        assertEquals( 1000, histogram.getTotalCount() );
+        assertEquals( 1000, histogram.getMax() );
+        assertTrue( Math.abs( histogram.valueAt( 50 ) - 500 ) <= 8 );
+        assertTrue( Math.abs( histogram.valueAt( 99 ) - 990 ) <= 16 );
+    }
+
+    /**
+     * 没有虚拟线程的JVM上明确报错
+     */
+    public void testVirtualThreads() throws Exception
+    {
+        ExlLoadHarness harness = ExlLoadHarness.c().virtualThreads( true ).threads( 2 ).exports( 4 ).warmup( 0 ).mix( 10, 1 );
+        boolean supported;
+        try
+        {
+            Thread.class.getMethod( "ofVirtual" );
+            supported = true;
+        }
+        catch ( NoSuchMethodException e )
+        {
+            supported = false;
+        }
+        try
+        {
+            assertEquals( 4, harness.run().getExports() );
+            assertTrue( supported );
+        }
+        catch ( UnsupportedOperationException e )
+        {
+            assertFalse( supported );
+        }
+    }
+}
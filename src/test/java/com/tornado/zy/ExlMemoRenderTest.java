@@ -0,0 +1,162 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlMemoRender}.
+ */
+public class ExlMemoRenderTest
+    extends TestCase
+{
+    public ExlMemoRenderTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlMemoRenderTest.class );
+    }
+
+    /**
+     * 超出容量时淘汰最久未使用的值。下面的键hashCode相同，落在同一分段，容量为所有分段合计
+     */
+    public void testLeastRecentlyUsedEviction()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        ExlMemoRender memo = ExlMemoRender.of( v -> {
+            calls.incrementAndGet();
+            return v.toLowerCase();
+        }, 2 );
+        assertEquals( "AaAa".hashCode(), "BBBB".hashCode() );
+
+        assertEquals( "aaaa", memo.format( "AaAa", null, 0 ) );
+        assertEquals( "aabb", memo.format( "AaBB", null, 1 ) );
+        assertEquals( "aaaa", memo.format( "AaAa", null, 2 ) );
+        assertEquals( "bbaa", memo.format( "BBAa", null, 3 ) );
+        assertStats( memo.stats(), 1, 3, 1, 2 );
+        assertEquals( 3, calls.get() );
+
+        assertEquals( "aaaa", memo.format( "AaAa", null, 4 ) );
+        assertEquals( "bbaa", memo.format( "BBAa", null, 5 ) );
+        assertEquals( 3, calls.get() );
+        assertEquals( "aabb", memo.format( "AaBB", null, 6 ) );
+        assertEquals( 4, calls.get() );
+        assertStats( memo.stats(), 3, 4, 2, 2 );
+    }
+
+    /**
+     * 容量小于分段数时不超出容量；值都落在同一分段时也能用满容量，不会提前淘汰
+     */
+    public void testMaxSizeIsGlobal()
+    {
+        ExlMemoRender small = ExlMemoRender.of( v -> v + "!", 3 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            small.format( "v" + i, null, i );
+        }
+        assertStats( small.stats(), 0, 100, 97, 3 );
+
+        ExlMemoRender skewed = ExlMemoRender.of( v -> v + "!", 32 );
+        String[] keys = { "Aa", "BB" };
+        for ( int i = 0; i < 32; i++ )
+        {
+            String key = keys[i & 1] + keys[( i >> 1 ) & 1] + keys[( i >> 2 ) & 1] + keys[( i >> 3 ) & 1] + keys[( i >> 4 ) & 1];
+            assertEquals( "AaAaAaAaAa".hashCode(), key.hashCode() );
+            skewed.format( key, null, i );
+        }
+        assertStats( skewed.stats(), 0, 32, 0, 32 );
+    }
+
+    /**
+     * 同一个缓存渲染器注册在多个属性上时只统计一次
+     */
+    public void testSharedMemoCountedOnce() throws Exception
+    {
+        ExlMemoRender memo = ExlMemoRender.of( v -> "类型" + v, 1024 );
+        List<Map<String,Object>> data = new ArrayList<>();
+        for ( int i = 0; i < 10; i++ )
+        {
+            Map<String,Object> row = new HashMap<>();
+            row.put( "type", i % 5 );
+            row.put( "kind", i % 5 );
+            data.add( row );
+        }
+        ExcelExportUtils export = ExcelExportUtils.c().contentColumns( "type", "kind" ).contentData( data ).render( memo, "type", "kind" );
+        export.export( new ByteArrayOutputStream() );
+        ExlExportStats stats = export.getStats();
+        assertEquals( 1, stats.getRenderCaches().size() );
+        assertStats( stats.getRenderCaches().get( "kind,type" ), 15, 5, 0, 5 );
+    }
+
+    /**
+     * 空值与渲染结果为null的值不缓存
+     */
+    public void testNullNotCached()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        ExlMemoRender memo = ExlMemoRender.pure( ( ExlCellRender<Object> ) ( v, record, index ) -> {
+            calls.incrementAndGet();
+            return "x".equals( v ) ? null : v + "!";
+        }, 8 );
+        assertNull( memo.format( "x", null, 0 ) );
+        assertNull( memo.format( "x", null, 1 ) );
+        assertEquals( "null!", memo.format( null, null, 2 ) );
+        assertEquals( 3, calls.get() );
+        assertStats( memo.stats(), 0, 2, 0, 0 );
+    }
+
+    /**
+     * 导出结果中的缓存统计是本次导出期间的增量，同一个渲染器可用于多次导出
+     */
+    public void testExportStatsAreIncrements() throws Exception
+    {
+        ExlMemoRender memo = ExlMemoRender.of( v -> "类型" + v, 1024 );
+        List<Map<String,Object>> data = new ArrayList<>();
+        for ( int i = 0; i < 100; i++ )
+        {
+            Map<String,Object> row = new HashMap<>();
+            row.put( "type", i % 5 );
+            data.add( row );
+        }
+        ExlExportStats stats = export( memo, data );
+        assertStats( stats.getRenderCaches().get( "type" ), 95, 5, 0, 5 );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils again = ExcelExportUtils.c().contentColumns( "type" ).contentData( data ).render( memo, "type" );
+        again.export( out );
+        stats = again.getStats();
+        assertStats( stats.getRenderCaches().get( "type" ), 100, 0, 0, 5 );
+        Sheet sheet = new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 );
+        assertEquals( "类型4", sheet.getRow( 4 ).getCell( 0 ).getStringCellValue() );
+        assertStats( memo.stats(), 195, 5, 0, 5 );
+    }
+
+    private static ExlExportStats export( ExlMemoRender memo, List<Map<String,Object>> data ) throws Exception
+    {
+        ExcelExportUtils export = ExcelExportUtils.c().contentColumns( "type" ).contentData( data ).render( memo, "type" );
+        export.export( new ByteArrayOutputStream() );
+        return export.getStats();
+    }
+
+    private static void assertStats( ExlMemoRender.Stats stats, long hits, long misses, long evictions, int size )
+    {
+        assertEquals( stats.toString(), hits, stats.getHits() );
+        assertEquals( stats.toString(), misses, stats.getMisses() );
+        assertEquals( stats.toString(), evictions, stats.getEvictions() );
+        assertEquals( stats.toString(), size, stats.getSize() );
+    }
+}
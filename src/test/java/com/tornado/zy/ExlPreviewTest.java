@@ -0,0 +1,67 @@
+package com.tornado.zy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExcelExportUtils#previewHtml(int)}.
+ */
+public class ExlPreviewTest
+    extends TestCase
+{
+    public ExlPreviewTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlPreviewTest.class );
+    }
+
+    /**
+     * 只读取前N行，自定义表头输出为rowspan/colspan
+     */
+    public void testPreviewReadsOnlyFirstRows()
+    {
+        final int[] pulled = { 0 };
+        Iterable<Map<String,Object>> endless = () -> new Iterator<Map<String,Object>>()
+        {
+            public boolean hasNext()
+            {
+                return true;
+            }
+
+            public Map<String,Object> next()
+            {
+                Map<String,Object> record = new HashMap<>();
+                record.put( "one", "<" + ( ++pulled[0] ) + ">" );
+                record.put( "two", pulled[0] );
+                return record;
+            }
+        };
+        List<ExlRow> headers = new ArrayList<>();
+        headers.add( ExlRow.c().addCell( ExlCell.c( "名称", 2, 0 ) ).addCell( ExlCell.c( "数量" ) ) );
+        headers.add( ExlRow.c().addCell( ExlCell.c( "合计" ) ) );
+
+        String html = ExcelExportUtils.c().complexHeader( headers ).contentColumns( "one", "two" )
+            .contentSource( endless ).previewHtml( 3 );
+        assertEquals( 3, pulled[0] );
+        assertTrue( html, html.contains( "<td class=\"cellcb\" rowspan=\"2\">名称</td>" ) );
+        assertTrue( html, html.contains( "<td class=\"cellcb\">&lt;3&gt;</td><td class=\"cellcb\">3</td>" ) );
+        assertFalse( html, html.contains( "&lt;4&gt;" ) );
+
+        String json = ExcelExportUtils.c().headers( "名称", "数量" ).contentColumns( "one", "two" )
+            .contentSource( endless ).previewJson( 1 );
+        assertEquals( 4, pulled[0] );
+        assertTrue( json, json.startsWith( "{\"columns\":2,\"truncated\":true," ) );
+        assertTrue( json, json.contains( "{\"column\":0,\"value\":\"<4>\",\"style\":\"cellcb\"}" ) );
+    }
+}
@@ -0,0 +1,181 @@
+package com.tornado.zy;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExcelExportUtils#exportResumable(Path, int)}.
+ */
+public class ExlResumableExportTest
+    extends TestCase
+{
+    private static final int ROWS = 2000;
+
+    private Path dir;
+
+    public ExlResumableExportTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlResumableExportTest.class );
+    }
+
+    protected void setUp() throws Exception
+    {
+        dir = Files.createTempDirectory( "exl-resume" );
+    }
+
+    protected void tearDown() throws Exception
+    {
+        for ( File file : dir.toFile().listFiles() )
+        {
+            file.delete();
+        }
+        Files.delete( dir );
+    }
+
+    /**
+     * 中途退出后继续，得到的文件与不中断时逐字节相同，检查点完成后删除
+     */
+    public void testResumeAfterCrashIsIdentical() throws Exception
+    {
+        Path whole = dir.resolve( "whole.xlsx" );
+        ExlExportStats stats = export( "统计", new Source( -1 ) ).exportResumable( whole, 300 );
+        assertEquals( ROWS, stats.getContentRows() );
+        assertFalse( Files.exists( dir.resolve( "whole.xlsx.checkpoint" ) ) );
+
+        Path file = dir.resolve( "resumed.xlsx" );
+        try
+        {
+            export( "统计", new Source( 1300 ) ).exportResumable( file, 300 );
+            fail( "source should fail" );
+        }
+        catch ( IllegalStateException e )
+        {
+            assertEquals( "crash", e.getMessage() );
+        }
+        assertTrue( Files.exists( dir.resolve( "resumed.xlsx.checkpoint" ) ) );
+
+        Source source = new Source( -1 );
+        stats = export( "统计", source ).exportResumable( file, 300 );
+        assertEquals( 1024, source.position );
+        assertEquals( "1023", source.key );
+        assertEquals( ROWS, stats.getContentRows() );
+        assertTrue( Arrays.equals( Files.readAllBytes( whole ), Files.readAllBytes( file ) ) );
+        assertFalse( Files.exists( dir.resolve( "resumed.xlsx.checkpoint" ) ) );
+
+        try ( XSSFWorkbook wb = new XSSFWorkbook( file.toFile() ) )
+        {
+            Sheet sheet = wb.getSheetAt( 0 );
+            assertEquals( "统计", sheet.getRow( 0 ).getCell( 0 ).getStringCellValue() );
+            assertEquals( "行", sheet.getRow( 2 ).getCell( 0 ).getStringCellValue() );
+            assertEquals( "1999", sheet.getRow( sheet.getLastRowNum() - 2 ).getCell( 2 ).getStringCellValue() );
+            assertEquals( "G6小计", sheet.getRow( sheet.getLastRowNum() - 1 ).getCell( 0 ).getStringCellValue() );
+            assertEquals( "总计", sheet.getRow( sheet.getLastRowNum() ).getCell( 0 ).getStringCellValue() );
+            assertEquals( ROWS * ( ROWS - 1 ) / 2.0, sheet.getRow( sheet.getLastRowNum() ).getCell( 3 ).getNumericCellValue() );
+        }
+    }
+
+    /**
+     * 配置改变后原有检查点作废，从头导出
+     */
+    public void testChangedConfigStartsOver() throws Exception
+    {
+        Path file = dir.resolve( "changed.xlsx" );
+        try
+        {
+            export( "旧标题", new Source( 700 ) ).exportResumable( file, 256 );
+            fail( "source should fail" );
+        }
+        catch ( IllegalStateException e )
+        {
+            assertEquals( "crash", e.getMessage() );
+        }
+        Source source = new Source( -1 );
+        export( "新标题", source ).exportResumable( file, 256 );
+        assertEquals( 0, source.position );
+
+        Path whole = dir.resolve( "whole.xlsx" );
+        export( "新标题", new Source( -1 ) ).exportResumable( whole, 256 );
+        assertTrue( Arrays.equals( Files.readAllBytes( whole ), Files.readAllBytes( file ) ) );
+    }
+
+    private static ExcelExportUtils export( String title, Source source )
+    {
+        return ExcelExportUtils.c().title( title ).headers( "分组", "编号", "名称", "数量" ).columnHeaders( "行" )
+            .contentColumns( "group", "id", "name", "amount" ).contentSource( source ).streamFlush( 100, 16 * 1024 )
+            .groupBy( "group", "{key}小计" ).grandTotal( "总计" ).aggregate( ExlAggregate.SUM, "amount" );
+    }
+
+    /**
+     * 按编号继续读取的数据源，failAt不为-1时读到该行抛出异常，模拟进程退出
+     */
+    private static final class Source implements ExlResumableSource<Map<String, Object>>
+    {
+        private final int failAt;
+        private long position = -1;
+        private String key;
+
+        Source( int failAt )
+        {
+            this.failAt = failAt;
+        }
+
+        public Iterator<Map<String, Object>> iterator( long position, String key )
+        {
+            this.position = position;
+            this.key = key;
+            int from = key == null ? 0 : Integer.parseInt( key ) + 1;
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for ( int i = from; i < ROWS; i++ )
+            {
+                Map<String, Object> row = new HashMap<>();
+                row.put( "group", "G" + i / 300 );
+                row.put( "id", i );
+                row.put( "name", String.valueOf( i ) );
+                row.put( "amount", i );
+                rows.add( row );
+            }
+            final Iterator<Map<String, Object>> iterator = rows.iterator();
+            return new Iterator<Map<String, Object>>()
+            {
+                public boolean hasNext()
+                {
+                    return iterator.hasNext();
+                }
+
+                public Map<String, Object> next()
+                {
+                    Map<String, Object> row = iterator.next();
+                    if ( ( (Integer) row.get( "id" ) ) == failAt )
+                    {
+                        throw new IllegalStateException( "crash" );
+                    }
+                    return row;
+                }
+            };
+        }
+
+        public String key( Map<String, Object> record )
+        {
+            return String.valueOf( record.get( "id" ) );
+        }
+    }
+}
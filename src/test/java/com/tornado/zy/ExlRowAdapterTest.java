@@ -0,0 +1,140 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlRowAdapter}.
+ */
+public class ExlRowAdapterTest
+    extends TestCase
+{
+    public ExlRowAdapterTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlRowAdapterTest.class );
+    }
+
+    /**
+     * Object[]行：数字内容列按下标，其余按位置；超出长度的为空
+     */
+    public void testArrayRows() throws Exception
+    {
+        List<Object[]> data = new ArrayList<>();
+        data.add( new Object[] { 1, "一中", "高中" } );
+        data.add( new Object[] { 2, null } );
+        Sheet sheet = export( ExcelExportUtils.c().headers( "名称", "编号", "类型" ).contentColumns( "1", "0", "type" )
+            .contentData( data ) );
+        assertEquals( "一中", text( sheet, 1, 0 ) );
+        assertEquals( "1", text( sheet, 1, 1 ) );
+        assertEquals( "高中", text( sheet, 1, 2 ) );
+        assertEquals( "", text( sheet, 2, 0 ) );
+        assertEquals( "2", text( sheet, 2, 1 ) );
+        assertEquals( "", text( sheet, 2, 2 ) );
+    }
+
+    /**
+     * List行按位置取值
+     */
+    public void testListRows() throws Exception
+    {
+        List<List<Object>> data = new ArrayList<>();
+        data.add( Arrays.<Object>asList( "一中", 3 ) );
+        data.add( Arrays.<Object>asList( "二中" ) );
+        Sheet sheet = export( ExcelExportUtils.c().headers( "名称", "班级" ).contentColumns( "name", "classes" )
+            .contentData( data ) );
+        assertEquals( "一中", text( sheet, 1, 0 ) );
+        assertEquals( "3", text( sheet, 1, 1 ) );
+        assertEquals( "二中", text( sheet, 2, 0 ) );
+        assertEquals( "", text( sheet, 2, 1 ) );
+    }
+
+    /**
+     * 同一块中Map、实体、空记录混在一起时逐条取值；后面的块换了记录类型时重新选择
+     */
+    public void testMixedRows() throws Exception
+    {
+        Item item = new Item();
+        item.setOne( "实体" );
+        Map<String, Object> map = new HashMap<>();
+        map.put( "one", "键值" );
+        List<Object> data = new ArrayList<>();
+        data.add( map );
+        data.add( item );
+        data.add( null );
+        Sheet sheet = export( ExcelExportUtils.c().headers( "一" ).contentColumns( "one" ).contentData( data ) );
+        assertEquals( "键值", text( sheet, 1, 0 ) );
+        assertEquals( "实体", text( sheet, 2, 0 ) );
+        assertEquals( "", text( sheet, 3, 0 ) );
+
+        data.clear();
+        for ( int i = 0; i < 600; i++ )
+        {
+            data.add( i < 300 ? map : item );
+        }
+        sheet = export( ExcelExportUtils.c().headers( "一" ).contentColumns( "one" ).contentData( data ) );
+        assertEquals( "键值", text( sheet, 1, 0 ) );
+        assertEquals( "键值", text( sheet, 300, 0 ) );
+        assertEquals( "实体", text( sheet, 301, 0 ) );
+        assertEquals( "实体", text( sheet, 600, 0 ) );
+    }
+
+    /**
+     * 实体中不存在的属性取值为空，不向标准错误输出
+     */
+    public void testMissingBeanColumnIsEmpty() throws Exception
+    {
+        List<Item> data = new ArrayList<>();
+        for ( int i = 0; i < 600; i++ )
+        {
+            Item item = new Item();
+            item.setOne( "一" + i );
+            data.add( item );
+        }
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream stderr = System.err;
+        System.setErr( new PrintStream( err, true ) );
+        Sheet sheet;
+        try
+        {
+            sheet = export( ExcelExportUtils.c().headers( "一", "四" ).contentColumns( "one", "four" ).contentData( data ) );
+        }
+        finally
+        {
+            System.setErr( stderr );
+        }
+        assertEquals( 0, err.size() );
+        assertEquals( "一0", text( sheet, 1, 0 ) );
+        assertEquals( "", text( sheet, 1, 1 ) );
+        assertEquals( "", text( sheet, 600, 1 ) );
+    }
+
+    private static Sheet export( ExcelExportUtils utils ) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        utils.export( out );
+        return new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 );
+    }
+
+    private static String text( Sheet sheet, int row, int column )
+    {
+        return sheet.getRow( row ).getCell( column ).getStringCellValue();
+    }
+}
@@ -0,0 +1,219 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlRow}.
+ */
+public class ExlRowTest
+    extends TestCase
+{
+    public ExlRowTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlRowTest.class );
+    }
+
+    /**
+     * 超过初始容量后各数组一起扩容，行列合并数不大于1的记为0，宽度、样式按下标保存
+     */
+    public void testPackedCells()
+    {
+        ExlRow row = ExlRow.c().height( 20 );
+        row.addCell( ExlCell.c( "项目", 2, 3 ) ).addCell( ExlCell.c( 12, 1, 1 ) ).addCell( ExlCell.c( "宽", false ).width( 10 ) );
+        row.addCell( "快速", 0, 4, ExlCellStyle.LEFT_NO_BORDER );
+        for ( int i = 0; i < 10; i++ )
+        {
+            row.addCell( ExlCell.c( "c" + i, 0xFFFF, 0 ).alignLeft() );
+        }
+        assertEquals( 14, row.size() );
+        assertEquals( 20, row.getHeight() );
+        assertEquals( 2, row.getRowspan( 0 ) );
+        assertEquals( 3, row.getColspan( 0 ) );
+        assertEquals( 12, row.getValue( 1 ) );
+        assertEquals( 0, row.getRowspan( 1 ) );
+        assertEquals( 0, row.getColspan( 1 ) );
+        assertEquals( 10, row.getWidth( 2 ) );
+        assertEquals( 0, row.getWidth( 0 ) );
+        assertEquals( ExlCellStyle.CENTER_NO_BORDER, row.getStyle( 2 ) );
+        assertEquals( 4, row.getColspan( 3 ) );
+        assertEquals( ExlCellStyle.LEFT_NO_BORDER, row.getStyle( 3 ) );
+        assertEquals( "c9", row.getValue( 13 ) );
+        assertEquals( 0xFFFF, row.getRowspan( 13 ) );
+        assertEquals( ExlCellStyle.LEFT_BORDER, row.getStyle( 13 ) );
+        try
+        {
+            row.getValue( 14 );
+            fail();
+        }
+        catch ( IndexOutOfBoundsException e )
+        {
+        }
+        try
+        {
+            row.addCell( ExlCell.c( "太大", 0x10000, 0 ) );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+        }
+        assertEquals( 14, row.size() );
+    }
+
+    /**
+     * 下划线文本在添加时拷贝，之后修改原数组不影响行
+     */
+    public void testUnderLineStrings()
+    {
+        String[] underLines = { "____", "__" };
+        ExlRow row = ExlRow.c().addCell( ExlCell.c( "无" ) ).addCell( ExlCell.c( "签字：____ 日期：__" ).uString( underLines ) );
+        underLines[0] = "改";
+        assertNull( row.getUnderLineString( 0 ) );
+        assertEquals( Arrays.asList( "____", "__" ), Arrays.asList( row.getUnderLineString( 1 ) ) );
+    }
+
+    /**
+     * getCell()视图：按下标新建单元格，属性与添加时一致，可通过视图添加；修改取出的单元格写回到行中
+     */
+    public void testCellView()
+    {
+        ExlRow row = ExlRow.c().addCell( ExlCell.c( "项目", 2, 3, false ).width( 8 ).alignLeft() )
+            .addCell( ExlCell.c( "签字：____" ).uString( "____" ) );
+        List<ExlCell> cells = row.getCell();
+        assertEquals( 2, cells.size() );
+        ExlCell cell = cells.get( 0 );
+        assertEquals( "项目", cell.getValue() );
+        assertEquals( 2, cell.getRowspan() );
+        assertEquals( 3, cell.getColspan() );
+        assertEquals( 8, cell.getWidth() );
+        assertFalse( cell.isAlignCenter() );
+        assertFalse( cell.isBorder() );
+        assertEquals( "____", cells.get( 1 ).getUnderLineString()[0] );
+        cells.get( 1 ).getUnderLineString()[0] = "改";
+        assertEquals( "____", row.getUnderLineString( 1 )[0] );
+
+        cells.add( ExlCell.c( "新增" ) );
+        assertEquals( 3, row.size() );
+        assertEquals( "新增", row.getCell().get( 2 ).getValue() );
+        cell.setValue( "改" );
+        cell.noBorder().setColspan( 4 );
+        assertEquals( "改", row.getValue( 0 ) );
+        assertEquals( 4, row.getColspan( 0 ) );
+        assertEquals( ExlCellStyle.LEFT_NO_BORDER, row.getStyle( 0 ) );
+    }
+
+    /**
+     * 视图的set替换位置上的单元格，remove移除并使后面的单元格前移；修改仍写回到正确的位置，被移除或替换的不再写回
+     */
+    public void testCellViewSetAndRemove()
+    {
+        ExlCell first = ExlCell.c( "一" );
+        ExlCell second = ExlCell.c( "二" ).width( 6 );
+        ExlCell third = ExlCell.c( "三" ).uString( "三" );
+        ExlRow row = ExlRow.c().addCell( first ).addCell( second ).addCell( third );
+        List<ExlCell> cells = row.getCell();
+
+        ExlCell replaced = cells.set( 1, ExlCell.c( "贰", 0, 2 ) );
+        assertEquals( "二", replaced.getValue() );
+        assertEquals( 6, replaced.getWidth() );
+        assertEquals( "贰", row.getValue( 1 ) );
+        assertEquals( 2, row.getColspan( 1 ) );
+        assertEquals( 0, row.getWidth( 1 ) );
+        second.setValue( "不写回" );
+        assertEquals( "贰", row.getValue( 1 ) );
+
+        assertEquals( "一", cells.remove( 0 ).getValue() );
+        assertEquals( 2, row.size() );
+        assertEquals( "贰", row.getValue( 0 ) );
+        assertEquals( "三", row.getUnderLineString( 1 )[0] );
+        third.setValue( "叁" );
+        third.uString();
+        assertEquals( "叁", row.getValue( 1 ) );
+        assertEquals( 0, row.getUnderLineString( 1 ).length );
+        first.setValue( "不写回" );
+        assertEquals( "贰", row.getValue( 0 ) );
+        assertEquals( "叁", row.getValue( 1 ) );
+    }
+
+    /**
+     * 添加之后修改原单元格写回到行中；同一个单元格添加多次时写回到所有位置
+     */
+    public void testMutationAfterAddWritesBack()
+    {
+        ExlCell cell = ExlCell.c( "原值" );
+        ExlRow row = ExlRow.c().addCell( cell );
+        ExlRow other = ExlRow.c().addCell( ExlCell.c( "前" ) ).addCell( cell );
+        cell.setValue( "新值" );
+        cell.width( 10 ).alignLeft().uString( "__" );
+        cell.setRowspan( 3 );
+        for ( int[] at : new int[][] { { 0, 0 }, { 1, 1 } } )
+        {
+            ExlRow target = at[0] == 0 ? row : other;
+            assertEquals( "新值", target.getValue( at[1] ) );
+            assertEquals( 10, target.getWidth( at[1] ) );
+            assertEquals( 3, target.getRowspan( at[1] ) );
+            assertEquals( ExlCellStyle.LEFT_BORDER, target.getStyle( at[1] ) );
+            assertEquals( "__", target.getUnderLineString( at[1] )[0] );
+        }
+        assertEquals( "前", other.getValue( 0 ) );
+        assertEquals( 0, other.getWidth( 0 ) );
+        try
+        {
+            cell.setColspan( 0x10000 );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+        }
+    }
+
+    /**
+     * 绘制：合并区域及下划线字体
+     */
+    public void testDrawSpansAndUnderLines() throws Exception
+    {
+        List<ExlRow> content = new ArrayList<>();
+        content.add( ExlRow.c().addCell( ExlCell.c( "项目", 2, 0 ) ).addCell( ExlCell.c( "情况", 0, 2 ) ) );
+        content.add( ExlRow.c().addCell( ExlCell.c( "签字：____" ).uString( "____" ) ).addCell( "日期", 0, 0, ExlCellStyle.LEFT_BORDER ) );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().complexContent( content ).export( out );
+        HSSFWorkbook wb = new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) );
+        Sheet sheet = wb.getSheetAt( 0 );
+        List<String> merged = new ArrayList<>();
+        for ( CellRangeAddress region : sheet.getMergedRegions() )
+        {
+            merged.add( region.formatAsString() );
+        }
+        assertTrue( merged.toString(), merged.contains( "A1:A2" ) );
+        assertTrue( merged.toString(), merged.contains( "B1:C1" ) );
+        assertEquals( "签字：____", sheet.getRow( 1 ).getCell( 1 ).getStringCellValue() );
+        assertEquals( "日期", sheet.getRow( 1 ).getCell( 2 ).getStringCellValue() );
+        RichTextString text = sheet.getRow( 1 ).getCell( 1 ).getRichStringCellValue();
+        Font font = wb.getFontAt( sheet.getRow( 1 ).getCell( 1 ).getCellStyle().getFontIndex() );
+        boolean underlined = font.getUnderline() != Font.U_NONE;
+        for ( int i = 0; i < text.numFormattingRuns(); i++ )
+        {
+            underlined |= wb.getFontAt( ( (org.apache.poi.hssf.usermodel.HSSFRichTextString) text ).getFontOfFormattingRun( i ) )
+                .getUnderline() != Font.U_NONE;
+        }
+        assertTrue( underlined );
+    }
+}
@@ -0,0 +1,231 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlSingleFlight}.
+ */
+public class ExlSingleFlightTest
+    extends TestCase
+{
+    private static final int REQUESTS = 6;
+
+    public ExlSingleFlightTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlSingleFlightTest.class );
+    }
+
+    /**
+     * 同时到达的相同请求只导出一次，全部收到同样的内容
+     */
+    public void testConcurrentRequestsShareOneExport() throws Exception
+    {
+        shareOneExport( ExlSingleFlight.c().streaming( true ) );
+    }
+
+    /**
+     * 超出内存上限的部分写入临时文件，跟随的请求收到的内容不变
+     */
+    public void testSpillsBeyondMemoryLimit() throws Exception
+    {
+        shareOneExport( ExlSingleFlight.c().streaming( true ).memoryLimit( 64 * 1024 ) );
+        shareOneExport( ExlSingleFlight.c().streaming( true ).memoryLimit( 0 ) );
+    }
+
+    private static void shareOneExport( ExlSingleFlight flights ) throws Exception
+    {
+        CountDownLatch release = new CountDownLatch( 1 );
+        AtomicInteger exports = new AtomicInteger();
+        Request[] requests = start( flights, release, exports, false );
+        awaitWaiting( requests );
+        assertEquals( 1, flights.getRunning() );
+        release.countDown();
+
+        int joined = 0;
+        for ( Request request : requests )
+        {
+            request.join();
+            assertNull( request.error );
+            joined += request.joined ? 1 : 0;
+            assertTrue( Arrays.equals( requests[0].out.toByteArray(), request.out.toByteArray() ) );
+        }
+        assertEquals( 1, exports.get() );
+        assertEquals( REQUESTS - 1, joined );
+        assertEquals( 0, flights.getRunning() );
+        assertTrue( requests[0].out.size() > 64 * 1024 );
+        Sheet sheet = new XSSFWorkbook( new ByteArrayInputStream( requests[0].out.toByteArray() ) ).getSheetAt( 0 );
+        assertEquals( "n29999", sheet.getRow( 30001 ).getCell( 1 ).getStringCellValue() );
+    }
+
+    /**
+     * 第一个请求导出失败时抛出原异常，跟随的请求都收到包装了该异常的IOException
+     */
+    public void testLeaderFailurePropagates() throws Exception
+    {
+        ExlSingleFlight flights = ExlSingleFlight.c();
+        CountDownLatch release = new CountDownLatch( 1 );
+        AtomicInteger exports = new AtomicInteger();
+        Request[] requests = start( flights, release, exports, true );
+        awaitWaiting( requests );
+        release.countDown();
+
+        Throwable leaderError = null;
+        int followers = 0;
+        for ( Request request : requests )
+        {
+            request.join();
+            assertNotNull( request.error );
+            if ( request.error instanceof IllegalStateException )
+            {
+                assertNull( leaderError );
+                leaderError = request.error;
+            }
+            else
+            {
+                followers++;
+            }
+        }
+        assertNotNull( leaderError );
+        assertEquals( REQUESTS - 1, followers );
+        for ( Request request : requests )
+        {
+            if ( request.error != leaderError )
+            {
+                assertTrue( request.error instanceof IOException );
+                assertSame( leaderError, request.error.getCause() );
+            }
+        }
+        assertEquals( 1, exports.get() );
+        assertEquals( 0, flights.getRunning() );
+    }
+
+    private static Request[] start( ExlSingleFlight flights, CountDownLatch release, AtomicInteger exports, boolean fail )
+    {
+        Request[] requests = new Request[REQUESTS];
+        for ( int i = 0; i < REQUESTS; i++ )
+        {
+            ExcelExportUtils export = ExcelExportUtils.c().title( "合并" ).headers( "编号", "名称" ).contentColumns( "id", "name" )
+                .contentSource( new BlockingSource( release, exports, fail ) );
+            requests[i] = new Request( flights, export );
+            requests[i].start();
+        }
+        return requests;
+    }
+
+    /**
+     * 等到所有请求都在等待：第一个请求等数据源放行，其他请求等共享的导出
+     */
+    private static void awaitWaiting( Request[] requests ) throws InterruptedException
+    {
+        for ( Request request : requests )
+        {
+            while ( request.getState() != Thread.State.WAITING )
+            {
+                Thread.sleep( 1 );
+            }
+        }
+    }
+
+    private static final class Request extends Thread
+    {
+        private final ExlSingleFlight flights;
+        private final ExcelExportUtils export;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        volatile boolean joined;
+        volatile Throwable error;
+
+        Request( ExlSingleFlight flights, ExcelExportUtils export )
+        {
+            this.flights = flights;
+            this.export = export;
+        }
+
+        public void run()
+        {
+            try
+            {
+                joined = flights.export( export, "20170901", out );
+            }
+            catch ( Throwable e )
+            {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * 开始读取时计数，等放行后才返回数据
+     */
+    private static final class BlockingSource implements Iterable<Map<String,Object>>
+    {
+        private final CountDownLatch release;
+        private final AtomicInteger exports;
+        private final boolean fail;
+
+        BlockingSource( CountDownLatch release, AtomicInteger exports, boolean fail )
+        {
+            this.release = release;
+            this.exports = exports;
+            this.fail = fail;
+        }
+
+        public Iterator<Map<String,Object>> iterator()
+        {
+            exports.incrementAndGet();
+            try
+            {
+                release.await();
+            }
+            catch ( InterruptedException e )
+            {
+                throw new IllegalStateException( e );
+            }
+            return new Iterator<Map<String,Object>>()
+            {
+                private int next = 0;
+
+                public boolean hasNext()
+                {
+                    return next < 30000;
+                }
+
+                public Map<String,Object> next()
+                {
+                    if ( fail && next == 1000 )
+                    {
+                        throw new IllegalStateException( "查询失败" );
+                    }
+                    Map<String,Object> row = new HashMap<>();
+                    row.put( "id", next );
+                    row.put( "name", "n" + next++ );
+                    return row;
+                }
+
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
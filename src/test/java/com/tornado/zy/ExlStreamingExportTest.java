@@ -0,0 +1,185 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExcelExportUtils#exportStreaming(OutputStream)}.
+ */
+public class ExlStreamingExportTest
+    extends TestCase
+{
+    private static final int ROWS = 3000;
+
+    public ExlStreamingExportTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlStreamingExportTest.class );
+    }
+
+    /**
+     * 本地HTTP下载：数据源读到一半时等待，直到客户端收到的字节超出构造时推送的固定部分，即已收到内容行，
+     * 导出必须边生成边输出内容，而不只是提前推送工作簿的固定部分
+     */
+    public void testContentBytesBeforeSourceEnds() throws Exception
+    {
+        ExlXlsxStreamWriter fixed = ExcelExportUtils.c().streamWriter( new ByteArrayOutputStream() );
+        final long fixedBytes = fixed.getBytesWritten();
+        fixed.close();
+        assertTrue( fixedBytes > 0 );
+        final CountDownLatch firstByte = new CountDownLatch( 1 );
+        final boolean[] sawFirstByte = new boolean[1];
+        final Exception[] serverError = new Exception[1];
+        HttpServer server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/export", new HttpHandler()
+        {
+            public void handle( HttpExchange exchange ) throws IOException
+            {
+                exchange.sendResponseHeaders( 200, 0 );
+                OutputStream out = exchange.getResponseBody();
+                try
+                {
+                    ExcelExportUtils.c().title( "流式" ).headers( "编号", "名称" ).contentColumns( "id", "name" )
+                        .contentSource( new SlowSource( firstByte, sawFirstByte ) ).streamFlush( 100, 64 * 1024 )
+                        .exportStreaming( out );
+                }
+                catch ( Exception e )
+                {
+                    serverError[0] = e;
+                }
+                out.close();
+            }
+        } );
+        server.start();
+        try
+        {
+            URL url = new URL( "http://127.0.0.1:" + server.getAddress().getPort() + "/export" );
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for ( int n; ( n = in.read( buffer ) ) > 0; )
+            {
+                body.write( buffer, 0, n );
+                if ( body.size() > fixedBytes )
+                {
+                    firstByte.countDown();
+                }
+            }
+            in.close();
+
+            assertNull( serverError[0] );
+            assertTrue( "数据源结束之前客户端就应收到内容行", sawFirstByte[0] );
+
+            Sheet sheet = new XSSFWorkbook( new ByteArrayInputStream( body.toByteArray() ) ).getSheetAt( 0 );
+            assertEquals( "流式", sheet.getRow( 0 ).getCell( 0 ).getStringCellValue() );
+            assertEquals( "名称", sheet.getRow( 1 ).getCell( 1 ).getStringCellValue() );
+            assertEquals( "0", sheet.getRow( 2 ).getCell( 0 ).getStringCellValue() );
+            assertEquals( "n" + ( ROWS - 1 ), sheet.getRow( ROWS + 1 ).getCell( 1 ).getStringCellValue() );
+            assertEquals( 1, sheet.getNumMergedRegions() );
+        }
+        finally
+        {
+            server.stop( 0 );
+        }
+    }
+
+    /**
+     * NaN、无穷大不能写入数值单元格，写为文本，文件仍可打开
+     */
+    public void testNonFiniteDoubles() throws Exception
+    {
+        ExlColumnTable table = ExlColumnTable.c( 4 ).doubleColumn( "amount",
+            new double[] { 1.5, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY } );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils.c().contentColumns( "amount" ).contentTable( table ).exportStreaming( out );
+        Sheet sheet = new XSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 );
+        assertEquals( 1.5d, sheet.getRow( 0 ).getCell( 0 ).getNumericCellValue() );
+        assertEquals( "NaN", sheet.getRow( 1 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "Infinity", sheet.getRow( 2 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "-Infinity", sheet.getRow( 3 ).getCell( 0 ).getStringCellValue() );
+    }
+
+    /**
+     * 前一半数据立即给出，之后等待客户端收到固定部分之外的字节（最多等10秒）再给出剩余数据
+     */
+    private static class SlowSource implements Iterable<Map<String,Object>>
+    {
+        private final CountDownLatch firstByte;
+        private final boolean[] sawFirstByte;
+
+        SlowSource( CountDownLatch firstByte, boolean[] sawFirstByte )
+        {
+            this.firstByte = firstByte;
+            this.sawFirstByte = sawFirstByte;
+        }
+
+        public Iterator<Map<String,Object>> iterator()
+        {
+            return new Iterator<Map<String,Object>>()
+            {
+                private int next = 0;
+
+                public boolean hasNext()
+                {
+                    if ( next == ROWS / 2 && firstByte.getCount() > 0 )
+                    {
+                        try
+                        {
+                            sawFirstByte[0] = firstByte.await( 10, TimeUnit.SECONDS );
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    else if ( next == ROWS / 2 )
+                    {
+                        sawFirstByte[0] = true;
+                    }
+                    return next < ROWS;
+                }
+
+                public Map<String,Object> next()
+                {
+                    Map<String,Object> row = new HashMap<>();
+                    row.put( "id", next );
+                    row.put( "name", "n" + next );
+                    next++;
+                    return row;
+                }
+
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
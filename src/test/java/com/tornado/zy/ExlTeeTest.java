@@ -0,0 +1,201 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlTee}.
+ */
+public class ExlTeeTest
+    extends TestCase
+{
+    public ExlTeeTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlTeeTest.class );
+    }
+
+    /**
+     * 一次读取数据源同时输出xls、xlsx、CSV，内容一致，渲染器每个单元格只执行一次
+     */
+    public void testOnePassSeveralFormats() throws Exception
+    {
+        final int rows = 500;
+        AtomicInteger renders = new AtomicInteger();
+        CountingSource source = new CountingSource( rows );
+        ByteArrayOutputStream xls = new ByteArrayOutputStream();
+        ByteArrayOutputStream xlsx = new ByteArrayOutputStream();
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        ExlExportStats stats = ExlTee.c().xls( xls ).xlsx( xlsx ).csv( csv ).queueRows( 8 )
+            .export( ExcelExportUtils.c().title( "多格式" ).headers( "编号", "名称" ).contentColumns( "id", "name" )
+                .contentSource( source ).render( ( value, record, index ) -> {
+                    renders.incrementAndGet();
+                    return value + ",\"x\"";
+                }, "name" ) );
+        assertEquals( rows, stats.getContentRows() );
+        assertEquals( 1, source.iterators.get() );
+        assertEquals( rows, renders.get() );
+
+        Sheet[] sheets = { new HSSFWorkbook( new ByteArrayInputStream( xls.toByteArray() ) ).getSheetAt( 0 ),
+            new XSSFWorkbook( new ByteArrayInputStream( xlsx.toByteArray() ) ).getSheetAt( 0 ) };
+        for ( Sheet sheet : sheets )
+        {
+            assertEquals( "多格式", sheet.getRow( 0 ).getCell( 0 ).getStringCellValue() );
+            assertEquals( "名称", sheet.getRow( 1 ).getCell( 1 ).getStringCellValue() );
+            assertEquals( "n7,\"x\"", sheet.getRow( 9 ).getCell( 1 ).getStringCellValue() );
+            assertEquals( rows + 1, sheet.getLastRowNum() );
+            assertEquals( 1, sheet.getNumMergedRegions() );
+        }
+
+        String[] lines = new String( csv.toByteArray(), StandardCharsets.UTF_8 ).split( "\r\n" );
+        assertEquals( rows + 2, lines.length );
+        assertEquals( "多格式,", lines[0] );
+        assertEquals( "编号,名称", lines[1] );
+        assertEquals( "7,\"n7,\"\"x\"\"\"", lines[9] );
+    }
+
+    /**
+     * 最慢的输出阻塞时导出等待，读取的行数不超过该输出的队列
+     */
+    public void testSlowOutputAppliesBackpressure() throws Exception
+    {
+        final int rows = 20000;
+        final int queueRows = 16;
+        final CountingSource source = new CountingSource( rows );
+        final BlockingOutputStream slow = new BlockingOutputStream();
+        final ByteArrayOutputStream fast = new ByteArrayOutputStream();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<ExlExportStats> future = pool.submit( () -> ExlTee.c().xlsx( fast ).csv( slow ).queueRows( queueRows )
+            .export( ExcelExportUtils.c().headers( "编号", "名称" ).contentColumns( "id", "name" ).contentSource( source ) ) );
+
+        assertTrue( slow.blocked.await( 10, TimeUnit.SECONDS ) );
+        int atBlock = source.produced.get();
+        Thread.sleep( 300 );
+        int produced = source.produced.get();
+        assertTrue( produced < rows );
+        assertTrue( "produced " + ( produced - atBlock ) + " rows while blocked", produced - atBlock <= queueRows + 4 );
+
+        slow.release.countDown();
+        assertEquals( rows, future.get( 30, TimeUnit.SECONDS ).getContentRows() );
+        pool.shutdown();
+        String csv = new String( slow.bytes.toByteArray(), StandardCharsets.UTF_8 );
+        assertTrue( csv.endsWith( ( rows - 1 ) + ",n" + ( rows - 1 ) + "\r\n" ) );
+        assertEquals( rows + 1, csv.split( "\r\n" ).length );
+    }
+
+    /**
+     * 任意输出失败时导出失败
+     */
+    public void testFailingOutputFailsExport() throws Exception
+    {
+        OutputStream broken = new OutputStream()
+        {
+            public void write( int b ) throws IOException
+            {
+                throw new IOException( "broken" );
+            }
+        };
+        try
+        {
+            ExlTee.c().xlsx( new ByteArrayOutputStream() ).xlsx( broken )
+                .export( ExcelExportUtils.c().headers( "编号", "名称" ).contentColumns( "id", "name" )
+                    .contentSource( new CountingSource( 3000 ) ).streamFlush( 100, 4096 ) );
+            fail();
+        }
+        catch ( IOException e )
+        {
+            assertEquals( "broken", e.getMessage() );
+        }
+    }
+
+    private static class CountingSource implements Iterable<Map<String,Object>>
+    {
+        private final int rows;
+        final AtomicInteger iterators = new AtomicInteger();
+        final AtomicInteger produced = new AtomicInteger();
+
+        CountingSource( int rows )
+        {
+            this.rows = rows;
+        }
+
+        public Iterator<Map<String,Object>> iterator()
+        {
+            iterators.incrementAndGet();
+            return new Iterator<Map<String,Object>>()
+            {
+                public boolean hasNext()
+                {
+                    return produced.get() < rows;
+                }
+
+                public Map<String,Object> next()
+                {
+                    int next = produced.getAndIncrement();
+                    Map<String,Object> row = new HashMap<>();
+                    row.put( "id", next );
+                    row.put( "name", "n" + next );
+                    return row;
+                }
+
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /**
+     * 第一次写入时阻塞，直到release
+     */
+    private static class BlockingOutputStream extends OutputStream
+    {
+        final CountDownLatch blocked = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        public void write( int b ) throws IOException
+        {
+            write( new byte[] { (byte) b }, 0, 1 );
+        }
+
+        public void write( byte[] b, int off, int len ) throws IOException
+        {
+            blocked.countDown();
+            try
+            {
+                release.await();
+            }
+            catch ( InterruptedException e )
+            {
+                throw new IOException( e );
+            }
+            bytes.write( b, off, len );
+        }
+    }
+}
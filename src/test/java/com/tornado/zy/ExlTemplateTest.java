@@ -0,0 +1,164 @@
+package com.tornado.zy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ExlTemplate}.
+ */
+public class ExlTemplateTest
+    extends TestCase
+{
+    public ExlTemplateTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExlTemplateTest.class );
+    }
+
+    /**
+     * 数据行按记录展开，表尾整体下移，变量替换
+     */
+    public void testFillDataRowsAndFooter() throws Exception
+    {
+        ExlTemplate template = ExlTemplate.parse( new ByteArrayInputStream( template() ) );
+        List<Map<String,Object>> data = new ArrayList<>();
+        for ( int i = 0; i < 5; i++ )
+        {
+            Map<String,Object> record = new HashMap<>();
+            record.put( "name", "学校" + i );
+            record.put( "type", i % 2 );
+            data.add( record );
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils export = ExcelExportUtils.c().template( template ).title( "学校统计" ).templateVar( "total", 5 )
+            .contentData( data ).columnRender( ExlDictRender.array( "公办", "民办" ), "type" );
+        export.export( out );
+        ExlExportStats stats = export.getStats();
+        assertEquals( 5, stats.getContentRows() );
+
+        Sheet sheet = new HSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 );
+        assertEquals( "学校统计", sheet.getRow( 0 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "类型", sheet.getRow( 1 ).getCell( 1 ).getStringCellValue() );
+        assertEquals( "学校4", sheet.getRow( 6 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "民办", sheet.getRow( 3 ).getCell( 1 ).getStringCellValue() );
+        assertEquals( BorderStyle.THIN, sheet.getRow( 6 ).getCell( 1 ).getCellStyle().getBorderBottomEnum() );
+        assertEquals( 20f, sheet.getRow( 6 ).getHeightInPoints() );
+        assertEquals( "合计：5所", sheet.getRow( 7 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "制表人", sheet.getRow( 8 ).getCell( 1 ).getStringCellValue() );
+        List<String> merges = new ArrayList<>();
+        for ( CellRangeAddress merge : sheet.getMergedRegions() )
+        {
+            merges.add( merge.formatAsString() );
+        }
+        assertTrue( merges.toString(), merges.contains( "A1:B1" ) );
+        assertTrue( merges.toString(), merges.contains( "A8:B8" ) );
+        assertEquals( 2, merges.size() );
+    }
+
+    /**
+     * 按文件缓存，文件修改后重新解析
+     */
+    public void testLoadCachesByFile() throws Exception
+    {
+        Path file = Files.createTempFile( "template", ".xls" );
+        try
+        {
+            Files.write( file, template() );
+            ExlTemplate first = ExlTemplate.load( file );
+            assertSame( first, ExlTemplate.load( file ) );
+            Files.setLastModifiedTime( file, java.nio.file.attribute.FileTime.fromMillis( System.currentTimeMillis() + 5000 ) );
+            assertNotSame( first, ExlTemplate.load( file ) );
+        }
+        finally
+        {
+            Files.delete( file );
+        }
+    }
+
+    /**
+     * xlsx模板流式写入，数据行多于内存中保留的行数时表尾及样式不变
+     */
+    public void testXlsxTemplateStreamsRows() throws Exception
+    {
+        ExlTemplate template = ExlTemplate.parse( new ByteArrayInputStream( template( true ) ) );
+        List<Map<String,Object>> data = new ArrayList<>();
+        for ( int i = 0; i < 500; i++ )
+        {
+            Map<String,Object> record = new HashMap<>();
+            record.put( "name", "学校" + i );
+            record.put( "type", i % 2 );
+            data.add( record );
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelExportUtils export = ExcelExportUtils.c().template( template ).title( "学校统计" ).templateVar( "total", 500 )
+            .contentData( data ).columnRender( ExlDictRender.array( "公办", "民办" ), "type" );
+        export.export( out );
+        ExlExportStats stats = export.getStats();
+        assertEquals( 500, stats.getContentRows() );
+
+        Sheet sheet = new XSSFWorkbook( new ByteArrayInputStream( out.toByteArray() ) ).getSheetAt( 0 );
+        assertEquals( "学校统计", sheet.getRow( 0 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "学校0", sheet.getRow( 2 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "学校499", sheet.getRow( 501 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( BorderStyle.THIN, sheet.getRow( 501 ).getCell( 1 ).getCellStyle().getBorderBottomEnum() );
+        assertEquals( 20f, sheet.getRow( 501 ).getHeightInPoints() );
+        assertEquals( "合计：500所", sheet.getRow( 502 ).getCell( 0 ).getStringCellValue() );
+        assertEquals( "制表人", sheet.getRow( 503 ).getCell( 1 ).getStringCellValue() );
+        assertEquals( 2, sheet.getNumMergedRegions() );
+    }
+
+    private static byte[] template() throws Exception
+    {
+        return template( false );
+    }
+
+    private static byte[] template( boolean xlsx ) throws Exception
+    {
+        Workbook wb = xlsx ? new XSSFWorkbook() : new HSSFWorkbook();
+        Sheet sheet = wb.createSheet();
+        CellStyle border = wb.createCellStyle();
+        border.setBorderBottom( BorderStyle.THIN );
+        sheet.createRow( 0 ).createCell( 0 ).setCellValue( "${title}" );
+        sheet.addMergedRegion( CellRangeAddress.valueOf( "A1:B1" ) );
+        Row header = sheet.createRow( 1 );
+        header.createCell( 0 ).setCellValue( "名称" );
+        header.createCell( 1 ).setCellValue( "类型" );
+        Row data = sheet.createRow( 2 );
+        data.setHeightInPoints( 20 );
+        data.createCell( 0 ).setCellValue( "$[name]" );
+        data.createCell( 1 ).setCellValue( "$[type]" );
+        data.getCell( 1 ).setCellStyle( border );
+        sheet.createRow( 3 ).createCell( 0 ).setCellValue( "合计：${total}所" );
+        sheet.addMergedRegion( CellRangeAddress.valueOf( "A4:B4" ) );
+        sheet.createRow( 4 ).createCell( 1 ).setCellValue( "制表人" );
+        OutputStream out = new ByteArrayOutputStream();
+        wb.write( out );
+        return ( (ByteArrayOutputStream) out ).toByteArray();
+    }
+}